@@ -0,0 +1,271 @@
+package org.bouncycastle.asn1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An ASN.1 object found by an {@link ASN1ByteBufferParser}, referring to its encoding in the parser's buffer.
+ * <p>
+ * The contents and encoding of the object are returned as read-only slices of the buffer, and constructed
+ * objects can be parsed further with {@link #getContentsParser()}, all without copying. {@link #toASN1Primitive()}
+ * copies the object's encoding out of the buffer and parses it in full, so an object can be passed to the
+ * getInstance() methods of ASN.1 structures, such as a Certificate, when the structure is actually needed.
+ * </p>
+ */
+public class ASN1ByteBufferObject
+    implements ASN1Encodable
+{
+    private final ByteBuffer buf;
+    private final int start;
+    private final int contentsStart;
+    private final int limit;
+    private final int tagHdr;
+    private final int tagNo;
+    private final int depth;
+    private final boolean indefiniteLength;
+
+    private int contentsEnd;
+
+    ASN1ByteBufferObject(ByteBuffer buf, int start, int contentsStart, int contentsEnd, int limit, int tagHdr,
+        int tagNo, int depth)
+    {
+        this.buf = buf;
+        this.start = start;
+        this.contentsStart = contentsStart;
+        this.contentsEnd = contentsEnd;
+        this.limit = limit;
+        this.tagHdr = tagHdr;
+        this.tagNo = tagNo;
+        this.depth = depth;
+        this.indefiniteLength = contentsEnd < 0;
+    }
+
+    public int getTagClass()
+    {
+        return tagHdr & BERTags.PRIVATE;
+    }
+
+    public int getTagNo()
+    {
+        return tagNo;
+    }
+
+    public boolean hasTag(int tagClass, int tagNo)
+    {
+        return this.getTagClass() == tagClass && this.tagNo == tagNo;
+    }
+
+    public boolean isConstructed()
+    {
+        return 0 != (tagHdr & BERTags.CONSTRUCTED);
+    }
+
+    public boolean isIndefiniteLength()
+    {
+        return indefiniteLength;
+    }
+
+    /**
+     * Return the length of the contents octets - for an indefinite-length object this excludes the
+     * end-of-contents octets.
+     *
+     * @return the length of the contents.
+     * @throws IOException if the end of an indefinite-length object cannot be found.
+     */
+    public int getContentsLength()
+        throws IOException
+    {
+        return getContentsEnd() - contentsStart;
+    }
+
+    /**
+     * Return a read-only view of the contents octets of this object. For a constructed object these are the
+     * encodings of the objects it contains.
+     *
+     * @return a buffer positioned at the start of the contents, with its limit at their end.
+     * @throws IOException if the end of an indefinite-length object cannot be found.
+     */
+    public ByteBuffer getContents()
+        throws IOException
+    {
+        return slice(contentsStart, getContentsEnd());
+    }
+
+    /**
+     * Return a read-only view of the complete encoding of this object, identifier and length octets included.
+     *
+     * @return a buffer positioned at the start of the encoding, with its limit at its end.
+     * @throws IOException if the end of an indefinite-length object cannot be found.
+     */
+    public ByteBuffer getEncoding()
+        throws IOException
+    {
+        return slice(start, getEnd());
+    }
+
+    /**
+     * Return a stream reading the contents octets of this object from the buffer.
+     *
+     * @return an InputStream of the contents.
+     * @throws IOException if the end of an indefinite-length object cannot be found.
+     */
+    public InputStream getContentsStream()
+        throws IOException
+    {
+        return new ByteBufferInputStream(getContents());
+    }
+
+    /**
+     * Return a parser for the objects contained in this constructed object.
+     *
+     * @return a parser for the contents of this object.
+     * @throws IOException if the object is primitive, nested too deeply, or the end of an indefinite-length
+     * object cannot be found.
+     */
+    public ASN1ByteBufferParser getContentsParser()
+        throws IOException
+    {
+        if (!isConstructed())
+        {
+            throw new ASN1Exception("primitive encoding has no contained objects");
+        }
+
+        return new ASN1ByteBufferParser(buf, contentsStart, getContentsEnd(), StreamUtil.decrementDepth(depth));
+    }
+
+    /**
+     * Return the contents octets of this object in a new byte array.
+     *
+     * @return a copy of the contents.
+     * @throws IOException if the end of an indefinite-length object cannot be found.
+     */
+    public byte[] getContentsOctets()
+        throws IOException
+    {
+        return copy(getContents());
+    }
+
+    /**
+     * Copy the encoding of this object out of the buffer and parse it into an ASN1Primitive.
+     *
+     * @return the parsed object.
+     * @throws ASN1ParsingException if the object cannot be parsed.
+     */
+    public ASN1Primitive toASN1Primitive()
+    {
+        try
+        {
+            return ASN1Primitive.fromByteArray(copy(getEncoding()));
+        }
+        catch (IOException e)
+        {
+            throw new ASN1ParsingException("unable to parse object: " + e.getMessage(), e);
+        }
+    }
+
+    int getTagHdr()
+    {
+        return tagHdr;
+    }
+
+    int getContentsStart()
+    {
+        return contentsStart;
+    }
+
+    int getEnd()
+        throws IOException
+    {
+        if (indefiniteLength)
+        {
+            // the end-of-contents octets follow the contents
+            return getContentsEnd() + 2;
+        }
+
+        return contentsEnd;
+    }
+
+    private synchronized int getContentsEnd()
+        throws IOException
+    {
+        if (contentsEnd < 0)
+        {
+            contentsEnd = ASN1ByteBufferParser.findIndefiniteEnd(buf, contentsStart, limit, depth) - 2;
+        }
+
+        return contentsEnd;
+    }
+
+    private ByteBuffer slice(int from, int to)
+    {
+        ByteBuffer dup = buf.duplicate();
+
+        ((java.nio.Buffer)dup).limit(to);
+        ((java.nio.Buffer)dup).position(from);
+
+        return dup.slice().asReadOnlyBuffer();
+    }
+
+    private static byte[] copy(ByteBuffer b)
+    {
+        byte[] data = new byte[b.remaining()];
+
+        b.get(data);
+
+        return data;
+    }
+
+    private static class ByteBufferInputStream
+        extends InputStream
+    {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf)
+        {
+            this.buf = buf;
+        }
+
+        public int read()
+        {
+            if (!buf.hasRemaining())
+            {
+                return -1;
+            }
+
+            return buf.get() & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len)
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!buf.hasRemaining())
+            {
+                return -1;
+            }
+
+            int count = Math.min(len, buf.remaining());
+
+            buf.get(b, off, count);
+
+            return count;
+        }
+
+        public long skip(long n)
+        {
+            int count = (int)Math.max(0, Math.min(n, buf.remaining()));
+
+            ((java.nio.Buffer)buf).position(buf.position() + count);
+
+            return count;
+        }
+
+        public int available()
+        {
+            return buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.bouncycastle.asn1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A parser for BER/DER encodings held in a ByteBuffer, such as a memory mapped file.
+ * <p>
+ * Only the identifier and length octets of each object are read by the parser - the objects returned refer
+ * back to the buffer, so their contents can be looked at as slices of it, or parsed in turn, without anything
+ * being copied. An object's contents are only copied if it is converted to an {@link ASN1Primitive}. As a
+ * ByteBuffer is indexed by an int, a single buffer can hold at most 2 GB of encoded data.
+ * </p>
+ * <p>
+ * The position and limit of the buffer passed in are not changed by the parser, but the contents of the buffer
+ * must not be changed while the parser, or the objects returned from it, are in use.
+ * </p>
+ */
+public class ASN1ByteBufferParser
+{
+    private final ByteBuffer buf;
+    private final int end;
+    private final int depth;
+
+    private int pos;
+    private ASN1ByteBufferObject last;
+
+    /**
+     * Create a parser for the encodings found between the buffer's position and its limit.
+     *
+     * @param buf the buffer containing the encodings.
+     */
+    public ASN1ByteBufferParser(ByteBuffer buf)
+    {
+        this(buf.duplicate(), buf.position(), buf.limit(), StreamUtil.findDepth());
+    }
+
+    ASN1ByteBufferParser(ByteBuffer buf, int start, int end, int depth)
+    {
+        this.buf = buf;
+        this.pos = start;
+        this.end = end;
+        this.depth = depth;
+    }
+
+    /**
+     * Return the next object in the buffer.
+     *
+     * @return the next object, null if the end of the buffer has been reached.
+     * @throws IOException if the identifier or length octets of the next object are corrupted, or the object
+     * extends past the end of the buffer.
+     */
+    public ASN1ByteBufferObject readObject()
+        throws IOException
+    {
+        if (last != null)
+        {
+            // the end of an indefinite-length object is only looked for once we need to skip past it.
+            pos = last.getEnd();
+            last = null;
+        }
+
+        if (pos >= end)
+        {
+            return null;
+        }
+
+        ASN1ByteBufferObject obj = parseHeader(buf, pos, end, depth);
+        if (obj.getTagHdr() == 0 && obj.getContentsLength() == 0)
+        {
+            throw new IOException("unexpected end-of-contents marker");
+        }
+
+        last = obj;
+
+        return obj;
+    }
+
+    static ASN1ByteBufferObject parseHeader(ByteBuffer buf, int start, int limit, int depth)
+        throws IOException
+    {
+        int p = start;
+
+        int tagHdr = buf.get(p++) & 0xff;
+        int tagNo = tagHdr & 0x1f;
+
+        //
+        // with tagged object tag number is bottom 5 bits, or stored at the start of the content
+        //
+        if (tagNo == 0x1f)
+        {
+            int b = readOctet(buf, p++, limit, "EOF found inside tag value.");
+            if (b < 31)
+            {
+                throw new IOException("corrupted stream - high tag number < 31 found");
+            }
+
+            tagNo = b & 0x7f;
+
+            // X.690-0207 8.1.2.4.2
+            // "c) bits 7 to 1 of the first subsequent octet shall not all be zero."
+            if (0 == tagNo)
+            {
+                throw new IOException("corrupted stream - invalid high tag number found");
+            }
+
+            while ((b & 0x80) != 0)
+            {
+                if ((tagNo >>> 24) != 0)
+                {
+                    throw new IOException("Tag number more than 31 bits");
+                }
+
+                tagNo <<= 7;
+
+                b = readOctet(buf, p++, limit, "EOF found inside tag value.");
+
+                tagNo |= (b & 0x7f);
+            }
+        }
+
+        int length = readOctet(buf, p++, limit, "EOF found when length expected");
+        if (0x80 == length)
+        {
+            // indefinite-length
+            if (0 == (tagHdr & BERTags.CONSTRUCTED))
+            {
+                throw new IOException("indefinite-length primitive encoding encountered");
+            }
+
+            return new ASN1ByteBufferObject(buf, start, p, -1, limit, tagHdr, tagNo, depth);
+        }
+
+        if (0 != (length >>> 7))
+        {
+            if (0xFF == length)
+            {
+                throw new IOException("invalid long form definite-length 0xFF");
+            }
+
+            int octetsCount = length & 0x7F;
+
+            length = 0;
+            for (int i = 0; i != octetsCount; i++)
+            {
+                int octet = readOctet(buf, p++, limit, "EOF found reading length");
+
+                if ((length >>> 23) != 0)
+                {
+                    throw new IOException("long form definite-length more than 31 bits");
+                }
+
+                length = (length << 8) + octet;
+            }
+        }
+
+        StreamUtil.checkLength(length, limit - p);
+
+        return new ASN1ByteBufferObject(buf, start, p, p + length, limit, tagHdr, tagNo, depth);
+    }
+
+    /*
+     * Find the end of an indefinite-length object from its first contents octet. Only the headers of the
+     * nested objects are read, and nesting is tracked with a counter rather than by recursion.
+     */
+    static int findIndefiniteEnd(ByteBuffer buf, int contentsStart, int limit, int depth)
+        throws IOException
+    {
+        int p = contentsStart;
+        int level = 1;
+
+        while (level > 0)
+        {
+            if (p + 2 > limit)
+            {
+                throw new EOFException("EOF found before end-of-contents");
+            }
+
+            if (buf.get(p) == 0 && buf.get(p + 1) == 0)
+            {
+                p += 2;
+                level--;
+                continue;
+            }
+
+            ASN1ByteBufferObject obj = parseHeader(buf, p, limit, depth);
+            if (obj.isIndefiniteLength())
+            {
+                if (level > depth)
+                {
+                    throw new ASN1Exception("maximum nested construction level reached");
+                }
+
+                p = obj.getContentsStart();
+                level++;
+            }
+            else
+            {
+                p = obj.getEnd();
+            }
+        }
+
+        return p;
+    }
+
+    private static int readOctet(ByteBuffer buf, int p, int limit, String eofMessage)
+        throws EOFException
+    {
+        if (p >= limit)
+        {
+            throw new EOFException(eofMessage);
+        }
+
+        return buf.get(p) & 0xff;
+    }
+}
@@ -5,6 +5,7 @@
 import java.io.OutputStream;
 
 import org.bouncycastle.util.Encodable;
+import org.bouncycastle.util.Exceptions;
 
 /**
  * Base class for defining an ASN.1 object.
@@ -30,8 +31,16 @@ public void encodeTo(OutputStream output, String encoding) throws IOException
      */
     public byte[] getEncoded() throws IOException
     {
+        ASN1Primitive primitive = toASN1Primitive();
+
+        // the default encoding of these is their DER encoding
+        if (primitive instanceof DERSequence || primitive instanceof DERSet)
+        {
+            return ASN1OutputStream.getEncodedDER(primitive);
+        }
+
         ByteArrayOutputStream bOut = new ByteArrayOutputStream();
-        toASN1Primitive().encodeTo(bOut);
+        primitive.encodeTo(bOut);
         return bOut.toByteArray();
     }
 
@@ -44,6 +53,18 @@ public byte[] getEncoded() throws IOException
      */
     public byte[] getEncoded(String encoding) throws IOException
     {
+        if (encoding.equals(ASN1Encoding.DER))
+        {
+            try
+            {
+                return ASN1OutputStream.getEncodedDER(toASN1Primitive().toDERObject());
+            }
+            catch (DEREncodingException e)
+            {
+                throw Exceptions.ioException(e.getMessage(), e);
+            }
+        }
+
         ByteArrayOutputStream bOut = new ByteArrayOutputStream();
         toASN1Primitive().encodeTo(bOut, encoding);
         return bOut.toByteArray();
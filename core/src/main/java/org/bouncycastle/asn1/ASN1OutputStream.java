@@ -192,6 +192,22 @@ void writePrimitives(ASN1Primitive[] primitives) throws IOException
         }
     }
 
+    /**
+     * Return the DER encoding of an object already converted to DER. The array is sized from the encoded
+     * length before anything is written, and as the DER constructed types cache the lengths worked out for
+     * it, the encoding is then written straight into the array in a single pass.
+     */
+    static byte[] getEncodedDER(ASN1Primitive derObject) throws IOException
+    {
+        ArrayOutputStream aOut = new ArrayOutputStream(derObject.encodedLength(true));
+
+        ASN1OutputStream derOut = new DEROutputStream(aOut);
+        derOut.writePrimitive(derObject, true);
+        derOut.flushInternal();
+
+        return aOut.toByteArray();
+    }
+
     static int getLengthOfDL(int dl)
     {
         if (dl < 128)
@@ -275,4 +291,56 @@ static void writeIdentifier(OutputStream out, int flags, int tag) throws IOExcep
             out.write(stack, pos, stack.length - pos);
         }
     }
+
+    /**
+     * An unsynchronized stream writing to an array of an expected size, which is returned without being copied
+     * if it is exactly filled.
+     */
+    private static class ArrayOutputStream
+        extends OutputStream
+    {
+        private byte[] buf;
+        private int count;
+
+        ArrayOutputStream(int size)
+        {
+            this.buf = new byte[size];
+        }
+
+        public void write(int b)
+        {
+            ensureCapacity(1);
+            buf[count++] = (byte)b;
+        }
+
+        public void write(byte[] b, int off, int len)
+        {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        byte[] toByteArray()
+        {
+            if (count == buf.length)
+            {
+                return buf;
+            }
+
+            byte[] result = new byte[count];
+            System.arraycopy(buf, 0, result, 0, count);
+            return result;
+        }
+
+        private void ensureCapacity(int len)
+        {
+            if (count + len > buf.length)
+            {
+                // only if a length calculation has gone astray - still produce the encoding
+                byte[] tmp = new byte[Math.max(buf.length * 2, count + len)];
+                System.arraycopy(buf, 0, tmp, 0, count);
+                buf = tmp;
+            }
+        }
+    }
 }
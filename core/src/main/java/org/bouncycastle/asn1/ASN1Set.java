@@ -175,6 +175,10 @@ public static ASN1Set getTagged(ASN1TaggedObject taggedObject, boolean declaredE
 
     protected ASN1Encodable[] sortedElements;
 
+    // the DER encodings of the elements, in order, found while sorting them - handed on to the DERSet which
+    // is encoded, so its elements don't need encoding again.
+    volatile byte[][] sortedEncodings;
+
     protected ASN1Set()
     {
         this.elements = ASN1EncodableVector.EMPTY_ELEMENTS;
@@ -212,7 +216,7 @@ protected ASN1Set(ASN1EncodableVector elementVector, boolean doSort)
         if (doSort && elementVector.size() >= 2)
         {
             tmp = elementVector.copyElements();
-            sort(tmp);
+            this.sortedEncodings = sort(tmp);
         }
         else
         {
@@ -238,7 +242,7 @@ protected ASN1Set(ASN1Encodable[] elements, boolean doSort)
         ASN1Encodable[] tmp = ASN1EncodableVector.cloneElements(elements);
         if (doSort && tmp.length >= 2)
         {
-            sort(tmp);
+            this.sortedEncodings = sort(tmp);
         }
 
         this.elements = tmp;
@@ -366,13 +370,17 @@ public int hashCode()
      */
     ASN1Primitive toDERObject()
     {
+        byte[][] encodings = null;
         if (sortedElements == null)
         {
-            sortedElements = (ASN1Encodable[])elements.clone();
-            sort(sortedElements);
+            ASN1Encodable[] tmp = (ASN1Encodable[])elements.clone();
+            encodings = sort(tmp);
+            sortedElements = tmp;
         }
 
-        return new DERSet(true, sortedElements);
+        DERSet derSet = new DERSet(true, sortedElements);
+        derSet.sortedEncodings = encodings;
+        return derSet;
     }
 
     /**
@@ -498,61 +506,37 @@ private static boolean lessThanOrEqual(byte[] a, byte[] b)
         return (a[last] & 0xFF) <= (b[last] & 0xFF);
     }
 
-    private static void sort(ASN1Encodable[] t)
+    /**
+     * Sort the elements into DER order, returning their DER encodings in the same order. Each element is
+     * encoded once, and the sort is stable and linear for elements which are already in order.
+     */
+    private static byte[][] sort(ASN1Encodable[] t)
     {
         int count = t.length;
-        if (count < 2)
-        {
-            return;
-        }
+        byte[][] b = new byte[count][];
 
-        ASN1Encodable eh = t[0], ei = t[1];
-        byte[] bh = getDEREncoded(eh), bi = getDEREncoded(ei);;
-
-        if (lessThanOrEqual(bi, bh))
+        for (int i = 0; i < count; ++i)
         {
-            ASN1Encodable et = ei; ei = eh; eh = et;
-            byte[] bt = bi; bi = bh; bh = bt;
+            b[i] = getDEREncoded(t[i]);
         }
 
-        for (int i = 2; i < count; ++i)
+        for (int i = 1; i < count; ++i)
         {
             ASN1Encodable e2 = t[i];
-            byte[] b2 = getDEREncoded(e2);
+            byte[] b2 = b[i];
 
-            if (lessThanOrEqual(bi, b2))
+            int j = i;
+            while (j > 0 && !lessThanOrEqual(b[j - 1], b2))
             {
-                t[i - 2] = eh;
-                eh = ei; bh = bi;
-                ei = e2; bi = b2;
-                continue;
-            }
-
-            if (lessThanOrEqual(bh, b2))
-            {
-                t[i - 2] = eh;
-                eh = e2; bh = b2;
-                continue;
-            }
-
-            int j = i - 1;
-            while (--j > 0)
-            {
-                ASN1Encodable e1 = t[j - 1];
-                byte[] b1 = getDEREncoded(e1);
-
-                if (lessThanOrEqual(b1, b2))
-                {
-                    break;
-                }
-
-                t[j] = e1;
+                t[j] = t[j - 1];
+                b[j] = b[j - 1];
+                --j;
             }
 
             t[j] = e2;
+            b[j] = b2;
         }
 
-        t[count - 2] = eh;
-        t[count - 1] = ei;
+        return b;
     }
 }
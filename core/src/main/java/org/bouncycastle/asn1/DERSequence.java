@@ -30,6 +30,10 @@ public static DERSequence fromElementsOptional(ASN1Encodable[] elements)
 
     private int contentsLength = -1;
 
+    // elements toDERObject() gave new objects for in getContentsLength(), kept (with the lengths they have
+    // cached) for the encode() that follows, which releases them.
+    private volatile ASN1Primitive[] derObjects;
+
     /**
      * Create an empty sequence.
      */
@@ -85,13 +89,24 @@ private int getContentsLength() throws IOException
         {
             int count = elements.length;
             int totalLength = 0;
+            ASN1Primitive[] derObjects = null;
 
             for (int i = 0; i < count; ++i)
             {
                 ASN1Primitive derObject = elements[i].toASN1Primitive().toDERObject();
+                if (derObjects == null && derObject != elements[i])
+                {
+                    derObjects = new ASN1Primitive[count];
+                    System.arraycopy(elements, 0, derObjects, 0, i);
+                }
+                if (derObjects != null)
+                {
+                    derObjects[i] = derObject;
+                }
                 totalLength += derObject.encodedLength(true);
             }
 
+            this.derObjects = derObjects;
             this.contentsLength = totalLength;
         }
 
@@ -122,9 +137,13 @@ void encode(ASN1OutputStream out, boolean withTag) throws IOException
         {
             out.writeDL(getContentsLength());
 
+            ASN1Primitive[] derObjects = this.derObjects;
+            this.derObjects = null;
+
             for (int i = 0; i < count; ++i)
             {
-                ASN1Primitive derObject = elements[i].toASN1Primitive().toDERObject();
+                ASN1Primitive derObject = (derObjects != null)
+                    ? derObjects[i] : elements[i].toASN1Primitive().toDERObject();
                 derObject.encode(derOut, true);
             }
         }
@@ -68,6 +68,18 @@ private int getContentsLength() throws IOException
             int count = elements.length;
             int totalLength = 0;
 
+            byte[][] encodings = sortedEncodings;
+            if (encodings != null)
+            {
+                for (int i = 0; i < count; ++i)
+                {
+                    totalLength += encodings[i].length;
+                }
+
+                this.contentsLength = totalLength;
+                return totalLength;
+            }
+
             for (int i = 0; i < count; ++i)
             {
                 ASN1Primitive derObject = elements[i].toASN1Primitive().toDERObject();
@@ -99,6 +111,21 @@ void encode(ASN1OutputStream out, boolean withTag) throws IOException
 
         DEROutputStream derOut = out.getDERSubStream();
 
+        // encodings from sorting are only written once, the memory is given back after.
+        byte[][] encodings = sortedEncodings;
+        if (encodings != null)
+        {
+            out.writeDL(getContentsLength());
+
+            for (int i = 0; i < encodings.length; ++i)
+            {
+                out.write(encodings[i], 0, encodings[i].length);
+            }
+
+            sortedEncodings = null;
+            return;
+        }
+
         int count = elements.length;
         if (contentsLength >= 0 || count > 16)
         {
@@ -10,6 +10,9 @@
 public class DERTaggedObject
     extends ASN1TaggedObject
 {
+    // a new object from converting obj in encodedLength(), so encode() doesn't redo the lengths under it.
+    private volatile ASN1Primitive derObject;
+
     public DERTaggedObject(int tagNo, ASN1Encodable encodable)
     {
         super(true, tagNo, encodable);
@@ -50,6 +53,8 @@ int encodedLength(boolean withTag) throws IOException
         ASN1Primitive primitive = obj.toASN1Primitive().toDERObject();
         boolean explicit = isExplicit();
 
+        this.derObject = (primitive != obj) ? primitive : null;
+
         int length = primitive.encodedLength(explicit);
 
         if (explicit)
@@ -66,7 +71,15 @@ void encode(ASN1OutputStream out, boolean withTag) throws IOException
     {
 //      assert out.getClass().isAssignableFrom(DEROutputStream.class);
 
-        ASN1Primitive primitive = obj.toASN1Primitive().toDERObject();
+        ASN1Primitive primitive = this.derObject;
+        if (primitive != null)
+        {
+            this.derObject = null;
+        }
+        else
+        {
+            primitive = obj.toASN1Primitive().toDERObject();
+        }
         boolean explicit = isExplicit();
 
         if (withTag)
@@ -55,6 +55,9 @@
 {
     private int contentsLength = -1;
 
+    // as for DLSequence.
+    private volatile ASN1Primitive[] dlObjects;
+
     /**
      * create an empty set
      */
@@ -102,13 +105,24 @@ private int getContentsLength() throws IOException
         {
             int count = elements.length;
             int totalLength = 0;
+            ASN1Primitive[] dlObjects = null;
 
             for (int i = 0; i < count; ++i)
             {
                 ASN1Primitive dlObject = elements[i].toASN1Primitive().toDLObject();
+                if (dlObjects == null && dlObject != elements[i])
+                {
+                    dlObjects = new ASN1Primitive[count];
+                    System.arraycopy(elements, 0, dlObjects, 0, i);
+                }
+                if (dlObjects != null)
+                {
+                    dlObjects[i] = dlObject;
+                }
                 totalLength += dlObject.encodedLength(true);
             }
 
+            this.dlObjects = dlObjects;
             this.contentsLength = totalLength;
         }
 
@@ -139,9 +153,12 @@ void encode(ASN1OutputStream out, boolean withTag) throws IOException
         {
             out.writeDL(getContentsLength());
 
+            ASN1Primitive[] dlObjects = this.dlObjects;
+            this.dlObjects = null;
+
             for (int i = 0; i < count; ++i)
             {
-                dlOut.writePrimitive(elements[i].toASN1Primitive(), true);
+                dlOut.writePrimitive((dlObjects != null) ? dlObjects[i] : elements[i].toASN1Primitive(), true);
             }
         }
         else
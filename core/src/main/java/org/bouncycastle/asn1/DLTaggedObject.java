@@ -10,6 +10,9 @@
 public class DLTaggedObject
     extends ASN1TaggedObject
 {
+    // see DERTaggedObject.
+    private volatile ASN1Primitive dlObject;
+
     public DLTaggedObject(int tagNo, ASN1Encodable encodable)
     {
         super(true, tagNo, encodable);
@@ -50,6 +53,8 @@ int encodedLength(boolean withTag) throws IOException
         ASN1Primitive primitive = obj.toASN1Primitive().toDLObject();
         boolean explicit = isExplicit();
 
+        this.dlObject = (primitive != obj) ? primitive : null;
+
         int length = primitive.encodedLength(explicit);
 
         if (explicit)
@@ -66,7 +71,15 @@ void encode(ASN1OutputStream out, boolean withTag) throws IOException
     {
 //        assert out.getClass().isAssignableFrom(DLOutputStream.class);
 
-        ASN1Primitive primitive = obj.toASN1Primitive().toDLObject();
+        ASN1Primitive primitive = this.dlObject;
+        if (primitive != null)
+        {
+            this.dlObject = null;
+        }
+        else
+        {
+            primitive = obj.toASN1Primitive().toDLObject();
+        }
         boolean explicit = isExplicit();
 
         if (withTag)
@@ -0,0 +1,145 @@
+package org.bouncycastle.asn1.x509;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.util.Arrays;
+
+/**
+ * A serial number index over the revokedCertificates of a CRL, so that looking up an entry is a binary
+ * search rather than a decode of every entry.
+ * <p>
+ * Each entry is represented by a single long, holding the hash of its serial number (high 32 bits) and its
+ * position in the list (low 32 bits), sorted, so that entries with equal hashes are in list order. For an
+ * indirect CRL, the positions of the entries carrying a certificateIssuer extension are also kept, giving the
+ * issuer that applies to any entry.
+ * </p>
+ * <p>
+ * An index is immutable once built, so may be shared between threads.
+ * </p>
+ */
+public class CRLEntryIndex
+{
+    private static final int[] NO_ISSUER_POSITIONS = new int[0];
+
+    private final TBSCertList tbsCertList;
+    private final long[] serials;
+    private final int[] issuerPositions;
+
+    /**
+     * Build an index over the revokedCertificates of a CRL.
+     *
+     * @param tbsCertList the TBSCertList of the CRL.
+     * @param isIndirect  true if the CRL is indirect, so entries may carry a certificateIssuer extension.
+     */
+    public CRLEntryIndex(TBSCertList tbsCertList, boolean isIndirect)
+    {
+        int count = tbsCertList.getRevokedCertificatesCount();
+
+        long[] serials = new long[count];
+        int[] issuerPositions = new int[isIndirect ? count : 0];
+        int issuerCount = 0;
+
+        for (int i = 0; i < count; ++i)
+        {
+            TBSCertList.CRLEntry entry = tbsCertList.getRevokedCertificateAt(i);
+
+            int hash = entry.getUserCertificate().getValue().hashCode();
+            serials[i] = ((long)hash << 32) | i;
+
+            if (isIndirect && entry.hasExtensions()
+                && null != entry.getExtensions().getExtension(Extension.certificateIssuer))
+            {
+                issuerPositions[issuerCount++] = i;
+            }
+        }
+
+        java.util.Arrays.sort(serials);
+
+        this.tbsCertList = tbsCertList;
+        this.serials = serials;
+        this.issuerPositions = issuerCount == 0 ? NO_ISSUER_POSITIONS : Arrays.copyOf(issuerPositions, issuerCount);
+    }
+
+    /**
+     * Find the first entry for a serial number.
+     *
+     * @param serialNumber the serial number of the certificate of interest.
+     * @return the position of the first entry for the given serial number, or -1 if there is none.
+     */
+    public int findFirst(BigInteger serialNumber)
+    {
+        long key = (long)serialNumber.hashCode() << 32;
+
+        int low = 0, high = serials.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (serials[mid] < key)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+
+        for (int i = low; i < serials.length && (serials[i] & 0xFFFFFFFF00000000L) == key; ++i)
+        {
+            int position = (int)serials[i];
+            if (tbsCertList.getRevokedCertificateAt(position).getUserCertificate().hasValue(serialNumber))
+            {
+                return position;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Return the entry at a position returned by {@link #findFirst(BigInteger)}.
+     *
+     * @param position the position of the entry.
+     * @return the CRL entry.
+     */
+    public TBSCertList.CRLEntry getEntry(int position)
+    {
+        return tbsCertList.getRevokedCertificateAt(position);
+    }
+
+    /**
+     * Return the certificate issuer applying to an entry of an indirect CRL.
+     *
+     * @param position  the position of an entry.
+     * @param inclusive whether the entry's own certificateIssuer extension (if any) is taken into account.
+     * @return the certificate issuer in effect for the entry, or null if it is the CRL issuer.
+     */
+    public GeneralNames getCertificateIssuer(int position, boolean inclusive)
+    {
+        int limit = inclusive ? position + 1 : position;
+
+        int low = 0, high = issuerPositions.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (issuerPositions[mid] < limit)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+
+        if (low == 0)
+        {
+            return null;
+        }
+
+        Extension certificateIssuer = tbsCertList.getRevokedCertificateAt(issuerPositions[low - 1]).getExtensions()
+            .getExtension(Extension.certificateIssuer);
+
+        return GeneralNames.getInstance(certificateIssuer.getParsedValue());
+    }
+}
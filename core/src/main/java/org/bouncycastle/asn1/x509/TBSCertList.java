@@ -268,6 +268,32 @@ public CRLEntry[] getRevokedCertificates()
         return entries;
     }
 
+    /**
+     * Return the number of entries in the revokedCertificates list.
+     *
+     * @return the number of revoked certificates (0 if the list is absent).
+     */
+    public int getRevokedCertificatesCount()
+    {
+        return revokedCertificates == null ? 0 : revokedCertificates.size();
+    }
+
+    /**
+     * Return an entry of the revokedCertificates list by position, without decoding the other entries.
+     *
+     * @param index the position of the entry, from 0 to {@link #getRevokedCertificatesCount()} - 1.
+     * @return the CRL entry at the given position.
+     */
+    public CRLEntry getRevokedCertificateAt(int index)
+    {
+        if (revokedCertificates == null)
+        {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+
+        return CRLEntry.getInstance(revokedCertificates.getObjectAt(index));
+    }
+
     public Enumeration getRevokedCertificateEnumeration()
     {
         if (revokedCertificates == null)
@@ -45,6 +45,13 @@
      */
     public static final String X509_CRL_CACHE_TTL = "org.bouncycastle.x509.crl_cache_ttl";
 
+    /**
+     * Maximum number of entries held by each of the internal CRL and OCSP response caches used
+     * by the CertPath validator and X509RevocationChecker. When the limit is reached the least
+     * recently used entry is evicted. Default 64. Read via {@link #asInteger(String, int)}.
+     */
+    public static final String X509_REVOCATION_CACHE_MAX_SIZE = "org.bouncycastle.x509.revocation_cache_max_size";
+
     /**
      * If set to "true", the BC CertPath validator and X509RevocationChecker will attempt to
      * download CRLs over the network using URIs from each certificate's CRL Distribution Points
@@ -0,0 +1,396 @@
+package org.bouncycastle.util.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.bouncycastle.util.Exceptions;
+
+/**
+ * An output stream which copies anything written into it to a number of other streams, each of which is
+ * written to by its own task running on an Executor.
+ * <p>
+ * Data is handed to the tasks through a bounded ring of chunks, so a write only blocks when the slowest of the
+ * streams has fallen a full ring behind. Where the streams are doing real work, such as calculating digests,
+ * the cost of writing to all of them approaches that of the slowest, rather than the sum.
+ * </p>
+ * <p>
+ * The executor must be able to run a task for every stream at the same time (for example a cached thread pool,
+ * or a fixed pool with at least as many threads as there are streams), as each task runs until this stream is
+ * closed. The stream must be closed, or if the data is not going to be completed, aborted: close() waits for
+ * every stream to be written the data, and then closes them from their tasks, while abort() stops the tasks
+ * without writing any more data. An exception thrown by any of the streams is reported by the next write,
+ * flush, or close.
+ * </p>
+ */
+public class PipelinedTeeOutputStream
+    extends OutputStream
+{
+    private static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+    private static final int DEFAULT_CHUNK_COUNT = 8;
+
+    private final Object lock = new Object();
+
+    private final OutputStream[] outputs;
+    private final byte[][] chunks;
+    private final int[] chunkLengths;
+
+    // guarded by lock
+    private final long[] consumed;
+    private long published;
+    private int finished;
+    private boolean closed;
+    private Throwable failure;
+
+    // producer only
+    private byte[] current;
+    private int currentPos;
+    private boolean isClosed;
+
+    /**
+     * Base constructor - data is passed on in 8 chunks of 32 KB.
+     *
+     * @param outputs  the streams anything written to this stream is copied to.
+     * @param executor the executor to run the task writing to each stream on.
+     */
+    public PipelinedTeeOutputStream(OutputStream[] outputs, Executor executor)
+    {
+        this(outputs, executor, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+    }
+
+    /**
+     * Constructor specifying how data is passed to the streams.
+     *
+     * @param outputs    the streams anything written to this stream is copied to.
+     * @param executor   the executor to run the task writing to each stream on.
+     * @param chunkSize  the size of the chunks the data is passed on in.
+     * @param chunkCount the number of chunks which may be held waiting for the slowest stream.
+     * @throws RejectedExecutionException if the executor will not accept a task for every stream, in which case
+     * any tasks already started are stopped.
+     */
+    public PipelinedTeeOutputStream(OutputStream[] outputs, Executor executor, int chunkSize, int chunkCount)
+    {
+        if (outputs.length == 0)
+        {
+            throw new IllegalArgumentException("no output streams specified");
+        }
+        if (chunkSize < 1 || chunkCount < 1)
+        {
+            throw new IllegalArgumentException("chunkSize and chunkCount must be positive");
+        }
+
+        this.outputs = (OutputStream[])outputs.clone();
+        this.chunks = new byte[chunkCount][];
+        this.chunkLengths = new int[chunkCount];
+        this.consumed = new long[outputs.length];
+
+        for (int i = 0; i != chunkCount; i++)
+        {
+            chunks[i] = new byte[chunkSize];
+        }
+
+        for (int i = 0; i != outputs.length; i++)
+        {
+            final int index = i;
+
+            try
+            {
+                executor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        consume(index);
+                    }
+                });
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the stream will never be used, so release the tasks which did start
+                abort();
+                throw e;
+            }
+        }
+    }
+
+    public void write(int b)
+        throws IOException
+    {
+        ensureChunk();
+
+        current[currentPos++] = (byte)b;
+
+        if (currentPos == current.length)
+        {
+            publish();
+        }
+    }
+
+    public void write(byte[] buf, int off, int len)
+        throws IOException
+    {
+        while (len > 0)
+        {
+            ensureChunk();
+
+            int count = Math.min(len, current.length - currentPos);
+
+            System.arraycopy(buf, off, current, currentPos, count);
+            currentPos += count;
+            off += count;
+            len -= count;
+
+            if (currentPos == current.length)
+            {
+                publish();
+            }
+        }
+    }
+
+    /**
+     * Wait for every stream to be written the data so far, and flush them.
+     */
+    public void flush()
+        throws IOException
+    {
+        checkOpen();
+
+        if (currentPos > 0)
+        {
+            publish();
+        }
+
+        synchronized (lock)
+        {
+            while (failure == null && minConsumed() != published)
+            {
+                await();
+            }
+            checkFailure();
+
+            // the tasks are all idle until something more is published
+            for (int i = 0; i != outputs.length; i++)
+            {
+                outputs[i].flush();
+            }
+        }
+    }
+
+    /**
+     * Wait for every stream to be written the data, and close them.
+     */
+    public void close()
+        throws IOException
+    {
+        if (isClosed)
+        {
+            return;
+        }
+
+        isClosed = true;
+
+        synchronized (lock)
+        {
+            if (currentPos > 0 && failure == null)
+            {
+                chunkLengths[(int)(published % chunks.length)] = currentPos;
+                published++;
+            }
+            current = null;
+            currentPos = 0;
+
+            // the tasks close their streams once they have written everything published
+            closed = true;
+            lock.notifyAll();
+
+            while (finished != outputs.length)
+            {
+                try
+                {
+                    lock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    abort();
+                    Thread.currentThread().interrupt();
+
+                    throw new InterruptedIOException("interrupted waiting for streams to close");
+                }
+            }
+            checkFailure();
+        }
+    }
+
+    private void ensureChunk()
+        throws IOException
+    {
+        checkOpen();
+
+        if (current == null)
+        {
+            synchronized (lock)
+            {
+                // wait until every task is done with the chunk we're about to reuse
+                while (failure == null && published - minConsumed() >= chunks.length)
+                {
+                    await();
+                }
+                checkFailure();
+            }
+
+            current = chunks[(int)(published % chunks.length)];
+            currentPos = 0;
+        }
+    }
+
+    private void publish()
+        throws IOException
+    {
+        synchronized (lock)
+        {
+            checkFailure();
+
+            chunkLengths[(int)(published % chunks.length)] = currentPos;
+            published++;
+            lock.notifyAll();
+        }
+
+        current = null;
+        currentPos = 0;
+    }
+
+    private void consume(int index)
+    {
+        OutputStream output = outputs[index];
+
+        try
+        {
+            for (;;)
+            {
+                int slot;
+                int length;
+
+                synchronized (lock)
+                {
+                    while (failure == null && !closed && consumed[index] == published)
+                    {
+                        lock.wait();
+                    }
+
+                    if (failure != null)
+                    {
+                        return;
+                    }
+                    if (consumed[index] == published)
+                    {
+                        break;
+                    }
+
+                    slot = (int)(consumed[index] % chunks.length);
+                    length = chunkLengths[slot];
+                }
+
+                output.write(chunks[slot], 0, length);
+
+                synchronized (lock)
+                {
+                    consumed[index]++;
+                    lock.notifyAll();
+                }
+            }
+
+            output.close();
+        }
+        catch (Throwable e)
+        {
+            synchronized (lock)
+            {
+                if (failure == null)
+                {
+                    failure = e;
+                }
+            }
+        }
+        finally
+        {
+            synchronized (lock)
+            {
+                finished++;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private long minConsumed()
+    {
+        long min = consumed[0];
+        for (int i = 1; i != consumed.length; i++)
+        {
+            min = Math.min(min, consumed[i]);
+        }
+        return min;
+    }
+
+    private void await()
+        throws IOException
+    {
+        try
+        {
+            lock.wait();
+        }
+        catch (InterruptedException e)
+        {
+            abort();
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("interrupted waiting for streams");
+        }
+    }
+
+    /**
+     * Abandon the stream - the tasks stop without writing any more data to, or closing, their streams, and any
+     * further use of this stream will fail. This may be called from any thread.
+     */
+    public void abort()
+    {
+        synchronized (lock)
+        {
+            if (failure == null)
+            {
+                failure = new InterruptedIOException("stream aborted");
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private void checkOpen()
+        throws IOException
+    {
+        if (isClosed)
+        {
+            throw new IOException("stream closed");
+        }
+    }
+
+    private void checkFailure()
+        throws IOException
+    {
+        if (failure != null)
+        {
+            if (failure instanceof IOException)
+            {
+                throw (IOException)failure;
+            }
+            if (failure instanceof RuntimeException)
+            {
+                throw (RuntimeException)failure;
+            }
+            if (failure instanceof Error)
+            {
+                throw (Error)failure;
+            }
+            throw Exceptions.ioException("exception in output stream: " + failure.getMessage(), failure);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package org.bouncycastle.asn1.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.bouncycastle.asn1.ASN1ByteBufferObject;
+import org.bouncycastle.asn1.ASN1ByteBufferParser;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Exception;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.BEROctetString;
+import org.bouncycastle.asn1.BERSequence;
+import org.bouncycastle.asn1.BERTaggedObject;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.io.Streams;
+import org.bouncycastle.util.test.SimpleTest;
+
+public class ASN1ByteBufferParserTest
+    extends SimpleTest
+{
+    public String getName()
+    {
+        return "ASN1ByteBufferParser";
+    }
+
+    public void performTest()
+        throws Exception
+    {
+        testDefiniteLength();
+        testIndefiniteLength();
+        testMappedFile();
+        testMalformed();
+    }
+
+    private void testDefiniteLength()
+        throws Exception
+    {
+        ASN1Primitive seq = createDERStructure();
+        byte[] enc = seq.getEncoded(ASN1Encoding.DER);
+
+        // encoding in the middle of a buffer, followed by a second object
+        byte[] second = new ASN1Integer(42).getEncoded();
+        ByteBuffer buf = ByteBuffer.wrap(Arrays.concatenate(new byte[3], enc, second, new byte[5]));
+        ((java.nio.Buffer)buf).position(3);
+        ((java.nio.Buffer)buf).limit(3 + enc.length + second.length);
+
+        ASN1ByteBufferParser parser = new ASN1ByteBufferParser(buf);
+
+        ASN1ByteBufferObject obj = parser.readObject();
+        isTrue(obj.hasTag(BERTags.UNIVERSAL, BERTags.SEQUENCE));
+        isTrue(obj.isConstructed());
+        isTrue(!obj.isIndefiniteLength());
+        isTrue(obj.getEncoding().isReadOnly());
+        isTrue(Arrays.areEqual(enc, toArray(obj.getEncoding())));
+        isEquals(seq, obj.toASN1Primitive());
+        isEquals(seq, DERSequence.getInstance(obj));
+
+        ASN1ByteBufferParser contents = obj.getContentsParser();
+
+        ASN1ByteBufferObject integer = contents.readObject();
+        isTrue(integer.hasTag(BERTags.UNIVERSAL, BERTags.INTEGER));
+        isEquals(new ASN1Integer(7), ASN1Integer.getInstance(integer.toASN1Primitive()));
+
+        ASN1ByteBufferObject octets = contents.readObject();
+        isTrue(octets.hasTag(BERTags.UNIVERSAL, BERTags.OCTET_STRING));
+        isEquals(1000, octets.getContentsLength());
+        isTrue(Arrays.areEqual(ASN1OctetString.getInstance(((DERSequence)seq).getObjectAt(1)).getOctets(),
+            octets.getContentsOctets()));
+        isTrue(Arrays.areEqual(octets.getContentsOctets(), Streams.readAll(octets.getContentsStream())));
+
+        ASN1ByteBufferObject tagged = contents.readObject();
+        isTrue(tagged.hasTag(BERTags.CONTEXT_SPECIFIC, 0));
+        isTrue(tagged.isConstructed());
+        ASN1ByteBufferObject str = tagged.getContentsParser().readObject();
+        isEquals("hello", DERUTF8String.getInstance(str.toASN1Primitive()).getString());
+
+        ASN1ByteBufferObject set = contents.readObject();
+        isTrue(set.hasTag(BERTags.UNIVERSAL, BERTags.SET));
+
+        ASN1ByteBufferObject highTag = contents.readObject();
+        isTrue(highTag.hasTag(BERTags.APPLICATION, 1000));
+        isTrue(null == contents.readObject());
+
+        isEquals(new ASN1Integer(42), parser.readObject().toASN1Primitive());
+        isTrue(null == parser.readObject());
+
+        // the caller's buffer is left alone
+        isEquals(3, buf.position());
+        isEquals(3 + enc.length + second.length, buf.limit());
+    }
+
+    private void testIndefiniteLength()
+        throws Exception
+    {
+        byte[] data = new byte[5000];
+        for (int i = 0; i != data.length; i++)
+        {
+            data[i] = (byte)i;
+        }
+
+        ASN1EncodableVector v = new ASN1EncodableVector();
+        v.add(new ASN1Integer(1));
+        v.add(new BERTaggedObject(true, 0, new BERSequence(new BEROctetString(data, 1000))));
+        v.add(new DEROctetString(new byte[10]));
+
+        byte[] enc = new BERSequence(v).getEncoded(ASN1Encoding.BER);
+        byte[] second = new ASN1Integer(2).getEncoded();
+
+        ASN1ByteBufferParser parser = new ASN1ByteBufferParser(ByteBuffer.wrap(Arrays.concatenate(enc, second)));
+
+        ASN1ByteBufferObject obj = parser.readObject();
+        isTrue(obj.isIndefiniteLength());
+        isTrue(Arrays.areEqual(enc, toArray(obj.getEncoding())));
+        isEquals(enc.length - 4, obj.getContentsLength());
+
+        ASN1ByteBufferParser contents = obj.getContentsParser();
+        isEquals(new ASN1Integer(1), contents.readObject().toASN1Primitive());
+
+        ASN1ByteBufferObject tagged = contents.readObject();
+        isTrue(tagged.isIndefiniteLength());
+
+        // a chunked OCTET STRING - each chunk can be read straight from the buffer
+        ASN1ByteBufferObject octets = tagged.getContentsParser().readObject().getContentsParser().readObject();
+        isTrue(octets.hasTag(BERTags.UNIVERSAL, BERTags.OCTET_STRING));
+        isTrue(octets.isConstructed());
+
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        ASN1ByteBufferParser chunks = octets.getContentsParser();
+        ASN1ByteBufferObject chunk;
+        while ((chunk = chunks.readObject()) != null)
+        {
+            isEquals(1000, chunk.getContentsLength());
+            bOut.write(chunk.getContentsOctets());
+        }
+        isTrue(Arrays.areEqual(data, bOut.toByteArray()));
+        isTrue(Arrays.areEqual(data, ASN1OctetString.getInstance(octets.toASN1Primitive()).getOctets()));
+
+        // skipping an indefinite-length object without looking at it
+        ASN1ByteBufferParser skipping = obj.getContentsParser();
+        skipping.readObject();
+        skipping.readObject();
+        isEquals(new DEROctetString(new byte[10]), skipping.readObject().toASN1Primitive());
+        isTrue(null == skipping.readObject());
+
+        isEquals(new ASN1Integer(2), parser.readObject().toASN1Primitive());
+        isTrue(null == parser.readObject());
+    }
+
+    private void testMappedFile()
+        throws Exception
+    {
+        ASN1Primitive seq = createDERStructure();
+        byte[] enc = seq.getEncoded(ASN1Encoding.DER);
+
+        File file = File.createTempFile("bcbuf", ".der");
+        try
+        {
+            FileOutputStream fOut = new FileOutputStream(file);
+            for (int i = 0; i != 10; i++)
+            {
+                fOut.write(enc);
+            }
+            fOut.close();
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                ASN1ByteBufferParser parser = new ASN1ByteBufferParser(mapped);
+
+                int count = 0;
+                ASN1ByteBufferObject obj;
+                while ((obj = parser.readObject()) != null)
+                {
+                    ASN1ByteBufferParser contents = obj.getContentsParser();
+                    contents.readObject();
+
+                    // contents are slices of the mapping, not copies
+                    ByteBuffer octets = contents.readObject().getContents();
+                    isTrue(octets.isDirect());
+                    isEquals(1000, octets.remaining());
+
+                    isEquals(seq, obj.toASN1Primitive());
+                    count++;
+                }
+                isEquals(10, count);
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private void testMalformed()
+        throws Exception
+    {
+        // length past the end of the buffer
+        checkException(new byte[] { 0x04, 0x05, 0x01, 0x02 }, "corrupted stream - out of bounds length found: 5 > 2");
+        // truncated length
+        checkException(new byte[] { 0x04, (byte)0x82, 0x01 }, "EOF found reading length");
+        // indefinite-length primitive
+        checkException(new byte[] { 0x04, (byte)0x80, 0x00, 0x00 }, "indefinite-length primitive encoding encountered");
+        // stray end-of-contents
+        checkException(new byte[] { 0x00, 0x00 }, "unexpected end-of-contents marker");
+
+        // missing end-of-contents
+        ASN1ByteBufferParser parser = new ASN1ByteBufferParser(ByteBuffer.wrap(new byte[] { 0x30, (byte)0x80, 0x02, 0x01, 0x01 }));
+        ASN1ByteBufferObject obj = parser.readObject();
+        try
+        {
+            obj.getContentsLength();
+            fail("no exception");
+        }
+        catch (EOFException e)
+        {
+            isEquals("EOF found before end-of-contents", e.getMessage());
+        }
+
+        parser = new ASN1ByteBufferParser(ByteBuffer.wrap(new ASN1Integer(1).getEncoded()));
+        try
+        {
+            parser.readObject().getContentsParser();
+            fail("no exception");
+        }
+        catch (ASN1Exception e)
+        {
+            isEquals("primitive encoding has no contained objects", e.getMessage());
+        }
+    }
+
+    private void checkException(byte[] data, String message)
+    {
+        try
+        {
+            new ASN1ByteBufferParser(ByteBuffer.wrap(data)).readObject();
+            fail("no exception");
+        }
+        catch (IOException e)
+        {
+            isEquals(message, e.getMessage());
+        }
+    }
+
+    private static ASN1Primitive createDERStructure()
+    {
+        byte[] octets = new byte[1000];
+        for (int i = 0; i != octets.length; i++)
+        {
+            octets[i] = (byte)(i * 7);
+        }
+
+        ASN1EncodableVector v = new ASN1EncodableVector();
+        v.add(new ASN1Integer(7));
+        v.add(new DEROctetString(octets));
+        v.add(new DERTaggedObject(true, 0, new DERUTF8String("hello")));
+        v.add(new DERSet(new ASN1Encodable[] { new ASN1Integer(3), new ASN1Integer(1) }));
+        v.add(new DERTaggedObject(false, BERTags.APPLICATION, 1000, new ASN1Integer(5)));
+
+        return new DERSequence(v);
+    }
+
+    private static byte[] toArray(ByteBuffer buf)
+    {
+        byte[] data = new byte[buf.remaining()];
+
+        buf.get(data);
+
+        return data;
+    }
+
+    public static void main(
+        String[] args)
+    {
+        runTest(new ASN1ByteBufferParserTest());
+    }
+}
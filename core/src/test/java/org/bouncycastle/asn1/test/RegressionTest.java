@@ -71,6 +71,7 @@
         new StreamLimitTest(),
         new ASN1GeneratorTest(),
         new LongDefiniteLengthParserTest(),
+        new ASN1ByteBufferParserTest(),
         new DefiniteLengthAllocationTest(),
         new KeyPurposeIdTest()
     };
@@ -1,9 +1,14 @@
 package org.bouncycastle.asn1.test;
 
+import java.io.ByteArrayOutputStream;
+import java.security.SecureRandom;
+
 import org.bouncycastle.asn1.ASN1Boolean;
+import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1Encoding;
 import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Primitive;
 import org.bouncycastle.asn1.ASN1Set;
 import org.bouncycastle.asn1.ASN1TaggedObject;
@@ -13,6 +18,11 @@
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.DLSequence;
+import org.bouncycastle.asn1.DLSet;
+import org.bouncycastle.asn1.DLTaggedObject;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.test.SimpleTest;
 
 /**
@@ -112,6 +122,59 @@ public void performTest()
         v.add(ASN1Boolean.getInstance(true));
 
         s = new DERSet(v);
+
+        testLargeSetEncoding();
+    }
+
+    private void testLargeSetEncoding()
+        throws Exception
+    {
+        SecureRandom random = new SecureRandom();
+
+        ASN1EncodableVector v = new ASN1EncodableVector();
+        for (int i = 0; i != 500; i++)
+        {
+            byte[] data = new byte[random.nextInt(200)];
+            random.nextBytes(data);
+
+            // ASN.1 objects, so the elements are converted to new primitives whenever they are encoded
+            v.add(new AlgorithmIdentifier(new ASN1ObjectIdentifier("1.2.3." + random.nextInt(50)),
+                new DERTaggedObject(true, 0, new DEROctetString(data))));
+        }
+
+        DERSet derSet = new DERSet(v);
+        byte[] enc = derSet.getEncoded();
+
+        for (int i = 1; i != derSet.size(); i++)
+        {
+            byte[] e1 = derSet.getObjectAt(i - 1).toASN1Primitive().getEncoded(ASN1Encoding.DER);
+            byte[] e2 = derSet.getObjectAt(i).toASN1Primitive().getEncoded(ASN1Encoding.DER);
+
+            isTrue("set not sorted at " + i, Arrays.compareUnsigned(e1, e2) <= 0);
+        }
+
+        // the encoding is the same each time, and however it is produced
+        isTrue(Arrays.areEqual(enc, derSet.getEncoded()));
+        isTrue(Arrays.areEqual(enc, derSet.getEncoded(ASN1Encoding.DER)));
+        isTrue(Arrays.areEqual(enc, new DLSet(v).getEncoded(ASN1Encoding.DER)));
+        isTrue(Arrays.areEqual(enc, new BERSet(v).getEncoded(ASN1Encoding.DER)));
+
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        derSet.encodeTo(bOut, ASN1Encoding.DER);
+        isTrue(Arrays.areEqual(enc, bOut.toByteArray()));
+
+        isEquals(derSet, ASN1Primitive.fromByteArray(enc));
+
+        // nested in structures of the other encodings
+        ASN1Primitive seq = new DERSequence(new ASN1Encodable[] {
+            new DLSequence(new DERTaggedObject(false, 1, derSet)), new DLTaggedObject(true, 2, new DLSet(v)) });
+
+        byte[] seqEnc = seq.getEncoded(ASN1Encoding.DER);
+        bOut.reset();
+        seq.encodeTo(bOut, ASN1Encoding.DER);
+        isTrue(Arrays.areEqual(seqEnc, bOut.toByteArray()));
+        isTrue(Arrays.areEqual(seqEnc, seq.getEncoded()));
+        isEquals(seq, ASN1Primitive.fromByteArray(seqEnc));
     }
 
     public static void main(
@@ -0,0 +1,251 @@
+package org.bouncycastle.util.io.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.io.PipelinedTeeOutputStream;
+import org.bouncycastle.util.test.SimpleTest;
+
+public class PipelinedTeeOutputStreamTest
+    extends SimpleTest
+{
+    public String getName()
+    {
+        return "PipelinedTeeOutputStream";
+    }
+
+    public void performTest()
+        throws Exception
+    {
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        try
+        {
+            SecureRandom random = new SecureRandom();
+
+            byte[] data = new byte[100000];
+            random.nextBytes(data);
+
+            checkStream(executor, data, 3, 1, 1);
+            checkStream(executor, data, 3, 16, 2);
+            checkStream(executor, data, 1, 1000, 4);
+            checkStream(executor, data, 4, 33, 3);
+            checkStream(executor, new byte[0], 2, 16, 2);
+
+            checkFlush(executor);
+            checkFailure(executor);
+            checkAbort(executor);
+            checkRejected();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private void checkStream(ExecutorService executor, byte[] data, int outputCount, int chunkSize, int chunkCount)
+        throws IOException
+    {
+        ByteArrayOutputStream[] bOuts = new ByteArrayOutputStream[outputCount];
+        for (int i = 0; i != outputCount; i++)
+        {
+            bOuts[i] = new SlowOutputStream(i);
+        }
+
+        PipelinedTeeOutputStream pOut = new PipelinedTeeOutputStream(bOuts, executor, chunkSize, chunkCount);
+
+        // mix of single byte, small and large writes
+        int pos = 0;
+        while (pos < data.length)
+        {
+            int len = Math.min(data.length - pos, pos % 3 == 0 ? 1 : pos % 7 * 1000 + 3);
+
+            if (len == 1)
+            {
+                pOut.write(data[pos]);
+            }
+            else
+            {
+                pOut.write(data, pos, len);
+            }
+            pos += len;
+        }
+
+        pOut.close();
+        pOut.close();
+
+        for (int i = 0; i != outputCount; i++)
+        {
+            isTrue("output " + i + " mismatch", Arrays.areEqual(data, bOuts[i].toByteArray()));
+            isTrue("output " + i + " not closed", ((SlowOutputStream)bOuts[i]).closed);
+        }
+
+        try
+        {
+            pOut.write(1);
+            fail("write after close");
+        }
+        catch (IOException e)
+        {
+            isEquals("stream closed", e.getMessage());
+        }
+    }
+
+    private void checkFlush(ExecutorService executor)
+        throws IOException
+    {
+        ByteArrayOutputStream[] bOuts = new ByteArrayOutputStream[] { new ByteArrayOutputStream(), new ByteArrayOutputStream() };
+
+        PipelinedTeeOutputStream pOut = new PipelinedTeeOutputStream(bOuts, executor, 64, 2);
+
+        pOut.write(new byte[10]);
+        pOut.flush();
+
+        isEquals(10, bOuts[0].size());
+        isEquals(10, bOuts[1].size());
+
+        pOut.write(new byte[100]);
+        pOut.close();
+
+        isEquals(110, bOuts[0].size());
+        isEquals(110, bOuts[1].size());
+    }
+
+    private void checkFailure(ExecutorService executor)
+        throws IOException
+    {
+        OutputStream failing = new OutputStream()
+        {
+            public void write(int b)
+                throws IOException
+            {
+                throw new IOException("failed output");
+            }
+
+            public void write(byte[] buf, int off, int len)
+                throws IOException
+            {
+                throw new IOException("failed output");
+            }
+        };
+
+        PipelinedTeeOutputStream pOut = new PipelinedTeeOutputStream(
+            new OutputStream[] { new ByteArrayOutputStream(), failing }, executor, 16, 2);
+
+        try
+        {
+            // more than the ring holds, so the failure must be picked up
+            for (int i = 0; i != 100; i++)
+            {
+                pOut.write(new byte[16]);
+            }
+            pOut.close();
+            fail("no exception");
+        }
+        catch (IOException e)
+        {
+            isEquals("failed output", e.getMessage());
+        }
+
+        // tasks have finished, so close() must not block
+        try
+        {
+            pOut.close();
+        }
+        catch (IOException e)
+        {
+            isEquals("failed output", e.getMessage());
+        }
+    }
+
+    private void checkAbort(ExecutorService executor)
+        throws Exception
+    {
+        SlowOutputStream[] sOuts = new SlowOutputStream[] { new SlowOutputStream(0), new SlowOutputStream(1) };
+
+        PipelinedTeeOutputStream pOut = new PipelinedTeeOutputStream(sOuts, executor, 16, 2);
+
+        pOut.write(new byte[100]);
+        pOut.abort();
+
+        // the tasks stop without closing their streams, and the stream can no longer be used
+        try
+        {
+            pOut.close();
+            fail("no exception");
+        }
+        catch (IOException e)
+        {
+            isEquals("stream aborted", e.getMessage());
+        }
+
+        isTrue("output closed", !sOuts[0].closed && !sOuts[1].closed);
+        isTrue("output written to", sOuts[0].size() <= 100 && sOuts[1].size() <= 100);
+    }
+
+    private void checkRejected()
+        throws Exception
+    {
+        // only one task can run at a time, so the second is rejected
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<Runnable>());
+
+        try
+        {
+            new PipelinedTeeOutputStream(new OutputStream[] { new ByteArrayOutputStream(), new ByteArrayOutputStream() },
+                executor, 16, 2);
+            fail("no exception");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // expected
+        }
+
+        // the task which was started must not be left waiting for data
+        executor.shutdown();
+        isTrue("task not stopped", executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static class SlowOutputStream
+        extends ByteArrayOutputStream
+    {
+        private final int delay;
+
+        volatile boolean closed;
+
+        SlowOutputStream(int delay)
+        {
+            this.delay = delay;
+        }
+
+        public synchronized void write(byte[] buf, int off, int len)
+        {
+            // vary the pace of the outputs so the ring fills up
+            for (int i = 0; i != delay * 100; i++)
+            {
+                Thread.yield();
+            }
+            super.write(buf, off, len);
+        }
+
+        public void close()
+        {
+            closed = true;
+        }
+    }
+
+    public static void main(
+        String[]    args)
+    {
+        runTest(new PipelinedTeeOutputStreamTest());
+    }
+}
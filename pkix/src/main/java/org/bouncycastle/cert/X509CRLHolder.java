@@ -27,6 +27,7 @@
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.AltSignatureAlgorithm;
 import org.bouncycastle.asn1.x509.AltSignatureValue;
+import org.bouncycastle.asn1.x509.CRLEntryIndex;
 import org.bouncycastle.asn1.x509.CertificateList;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
@@ -52,6 +53,7 @@
     private transient boolean isIndirect;
     private transient Extensions extensions;
     private transient GeneralNames issuerName;
+    private transient volatile CRLEntryIndex entryIndex;
 
     private static CertificateList parseStream(InputStream stream)
         throws IOException
@@ -188,30 +190,36 @@ public Date getNextUpdate()
         return null;
     }
 
+    /**
+     * Return the CRL entry for the passed in serial number, if there is one. The first lookup builds an
+     * index of the CRL's entries, so that subsequent lookups are a binary search.
+     *
+     * @param serialNumber the serial number of the certificate of interest.
+     * @return the first entry for the serial number, or null if there is none.
+     */
     public X509CRLEntryHolder getRevokedCertificate(BigInteger serialNumber)
     {
-        GeneralNames currentCA = issuerName;
-        for (Enumeration en = x509CRL.getRevokedCertificateEnumeration(); en.hasMoreElements(); )
+        CRLEntryIndex index = entryIndex;
+        if (null == index)
         {
-            TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry)en.nextElement();
-
-            if (entry.getUserCertificate().hasValue(serialNumber))
-            {
-                return new X509CRLEntryHolder(entry, isIndirect, currentCA);
-            }
+            // NOTE: Any race just builds an equivalent index more than once
+            index = new CRLEntryIndex(x509CRL.getTBSCertList(), isIndirect);
+            entryIndex = index;
+        }
 
-            if (isIndirect && entry.hasExtensions())
-            {
-                Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+        int position = index.findFirst(serialNumber);
+        if (position < 0)
+        {
+            return null;
+        }
 
-                if (currentCaName != null)
-                {
-                    currentCA = GeneralNames.getInstance(currentCaName.getParsedValue());
-                }
-            }
+        GeneralNames currentCA = index.getCertificateIssuer(position, false);
+        if (null == currentCA)
+        {
+            currentCA = issuerName;
         }
 
-        return null;
+        return new X509CRLEntryHolder(index.getEntry(position), isIndirect, currentCA);
     }
 
     /**
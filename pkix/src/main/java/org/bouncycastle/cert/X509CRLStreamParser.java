@@ -0,0 +1,495 @@
+package org.bouncycastle.cert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ASN1BitString;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1SequenceParser;
+import org.bouncycastle.asn1.ASN1StreamParser;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.ASN1TaggedObjectParser;
+import org.bouncycastle.asn1.ASN1UTCTime;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+
+/**
+ * Streaming parser for an X.509 CRL, for CRLs too large to hold as an {@link X509CRLHolder}.
+ * <p>
+ * The revoked certificates are returned one at a time by {@link #readRevokedCertificate()} and are not
+ * retained, so memory use is bounded by the size of a single entry rather than the size of the CRL. If a
+ * {@link ContentVerifierProvider} is passed in, the signature is calculated over the TBSCertList bytes as
+ * they are read, and the result is available from {@link #isSignatureValid()} once the CRL has been read.
+ * </p>
+ * <p>
+ * Note: the crlExtensions follow the revoked certificates in the encoding, so the CRL extensions (and
+ * whether the CRL is indirect) are only known after the last entry has been read. Any certificateIssuer
+ * entry extension is taken into account when reporting the issuer of subsequent entries.
+ * </p>
+ * <pre>
+ *     X509CRLStreamParser parser = new X509CRLStreamParser(crlStream, verifierProvider);
+ *
+ *     X509CRLEntryHolder entry;
+ *     while ((entry = parser.readRevokedCertificate()) != null)
+ *     {
+ *         // process entry
+ *     }
+ *
+ *     if (!parser.isSignatureValid())
+ *     {
+ *         // discard results
+ *     }
+ * </pre>
+ */
+public class X509CRLStreamParser
+{
+    private final TBSInputStream tbsIn;
+    private final ASN1SequenceParser certList;
+    private final ASN1SequenceParser tbsCertList;
+    private final ContentVerifierProvider verifierProvider;
+
+    private final ASN1Integer version;
+    private final AlgorithmIdentifier signature;
+    private final X500Name issuer;
+    private final Time thisUpdate;
+    private final Time nextUpdate;
+
+    private ASN1SequenceParser revokedCertificates;
+    private ASN1Encodable pending;
+    private GeneralNames currentCA;
+    private long entryCount = 0;
+
+    private ContentVerifier verifier;
+    private Exception verifierException;
+
+    private boolean finished = false;
+    private Extensions extensions;
+    private AlgorithmIdentifier signatureAlgorithm;
+    private ASN1BitString signatureValue;
+
+    /**
+     * Create a parser for the CRL in the passed in stream, without signature verification.
+     *
+     * @param crlStream DER encoded InputStream of the CRL.
+     * @throws IOException in the event of corrupted data, or an incorrect structure.
+     */
+    public X509CRLStreamParser(InputStream crlStream)
+        throws IOException
+    {
+        this(crlStream, null);
+    }
+
+    /**
+     * Create a parser for the CRL in the passed in stream, calculating the signature as the CRL is read.
+     *
+     * @param crlStream DER encoded InputStream of the CRL.
+     * @param verifierProvider a provider of a content verifier matching the CRL issuer's key.
+     * @throws IOException in the event of corrupted data, or an incorrect structure.
+     */
+    public X509CRLStreamParser(InputStream crlStream, ContentVerifierProvider verifierProvider)
+        throws IOException
+    {
+        this.tbsIn = new TBSInputStream(crlStream);
+        this.verifierProvider = verifierProvider;
+
+        try
+        {
+            certList = (ASN1SequenceParser)new ASN1StreamParser(tbsIn).readObject();
+            if (certList == null)
+            {
+                throw new IOException("no content found");
+            }
+
+            // the header of the TBSCertList is buffered until the signature algorithm is known
+            tbsIn.startCapture(verifierProvider != null);
+
+            tbsCertList = (ASN1SequenceParser)certList.readObject();
+
+            ASN1Encodable obj = tbsCertList.readObject();
+            if (obj instanceof ASN1Integer)
+            {
+                version = (ASN1Integer)obj;
+                obj = tbsCertList.readObject();
+            }
+            else
+            {
+                version = null;
+            }
+
+            signature = AlgorithmIdentifier.getInstance(obj.toASN1Primitive());
+
+            if (verifierProvider != null)
+            {
+                try
+                {
+                    verifier = verifierProvider.get(signature);
+                    tbsIn.setOutputStream(verifier.getOutputStream());
+                }
+                catch (Exception e)
+                {
+                    verifierException = e;
+                    tbsIn.setOutputStream(null);
+                }
+            }
+
+            issuer = X500Name.getInstance(tbsCertList.readObject().toASN1Primitive());
+            thisUpdate = Time.getInstance(tbsCertList.readObject());
+
+            obj = tbsCertList.readObject();
+            if (obj instanceof ASN1UTCTime || obj instanceof ASN1GeneralizedTime)
+            {
+                nextUpdate = Time.getInstance(obj);
+                obj = tbsCertList.readObject();
+            }
+            else
+            {
+                nextUpdate = null;
+            }
+
+            if (obj instanceof ASN1SequenceParser)
+            {
+                revokedCertificates = (ASN1SequenceParser)obj;
+            }
+            else
+            {
+                pending = obj;
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // ClassCastException, NullPointerException (truncated data), IllegalArgumentException, ...
+            throw new CertIOException("malformed data: " + e.getMessage(), e);
+        }
+
+        currentCA = new GeneralNames(new GeneralName(issuer));
+    }
+
+    /**
+     * Return the version number of the CRL.
+     *
+     * @return the version number (1 or 2).
+     */
+    public int getVersionNumber()
+    {
+        return version == null ? 1 : version.intValueExact() + 1;
+    }
+
+    /**
+     * Return the issuer of the CRL.
+     *
+     * @return the CRL issuer.
+     */
+    public X500Name getIssuer()
+    {
+        return issuer;
+    }
+
+    public Date getThisUpdate()
+    {
+        return thisUpdate.getDate();
+    }
+
+    public Date getNextUpdate()
+    {
+        return nextUpdate == null ? null : nextUpdate.getDate();
+    }
+
+    /**
+     * Read the next revoked certificate entry from the CRL.
+     *
+     * @return the next entry, or null if there are no more entries.
+     * @throws IOException in the event of corrupted data, or an incorrect structure.
+     */
+    public X509CRLEntryHolder readRevokedCertificate()
+        throws IOException
+    {
+        if (revokedCertificates == null)
+        {
+            finish();
+            return null;
+        }
+
+        TBSCertList.CRLEntry entry;
+        try
+        {
+            ASN1Encodable obj = revokedCertificates.readObject();
+            if (obj == null)
+            {
+                revokedCertificates = null;
+                finish();
+                return null;
+            }
+
+            entry = TBSCertList.CRLEntry.getInstance(obj.toASN1Primitive());
+        }
+        catch (RuntimeException e)
+        {
+            throw new CertIOException("malformed data: " + e.getMessage(), e);
+        }
+
+        X509CRLEntryHolder entryHolder = new X509CRLEntryHolder(entry, true, currentCA);
+
+        currentCA = entryHolder.getCertificateIssuer();
+        ++entryCount;
+
+        return entryHolder;
+    }
+
+    /**
+     * Return the number of revoked certificate entries read so far.
+     *
+     * @return the count of entries returned by readRevokedCertificate().
+     */
+    public long getRevokedCertificateCount()
+    {
+        return entryCount;
+    }
+
+    /**
+     * Return the CRL extensions. Any remaining revoked certificate entries are read (and discarded) first.
+     *
+     * @return the CRL's extensions, or null if there are none.
+     * @throws IOException in the event of corrupted data, or an incorrect structure.
+     */
+    public Extensions getExtensions()
+        throws IOException
+    {
+        drain();
+
+        return extensions;
+    }
+
+    /**
+     * Look up the CRL extension associated with the passed in OID. Any remaining revoked certificate
+     * entries are read (and discarded) first.
+     *
+     * @param oid the OID of the extension of interest.
+     * @return the extension if present, null otherwise.
+     * @throws IOException in the event of corrupted data, or an incorrect structure.
+     */
+    public Extension getExtension(ASN1ObjectIdentifier oid)
+        throws IOException
+    {
+        Extensions extensions = getExtensions();
+
+        return extensions == null ? null : extensions.getExtension(oid);
+    }
+
+    /**
+     * Return whether the CRL is indirect, as indicated by its issuingDistributionPoint extension. Any
+     * remaining revoked certificate entries are read (and discarded) first.
+     *
+     * @return true if the CRL is indirect, false otherwise.
+     * @throws IOException in the event of corrupted data, or an incorrect structure.
+     */
+    public boolean isIndirectCRL()
+        throws IOException
+    {
+        Extension ext = getExtension(Extension.issuingDistributionPoint);
+
+        return ext != null && IssuingDistributionPoint.getInstance(ext.getParsedValue()).isIndirectCRL();
+    }
+
+    /**
+     * Return the signature algorithm from the outer CertificateList. Any remaining revoked certificate
+     * entries are read (and discarded) first.
+     *
+     * @return the details of the signature algorithm used to sign the CRL.
+     * @throws IOException in the event of corrupted data, or an incorrect structure.
+     */
+    public AlgorithmIdentifier getSignatureAlgorithm()
+        throws IOException
+    {
+        drain();
+
+        return signatureAlgorithm;
+    }
+
+    /**
+     * Validate the signature on the CRL, calculated over the TBSCertList bytes as they were read. Any
+     * remaining revoked certificate entries are read (and discarded) first.
+     *
+     * @return true if the signature is valid, false otherwise.
+     * @throws CertException if the signature cannot be processed or is inappropriate.
+     * @throws IOException in the event of corrupted data, or an incorrect structure.
+     * @throws IllegalStateException if the parser was created without a ContentVerifierProvider.
+     */
+    public boolean isSignatureValid()
+        throws CertException, IOException
+    {
+        if (verifierProvider == null)
+        {
+            throw new IllegalStateException("no ContentVerifierProvider available");
+        }
+
+        drain();
+
+        if (!CertUtils.isAlgIdEqual(signature, signatureAlgorithm))
+        {
+            throw new CertException("signature invalid - algorithm identifier mismatch");
+        }
+
+        if (verifierException != null)
+        {
+            throw new CertException("unable to process signature: " + verifierException.getMessage(), verifierException);
+        }
+
+        return verifier.verify(signatureValue.getOctets());
+    }
+
+    private void drain()
+        throws IOException
+    {
+        while (!finished)
+        {
+            readRevokedCertificate();
+        }
+    }
+
+    private void finish()
+        throws IOException
+    {
+        if (finished)
+        {
+            return;
+        }
+
+        try
+        {
+            ASN1Encodable obj = pending != null ? pending : tbsCertList.readObject();
+            pending = null;
+
+            if (obj instanceof ASN1TaggedObjectParser)
+            {
+                ASN1TaggedObject crlExtensions = ASN1TaggedObject.getInstance(obj.toASN1Primitive());
+
+                extensions = Extensions.getInstance(ASN1Sequence.getInstance(crlExtensions, true));
+                obj = tbsCertList.readObject();
+            }
+
+            if (obj != null)
+            {
+                throw new CertIOException("malformed data: unexpected object in TBSCertList");
+            }
+
+            tbsIn.stopCapture();
+
+            if (verifier != null)
+            {
+                verifier.getOutputStream().close();
+            }
+
+            signatureAlgorithm = AlgorithmIdentifier.getInstance(certList.readObject().toASN1Primitive());
+            signatureValue = ASN1BitString.getInstance(certList.readObject().toASN1Primitive());
+        }
+        catch (RuntimeException e)
+        {
+            throw new CertIOException("malformed data: " + e.getMessage(), e);
+        }
+
+        finished = true;
+    }
+
+    /**
+     * Copies the bytes of the TBSCertList, as they are read, to the verifier's output stream.
+     */
+    private static class TBSInputStream
+        extends FilterInputStream
+    {
+        private ByteArrayOutputStream buffer = null;
+        private OutputStream out = null;
+
+        TBSInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        void startCapture(boolean capture)
+        {
+            if (capture)
+            {
+                buffer = new ByteArrayOutputStream();
+                out = buffer;
+            }
+        }
+
+        void setOutputStream(OutputStream out)
+            throws IOException
+        {
+            if (out != null)
+            {
+                buffer.writeTo(out);
+            }
+            this.buffer = null;
+            this.out = out;
+        }
+
+        void stopCapture()
+        {
+            this.buffer = null;
+            this.out = null;
+        }
+
+        public int read()
+            throws IOException
+        {
+            int b = in.read();
+            if (b >= 0 && out != null)
+            {
+                out.write(b);
+            }
+            return b;
+        }
+
+        public int read(byte[] buf, int off, int len)
+            throws IOException
+        {
+            int count = in.read(buf, off, len);
+            if (count > 0 && out != null)
+            {
+                out.write(buf, off, count);
+            }
+            return count;
+        }
+
+        public long skip(long n)
+            throws IOException
+        {
+            // route through read() so that skipped bytes are also captured
+            byte[] buf = new byte[(int)Math.min(n, 4096)];
+            long total = 0;
+            while (total < n)
+            {
+                int count = read(buf, 0, (int)Math.min(n - total, buf.length));
+                if (count < 0)
+                {
+                    break;
+                }
+                total += count;
+            }
+            return total;
+        }
+
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+}
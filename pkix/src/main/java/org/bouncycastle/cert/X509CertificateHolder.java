@@ -10,10 +10,16 @@
 import java.util.List;
 import java.util.Set;
 
+import org.bouncycastle.asn1.ASN1BitString;
+import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
 import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1TaggedObject;
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
@@ -24,21 +30,38 @@
 import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x509.TBSCertificate;
+import org.bouncycastle.asn1.x509.Validity;
 import org.bouncycastle.operator.ContentVerifier;
 import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.Encodable;
 
 /**
  * Holding class for an X.509 Certificate structure.
+ * <p>
+ * A holder created with lazy evaluation keeps the encoding and only decodes the fields of the certificate as
+ * they are asked for, so holders for large numbers of certificates can be created cheaply when only a few of
+ * their fields are ever looked at. In this case only the outer structure is checked on construction - a
+ * malformed field is reported by an IllegalArgumentException (or other RuntimeException) from the method which
+ * first accesses it.
+ * </p>
  */
 public class X509CertificateHolder
     implements Encodable, Serializable
 {
     private static final long serialVersionUID = 20170722001L;
 
-    private transient Certificate x509Certificate;
+    private transient volatile Certificate x509Certificate;
     private transient Extensions  extensions;
 
+    // lazy evaluation only
+    private transient ASN1Sequence lazyCert;
+    private transient ASN1Sequence lazyTbsCert;
+    private transient int lazyTbsStart;
+    private transient volatile boolean extensionsFound;
+    private transient volatile X500Name issuer;
+    private transient volatile X500Name subject;
+
     private static Certificate parseBytes(byte[] certEncoding)
         throws IOException
     {
@@ -55,6 +78,42 @@ private static Certificate parseBytes(byte[] certEncoding)
         }
     }
 
+    private static ASN1Sequence parseLazyBytes(byte[] certEncoding)
+        throws IOException
+    {
+        try
+        {
+            ASN1InputStream aIn = new ASN1InputStream(certEncoding, true);
+            ASN1Primitive p = aIn.readObject();
+
+            if (p == null)
+            {
+                throw new IOException("no content found");
+            }
+            if (aIn.available() != 0)
+            {
+                throw new IOException("Extra data detected in stream");
+            }
+
+            ASN1Sequence seq = ASN1Sequence.getInstance(p);
+            if (seq.size() != 3)
+            {
+                throw new IllegalArgumentException("sequence wrong size for a certificate");
+            }
+            // decode the top level of the TBSCertificate, so the fields can be located
+            if (ASN1Sequence.getInstance(seq.getObjectAt(0)).size() < 6)
+            {
+                throw new IllegalArgumentException("sequence wrong size for a TBS certificate");
+            }
+
+            return seq;
+        }
+        catch (RuntimeException e)
+        {
+            throw new CertIOException("malformed data: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Create a X509CertificateHolder from the passed in bytes.
      *
@@ -67,6 +126,30 @@ public X509CertificateHolder(byte[] certEncoding)
         this(parseBytes(certEncoding));
     }
 
+    /**
+     * Create a X509CertificateHolder from the passed in bytes, optionally deferring the decoding of the
+     * certificate's fields until they are accessed.
+     *
+     * @param certEncoding DER encoding of the certificate.
+     * @param lazyEvaluate true if the fields of the certificate should only be decoded when needed.
+     * @throws IOException in the event of corrupted data, or an incorrect outer structure.
+     */
+    public X509CertificateHolder(byte[] certEncoding, boolean lazyEvaluate)
+        throws IOException
+    {
+        if (lazyEvaluate)
+        {
+            this.lazyCert = parseLazyBytes(certEncoding);
+            this.lazyTbsCert = ASN1Sequence.getInstance(lazyCert.getObjectAt(0));
+            // some certificates don't include a version number - we assume v1
+            this.lazyTbsStart = (lazyTbsCert.getObjectAt(0) instanceof ASN1TaggedObject) ? 1 : 0;
+        }
+        else
+        {
+            init(parseBytes(certEncoding));
+        }
+    }
+
     /**
      * Create a X509CertificateHolder from the passed in ASN.1 structure.
      *
@@ -81,10 +164,81 @@ private void init(Certificate x509Certificate)
     {
         this.x509Certificate = x509Certificate;
         this.extensions = x509Certificate.getTBSCertificate().getExtensions();
+        this.extensionsFound = true;
+    }
+
+    private Certificate getCertificate()
+    {
+        Certificate cert = x509Certificate;
+
+        if (cert == null)
+        {
+            // only in the lazy case - the structure is fully decoded here, so cache it.
+            cert = Certificate.getInstance(lazyCert);
+            x509Certificate = cert;
+        }
+
+        return cert;
+    }
+
+    private ASN1Encodable getTbsField(int index)
+    {
+        return lazyTbsCert.getObjectAt(lazyTbsStart + index);
+    }
+
+    private Extensions findExtensions()
+    {
+        if (!extensionsFound)
+        {
+            Extensions exts = null;
+
+            // optional fields follow the subjectPublicKeyInfo, the extensions being [3] EXPLICIT
+            for (int i = lazyTbsStart + 6; i < lazyTbsCert.size(); i++)
+            {
+                ASN1TaggedObject extra = ASN1TaggedObject.getInstance(lazyTbsCert.getObjectAt(i));
+                if (extra.hasContextTag(3))
+                {
+                    exts = Extensions.getInstance(ASN1Sequence.getInstance(extra, true));
+                    break;
+                }
+            }
+
+            extensions = exts;
+            extensionsFound = true;
+        }
+
+        return extensions;
+    }
+
+    private Validity getValidity()
+    {
+        return Validity.getInstance(getTbsField(3));
+    }
+
+    private ASN1Sequence getCertificateSequence()
+    {
+        if (lazyCert != null)
+        {
+            return lazyCert;
+        }
+
+        return ASN1Sequence.getInstance(x509Certificate.toASN1Primitive());
     }
 
     public int getVersionNumber()
     {
+        if (lazyCert != null)
+        {
+            if (lazyTbsStart == 0)
+            {
+                return 1;
+            }
+
+            ASN1TaggedObject version = ASN1TaggedObject.getInstance(lazyTbsCert.getObjectAt(0));
+
+            return ASN1Integer.getInstance(version, true).intValueExact() + 1;
+        }
+
         return x509Certificate.getVersionNumber();
     }
 
@@ -93,7 +247,7 @@ public int getVersionNumber()
      */
     public int getVersion()
     {
-        return x509Certificate.getVersionNumber();
+        return getVersionNumber();
     }
 
     /**
@@ -103,7 +257,7 @@ public int getVersion()
      */
     public boolean hasExtensions()
     {
-        return extensions != null;
+        return findExtensions() != null;
     }
 
     /**
@@ -115,6 +269,8 @@ public boolean hasExtensions()
      */
     public Extension getExtension(ASN1ObjectIdentifier oid)
     {
+        Extensions extensions = findExtensions();
+
         if (extensions != null)
         {
             return extensions.getExtension(oid);
@@ -130,7 +286,7 @@ public Extension getExtension(ASN1ObjectIdentifier oid)
      */
     public Extensions getExtensions()
     {
-        return extensions;
+        return findExtensions();
     }
 
     /**
@@ -141,7 +297,7 @@ public Extensions getExtensions()
      */
     public List getExtensionOIDs()
     {
-        return CertUtils.getExtensionOIDs(extensions);
+        return CertUtils.getExtensionOIDs(findExtensions());
     }
 
     /**
@@ -152,7 +308,7 @@ public List getExtensionOIDs()
      */
     public Set getCriticalExtensionOIDs()
     {
-        return CertUtils.getCriticalExtensionOIDs(extensions);
+        return CertUtils.getCriticalExtensionOIDs(findExtensions());
     }
 
     /**
@@ -163,7 +319,7 @@ public Set getCriticalExtensionOIDs()
      */
     public Set getNonCriticalExtensionOIDs()
     {
-        return CertUtils.getNonCriticalExtensionOIDs(extensions);
+        return CertUtils.getNonCriticalExtensionOIDs(findExtensions());
     }
 
     /**
@@ -173,6 +329,11 @@ public Set getNonCriticalExtensionOIDs()
      */
     public BigInteger getSerialNumber()
     {
+        if (lazyCert != null)
+        {
+            return ASN1Integer.getInstance(getTbsField(0)).getValue();
+        }
+
         return x509Certificate.getSerialNumber().getValue();
     }
 
@@ -183,6 +344,17 @@ public BigInteger getSerialNumber()
      */
     public X500Name getIssuer()
     {
+        if (lazyCert != null)
+        {
+            X500Name name = issuer;
+            if (name == null)
+            {
+                name = X500Name.getInstance(getTbsField(2));
+                issuer = name;
+            }
+            return name;
+        }
+
         return X500Name.getInstance(x509Certificate.getIssuer());
     }
 
@@ -193,6 +365,17 @@ public X500Name getIssuer()
      */
     public X500Name getSubject()
     {
+        if (lazyCert != null)
+        {
+            X500Name name = subject;
+            if (name == null)
+            {
+                name = X500Name.getInstance(getTbsField(4));
+                subject = name;
+            }
+            return name;
+        }
+
         return X500Name.getInstance(x509Certificate.getSubject());
     }
 
@@ -203,6 +386,11 @@ public X500Name getSubject()
      */
     public Date getNotBefore()
     {
+        if (lazyCert != null)
+        {
+            return getValidity().getNotBefore().getDate();
+        }
+
         return x509Certificate.getStartDate().getDate();
     }
 
@@ -213,6 +401,11 @@ public Date getNotBefore()
      */
     public Date getNotAfter()
     {
+        if (lazyCert != null)
+        {
+            return getValidity().getNotAfter().getDate();
+        }
+
         return x509Certificate.getEndDate().getDate();
     }
 
@@ -223,12 +416,17 @@ public Date getNotAfter()
      */
     public SubjectPublicKeyInfo getSubjectPublicKeyInfo()
     {
+        if (lazyCert != null)
+        {
+            return SubjectPublicKeyInfo.getInstance(getTbsField(5));
+        }
+
         return x509Certificate.getSubjectPublicKeyInfo();
     }
 
     public TBSCertificate getTBSCertificate()
     {
-        return x509Certificate.getTBSCertificate();
+        return getCertificate().getTBSCertificate();
     }
 
     /**
@@ -238,7 +436,7 @@ public TBSCertificate getTBSCertificate()
      */
     public Certificate toASN1Structure()
     {
-        return x509Certificate;
+        return getCertificate();
     }
 
     /**
@@ -248,6 +446,11 @@ public Certificate toASN1Structure()
      */
     public AlgorithmIdentifier getSignatureAlgorithm()
     {
+        if (lazyCert != null)
+        {
+            return AlgorithmIdentifier.getInstance(lazyCert.getObjectAt(1));
+        }
+
         return x509Certificate.getSignatureAlgorithm();
     }
 
@@ -258,6 +461,11 @@ public AlgorithmIdentifier getSignatureAlgorithm()
      */
     public byte[] getSignature()
     {
+        if (lazyCert != null)
+        {
+            return ASN1BitString.getInstance(lazyCert.getObjectAt(2)).getOctets();
+        }
+
         return x509Certificate.getSignature().getOctets();
     }
 
@@ -269,7 +477,7 @@ public byte[] getSignature()
      */
     public boolean isValidOn(Date date)
     {
-        return !date.before(x509Certificate.getStartDate().getDate()) && !date.after(x509Certificate.getEndDate().getDate());
+        return !date.before(getNotBefore()) && !date.after(getNotAfter());
     }
 
     /**
@@ -282,9 +490,21 @@ public boolean isValidOn(Date date)
     public boolean isSignatureValid(ContentVerifierProvider verifierProvider)
         throws CertException
     {
-        TBSCertificate tbsCert = x509Certificate.getTBSCertificate();
+        ASN1Encodable tbsCert;
+        AlgorithmIdentifier tbsSignature;
+
+        if (lazyCert != null)
+        {
+            tbsCert = lazyTbsCert;
+            tbsSignature = AlgorithmIdentifier.getInstance(getTbsField(1));
+        }
+        else
+        {
+            tbsCert = x509Certificate.getTBSCertificate();
+            tbsSignature = x509Certificate.getTBSCertificate().getSignature();
+        }
 
-        if (!CertUtils.isAlgIdEqual(tbsCert.getSignature(), x509Certificate.getSignatureAlgorithm()))
+        if (!CertUtils.isAlgIdEqual(tbsSignature, this.getSignatureAlgorithm()))
         {
             throw new CertException("signature invalid - algorithm identifier mismatch");
         }
@@ -293,10 +513,10 @@ public boolean isSignatureValid(ContentVerifierProvider verifierProvider)
 
         try
         {
-            verifier = verifierProvider.get((tbsCert.getSignature()));
+            verifier = verifierProvider.get(tbsSignature);
 
             OutputStream sOut = verifier.getOutputStream();
-            tbsCert.encodeTo(sOut, ASN1Encoding.DER);
+            tbsCert.toASN1Primitive().encodeTo(sOut, ASN1Encoding.DER);
             sOut.close();
         }
         catch (Exception e)
@@ -317,7 +537,7 @@ public boolean isSignatureValid(ContentVerifierProvider verifierProvider)
     public boolean isAlternativeSignatureValid(ContentVerifierProvider verifierProvider)
         throws CertException
     {
-        TBSCertificate tbsCert = x509Certificate.getTBSCertificate();
+        TBSCertificate tbsCert = getCertificate().getTBSCertificate();
         AltSignatureAlgorithm altSigAlg = AltSignatureAlgorithm.fromExtensions(tbsCert.getExtensions());
         AltSignatureValue altSigValue = AltSignatureValue.fromExtensions(tbsCert.getExtensions());
 
@@ -369,12 +589,33 @@ public boolean equals(
 
         X509CertificateHolder other = (X509CertificateHolder)o;
 
-        return this.x509Certificate.equals(other.x509Certificate);
+        if (this.lazyCert == null && other.lazyCert == null)
+        {
+            return this.x509Certificate.equals(other.x509Certificate);
+        }
+
+        if (this.lazyCert != null && other.lazyCert != null)
+        {
+            // identical encodings can be compared without decoding anything
+            try
+            {
+                if (Arrays.areEqual(this.lazyCert.getEncoded(), other.lazyCert.getEncoded()))
+                {
+                    return true;
+                }
+            }
+            catch (IOException e)
+            {
+                // fall through to the structural comparison
+            }
+        }
+
+        return this.getCertificateSequence().equals(other.getCertificateSequence());
     }
 
     public int hashCode()
     {
-        return this.x509Certificate.hashCode();
+        return this.getCertificateSequence().hashCode();
     }
 
     /**
@@ -386,6 +627,11 @@ public int hashCode()
     public byte[] getEncoded()
         throws IOException
     {
+        if (lazyCert != null)
+        {
+            return lazyCert.getEncoded();
+        }
+
         return x509Certificate.getEncoded();
     }
 
@@ -0,0 +1,238 @@
+package org.bouncycastle.cert.selector;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Selector;
+import org.bouncycastle.util.Store;
+
+/**
+ * A store of certificate holders, indexed by subject, subject key identifier, issuer and serial number, and
+ * encoding.
+ * <p>
+ * Queries with an {@link X509CertificateHolderSelector} (such as a CMS SignerId) are answered from the index,
+ * with the selector then applied to the candidates found. Any other query is answered by matching against
+ * every certificate, as {@link org.bouncycastle.util.CollectionStore} does. Results are returned in the order
+ * the certificates were passed to the constructor.
+ * </p>
+ */
+public class IndexedCertificateHolderStore
+    implements Store<X509CertificateHolder>, Iterable<X509CertificateHolder>
+{
+    private final List<X509CertificateHolder> certificates;
+    private final Set<X509CertificateHolder> byEncoding = new HashSet<X509CertificateHolder>();
+    private final Map<X500Name, List<X509CertificateHolder>> bySubject = new HashMap<X500Name, List<X509CertificateHolder>>();
+    private final Map<KeyId, List<X509CertificateHolder>> bySubjectKeyId = new HashMap<KeyId, List<X509CertificateHolder>>();
+    private final Map<IssuerSerial, List<X509CertificateHolder>> byIssuerSerial = new HashMap<IssuerSerial, List<X509CertificateHolder>>();
+
+    /**
+     * Basic constructor.
+     *
+     * @param collection initial contents for the store, this is copied.
+     */
+    public IndexedCertificateHolderStore(Collection<X509CertificateHolder> collection)
+    {
+        List<X509CertificateHolder> certificates = new ArrayList<X509CertificateHolder>(collection);
+
+        for (Iterator<X509CertificateHolder> it = certificates.iterator(); it.hasNext();)
+        {
+            X509CertificateHolder cert = it.next();
+
+            byEncoding.add(cert);
+            addTo(bySubject, cert.getSubject(), cert);
+            addTo(byIssuerSerial, new IssuerSerial(cert.getIssuer(), cert.getSerialNumber()), cert);
+            addTo(bySubjectKeyId, new KeyId(getSubjectKeyIdentifier(cert)), cert);
+        }
+
+        this.certificates = certificates;
+    }
+
+    /**
+     * Return the matches in the store for the passed in selector.
+     *
+     * @param selector the selector to match against.
+     * @return a possibly empty collection of matching certificates.
+     */
+    public Collection<X509CertificateHolder> getMatches(Selector<X509CertificateHolder> selector)
+    {
+        if (selector == null)
+        {
+            return new ArrayList<X509CertificateHolder>(certificates);
+        }
+
+        Collection<X509CertificateHolder> candidates = certificates;
+        if (selector instanceof X509CertificateHolderSelector)
+        {
+            candidates = getCandidates((X509CertificateHolderSelector)selector);
+        }
+
+        List<X509CertificateHolder> matches = new ArrayList<X509CertificateHolder>();
+        for (Iterator<X509CertificateHolder> it = candidates.iterator(); it.hasNext();)
+        {
+            X509CertificateHolder cert = it.next();
+            if (selector.match(cert))
+            {
+                matches.add(cert);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Return the certificates in the store with the given subject.
+     *
+     * @param subject the subject of interest.
+     * @return a possibly empty collection of certificates.
+     */
+    public Collection<X509CertificateHolder> getBySubject(X500Name subject)
+    {
+        return new ArrayList<X509CertificateHolder>(getFrom(bySubject, subject));
+    }
+
+    /**
+     * Return whether the passed in certificate is in the store.
+     *
+     * @param cert the certificate of interest.
+     * @return true if a certificate with the same encoding is present, false otherwise.
+     */
+    public boolean contains(X509CertificateHolder cert)
+    {
+        return byEncoding.contains(cert);
+    }
+
+    public int size()
+    {
+        return certificates.size();
+    }
+
+    public Iterator<X509CertificateHolder> iterator()
+    {
+        return getMatches(null).iterator();
+    }
+
+    private Collection<X509CertificateHolder> getCandidates(X509CertificateHolderSelector selector)
+    {
+        // mirrors X509CertificateHolderSelector.match(): issuer and serial number take precedence
+        if (selector.getSerialNumber() != null)
+        {
+            if (selector.getIssuer() == null)
+            {
+                return certificates;
+            }
+            return getFrom(byIssuerSerial, new IssuerSerial(selector.getIssuer(), selector.getSerialNumber()));
+        }
+
+        byte[] subjectKeyId = selector.getSubjectKeyIdentifier();
+        if (subjectKeyId != null)
+        {
+            return getFrom(bySubjectKeyId, new KeyId(subjectKeyId));
+        }
+
+        return certificates;
+    }
+
+    /*
+     * The key identifier X509CertificateHolderSelector matches against: the subjectKeyIdentifier extension if
+     * present, otherwise the Microsoft Outlook calculation.
+     */
+    private static byte[] getSubjectKeyIdentifier(X509CertificateHolder cert)
+    {
+        Extension ext = cert.getExtension(Extension.subjectKeyIdentifier);
+        if (ext == null)
+        {
+            return MSOutlookKeyIdCalculator.calculateKeyId(cert.getSubjectPublicKeyInfo());
+        }
+
+        try
+        {
+            return ASN1OctetString.getInstance(ext.getParsedValue()).getOctets();
+        }
+        catch (IllegalArgumentException e)
+        {
+            // malformed extension - won't match on key identifier
+            return new byte[0];
+        }
+    }
+
+    private static <K> void addTo(Map<K, List<X509CertificateHolder>> index, K key, X509CertificateHolder cert)
+    {
+        List<X509CertificateHolder> certs = index.get(key);
+        if (certs == null)
+        {
+            certs = new ArrayList<X509CertificateHolder>(1);
+            index.put(key, certs);
+        }
+        certs.add(cert);
+    }
+
+    private static <K> List<X509CertificateHolder> getFrom(Map<K, List<X509CertificateHolder>> index, K key)
+    {
+        List<X509CertificateHolder> certs = index.get(key);
+
+        return certs == null ? Collections.<X509CertificateHolder>emptyList() : certs;
+    }
+
+    private static final class KeyId
+    {
+        private final byte[] keyId;
+        private final int hashCode;
+
+        KeyId(byte[] keyId)
+        {
+            this.keyId = keyId;
+            this.hashCode = Arrays.hashCode(keyId);
+        }
+
+        public boolean equals(Object o)
+        {
+            return o instanceof KeyId && Arrays.areEqual(keyId, ((KeyId)o).keyId);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+
+    private static final class IssuerSerial
+    {
+        private final X500Name issuer;
+        private final BigInteger serialNumber;
+
+        IssuerSerial(X500Name issuer, BigInteger serialNumber)
+        {
+            this.issuer = issuer;
+            this.serialNumber = serialNumber;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof IssuerSerial))
+            {
+                return false;
+            }
+
+            IssuerSerial other = (IssuerSerial)o;
+
+            return serialNumber.equals(other.serialNumber) && issuer.equals(other.issuer);
+        }
+
+        public int hashCode()
+        {
+            return issuer.hashCode() ^ serialNumber.hashCode();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.bouncycastle.cms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+
+/**
+ * a holding class for a file of data to be processed, read through a memory mapped FileChannel.
+ * <p>
+ * Unlike {@link CMSProcessableFile} there are no read calls or stream buffering: the file is mapped a region at a
+ * time and each chunk of the chosen size is copied straight from the mapped region to the OutputStream being
+ * written to. With the streaming {@link CMSSignedDataStreamGenerator#generate(CMSTypedData, OutputStream)} or a
+ * definite-length {@link CMSSignedDataStreamGenerator#open(OutputStream, long)} large files can be digested and
+ * encapsulated without being held in memory - {@link #getContentLength()} gives the length to use with the latter.
+ * </p>
+ * <p>
+ * Note: the file must not be truncated while it is being processed. On some platforms a file may not be deleted
+ * until the mapped regions of it have been garbage collected.
+ * </p>
+ */
+public class CMSProcessableMappedFile
+    implements CMSTypedData, CMSReadable
+{
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    private static final long MAX_REGION_SIZE = 64 * 1024 * 1024;
+
+    private final ASN1ObjectIdentifier type;
+    private final File file;
+    private final int chunkSize;
+
+    public CMSProcessableMappedFile(
+        File file)
+    {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    public CMSProcessableMappedFile(
+        File file,
+        int  chunkSize)
+    {
+        this(CMSObjectIdentifiers.data, file, chunkSize);
+    }
+
+    /**
+     * Base constructor.
+     *
+     * @param type the content type of the data.
+     * @param file the file containing the data.
+     * @param chunkSize the size of the chunks the data is passed on in.
+     */
+    public CMSProcessableMappedFile(
+        ASN1ObjectIdentifier type,
+        File file,
+        int  chunkSize)
+    {
+        if (chunkSize < 1)
+        {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+
+        this.type = type;
+        this.file = file;
+        this.chunkSize = chunkSize;
+    }
+
+    public InputStream getInputStream()
+        throws IOException, CMSException
+    {
+        return new MappedInputStream(new RandomAccessFile(file, "r"));
+    }
+
+    public void write(OutputStream zOut)
+        throws IOException, CMSException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            byte[] chunk = new byte[(int)Math.min(chunkSize, Math.max(length, 1))];
+
+            for (long position = 0; position < length; )
+            {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAX_REGION_SIZE, length - position));
+
+                position += region.remaining();
+
+                while (region.hasRemaining())
+                {
+                    int count = Math.min(chunk.length, region.remaining());
+
+                    region.get(chunk, 0, count);
+                    zOut.write(chunk, 0, count);
+                }
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Return the length of the content, that is the current size of the file.
+     *
+     * @return the file length in bytes.
+     */
+    public long getContentLength()
+    {
+        return file.length();
+    }
+
+    /**
+     * Return the file handle.
+     */
+    public Object getContent()
+    {
+        return file;
+    }
+
+    public ASN1ObjectIdentifier getContentType()
+    {
+        return type;
+    }
+
+    private static class MappedInputStream
+        extends InputStream
+    {
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final long length;
+
+        private long position;
+        private MappedByteBuffer region;
+
+        MappedInputStream(RandomAccessFile raf)
+            throws IOException
+        {
+            this.raf = raf;
+            this.channel = raf.getChannel();
+            this.length = channel.size();
+        }
+
+        public int read()
+            throws IOException
+        {
+            if (!nextRegion())
+            {
+                return -1;
+            }
+
+            return region.get() & 0xff;
+        }
+
+        public int read(byte[] buf, int off, int len)
+            throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!nextRegion())
+            {
+                return -1;
+            }
+
+            int count = Math.min(len, region.remaining());
+
+            region.get(buf, off, count);
+
+            return count;
+        }
+
+        public int available()
+        {
+            long left = length - position + (region == null ? 0 : region.remaining());
+
+            return (int)Math.min(Integer.MAX_VALUE, left);
+        }
+
+        public void close()
+            throws IOException
+        {
+            region = null;
+            raf.close();
+        }
+
+        private boolean nextRegion()
+            throws IOException
+        {
+            if (region != null && region.hasRemaining())
+            {
+                return true;
+            }
+            if (position >= length)
+            {
+                return false;
+            }
+
+            region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_REGION_SIZE, length - position));
+            position += region.remaining();
+
+            return true;
+        }
+    }
+}
@@ -9,9 +9,15 @@
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
@@ -30,6 +36,7 @@
 import org.bouncycastle.cert.X509CRLHolder;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.operator.DefaultDigestAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.DigestCalculator;
 import org.bouncycastle.operator.DigestAlgorithmIdentifierFinder;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.util.Encodable;
@@ -588,6 +595,258 @@ private boolean verifyCounterSignature(SignerInformation counterSigner, SignerIn
         return true;
     }
 
+    /**
+     * Verify all the SignerInformation objects and optionally their associated counter signatures attached
+     * to this CMS SignedData object, carrying out the verifications concurrently on the passed in executor.
+     * <p>
+     * The signed content is only read on the calling thread, and only once: its digests are calculated up front
+     * for every digest algorithm in use, with the content written once to all the digest calculators, and
+     * shared between the signers using each algorithm. Signers without signed attributes, whose signature is
+     * calculated over the content itself, are also verified on the calling thread, so the content need not be
+     * thread-safe. The verifierProvider is only called from the calling thread, however the
+     * SignerInformationVerifier objects it returns will be used from the executor's threads. Any verification
+     * the executor rejects is carried out on the calling thread instead.
+     * </p>
+     *
+     * @param verifierProvider        a provider of SignerInformationVerifier objects.
+     * @param ignoreCounterSignatures if true don't check counter signatures. If false check counter signatures as well.
+     * @param executor                the executor to carry out the digest calculations and verifications with.
+     * @return true if all verify, false otherwise.
+     * @throws CMSException if an exception occurs during the verification process.
+     */
+    public boolean verifySignatures(SignerInformationVerifierProvider verifierProvider, boolean ignoreCounterSignatures, Executor executor)
+        throws CMSException
+    {
+        Collection signers = this.getSignerInfos().getSigners();
+
+        // see verifySignatures(SignerInformationVerifierProvider, boolean)
+        if (signers.isEmpty())
+        {
+            throw new CMSException("no signers present in SignedData");
+        }
+
+        List<SignerInformation> toVerify = new ArrayList<SignerInformation>();
+        for (Iterator it = signers.iterator(); it.hasNext(); )
+        {
+            SignerInformation signer = (SignerInformation)it.next();
+
+            toVerify.add(signer);
+
+            if (!ignoreCounterSignatures)
+            {
+                addCounterSignatures(signer, toVerify);
+            }
+        }
+
+        SignerInformationVerifier[] verifiers = new SignerInformationVerifier[toVerify.size()];
+        try
+        {
+            for (int i = 0; i != verifiers.length; i++)
+            {
+                verifiers[i] = verifierProvider.get(toVerify.get(i).getSID());
+            }
+        }
+        catch (OperatorCreationException e)
+        {
+            throw new CMSException("failure in verifier provider: " + e.getMessage(), e);
+        }
+
+        calculateContentDigests(toVerify, verifiers);
+
+        List<FutureTask<Boolean>> tasks = new ArrayList<FutureTask<Boolean>>(verifiers.length);
+        List<FutureTask<Boolean>> localTasks = new ArrayList<FutureTask<Boolean>>();
+        try
+        {
+            for (int i = 0; i != verifiers.length; i++)
+            {
+                final SignerInformation signer = toVerify.get(i);
+                final SignerInformationVerifier verifier = verifiers[i];
+
+                FutureTask<Boolean> task = new FutureTask<Boolean>(new Callable<Boolean>()
+                {
+                    public Boolean call()
+                        throws CMSException
+                    {
+                        return Boolean.valueOf(signer.verify(verifier));
+                    }
+                });
+
+                tasks.add(task);
+                if (signer.isContentReadOnVerify())
+                {
+                    localTasks.add(task);
+                }
+                else
+                {
+                    try
+                    {
+                        executor.execute(task);
+                    }
+                    catch (RejectedExecutionException e)
+                    {
+                        // executor is saturated or shut down, verify this one ourselves
+                        localTasks.add(task);
+                    }
+                }
+            }
+
+            for (int i = 0; i != localTasks.size(); i++)
+            {
+                localTasks.get(i).run();
+            }
+
+            for (int i = 0; i != tasks.size(); i++)
+            {
+                if (!getResult(tasks.get(i)).booleanValue())
+                {
+                    return false;
+                }
+            }
+        }
+        finally
+        {
+            // nothing more to learn once one signer has failed, or if we are leaving on an exception
+            for (int i = 0; i != tasks.size(); i++)
+            {
+                tasks.get(i).cancel(false);
+            }
+        }
+
+        return true;
+    }
+
+    private static void addCounterSignatures(SignerInformation signer, List<SignerInformation> toVerify)
+    {
+        Collection counterSigners = signer.getCounterSignatures().getSigners();
+
+        for (Iterator it = counterSigners.iterator(); it.hasNext(); )
+        {
+            SignerInformation counterSigner = (SignerInformation)it.next();
+
+            toVerify.add(counterSigner);
+            addCounterSignatures(counterSigner, toVerify);
+        }
+    }
+
+    /*
+     * Calculate the content digests for the signers on the calling thread, writing each distinct content once to
+     * a digest calculator for each digest algorithm used over it, and hand them on to the signers before they are
+     * verified.
+     */
+    private static void calculateContentDigests(List<SignerInformation> signers, SignerInformationVerifier[] verifiers)
+        throws CMSException
+    {
+        List<CMSProcessable> contents = new ArrayList<CMSProcessable>();
+        List<Map<AlgorithmIdentifier, List<Integer>>> contentGroups = new ArrayList<Map<AlgorithmIdentifier, List<Integer>>>();
+        for (int i = 0; i != signers.size(); i++)
+        {
+            SignerInformation signer = signers.get(i);
+            CMSProcessable content = signer.getUndigestedContent();
+
+            if (content == null)
+            {
+                continue;
+            }
+
+            int index = 0;
+            while (index != contents.size() && contents.get(index) != content)
+            {
+                index++;
+            }
+            if (index == contents.size())
+            {
+                contents.add(content);
+                contentGroups.add(new LinkedHashMap<AlgorithmIdentifier, List<Integer>>());
+            }
+
+            Map<AlgorithmIdentifier, List<Integer>> byDigest = contentGroups.get(index);
+            List<Integer> group = byDigest.get(signer.getDigestAlgorithmID());
+            if (group == null)
+            {
+                group = new ArrayList<Integer>();
+                byDigest.put(signer.getDigestAlgorithmID(), group);
+            }
+            group.add(Integer.valueOf(i));
+        }
+
+        for (int c = 0; c != contents.size(); c++)
+        {
+            Map<AlgorithmIdentifier, List<Integer>> byDigest = contentGroups.get(c);
+            List<List<Integer>> groups = new ArrayList<List<Integer>>(byDigest.values());
+            DigestCalculator[] calcs = new DigestCalculator[groups.size()];
+
+            try
+            {
+                OutputStream digOut = null;
+                Iterator<AlgorithmIdentifier> algIt = byDigest.keySet().iterator();
+                for (int i = 0; i != calcs.length; i++)
+                {
+                    int first = groups.get(i).get(0).intValue();
+
+                    calcs[i] = verifiers[first].getDigestCalculator(algIt.next());
+                    digOut = CMSUtils.getSafeTeeOutputStream(digOut, calcs[i].getOutputStream());
+                }
+
+                contents.get(c).write(digOut);
+
+                digOut.close();
+            }
+            catch (IOException e)
+            {
+                throw new CMSException("can't process mime object to create signature.", e);
+            }
+            catch (OperatorCreationException e)
+            {
+                throw new CMSException("can't create digest calculator: " + e.getMessage(), e);
+            }
+
+            for (int i = 0; i != calcs.length; i++)
+            {
+                byte[] digest = calcs[i].getDigest();
+                List<Integer> group = groups.get(i);
+
+                for (int j = 0; j != group.size(); j++)
+                {
+                    signers.get(group.get(j).intValue()).setContentDigest(digest);
+                }
+            }
+        }
+    }
+
+    private static <T> T getResult(FutureTask<T> task)
+        throws CMSException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new CMSException("interrupted waiting for signature verification", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof CMSException)
+            {
+                throw (CMSException)cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+
+            throw new CMSException("exception during signature verification: " + cause.getMessage(), (Exception)cause);
+        }
+    }
+
     /**
      * Return a new CMSSignedData which guarantees to have the passed in digestAlgorithm
      * in it. Uses the current DigestAlgorithmIdentifierFinder for creating the digest sets.
@@ -14,6 +14,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
@@ -43,7 +44,9 @@
 import org.bouncycastle.operator.DigestCalculatorProvider;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.util.Store;
+import org.bouncycastle.util.io.PipelinedTeeOutputStream;
 import org.bouncycastle.util.io.Streams;
+import org.bouncycastle.util.io.TeeInputStream;
 
 /**
  * Parsing class for an CMS Signed Data object from an input stream.
@@ -115,6 +118,8 @@
     private Set<AlgorithmIdentifier> digestAlgorithms;
     private ASN1Set                 _digestAlgorithmsSet;
     private boolean                 _contentBerEncoded;
+    private Executor                _digestExecutor;
+    private PipelinedTeeOutputStream _digestPipeline;
 
     private SignerInformationStore  _signerInfoStore;
     private ASN1Set                 _certSet, _crlSet;
@@ -332,7 +337,24 @@ public SignerInformationStore getSignerInfos()
             
             List      signerInfos = new ArrayList();
             Map       hashes = new HashMap();
-            
+
+            if (_digestPipeline != null)
+            {
+                // wait for the digest calculations to finish
+                try
+                {
+                    _digestPipeline.close();
+                }
+                catch (IOException e)
+                {
+                    throw new CMSException("unable to complete digest calculation: " + e.getMessage(), e);
+                }
+                finally
+                {
+                    _digestPipeline = null;
+                }
+            }
+
             Iterator  it = digests.keySet().iterator();
             while (it.hasNext())
             {
@@ -486,6 +508,22 @@ public String getSignedContentTypeOID()
         return _signedContentType.getId();
     }
 
+    /**
+     * Set an executor to calculate the content digests on. Where the message uses more than one digest
+     * algorithm the content returned by {@link #getSignedContent()} is passed to the digest calculators
+     * through a {@link PipelinedTeeOutputStream}, so each digest is calculated on its own task, concurrently
+     * with the others. This must be called before getSignedContent().
+     * <p>
+     * The executor must be able to run a task for every digest at once - see {@link PipelinedTeeOutputStream}.
+     * </p>
+     *
+     * @param digestExecutor the executor to use, null (the default) to calculate the digests in the reading thread.
+     */
+    public void setDigestExecutor(Executor digestExecutor)
+    {
+        _digestExecutor = digestExecutor;
+    }
+
     public CMSTypedStream getSignedContent()
     {
         if (_signedContent == null)
@@ -493,12 +531,94 @@ public CMSTypedStream getSignedContent()
             return null;
         }
 
-        InputStream digStream = CMSUtils.attachDigestsToInputStream(
-            digests.values(), _signedContent.getContentStream());
+        if (_digestPipeline != null)
+        {
+            // the content stream previously returned is being abandoned
+            _digestPipeline.abort();
+            _digestPipeline = null;
+        }
+
+        InputStream digStream;
+        if (_digestExecutor != null && digests.size() > 1)
+        {
+            OutputStream[] digestStreams = new OutputStream[digests.size()];
+            Iterator it = digests.values().iterator();
+            for (int i = 0; i != digestStreams.length; i++)
+            {
+                digestStreams[i] = ((DigestCalculator)it.next()).getOutputStream();
+            }
+
+            final PipelinedTeeOutputStream pipeline = new PipelinedTeeOutputStream(digestStreams, _digestExecutor);
+
+            digStream = new TeeInputStream(_signedContent.getContentStream(), pipeline)
+            {
+                public int read()
+                    throws IOException
+                {
+                    try
+                    {
+                        return super.read();
+                    }
+                    catch (IOException e)
+                    {
+                        pipeline.abort();
+                        throw e;
+                    }
+                    catch (RuntimeException e)
+                    {
+                        pipeline.abort();
+                        throw e;
+                    }
+                }
+
+                public int read(byte[] buf, int off, int len)
+                    throws IOException
+                {
+                    try
+                    {
+                        return super.read(buf, off, len);
+                    }
+                    catch (IOException e)
+                    {
+                        pipeline.abort();
+                        throw e;
+                    }
+                    catch (RuntimeException e)
+                    {
+                        pipeline.abort();
+                        throw e;
+                    }
+                }
+            };
+
+            _digestPipeline = pipeline;
+        }
+        else
+        {
+            digStream = CMSUtils.attachDigestsToInputStream(digests.values(), _signedContent.getContentStream());
+        }
 
         return new CMSTypedStream(_signedContent.getContentType(), digStream);
     }
 
+    /**
+     * Close the underlying data stream. If the signed content was being digested on an executor, and has not been
+     * read to the end, the digest calculation is abandoned.
+     *
+     * @throws IOException if the close fails.
+     */
+    public void close()
+        throws IOException
+    {
+        if (_digestPipeline != null)
+        {
+            _digestPipeline.abort();
+            _digestPipeline = null;
+        }
+
+        super.close();
+    }
+
     /**
      * Replace the signerinformation store associated with the passed
      * in message contained in the stream original with the new one passed in.
@@ -8,6 +8,7 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1Encoding;
@@ -26,6 +27,7 @@
 import org.bouncycastle.asn1.DLTaggedObject;
 import org.bouncycastle.asn1.DLSequence;
 import org.bouncycastle.asn1.DLSet;
+import org.bouncycastle.util.io.PipelinedTeeOutputStream;
 import org.bouncycastle.util.io.TeeOutputStream;
 import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
 import org.bouncycastle.asn1.cms.ContentInfo;
@@ -74,6 +76,7 @@
     extends CMSSignedGenerator
 {
     private int _bufferSize;
+    private Executor _digestExecutor;
 
     /**
      * base constructor
@@ -101,6 +104,21 @@ public void setBufferSize(
         _bufferSize = bufferSize;
     }
 
+    /**
+     * Set an executor to calculate the signers' digests on. Where there is more than one signer the content is
+     * passed to the signers through a {@link PipelinedTeeOutputStream}, so each signer's digest is calculated
+     * on its own task, concurrently with the others.
+     * <p>
+     * The executor must be able to run a task for every signer at once - see {@link PipelinedTeeOutputStream}.
+     * </p>
+     *
+     * @param digestExecutor the executor to use, null (the default) to calculate the digests in the writing thread.
+     */
+    public void setDigestExecutor(Executor digestExecutor)
+    {
+        _digestExecutor = digestExecutor;
+    }
+
     /**
      * generate a signed object that for a CMS Signed Data
      * object using the given provider.
@@ -257,7 +275,7 @@ public OutputStream open(
             OutputStream contentStream = CMSUtils.getSafeTeeOutputStream(dataOutputStream, ecStream);
 
             // Let all the signers see the data as it is written
-            OutputStream sigStream = CMSUtils.attachSignersToOutputStream(signerGens, contentStream);
+            OutputStream sigStream = CMSUtils.attachSignersToOutputStream(signerGens, contentStream, _digestExecutor);
 
             return new CmsSignedDataOutputStream(sigStream, eContentType, sGen, sigGen, eciGen);
         }
@@ -286,7 +304,7 @@ public OutputStream open(
             OutputStream contentStream = CMSUtils.getSafeTeeOutputStream(dataOutputStream, ecStream);
 
             // Let all the signers see the data as it is written
-            OutputStream sigStream = CMSUtils.attachSignersToOutputStream(signerGens, contentStream);
+            OutputStream sigStream = CMSUtils.attachSignersToOutputStream(signerGens, contentStream, _digestExecutor);
 
             return new CmsDLSignedDataOutputStream(sigStream, eContentType, sigGen, eciGen, ecStream, out);
         }
@@ -444,7 +462,7 @@ public OutputStream open(ASN1ObjectIdentifier eContentType, OutputStream out, lo
         OutputStream contentStream = CMSUtils.getSafeTeeOutputStream(dataOutputStream, octGen.getOctetOutputStream());
 
         // Let all the signers see the data as it is written
-        OutputStream sigStream = CMSUtils.attachSignersToOutputStream(signerGens, contentStream);
+        OutputStream sigStream = CMSUtils.attachSignersToOutputStream(signerGens, contentStream, _digestExecutor);
 
         return new CmsDLSinglePassSignedDataOutputStream(
             sigStream, eContentType, der, octGen, eciGen, sdGen, ciGen, certsEnc, crlsEnc);
@@ -497,7 +515,7 @@ public void generate(CMSTypedData content, OutputStream out)
         // pass one: digest (and, for direct signers, sign) the content.
         //
         CountingOutputStream passOne = new CountingOutputStream(
-            CMSUtils.getSafeOutputStream(CMSUtils.attachSignersToOutputStream(signerGens, null)));
+            CMSUtils.getSafeOutputStream(CMSUtils.attachSignersToOutputStream(signerGens, null, _digestExecutor)));
         content.write(passOne);
         passOne.close();
         long contentLength = passOne.getCount();
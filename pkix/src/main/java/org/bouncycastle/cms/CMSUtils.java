@@ -11,6 +11,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
@@ -62,6 +63,7 @@
 import org.bouncycastle.util.Store;
 import org.bouncycastle.util.io.Streams;
 import org.bouncycastle.util.io.TeeInputStream;
+import org.bouncycastle.util.io.PipelinedTeeOutputStream;
 import org.bouncycastle.util.io.TeeOutputStream;
 
 class CMSUtils
@@ -621,6 +623,23 @@ static OutputStream attachSignersToOutputStream(Collection signers, OutputStream
         return result;
     }
 
+    static OutputStream attachSignersToOutputStream(Collection signers, OutputStream s, Executor executor)
+    {
+        if (executor == null || signers.size() < 2)
+        {
+            return attachSignersToOutputStream(signers, s);
+        }
+
+        OutputStream[] signerStreams = new OutputStream[signers.size()];
+        Iterator it = signers.iterator();
+        for (int i = 0; i != signerStreams.length; i++)
+        {
+            signerStreams[i] = ((SignerInfoGenerator)it.next()).getCalculatingOutputStream();
+        }
+
+        return getSafeTeeOutputStream(s, new PipelinedTeeOutputStream(signerStreams, executor));
+    }
+
     static OutputStream getSafeOutputStream(OutputStream s)
     {
         return s == null ? new NullOutputStream() : s;
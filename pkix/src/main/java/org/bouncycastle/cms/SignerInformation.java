@@ -193,6 +193,36 @@ public byte[] getContentDigest()
         return Arrays.clone(resultDigest);
     }
 
+    /**
+     * Return the content the message-digest attribute for this signer is calculated over, if the digest has
+     * still to be calculated and may be calculated independently of the signature check, null otherwise.
+     */
+    CMSProcessable getUndigestedContent()
+    {
+        if (resultDigest == null && signedAttributeSet != null && !isCounterSignature)
+        {
+            return content;
+        }
+
+        return null;
+    }
+
+    /**
+     * Return true if verifying this signer will read its content, rather than only a digest of it.
+     */
+    boolean isContentReadOnVerify()
+    {
+        return content != null && !isCounterSignature && (resultDigest == null || signedAttributeSet == null);
+    }
+
+    /**
+     * Set the content digest ahead of verification, where it has been calculated on this signer's behalf.
+     */
+    void setContentDigest(byte[] contentDigest)
+    {
+        this.resultDigest = contentDigest;
+    }
+
     /**
      * return the object identifier for the signature.
      */
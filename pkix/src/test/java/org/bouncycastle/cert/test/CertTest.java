@@ -37,6 +37,7 @@
 import java.security.spec.RSAPrivateCrtKeySpec;
 import java.security.spec.RSAPublicKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
@@ -68,6 +69,7 @@
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.AltSignatureAlgorithm;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.CRLNumber;
 import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
@@ -85,9 +87,11 @@
 import org.bouncycastle.asn1.x9.X9ECParameters;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.bouncycastle.cert.CertException;
+import org.bouncycastle.cert.CertIOException;
 import org.bouncycastle.cert.X509AttributeCertificateHolder;
 import org.bouncycastle.cert.X509CRLEntryHolder;
 import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509CRLStreamParser;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.X509v1CertificateBuilder;
 import org.bouncycastle.cert.X509v2CRLBuilder;
@@ -100,6 +104,8 @@
 import org.bouncycastle.cert.jcajce.JcaX509v1CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509v2CRLBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.selector.IndexedCertificateHolderStore;
+import org.bouncycastle.cert.selector.X509CertificateHolderSelector;
 import org.bouncycastle.crypto.params.DSAParameters;
 import org.bouncycastle.crypto.params.DSAValidationParameters;
 import org.bouncycastle.crypto.params.RSAKeyParameters;
@@ -139,6 +145,8 @@
 import org.bouncycastle.pqc.jcajce.spec.SPHINCS256KeyGenParameterSpec;
 import org.bouncycastle.pqc.jcajce.spec.XMSSMTParameterSpec;
 import org.bouncycastle.pqc.jcajce.spec.XMSSParameterSpec;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.CollectionStore;
 import org.bouncycastle.util.Encodable;
 import org.bouncycastle.util.Strings;
 import org.bouncycastle.util.encoders.Base64;
@@ -5145,6 +5153,369 @@ private void testIndirect2()
         }
     }
 
+    // lookups in a large indirect CRL go via the serial number index
+    private void testIndexedLookup()
+        throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12", BC);
+
+        keyStore.load(new ByteArrayInputStream(testCAp12), "test".toCharArray());
+
+        X509Certificate certificate = (X509Certificate)keyStore.getCertificate("ca");
+        PrivateKey privateKey = (PrivateKey)keyStore.getKey("ca", null);
+
+        X500Name crlIssuer = X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded());
+        X500Name caName = X500Name.getInstance(certificate.getIssuerX500Principal().getEncoded());
+        X500Name[] issuers = new X500Name[]{ crlIssuer, caName, new X500Name("CN=Other CA") };
+
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(crlIssuer, new Date());
+
+        builder.addExtension(Extension.issuingDistributionPoint, true, new IssuingDistributionPoint(null, true, false));
+
+        int count = 2000;
+        X500Name[] expectedIssuers = new X500Name[count];
+        X500Name currentIssuer = crlIssuer;
+        for (int i = 0; i != count; i++)
+        {
+            if (i % 250 == 100)
+            {
+                currentIssuer = issuers[(i / 250) % issuers.length];
+
+                ExtensionsGenerator extGen = new ExtensionsGenerator();
+                extGen.addExtension(Extension.certificateIssuer, true, new GeneralNames(new GeneralName(currentIssuer)));
+
+                builder.addCRLEntry(BigInteger.valueOf(1000 + i), new Date(), extGen.generate());
+            }
+            else
+            {
+                builder.addCRLEntry(BigInteger.valueOf(1000 + i), new Date(), CRLReason.keyCompromise);
+            }
+            expectedIssuers[i] = currentIssuer;
+        }
+
+        // a repeated serial number (under a later issuer) must not hide the first entry
+        builder.addCRLEntry(BigInteger.valueOf(1000), new Date(), CRLReason.superseded);
+
+        // the CA certificate itself, first revoked by another issuer, then by its own
+        builder.addCRLEntry(certificate.getSerialNumber(), new Date(), CRLReason.keyCompromise);
+
+        JcaContentSignerBuilder contentSignerBuilder = new JcaContentSignerBuilder("SHA256WithRSAEncryption");
+
+        contentSignerBuilder.setProvider(BC);
+
+        X509CRLHolder cRLHolder = builder.build(contentSignerBuilder.build(privateKey));
+
+        JcaX509CRLConverter converter = new JcaX509CRLConverter();
+
+        converter.setProvider(BC);
+
+        X509CRL crl = converter.getCRL(cRLHolder);
+
+        for (int i = 0; i != count; i++)
+        {
+            BigInteger serial = BigInteger.valueOf(1000 + i);
+
+            X509CRLEntryHolder entryHolder = cRLHolder.getRevokedCertificate(serial);
+            isEquals(serial, entryHolder.getSerialNumber());
+            isEquals(new GeneralNames(new GeneralName(expectedIssuers[i])), entryHolder.getCertificateIssuer());
+
+            X509CRLEntry crlEntry = crl.getRevokedCertificate(serial);
+            isEquals(serial, crlEntry.getSerialNumber());
+            // entries before the first certificateIssuer extension have no issuer of their own
+            if (i < 100)
+            {
+                isTrue(null == crlEntry.getCertificateIssuer());
+            }
+            else
+            {
+                isEquals(new X500Principal(expectedIssuers[i].getEncoded()), crlEntry.getCertificateIssuer());
+            }
+        }
+
+        isTrue(cRLHolder.getRevokedCertificate(BigInteger.valueOf(1000)).getExtension(Extension.reasonCode) != null);
+        isTrue(CRLReason.lookup(CRLReason.keyCompromise).equals(CRLReason.getInstance(
+            cRLHolder.getRevokedCertificate(BigInteger.valueOf(1000)).getExtension(Extension.reasonCode).getParsedValue())));
+
+        isTrue(null == cRLHolder.getRevokedCertificate(BigInteger.valueOf(999)));
+        isTrue(null == cRLHolder.getRevokedCertificate(BigInteger.valueOf(1000 + count)));
+        isTrue(null == crl.getRevokedCertificate(BigInteger.valueOf(999)));
+
+        // the last issuer run is for caName, which issued the CA certificate
+        isEquals(caName, expectedIssuers[count - 1]);
+        isTrue(crl.isRevoked(certificate));
+
+        X509v2CRLBuilder otherBuilder = new X509v2CRLBuilder(crlIssuer, new Date());
+
+        otherBuilder.addExtension(Extension.issuingDistributionPoint, true, new IssuingDistributionPoint(null, true, false));
+
+        ExtensionsGenerator extGen = new ExtensionsGenerator();
+        extGen.addExtension(Extension.certificateIssuer, true, new GeneralNames(new GeneralName(new X500Name("CN=Other CA"))));
+        otherBuilder.addCRLEntry(certificate.getSerialNumber(), new Date(), extGen.generate());
+
+        X509CRL otherCRL = converter.getCRL(otherBuilder.build(contentSignerBuilder.build(privateKey)));
+
+        isTrue(!otherCRL.isRevoked(certificate));
+    }
+
+    private void testIndexedCertificateHolderStore()
+        throws Exception
+    {
+        byte[][] encodings = new byte[][] { cert1, cert2, cert3, cert4, cert5, sha3Cert };
+
+        List<X509CertificateHolder> certs = new ArrayList<X509CertificateHolder>();
+        for (int i = 0; i != encodings.length; i++)
+        {
+            certs.add(new X509CertificateHolder(encodings[i]));
+        }
+
+        CollectionStore<X509CertificateHolder> collectionStore = new CollectionStore<X509CertificateHolder>(certs);
+        IndexedCertificateHolderStore indexedStore = new IndexedCertificateHolderStore(certs);
+
+        isEquals(certs.size(), indexedStore.size());
+        isEquals(collectionStore.getMatches(null), indexedStore.getMatches(null));
+
+        for (int i = 0; i != certs.size(); i++)
+        {
+            X509CertificateHolder cert = (X509CertificateHolder)certs.get(i);
+
+            isTrue(indexedStore.contains(cert));
+            isTrue(indexedStore.getBySubject(cert.getSubject()).contains(cert));
+
+            X509CertificateHolderSelector[] selectors = new X509CertificateHolderSelector[]
+            {
+                new X509CertificateHolderSelector(cert.getIssuer(), cert.getSerialNumber()),
+                new X509CertificateHolderSelector(new JcaX509ExtensionUtils().createSubjectKeyIdentifier(
+                    cert.getSubjectPublicKeyInfo()).getKeyIdentifier()),
+                new X509CertificateHolderSelector(cert.getIssuer(), cert.getSerialNumber().add(BigInteger.ONE)),
+                new X509CertificateHolderSelector(null, cert.getSerialNumber()),
+                new X509CertificateHolderSelector(new byte[20])
+            };
+
+            for (int j = 0; j != selectors.length; j++)
+            {
+                isEquals("selector " + j + " on cert " + i, collectionStore.getMatches(selectors[j]), indexedStore.getMatches(selectors[j]));
+            }
+
+            isTrue("issuer/serial " + i, indexedStore.getMatches(selectors[0]).contains(cert));
+
+            Extension ski = cert.getExtension(Extension.subjectKeyIdentifier);
+            if (ski != null)
+            {
+                X509CertificateHolderSelector skiSelector = new X509CertificateHolderSelector(
+                    ASN1OctetString.getInstance(ski.getParsedValue()).getOctets());
+
+                isEquals(collectionStore.getMatches(skiSelector), indexedStore.getMatches(skiSelector));
+                isTrue("subjectKeyIdentifier " + i, indexedStore.getMatches(skiSelector).contains(cert));
+            }
+        }
+
+        isTrue(indexedStore.getBySubject(new X500Name("CN=Not Present")).isEmpty());
+    }
+
+    private void testLazyCertificateHolder()
+        throws Exception
+    {
+        byte[][] encodings = new byte[][] { cert1, cert2, cert3, cert4, cert5, sha3Cert };
+
+        for (int i = 0; i != encodings.length; i++)
+        {
+            X509CertificateHolder eager = new X509CertificateHolder(encodings[i]);
+            X509CertificateHolder lazy = new X509CertificateHolder(encodings[i], true);
+
+            isTrue("encoding " + i, Arrays.areEqual(encodings[i], lazy.getEncoded()));
+            isEquals("version " + i, eager.getVersionNumber(), lazy.getVersionNumber());
+            isEquals("serial " + i, eager.getSerialNumber(), lazy.getSerialNumber());
+            isEquals("issuer " + i, eager.getIssuer(), lazy.getIssuer());
+            isEquals("subject " + i, eager.getSubject(), lazy.getSubject());
+            isEquals("notBefore " + i, eager.getNotBefore(), lazy.getNotBefore());
+            isEquals("notAfter " + i, eager.getNotAfter(), lazy.getNotAfter());
+            isTrue("isValidOn " + i, eager.isValidOn(eager.getNotAfter()) == lazy.isValidOn(eager.getNotAfter()));
+            isEquals("spki " + i, eager.getSubjectPublicKeyInfo(), lazy.getSubjectPublicKeyInfo());
+            isEquals("sigAlg " + i, eager.getSignatureAlgorithm(), lazy.getSignatureAlgorithm());
+            isTrue("signature " + i, Arrays.areEqual(eager.getSignature(), lazy.getSignature()));
+            isTrue("hasExtensions " + i, eager.hasExtensions() == lazy.hasExtensions());
+            isEquals("extensions " + i, eager.getExtensions(), lazy.getExtensions());
+            isEquals("extension OIDs " + i, eager.getExtensionOIDs(), lazy.getExtensionOIDs());
+            isEquals("critical OIDs " + i, eager.getCriticalExtensionOIDs(), lazy.getCriticalExtensionOIDs());
+            isEquals("basicConstraints " + i, eager.getExtension(Extension.basicConstraints),
+                lazy.getExtension(Extension.basicConstraints));
+
+            isTrue("equals " + i, eager.equals(lazy) && lazy.equals(eager));
+            isTrue("lazy equals " + i, lazy.equals(new X509CertificateHolder(encodings[i], true)));
+            isEquals("hashCode " + i, eager.hashCode(), lazy.hashCode());
+
+            isEquals("signature valid " + i, checkSignature(eager, eager), checkSignature(lazy, eager));
+
+            isEquals("structure " + i, eager.toASN1Structure(), lazy.toASN1Structure());
+            isEquals("tbsCertificate " + i, eager.getTBSCertificate(), lazy.getTBSCertificate());
+        }
+
+        isTrue(!new X509CertificateHolder(cert1, true).equals(new X509CertificateHolder(cert2, true)));
+
+        try
+        {
+            new X509CertificateHolder(new byte[] { 0x30, 0x03, 0x02, 0x01, 0x01 }, true);
+            fail("no exception");
+        }
+        catch (CertIOException e)
+        {
+            isTrue(e.getMessage().startsWith("malformed data: "));
+        }
+
+        try
+        {
+            new X509CertificateHolder(Arrays.concatenate(cert1, new byte[1]), true);
+            fail("no exception");
+        }
+        catch (IOException e)
+        {
+            isEquals("Extra data detected in stream", e.getMessage());
+        }
+    }
+
+    private String checkSignature(X509CertificateHolder cert, X509CertificateHolder keyCert)
+    {
+        try
+        {
+            return String.valueOf(cert.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider(BC).build(keyCert)));
+        }
+        catch (Exception e)
+        {
+            return "exception";
+        }
+    }
+
+    private void testCRLStreamParser()
+        throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12", BC);
+
+        keyStore.load(new ByteArrayInputStream(testCAp12), "test".toCharArray());
+
+        X509Certificate certificate = (X509Certificate)keyStore.getCertificate("ca");
+        PrivateKey privateKey = (PrivateKey)keyStore.getKey("ca", null);
+
+        X500Name crlIssuer = X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded());
+
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(crlIssuer, new Date());
+
+        builder.setNextUpdate(new Date(System.currentTimeMillis() + 100000));
+        builder.addExtension(Extension.issuingDistributionPoint, true, new IssuingDistributionPoint(null, true, false));
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(42)));
+
+        for (int i = 0; i != 500; i++)
+        {
+            if (i == 200)
+            {
+                ExtensionsGenerator extGen = new ExtensionsGenerator();
+                extGen.addExtension(Extension.certificateIssuer, true, new GeneralNames(new GeneralName(new X500Name("CN=Other CA"))));
+
+                builder.addCRLEntry(BigInteger.valueOf(0x7A5A5A), new Date(), extGen.generate());
+            }
+            else
+            {
+                builder.addCRLEntry(BigInteger.valueOf(1000 + i), new Date(), CRLReason.keyCompromise);
+            }
+        }
+
+        JcaContentSignerBuilder contentSignerBuilder = new JcaContentSignerBuilder("SHA256WithRSAEncryption");
+
+        contentSignerBuilder.setProvider(BC);
+
+        X509CRLHolder cRLHolder = builder.build(contentSignerBuilder.build(privateKey));
+        byte[] encoding = cRLHolder.getEncoded();
+
+        ContentVerifierProvider verifierProvider = new JcaContentVerifierProviderBuilder().setProvider(BC).build(certificate);
+
+        X509CRLStreamParser parser = new X509CRLStreamParser(new ByteArrayInputStream(encoding), verifierProvider);
+
+        isEquals(2, parser.getVersionNumber());
+        isEquals(cRLHolder.getIssuer(), parser.getIssuer());
+        isEquals(cRLHolder.getThisUpdate(), parser.getThisUpdate());
+        isEquals(cRLHolder.getNextUpdate(), parser.getNextUpdate());
+
+        Iterator it = cRLHolder.getRevokedCertificates().iterator();
+        X509CRLEntryHolder streamed;
+        while ((streamed = parser.readRevokedCertificate()) != null)
+        {
+            X509CRLEntryHolder entry = (X509CRLEntryHolder)it.next();
+
+            isEquals(entry.getSerialNumber(), streamed.getSerialNumber());
+            isEquals(entry.getRevocationDate(), streamed.getRevocationDate());
+            isEquals(entry.getCertificateIssuer(), streamed.getCertificateIssuer());
+            isEquals(entry.getExtensions(), streamed.getExtensions());
+        }
+        isTrue(!it.hasNext());
+        isEquals(500, parser.getRevokedCertificateCount());
+        isTrue(null == parser.readRevokedCertificate());
+
+        isEquals(cRLHolder.getExtensions(), parser.getExtensions());
+        isTrue(parser.isIndirectCRL());
+        isEquals(cRLHolder.toASN1Structure().getSignatureAlgorithm(), parser.getSignatureAlgorithm());
+        isTrue(parser.isSignatureValid());
+
+        // the extensions (and signature) can be asked for before all entries have been read
+        parser = new X509CRLStreamParser(new ByteArrayInputStream(encoding), verifierProvider);
+
+        isEquals(BigInteger.valueOf(1000), parser.readRevokedCertificate().getSerialNumber());
+        isTrue(parser.isSignatureValid());
+        isEquals(500, parser.getRevokedCertificateCount());
+
+        // tamper with a serial number in the middle of the list
+        byte[] tampered = Arrays.clone(encoding);
+        byte[] serial = BigInteger.valueOf(0x7A5A5A).toByteArray();
+        for (int i = 0; i < tampered.length - serial.length; i++)
+        {
+            if (Arrays.areEqual(serial, Arrays.copyOfRange(tampered, i, i + serial.length)))
+            {
+                tampered[i + serial.length - 1] ^= 1;
+                break;
+            }
+        }
+
+        parser = new X509CRLStreamParser(new ByteArrayInputStream(tampered), verifierProvider);
+
+        isTrue(!parser.isSignatureValid());
+
+        parser = new X509CRLStreamParser(new ByteArrayInputStream(encoding));
+
+        isEquals(cRLHolder.getExtensions(), parser.getExtensions());
+        try
+        {
+            parser.isSignatureValid();
+            fail("no exception");
+        }
+        catch (IllegalStateException e)
+        {
+            isEquals("no ContentVerifierProvider available", e.getMessage());
+        }
+
+        // a CRL with no revoked certificates
+        builder = new X509v2CRLBuilder(crlIssuer, new Date());
+
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(43)));
+
+        encoding = builder.build(contentSignerBuilder.build(privateKey)).getEncoded();
+
+        parser = new X509CRLStreamParser(new ByteArrayInputStream(encoding), verifierProvider);
+
+        isTrue(null == parser.getNextUpdate());
+        isTrue(null == parser.readRevokedCertificate());
+        isTrue(!parser.isIndirectCRL());
+        isTrue(parser.getExtension(Extension.cRLNumber) != null);
+        isTrue(parser.isSignatureValid());
+
+        try
+        {
+            new X509CRLStreamParser(new ByteArrayInputStream(Arrays.copyOfRange(encoding, 0, 40)));
+            fail("no exception");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
     // issuing distribution point must be set for an indirect CRL to be recognised
     private void testMalformedIndirect()
         throws Exception
@@ -5503,6 +5874,10 @@ public void performTest()
         testDirect();
         testIndirect();
         testIndirect2();
+        testIndexedLookup();
+        testCRLStreamParser();
+        testIndexedCertificateHolderStore();
+        testLazyCertificateHolder();
         testMalformedIndirect();
         testMalformedIssuingDistributionPoint();
 
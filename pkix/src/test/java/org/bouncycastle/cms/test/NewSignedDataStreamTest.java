@@ -3,10 +3,13 @@
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.security.KeyPair;
 import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.security.Security;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
@@ -19,6 +22,11 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -53,6 +61,7 @@
 import org.bouncycastle.cms.CMSAlgorithm;
 import org.bouncycastle.cms.CMSAttributeTableGenerator;
 import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSProcessableMappedFile;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.CMSSignedDataGenerator;
 import org.bouncycastle.cms.CMSSignedDataParser;
@@ -1109,6 +1118,211 @@ public void testSHA1AndMD5WithRSA()
         verifySignatures(sp);
     }
 
+    public void testPipelinedDigests()
+        throws Exception
+    {
+        byte[] data = new byte[300000];
+        new SecureRandom().nextBytes(data);
+
+        List certList = new ArrayList();
+        certList.add(_origCert);
+        certList.add(_signCert);
+        Store certs = new JcaCertStore(certList);
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try
+        {
+            CMSSignedDataStreamGenerator gen = new CMSSignedDataStreamGenerator();
+            JcaSignerInfoGeneratorBuilder signerInfoGeneratorBuilder = new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build());
+
+            gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+            gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA512withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+            gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA3-256withRSA").setProvider(BC).build(_signKP.getPrivate()), _signCert));
+            gen.addCertificates(certs);
+            gen.setDigestExecutor(executor);
+
+            ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+            OutputStream sigOut = gen.open(bOut, true);
+
+            for (int off = 0; off < data.length; off += 1001)
+            {
+                sigOut.write(data, off, Math.min(1001, data.length - off));
+            }
+            sigOut.close();
+
+            // verify without pipelining
+            CMSSignedData s = new CMSSignedData(bOut.toByteArray());
+            assertTrue(Arrays.areEqual(data, (byte[])s.getSignedContent().getContent()));
+            assertEquals(3, s.getSignerInfos().size());
+
+            for (Iterator it = s.getSignerInfos().getSigners().iterator(); it.hasNext();)
+            {
+                SignerInformation signer = (SignerInformation)it.next();
+                X509CertificateHolder cert = (X509CertificateHolder)s.getCertificates().getMatches(signer.getSID()).iterator().next();
+
+                assertTrue(signer.verify(new JcaSimpleSignerInfoVerifierBuilder().setProvider(BC).build(cert)));
+            }
+
+            // verify with pipelining
+            CMSSignedDataParser sp = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), bOut.toByteArray());
+
+            sp.setDigestExecutor(executor);
+            sp.getSignedContent().drain();
+
+            verifySignatures(sp);
+
+            sp.close();
+
+            // detached, and without reading the content through to the end before the signers are asked for
+            sp = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(),
+                new CMSTypedStream(new ByteArrayInputStream(data)), bOut.toByteArray());
+
+            sp.setDigestExecutor(executor);
+            assertTrue(Arrays.areEqual(data,
+                Streams.readAll(sp.getSignedContent().getContentStream())));
+
+            verifySignatures(sp);
+
+            sp.close();
+
+            // two pass definite-length
+            gen.setEncoding("DL");
+
+            bOut = new ByteArrayOutputStream();
+            gen.generate(new CMSProcessableByteArray(data), bOut);
+
+            sp = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), bOut.toByteArray());
+
+            sp.getSignedContent().drain();
+
+            verifySignatures(sp);
+
+            sp.close();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testMappedFileContent()
+        throws Exception
+    {
+        byte[] data = new byte[200000];
+        new SecureRandom().nextBytes(data);
+
+        File file = File.createTempFile("bcmapped", ".dat");
+        try
+        {
+            FileOutputStream fOut = new FileOutputStream(file);
+            fOut.write(data);
+            fOut.close();
+
+            CMSProcessableMappedFile content = new CMSProcessableMappedFile(file, 1000);
+
+            assertEquals(data.length, content.getContentLength());
+            assertTrue(Arrays.areEqual(data, Streams.readAll(content.getInputStream())));
+
+            List certList = new ArrayList();
+            certList.add(_origCert);
+            Store certs = new JcaCertStore(certList);
+
+            CMSSignedDataStreamGenerator gen = new CMSSignedDataStreamGenerator();
+            gen.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build())
+                .build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+            gen.addCertificates(certs);
+            gen.setEncoding("DER");
+
+            // two pass
+            ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+            gen.generate(content, bOut);
+
+            CMSSignedDataParser sp = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), bOut.toByteArray());
+
+            assertTrue(Arrays.areEqual(data, Streams.readAll(sp.getSignedContent().getContentStream())));
+
+            verifySignatures(sp, MessageDigest.getInstance("SHA256", BC).digest(data));
+
+            sp.close();
+
+            // single pass, definite-length
+            bOut = new ByteArrayOutputStream();
+            OutputStream sigOut = gen.open(bOut, content.getContentLength());
+            content.write(sigOut);
+            sigOut.close();
+
+            sp = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), bOut.toByteArray());
+
+            assertTrue(Arrays.areEqual(data, Streams.readAll(sp.getSignedContent().getContentStream())));
+
+            verifySignatures(sp);
+
+            sp.close();
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    public void testPipelinedDigestsAbandoned()
+        throws Exception
+    {
+        byte[] data = new byte[300000];
+        new SecureRandom().nextBytes(data);
+
+        CMSSignedDataStreamGenerator gen = new CMSSignedDataStreamGenerator();
+        JcaSignerInfoGeneratorBuilder signerInfoGeneratorBuilder = new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build());
+
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA512withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+        gen.addCertificates(new JcaCertStore(Collections.singletonList(_origCert)));
+
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        OutputStream sigOut = gen.open(bOut, true);
+        sigOut.write(data);
+        sigOut.close();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>());
+        try
+        {
+            // closing the parser part way through the content releases the digest tasks
+            CMSSignedDataParser sp = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), bOut.toByteArray());
+
+            sp.setDigestExecutor(executor);
+            sp.getSignedContent().getContentStream().read(new byte[1000]);
+
+            sp.close();
+            awaitIdle(executor);
+
+            // asking for the content again abandons the first content stream
+            sp = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(),
+                new CMSTypedStream(new ByteArrayInputStream(data)), bOut.toByteArray());
+
+            sp.setDigestExecutor(executor);
+            sp.getSignedContent().getContentStream().read(new byte[1000]);
+            sp.getSignedContent().drain();
+            sp.getSignerInfos();
+
+            awaitIdle(executor);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitIdle(ThreadPoolExecutor executor)
+        throws InterruptedException
+    {
+        for (int i = 0; i < 500 && executor.getActiveCount() != 0; i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getActiveCount());
+    }
+
     public void testSHA1WithRSAEncapsulatedBufferedStream()
         throws Exception
     {
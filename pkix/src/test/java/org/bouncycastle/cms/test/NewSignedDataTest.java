@@ -12,6 +12,7 @@
 import java.security.MessageDigest;
 import java.security.Security;
 import java.security.Signature;
+import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.security.spec.PKCS8EncodedKeySpec;
@@ -24,6 +25,11 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 import junit.framework.Test;
@@ -79,6 +85,7 @@
 import org.bouncycastle.cms.CMSAttributeTableGenerationException;
 import org.bouncycastle.cms.CMSAttributeTableGenerator;
 import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSProcessable;
 import org.bouncycastle.cms.CMSProcessableByteArray;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.CMSSignedDataGenerator;
@@ -111,6 +118,7 @@
 import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
 import org.bouncycastle.operator.bc.BcRSAContentSignerBuilder;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
 import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 import org.bouncycastle.test.TestResourceFinder;
 import org.bouncycastle.util.CollectionStore;
@@ -2446,6 +2454,281 @@ private boolean verifyAllSigners(SignerInformationStore signers, Store certs)
         return true;
     }
 
+    public void testConcurrentVerification()
+        throws Exception
+    {
+        byte[]              data = "Hello World!".getBytes();
+        List                certList = new ArrayList();
+        CMSTypedData        msg = new CMSProcessableByteArray(data);
+
+        certList.add(_origCert);
+        certList.add(_signCert);
+
+        Store           certs = new JcaCertStore(certList);
+
+        CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+
+        DigestCalculatorProvider digProvider = new JcaDigestCalculatorProviderBuilder().setProvider(BC).build();
+        JcaSignerInfoGeneratorBuilder signerInfoGeneratorBuilder = new JcaSignerInfoGeneratorBuilder(digProvider);
+
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_signKP.getPrivate()), _signCert));
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA256withRSAandMGF1").setProvider(BC).build(_signKP.getPrivate()), _signCert));
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA1withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+
+        gen.addCertificates(certs);
+
+        CMSSignedData s = gen.generate(msg, true);
+
+        // counter sign the first signer
+        List signers = new ArrayList(s.getSignerInfos().getSigners());
+        SignerInformation origSigner = (SignerInformation)signers.get(0);
+        signers.set(0, SignerInformation.addCounterSigners(origSigner, gen.generateCounterSigners(origSigner)));
+
+        s = CMSSignedData.replaceSigners(s, new SignerInformationStore(signers));
+        s = new CMSSignedData(s.getEncoded());
+
+        final Store certStore = s.getCertificates();
+        final AtomicInteger digestCount = new AtomicInteger();
+        final DigestCalculatorProvider countingProvider = new DigestCalculatorProvider()
+        {
+            public DigestCalculator get(AlgorithmIdentifier digestAlgorithmIdentifier)
+                throws OperatorCreationException
+            {
+                digestCount.incrementAndGet();
+
+                return new JcaDigestCalculatorProviderBuilder().setProvider(BC).build().get(digestAlgorithmIdentifier);
+            }
+        };
+
+        SignerInformationVerifierProvider vProv = new SignerInformationVerifierProvider()
+        {
+            public SignerInformationVerifier get(SignerId signerId)
+                throws OperatorCreationException
+            {
+                X509CertificateHolder cert = (X509CertificateHolder)certStore.getMatches(signerId).iterator().next();
+
+                try
+                {
+                    return new SignerInformationVerifier(new DefaultCMSSignatureAlgorithmNameGenerator(), new DefaultSignatureAlgorithmIdentifierFinder(),
+                        new JcaContentVerifierProviderBuilder().setProvider(BC).build(cert), countingProvider);
+                }
+                catch (CertificateException e)
+                {
+                    throw new OperatorCreationException(e.getMessage(), e);
+                }
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            assertTrue(s.verifySignatures(vProv, false, executor));
+
+            // one SHA-256 digest shared by three signers, one SHA-1 digest, and one for each of the four counter signatures
+            assertEquals(6, digestCount.get());
+
+            byte[] sha256Hash = MessageDigest.getInstance("SHA256", BC).digest(data);
+            byte[] sha1Hash = MessageDigest.getInstance("SHA1", BC).digest(data);
+            for (Iterator it = s.getSignerInfos().getSigners().iterator(); it.hasNext();)
+            {
+                SignerInformation signer = (SignerInformation)it.next();
+
+                if (signer.getDigestAlgOID().equals(CMSAlgorithm.SHA1.getId()))
+                {
+                    assertTrue(MessageDigest.isEqual(sha1Hash, signer.getContentDigest()));
+                }
+                else
+                {
+                    assertTrue(MessageDigest.isEqual(sha256Hash, signer.getContentDigest()));
+                }
+            }
+
+            // the same answer as sequential verification, which calculates a digest for every signer
+            s = new CMSSignedData(s.getEncoded());
+            digestCount.set(0);
+            assertTrue(s.verifySignatures(vProv, false));
+            assertEquals(8, digestCount.get());
+
+            // a signer checked against the wrong certificate
+            s = new CMSSignedData(s.getEncoded());
+            SignerInformationVerifierProvider wrongProv = new SignerInformationVerifierProvider()
+            {
+                public SignerInformationVerifier get(SignerId signerId)
+                    throws OperatorCreationException
+                {
+                    return new JcaSimpleSignerInfoVerifierBuilder().setProvider(BC).build(_origCert);
+                }
+            };
+            assertFalse(s.verifySignatures(wrongProv, true, executor));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testConcurrentVerificationContentAccess()
+        throws Exception
+    {
+        final byte[]        data = "Hello World!".getBytes();
+        List                certList = new ArrayList();
+
+        certList.add(_origCert);
+        certList.add(_signCert);
+
+        CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+
+        DigestCalculatorProvider digProvider = new JcaDigestCalculatorProviderBuilder().setProvider(BC).build();
+        JcaSignerInfoGeneratorBuilder signerInfoGeneratorBuilder = new JcaSignerInfoGeneratorBuilder(digProvider);
+
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_signKP.getPrivate()), _signCert));
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA1withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+
+        // a signer without signed attributes, whose signature is over the content itself
+        JcaSignerInfoGeneratorBuilder directBuilder = new JcaSignerInfoGeneratorBuilder(digProvider);
+        directBuilder.setDirectSignature(true);
+        gen.addSignerInfoGenerator(directBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_signKP.getPrivate()), _signCert));
+
+        gen.addCertificates(new JcaCertStore(certList));
+
+        byte[] sigBlock = gen.generate(new CMSProcessableByteArray(data), false).getEncoded();
+
+        // content which may only be written from the thread that created it
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger writeCount = new AtomicInteger();
+        CMSProcessable content = new CMSProcessable()
+        {
+            public void write(OutputStream out)
+                throws IOException
+            {
+                if (Thread.currentThread() != caller)
+                {
+                    throw new IOException("content written from another thread");
+                }
+                writeCount.incrementAndGet();
+                out.write(data);
+            }
+
+            public Object getContent()
+            {
+                return data;
+            }
+        };
+
+        CMSSignedData s = new CMSSignedData(content, sigBlock);
+        final Store certStore = s.getCertificates();
+
+        SignerInformationVerifierProvider vProv = new SignerInformationVerifierProvider()
+        {
+            public SignerInformationVerifier get(SignerId signerId)
+                throws OperatorCreationException
+            {
+                X509CertificateHolder cert = (X509CertificateHolder)certStore.getMatches(signerId).iterator().next();
+
+                try
+                {
+                    return new JcaSimpleSignerInfoVerifierBuilder().setProvider(BC).build(cert);
+                }
+                catch (CertificateException e)
+                {
+                    throw new OperatorCreationException(e.getMessage(), e);
+                }
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            assertTrue(s.verifySignatures(vProv, true, executor));
+
+            // once for all the digests, once for the signer without signed attributes
+            assertEquals(2, writeCount.get());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testConcurrentVerificationRejected()
+        throws Exception
+    {
+        List                certList = new ArrayList();
+        CMSTypedData        msg = new CMSProcessableByteArray("Hello World!".getBytes());
+
+        certList.add(_origCert);
+        certList.add(_signCert);
+
+        CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+
+        DigestCalculatorProvider digProvider = new JcaDigestCalculatorProviderBuilder().setProvider(BC).build();
+        JcaSignerInfoGeneratorBuilder signerInfoGeneratorBuilder = new JcaSignerInfoGeneratorBuilder(digProvider);
+
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_signKP.getPrivate()), _signCert));
+        gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(new JcaContentSignerBuilder("SHA1withRSA").setProvider(BC).build(_origKP.getPrivate()), _origCert));
+
+        gen.addCertificates(new JcaCertStore(certList));
+
+        CMSSignedData s = new CMSSignedData(gen.generate(msg, true).getEncoded());
+        final Store certStore = s.getCertificates();
+
+        SignerInformationVerifierProvider vProv = new SignerInformationVerifierProvider()
+        {
+            public SignerInformationVerifier get(SignerId signerId)
+                throws OperatorCreationException
+            {
+                X509CertificateHolder cert = (X509CertificateHolder)certStore.getMatches(signerId).iterator().next();
+
+                try
+                {
+                    return new JcaSimpleSignerInfoVerifierBuilder().setProvider(BC).build(cert);
+                }
+                catch (CertificateException e)
+                {
+                    throw new OperatorCreationException(e.getMessage(), e);
+                }
+            }
+        };
+
+        // accepts the first task, rejects the rest
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        final AtomicInteger accepted = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        Executor executor = new Executor()
+        {
+            public void execute(Runnable command)
+            {
+                if (accepted.get() != 0)
+                {
+                    rejected.incrementAndGet();
+                    throw new RejectedExecutionException("saturated");
+                }
+                accepted.incrementAndGet();
+                pool.execute(command);
+            }
+        };
+
+        try
+        {
+            // rejected verifications are carried out on the calling thread
+            assertTrue(s.verifySignatures(vProv, true, executor));
+            assertEquals(1, accepted.get());
+            assertEquals(2, rejected.get());
+
+            // an executor which has been shut down rejects everything
+            pool.shutdown();
+            s = new CMSSignedData(s.getEncoded());
+            assertTrue(s.verifySignatures(vProv, true, pool));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
     public void testSHA1WithRSACounterSignature()
         throws Exception
     {
@@ -0,0 +1,162 @@
+package org.bouncycastle.jcajce;
+
+import java.security.cert.CRLSelector;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLSelector;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.util.Selector;
+
+/**
+ * A CRL store which indexes its CRLs by issuer.
+ * <p>
+ * Queries with a {@link PKIXCRLStoreSelector} or {@link X509CRLSelector} which set the issuers criterion (as
+ * the selectors used in path validation do) are answered from the index, with the full selector then applied
+ * to the candidates found. Any other query is answered by matching against every CRL. Results are returned in
+ * the order the CRLs were passed to the constructor.
+ * </p>
+ */
+public class IndexedCRLStore
+    implements PKIXCRLStore<X509CRL>, Iterable<X509CRL>
+{
+    private final List<X509CRL> crls;
+    private final Map<X500Principal, List<Integer>> byIssuer = new HashMap<X500Principal, List<Integer>>();
+
+    /**
+     * Basic constructor.
+     *
+     * @param collection initial contents for the store, this is copied. Objects other than X.509 CRLs are
+     *                   ignored.
+     */
+    public IndexedCRLStore(Collection<?> collection)
+    {
+        List<X509CRL> crls = new ArrayList<X509CRL>(collection.size());
+
+        for (Iterator<?> it = collection.iterator(); it.hasNext();)
+        {
+            Object obj = it.next();
+            if (obj instanceof X509CRL)
+            {
+                X509CRL crl = (X509CRL)obj;
+
+                IndexedCertStore.addTo(byIssuer, crl.getIssuerX500Principal(), Integer.valueOf(crls.size()));
+
+                crls.add(crl);
+            }
+        }
+
+        this.crls = crls;
+    }
+
+    /**
+     * Return the matches in the store for the passed in selector.
+     *
+     * @param selector the selector to match against.
+     * @return a possibly empty collection of matching CRLs.
+     */
+    public Collection<X509CRL> getMatches(Selector<X509CRL> selector)
+    {
+        if (selector == null)
+        {
+            return new ArrayList<X509CRL>(crls);
+        }
+
+        Collection<X509CRL> candidates = crls;
+        if (selector instanceof PKIXCRLStoreSelector)
+        {
+            CRLSelector baseSelector = ((PKIXCRLStoreSelector)selector).getBaseSelector();
+            if (baseSelector instanceof X509CRLSelector)
+            {
+                candidates = getCandidates((X509CRLSelector)baseSelector);
+            }
+        }
+
+        List<X509CRL> matches = new ArrayList<X509CRL>();
+        for (Iterator<X509CRL> it = candidates.iterator(); it.hasNext();)
+        {
+            X509CRL crl = it.next();
+            if (selector.match(crl))
+            {
+                matches.add(crl);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Return the CRLs in the store matching the passed in CRLSelector.
+     *
+     * @param selector the selector to match against, null for all CRLs.
+     * @return a possibly empty collection of matching CRLs.
+     */
+    public Collection<X509CRL> getCRLs(CRLSelector selector)
+    {
+        if (selector == null)
+        {
+            return new ArrayList<X509CRL>(crls);
+        }
+
+        Collection<X509CRL> candidates = crls;
+        if (selector instanceof X509CRLSelector)
+        {
+            candidates = getCandidates((X509CRLSelector)selector);
+        }
+
+        List<X509CRL> matches = new ArrayList<X509CRL>();
+        for (Iterator<X509CRL> it = candidates.iterator(); it.hasNext();)
+        {
+            X509CRL crl = it.next();
+            if (selector.match(crl))
+            {
+                matches.add(crl);
+            }
+        }
+        return matches;
+    }
+
+    public int size()
+    {
+        return crls.size();
+    }
+
+    public Iterator<X509CRL> iterator()
+    {
+        return getMatches(null).iterator();
+    }
+
+    private Collection<X509CRL> getCandidates(X509CRLSelector selector)
+    {
+        Collection<X500Principal> issuers = selector.getIssuers();
+        if (issuers == null)
+        {
+            return crls;
+        }
+
+        List<Integer> positions = new ArrayList<Integer>();
+        for (Iterator<X500Principal> it = issuers.iterator(); it.hasNext();)
+        {
+            positions.addAll(IndexedCertStore.getFrom(byIssuer, it.next()));
+        }
+
+        if (issuers.size() > 1)
+        {
+            // back into the original order
+            Collections.sort(positions);
+        }
+
+        List<X509CRL> candidates = new ArrayList<X509CRL>(positions.size());
+        for (int i = 0; i != positions.size(); i++)
+        {
+            candidates.add(crls.get(positions.get(i).intValue()));
+        }
+        return candidates;
+    }
+}
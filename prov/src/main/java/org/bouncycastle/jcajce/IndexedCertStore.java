@@ -0,0 +1,263 @@
+package org.bouncycastle.jcajce;
+
+import java.math.BigInteger;
+import java.security.cert.CertSelector;
+import java.security.cert.X509CertSelector;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Selector;
+
+/**
+ * A certificate store which indexes its certificates by subject, subject key identifier, issuer and serial
+ * number, and encoding.
+ * <p>
+ * Queries with a {@link PKIXCertStoreSelector} or {@link X509CertSelector} which set one of those criteria
+ * (as the selectors used in path building do) are answered from the index, with the full selector then
+ * applied to the candidates found. Any other query is answered by matching against every certificate, as
+ * {@link org.bouncycastle.util.CollectionStore} does. Results are returned in the order the certificates were
+ * passed to the constructor.
+ * </p>
+ */
+public class IndexedCertStore
+    implements PKIXCertStore<X509Certificate>, Iterable<X509Certificate>
+{
+    private final List<X509Certificate> certificates;
+    private final Map<X509Certificate, List<X509Certificate>> byEncoding = new HashMap<X509Certificate, List<X509Certificate>>();
+    private final Map<X500Principal, List<X509Certificate>> bySubject = new HashMap<X500Principal, List<X509Certificate>>();
+    private final Map<KeyId, List<X509Certificate>> bySubjectKeyId = new HashMap<KeyId, List<X509Certificate>>();
+    private final Map<IssuerSerial, List<X509Certificate>> byIssuerSerial = new HashMap<IssuerSerial, List<X509Certificate>>();
+
+    /**
+     * Basic constructor.
+     *
+     * @param collection initial contents for the store, this is copied. Objects other than X.509 certificates
+     *                   are ignored.
+     */
+    public IndexedCertStore(Collection<?> collection)
+    {
+        List<X509Certificate> certificates = new ArrayList<X509Certificate>(collection.size());
+
+        for (Iterator<?> it = collection.iterator(); it.hasNext();)
+        {
+            Object obj = it.next();
+            if (obj instanceof X509Certificate)
+            {
+                X509Certificate cert = (X509Certificate)obj;
+
+                certificates.add(cert);
+
+                addTo(byEncoding, cert, cert);
+                addTo(bySubject, cert.getSubjectX500Principal(), cert);
+                addTo(byIssuerSerial, new IssuerSerial(cert.getIssuerX500Principal(), cert.getSerialNumber()), cert);
+
+                byte[] keyId = getSubjectKeyIdentifier(cert);
+                if (keyId != null)
+                {
+                    addTo(bySubjectKeyId, new KeyId(keyId), cert);
+                }
+            }
+        }
+
+        this.certificates = certificates;
+    }
+
+    /**
+     * Return the matches in the store for the passed in selector.
+     *
+     * @param selector the selector to match against.
+     * @return a possibly empty collection of matching certificates.
+     */
+    public Collection<X509Certificate> getMatches(Selector<X509Certificate> selector)
+    {
+        if (selector == null)
+        {
+            return new ArrayList<X509Certificate>(certificates);
+        }
+
+        Collection<X509Certificate> candidates = certificates;
+        if (selector instanceof PKIXCertStoreSelector)
+        {
+            CertSelector baseSelector = ((PKIXCertStoreSelector)selector).getBaseSelector();
+            if (baseSelector instanceof X509CertSelector)
+            {
+                candidates = getCandidates((X509CertSelector)baseSelector);
+            }
+        }
+
+        List<X509Certificate> matches = new ArrayList<X509Certificate>();
+        for (Iterator<X509Certificate> it = candidates.iterator(); it.hasNext();)
+        {
+            X509Certificate cert = it.next();
+            if (selector.match(cert))
+            {
+                matches.add(cert);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Return the certificates in the store matching the passed in CertSelector.
+     *
+     * @param selector the selector to match against, null for all certificates.
+     * @return a possibly empty collection of matching certificates.
+     */
+    public Collection<X509Certificate> getCertificates(CertSelector selector)
+    {
+        if (selector == null)
+        {
+            return new ArrayList<X509Certificate>(certificates);
+        }
+
+        Collection<X509Certificate> candidates = certificates;
+        if (selector instanceof X509CertSelector)
+        {
+            candidates = getCandidates((X509CertSelector)selector);
+        }
+
+        List<X509Certificate> matches = new ArrayList<X509Certificate>();
+        for (Iterator<X509Certificate> it = candidates.iterator(); it.hasNext();)
+        {
+            X509Certificate cert = it.next();
+            if (selector.match(cert))
+            {
+                matches.add(cert);
+            }
+        }
+        return matches;
+    }
+
+    public int size()
+    {
+        return certificates.size();
+    }
+
+    public Iterator<X509Certificate> iterator()
+    {
+        return getMatches(null).iterator();
+    }
+
+    private Collection<X509Certificate> getCandidates(X509CertSelector selector)
+    {
+        if (selector.getCertificate() != null)
+        {
+            return getFrom(byEncoding, selector.getCertificate());
+        }
+        if (selector.getIssuer() != null && selector.getSerialNumber() != null)
+        {
+            return getFrom(byIssuerSerial, new IssuerSerial(selector.getIssuer(), selector.getSerialNumber()));
+        }
+        if (selector.getSubjectKeyIdentifier() != null)
+        {
+            return getFrom(bySubjectKeyId, new KeyId(selector.getSubjectKeyIdentifier()));
+        }
+        if (selector.getSubject() != null)
+        {
+            return getFrom(bySubject, selector.getSubject());
+        }
+        return certificates;
+    }
+
+    /*
+     * The DER encoding of the SubjectKeyIdentifier (i.e. the extnValue), as X509CertSelector expects it.
+     */
+    private static byte[] getSubjectKeyIdentifier(X509Certificate cert)
+    {
+        byte[] extValue = cert.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+        if (extValue == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return ASN1OctetString.getInstance(extValue).getOctets();
+        }
+        catch (IllegalArgumentException e)
+        {
+            // malformed extension - the certificate can't match on key identifier anyway
+            return null;
+        }
+    }
+
+    static <K, V> void addTo(Map<K, List<V>> index, K key, V value)
+    {
+        List<V> values = index.get(key);
+        if (values == null)
+        {
+            values = new ArrayList<V>(1);
+            index.put(key, values);
+        }
+        values.add(value);
+    }
+
+    static <K, V> List<V> getFrom(Map<K, List<V>> index, K key)
+    {
+        List<V> values = index.get(key);
+
+        return values == null ? Collections.<V>emptyList() : values;
+    }
+
+    private static final class KeyId
+    {
+        private final byte[] keyId;
+        private final int hashCode;
+
+        KeyId(byte[] keyId)
+        {
+            this.keyId = keyId;
+            this.hashCode = Arrays.hashCode(keyId);
+        }
+
+        public boolean equals(Object o)
+        {
+            return o instanceof KeyId && Arrays.areEqual(keyId, ((KeyId)o).keyId);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+
+    private static final class IssuerSerial
+    {
+        private final X500Principal issuer;
+        private final BigInteger serialNumber;
+
+        IssuerSerial(X500Principal issuer, BigInteger serialNumber)
+        {
+            this.issuer = issuer;
+            this.serialNumber = serialNumber;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof IssuerSerial))
+            {
+                return false;
+            }
+
+            IssuerSerial other = (IssuerSerial)o;
+
+            return serialNumber.equals(other.serialNumber) && issuer.equals(other.issuer);
+        }
+
+        public int hashCode()
+        {
+            return issuer.hashCode() ^ serialNumber.hashCode();
+        }
+    }
+}
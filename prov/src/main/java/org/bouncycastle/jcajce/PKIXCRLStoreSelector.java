@@ -311,6 +311,11 @@ public X509Certificate getCertificateChecking()
         return null;
     }
 
+    CRLSelector getBaseSelector()
+    {
+        return baseSelector;
+    }
+
     public static Collection<? extends CRL> getCRLs(final PKIXCRLStoreSelector selector, CertStore certStore)
         throws CertStoreException
     {
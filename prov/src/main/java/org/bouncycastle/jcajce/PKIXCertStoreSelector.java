@@ -78,6 +78,11 @@ public Object clone()
         return new PKIXCertStoreSelector(baseSelector);
     }
 
+    CertSelector getBaseSelector()
+    {
+        return baseSelector;
+    }
+
     public static Collection<? extends Certificate> getCertificates(final PKIXCertStoreSelector selector, CertStore certStore)
         throws CertStoreException
     {
@@ -40,6 +40,7 @@
 import org.bouncycastle.asn1.util.ASN1Dump;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLEntryIndex;
 import org.bouncycastle.asn1.x509.CRLDistPoint;
 import org.bouncycastle.asn1.x509.CRLNumber;
 import org.bouncycastle.asn1.x509.CertificateList;
@@ -76,6 +77,8 @@
     protected byte[] sigAlgParams;
     protected boolean isIndirect;
 
+    private volatile CRLEntryIndex entryIndex;
+
     X509CRLImpl(JcaJceHelper bcHelper, CertificateList c, String sigAlgName, byte[] sigAlgParams, boolean isIndirect)
     {
         this.bcHelper = bcHelper;
@@ -445,32 +448,44 @@ private Set loadCRLEntries()
         return entrySet;
     }
 
-    public X509CRLEntry getRevokedCertificate(BigInteger serialNumber)
+    /**
+     * Return the serial number index of the CRL entries, building it on first use.
+     */
+    private CRLEntryIndex getEntryIndex()
     {
-        Enumeration certs = c.getRevokedCertificateEnumeration();
-
-        X500Name previousCertificateIssuer = null; // the issuer
-        while (certs.hasMoreElements())
+        CRLEntryIndex index = entryIndex;
+        if (null == index)
         {
-            TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry)certs.nextElement();
+            // NOTE: Any race just builds an equivalent index more than once
+            index = new CRLEntryIndex(c.getTBSCertList(), isIndirect);
+            entryIndex = index;
+        }
+        return index;
+    }
 
-            if (entry.getUserCertificate().hasValue(serialNumber))
-            {
-                return new X509CRLEntryObject(entry, isIndirect, previousCertificateIssuer);
-            }
+    /**
+     * Return the name of the certificate issuer in effect for an entry, or null if it is the CRL issuer.
+     */
+    private static X500Name getCertificateIssuerName(CRLEntryIndex index, int position, boolean inclusive)
+    {
+        GeneralNames certificateIssuer = index.getCertificateIssuer(position, inclusive);
 
-            if (isIndirect && entry.hasExtensions())
-            {
-                Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+        return null == certificateIssuer ? null : X500Name.getInstance(certificateIssuer.getNames()[0].getName());
+    }
 
-                if (currentCaName != null)
-                {
-                    previousCertificateIssuer = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
-                }
-            }
+    public X509CRLEntry getRevokedCertificate(BigInteger serialNumber)
+    {
+        CRLEntryIndex index = getEntryIndex();
+
+        int position = index.findFirst(serialNumber);
+        if (position < 0)
+        {
+            return null;
         }
 
-        return null;
+        X500Name previousCertificateIssuer = getCertificateIssuerName(index, position, false);
+
+        return new X509CRLEntryObject(index.getEntry(position), isIndirect, previousCertificateIssuer);
     }
 
     public Set getRevokedCertificates()
@@ -644,59 +659,46 @@ public boolean isRevoked(Certificate cert)
             throw new IllegalArgumentException("X.509 CRL used with non X.509 Cert");
         }
 
-        Enumeration certs = c.getRevokedCertificateEnumeration();
-
-        X500Name caName = c.getIssuer();
-
-        if (certs.hasMoreElements())
+        if (c.getTBSCertList().getRevokedCertificatesCount() < 1)
         {
-            BigInteger serial = ((X509Certificate)cert).getSerialNumber();
+            return false;
+        }
 
-            while (certs.hasMoreElements())
-            {
-                TBSCertList.CRLEntry entry = TBSCertList.CRLEntry.getInstance(certs.nextElement());
+        CRLEntryIndex index = getEntryIndex();
 
-                if (isIndirect && entry.hasExtensions())
-                {
-                    Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+        BigInteger serial = ((X509Certificate)cert).getSerialNumber();
 
-                    if (currentCaName != null)
-                    {
-                        caName = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
-                    }
-                }
-
-                if (entry.getUserCertificate().hasValue(serial))
-                {
-                    X500Name issuer;
+        int position = index.findFirst(serial);
+        if (position < 0)
+        {
+            return false;
+        }
 
-                    if (cert instanceof X509Certificate)
-                    {
-                        issuer = X500Name.getInstance(((X509Certificate)cert).getIssuerX500Principal().getEncoded());
-                    }
-                    else
-                    {
-                        try
-                        {
-                            issuer = org.bouncycastle.asn1.x509.Certificate.getInstance(cert.getEncoded()).getIssuer();
-                        }
-                        catch (CertificateEncodingException e)
-                        {
-                            throw Exceptions.illegalArgumentException("Cannot process certificate", e);
-                        }
-                    }
+        X500Name caName = getCertificateIssuerName(index, position, true);
+        if (null == caName)
+        {
+            caName = c.getIssuer();
+        }
 
-                    if (!caName.equals(issuer))
-                    {
-                        return false;
-                    }
+        X500Name issuer;
 
-                    return true;
-                }
+        if (cert instanceof X509Certificate)
+        {
+            issuer = X500Name.getInstance(((X509Certificate)cert).getIssuerX500Principal().getEncoded());
+        }
+        else
+        {
+            try
+            {
+                issuer = org.bouncycastle.asn1.x509.Certificate.getInstance(cert.getEncoded()).getIssuer();
+            }
+            catch (CertificateEncodingException e)
+            {
+                throw Exceptions.illegalArgumentException("Cannot process certificate", e);
             }
         }
 
-        return false;
+        return caName.equals(issuer);
     }
 
     static byte[] getExtensionOctets(CertificateList c, ASN1ObjectIdentifier oid)
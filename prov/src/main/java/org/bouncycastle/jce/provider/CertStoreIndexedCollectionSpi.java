@@ -0,0 +1,106 @@
+package org.bouncycastle.jce.provider;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.cert.CRL;
+import java.security.cert.CRLSelector;
+import java.security.cert.CertSelector;
+import java.security.cert.CertStoreException;
+import java.security.cert.CertStoreParameters;
+import java.security.cert.CertStoreSpi;
+import java.security.cert.Certificate;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.bouncycastle.jcajce.IndexedCRLStore;
+import org.bouncycastle.jcajce.IndexedCertStore;
+
+/**
+ * A collection CertStore which indexes its certificates and CRLs (see {@link IndexedCertStore} and
+ * {@link IndexedCRLStore}), so that the lookups made during path building don't need to match against every
+ * object in the collection.
+ * <p>
+ * Unlike the "Collection" CertStore, the collection passed in is copied when the store is created, so later
+ * changes to it are not seen by the store.
+ * </p>
+ */
+public class CertStoreIndexedCollectionSpi
+    extends CertStoreSpi
+{
+    private final IndexedCertStore certStore;
+    private final IndexedCRLStore crlStore;
+    private final List otherCerts = new ArrayList();
+    private final List otherCRLs = new ArrayList();
+
+    public CertStoreIndexedCollectionSpi(CertStoreParameters params)
+        throws InvalidAlgorithmParameterException
+    {
+        super(params);
+
+        if (!(params instanceof CollectionCertStoreParameters))
+        {
+            throw new InvalidAlgorithmParameterException("org.bouncycastle.jce.provider.CertStoreIndexedCollectionSpi: parameter must be a CollectionCertStoreParameters object\n" +  params.toString());
+        }
+
+        Collection collection = ((CollectionCertStoreParameters)params).getCollection();
+
+        for (Iterator it = collection.iterator(); it.hasNext();)
+        {
+            Object obj = it.next();
+
+            if (obj instanceof Certificate && !(obj instanceof X509Certificate))
+            {
+                otherCerts.add(obj);
+            }
+            else if (obj instanceof CRL && !(obj instanceof X509CRL))
+            {
+                otherCRLs.add(obj);
+            }
+        }
+
+        this.certStore = new IndexedCertStore(collection);
+        this.crlStore = new IndexedCRLStore(collection);
+    }
+
+    public Collection engineGetCertificates(
+        CertSelector selector)
+        throws CertStoreException
+    {
+        List col = new ArrayList(certStore.getCertificates(selector));
+
+        for (Iterator it = otherCerts.iterator(); it.hasNext();)
+        {
+            Certificate cert = (Certificate)it.next();
+
+            if (selector == null || selector.match(cert))
+            {
+                col.add(cert);
+            }
+        }
+
+        return col;
+    }
+
+    public Collection engineGetCRLs(
+        CRLSelector selector)
+        throws CertStoreException
+    {
+        List col = new ArrayList(crlStore.getCRLs(selector));
+
+        for (Iterator it = otherCRLs.iterator(); it.hasNext();)
+        {
+            CRL crl = (CRL)it.next();
+
+            if (selector == null || selector.match(crl))
+            {
+                col.add(crl);
+            }
+        }
+
+        return col;
+    }
+}
@@ -3,7 +3,6 @@
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URLConnection;
 import java.security.cert.CRL;
@@ -12,13 +11,11 @@
 import java.security.cert.X509CRL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 
 import javax.naming.Context;
 import javax.naming.NamingException;
@@ -38,85 +35,72 @@
 {
     private static final int DEFAULT_TIMEOUT = 15000;
 
-    private static Map<URI, CacheEntry> cache =
-        Collections.synchronizedMap(new WeakHashMap<URI, CacheEntry>());
-
-    static synchronized PKIXCRLStore getCrl(CertificateFactory certFact, Date validDate, URI distributionPoint)
-        throws IOException, CRLException
+    static final RevocationCache<URI, PKIXCRLStore> cache = new RevocationCache<URI, PKIXCRLStore>()
     {
-        PKIXCRLStore crlStore = null;
-
-        CacheEntry entry = cache.get(distributionPoint);
-        if (entry != null)
+        Date getNextUpdate(URI distributionPoint, PKIXCRLStore crlStore)
         {
-            crlStore = entry.ref.get();
+            Date earliest = null;
+
+            for (Iterator it = crlStore.getMatches(null).iterator(); it.hasNext(); )
+            {
+                Date nextUpdate = ((X509CRL)it.next()).getNextUpdate();
+                if (nextUpdate != null && (earliest == null || nextUpdate.before(earliest)))
+                {
+                    earliest = nextUpdate;
+                }
+            }
+
+            return earliest;
         }
 
-        if (crlStore != null)
+        long getMaxAgeMillis()
         {
-            boolean isExpired = false;
-
             // Optional caller-supplied TTL — never extends validity, only shortens it.
-            int ttlSeconds = Properties.asInteger(Properties.X509_CRL_CACHE_TTL, 0);
-            if (ttlSeconds > 0
-                && (System.currentTimeMillis() - entry.loadTimeMillis) > (long)ttlSeconds * 1000L)
-            {
-                isExpired = true;
-            }
+            return (long)Properties.asInteger(Properties.X509_CRL_CACHE_TTL, 0) * 1000L;
+        }
+    };
 
-            if (!isExpired)
+    static PKIXCRLStore getCrl(final CertificateFactory certFact, Date validDate, final URI distributionPoint)
+        throws IOException, CRLException
+    {
+        try
+        {
+            return cache.get(distributionPoint, validDate, new RevocationCache.Loader<PKIXCRLStore>()
             {
-                for (Iterator it = crlStore.getMatches(null).iterator(); it.hasNext(); )
+                public PKIXCRLStore load()
+                    throws IOException, CRLException
                 {
-                    X509CRL crl = (X509CRL)it.next();
+                    Collection crls;
 
-                    Date nextUpdate = crl.getNextUpdate();
-                    if (nextUpdate != null && nextUpdate.before(validDate))
+                    if (distributionPoint.getScheme().equals("ldap"))
                     {
-                        isExpired = true;
-                        break;
+                        crls = getCrlsFromLDAP(certFact, distributionPoint);
+                    }
+                    else
+                    {
+                        // http, https, ftp
+                        crls = getCrls(certFact, distributionPoint);
                     }
-                }
-            }
-
-            if (!isExpired)
-            {
-                return crlStore;
-            }
 
-            // Drop the stale entry now so a downstream fetch failure doesn't
-            // leave a known-expired CacheEntry in the map.
-            cache.remove(distributionPoint);
+                    return new LocalCRLStore(new CollectionStore<CRL>(crls));
+                }
+            });
         }
-
-        Collection crls;
-
-        if (distributionPoint.getScheme().equals("ldap"))
+        catch (IOException e)
         {
-            crls = getCrlsFromLDAP(certFact, distributionPoint);
+            throw e;
         }
-        else
+        catch (CRLException e)
         {
-            // http, https, ftp
-            crls = getCrls(certFact, distributionPoint);
+            throw e;
         }
-
-        LocalCRLStore localCRLStore = new LocalCRLStore(new CollectionStore<CRL>(crls));
-
-        cache.put(distributionPoint, new CacheEntry(localCRLStore));
-
-        return localCRLStore;
-    }
-
-    private static final class CacheEntry
-    {
-        final WeakReference<PKIXCRLStore> ref;
-        final long loadTimeMillis;
-
-        CacheEntry(PKIXCRLStore store)
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
         {
-            this.ref = new WeakReference<PKIXCRLStore>(store);
-            this.loadTimeMillis = System.currentTimeMillis();
+            throw new CRLException("unable to fetch CRL: " + e.getMessage(), e);
         }
     }
 
@@ -161,11 +145,14 @@ private static Collection getCrls(CertificateFactory certFact, URI distributionP
 
         InputStream crlIn = urlConnection.getInputStream();
 
-        Collection crls = certFact.generateCRLs(crlIn);
-
-        crlIn.close();
-
-        return crls;
+        try
+        {
+            return certFact.generateCRLs(crlIn);
+        }
+        finally
+        {
+            crlIn.close();
+        }
     }
 
     private static class LocalCRLStore<T extends CRL>
@@ -3,7 +3,6 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -12,12 +11,8 @@
 import java.security.cert.Extension;
 import java.security.cert.X509Certificate;
 import java.text.ParseException;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1GeneralizedTime;
@@ -48,43 +43,71 @@
     private static final int DEFAULT_TIMEOUT = 15000;
     private static final int DEFAULT_MAX_RESPONSE_SIZE = 32 * 1024;
 
-    private static Map<URI, WeakReference<Map<CertID, OCSPResponse>>> cache
-        = Collections.synchronizedMap(new WeakHashMap<URI, WeakReference<Map<CertID, OCSPResponse>>>());
+    static final RevocationCache<ResponseKey, OCSPResponse> cache = new RevocationCache<ResponseKey, OCSPResponse>()
+    {
+        Date getNextUpdate(ResponseKey key, OCSPResponse response)
+        {
+            SingleResponse singleResponse = findSingleResponse(getBasicResponse(response), key.certID);
 
-    static synchronized OCSPResponse getOcspResponse(
-        CertID certID, PKIXCertRevocationCheckerParameters parameters,
-        URI ocspResponder, X509Certificate responderCert, List<Extension> ocspExtensions,
-        JcaJceHelper helper)
+            try
+            {
+                return (singleResponse == null || singleResponse.getNextUpdate() == null)
+                    ? null : singleResponse.getNextUpdate().getDate();
+            }
+            catch (ParseException e)
+            {
+                // this should never happen, but...
+                return new Date(0L);
+            }
+        }
+    };
+
+    static OCSPResponse getOcspResponse(
+        final CertID certID, final PKIXCertRevocationCheckerParameters parameters,
+        final URI ocspResponder, final X509Certificate responderCert, final List<Extension> ocspExtensions,
+        final JcaJceHelper helper)
         throws CertPathValidatorException
     {
-        Map<CertID, OCSPResponse> responseMap = null;
-
-        WeakReference<Map<CertID, OCSPResponse>> markerRef = cache.get(ocspResponder);
-        if (markerRef != null)
+        try
         {
-            responseMap = markerRef.get();
+            return cache.get(new ResponseKey(ocspResponder, certID), parameters.getValidDate(),
+                new RevocationCache.Loader<OCSPResponse>()
+                {
+                    public OCSPResponse load()
+                        throws CertPathValidatorException
+                    {
+                        return fetchOcspResponse(certID, parameters, ocspResponder, responderCert, ocspExtensions,
+                            helper);
+                    }
+                });
         }
-
-        if (responseMap != null)
+        catch (CertPathValidatorException e)
         {
-            OCSPResponse response = responseMap.get(certID);
-            if (response != null)
+            if (e.getCertPath() != parameters.getCertPath())
             {
-                BasicOCSPResponse basicResp = BasicOCSPResponse.getInstance(
-                    ASN1OctetString.getInstance(response.getResponseBytes().getResponse()).getOctets());
-
-                boolean matchFound = isCertIDFoundAndCurrent(basicResp, parameters.getValidDate(), certID);
-                if (matchFound)
-                {
-                    return response;
-                }
-                else
-                {
-                    responseMap.remove(certID);
-                }
+                // the fetch was made on behalf of another thread's validation
+                throw new CertPathValidatorException(e.getMessage(), e.getCause(), parameters.getCertPath(),
+                    parameters.getIndex());
             }
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new CertPathValidatorException("unable to fetch OCSP response: " + e.getMessage(), e,
+                parameters.getCertPath(), parameters.getIndex());
         }
+    }
 
+    private static OCSPResponse fetchOcspResponse(
+        CertID certID, PKIXCertRevocationCheckerParameters parameters,
+        URI ocspResponder, X509Certificate responderCert, List<Extension> ocspExtensions,
+        JcaJceHelper helper)
+        throws CertPathValidatorException
+    {
         URL ocspUrl;
         try
         {
@@ -182,23 +205,6 @@ static synchronized OCSPResponse getOcspResponse(
                         "OCSP response failed to validate", null, parameters.getCertPath(), parameters.getIndex());
                 }
 
-                markerRef = cache.get(ocspResponder);
-                if (markerRef != null)
-                {
-                    responseMap = markerRef.get();
-                }
-
-                if (responseMap != null)
-                {
-                    responseMap.put(certID, response);
-                }
-                else
-                {
-                    responseMap = new HashMap<CertID, OCSPResponse>();
-                    responseMap.put(certID, response);
-                    cache.put(ocspResponder, new WeakReference<Map<CertID, OCSPResponse>>(responseMap));
-                }
-
                 return response;
             }
             else
@@ -215,7 +221,13 @@ static synchronized OCSPResponse getOcspResponse(
         }
     }
 
-    private static boolean isCertIDFoundAndCurrent(BasicOCSPResponse basicResp, Date validDate, CertID certID)
+    private static BasicOCSPResponse getBasicResponse(OCSPResponse response)
+    {
+        return BasicOCSPResponse.getInstance(
+            ASN1OctetString.getInstance(response.getResponseBytes().getResponse()).getOctets());
+    }
+
+    private static SingleResponse findSingleResponse(BasicOCSPResponse basicResp, CertID certID)
     {
         ResponseData responseData = ResponseData.getInstance(basicResp.getTbsResponseData());
         ASN1Sequence s = responseData.getResponses();
@@ -226,24 +238,68 @@ private static boolean isCertIDFoundAndCurrent(BasicOCSPResponse basicResp, Date
 
             if (certID.equals(resp.getCertID()))
             {
-                ASN1GeneralizedTime nextUp = resp.getNextUpdate();
-                try
-                {
-                    if (nextUp != null && validDate.after(nextUp.getDate()))
-                    {
-                        return false;
-                    }
-                }
-                catch (ParseException e)
-                {
-                    // this should never happen, but...
-                    return false;
-                }
+                return resp;
+            }
+        }
 
+        return null;
+    }
+
+    private static boolean isCertIDFoundAndCurrent(BasicOCSPResponse basicResp, Date validDate, CertID certID)
+    {
+        SingleResponse resp = findSingleResponse(basicResp, certID);
+        if (resp == null)
+        {
+            return false;
+        }
+
+        ASN1GeneralizedTime nextUp = resp.getNextUpdate();
+        try
+        {
+            if (nextUp != null && validDate.after(nextUp.getDate()))
+            {
+                return false;
+            }
+        }
+        catch (ParseException e)
+        {
+            // this should never happen, but...
+            return false;
+        }
+
+        return true;
+    }
+
+    static final class ResponseKey
+    {
+        private final URI ocspResponder;
+        private final CertID certID;
+
+        ResponseKey(URI ocspResponder, CertID certID)
+        {
+            this.ocspResponder = ocspResponder;
+            this.certID = certID;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (o == this)
+            {
                 return true;
             }
+            if (!(o instanceof ResponseKey))
+            {
+                return false;
+            }
+
+            ResponseKey other = (ResponseKey)o;
+
+            return ocspResponder.equals(other.ocspResponder) && certID.equals(other.certID);
         }
 
-        return false;
+        public int hashCode()
+        {
+            return ocspResponder.hashCode() * 31 + certID.hashCode();
+        }
     }
 }
@@ -0,0 +1,380 @@
+package org.bouncycastle.jce.provider;
+
+import java.lang.ref.SoftReference;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bouncycastle.util.Properties;
+
+/**
+ * A concurrent, size-bounded cache of revocation data (CRLs, OCSP responses), shared by all threads.
+ * <p>
+ * A cached value is used while its nextUpdate is not before the validation date, and a maximum age (if any)
+ * has not passed. Only one fetch is made at a time for a given key, with other threads needing the same key
+ * waiting for its result. An entry that is used after three quarters of its lifetime has passed is refreshed by
+ * the thread that found it, using that thread's loader, while other threads carry on using the cached value, so
+ * that callers are not all held up by a fetch when the value reaches its nextUpdate.
+ * </p>
+ * <p>
+ * Values are softly referenced, so large CRLs can be reclaimed by the garbage collector when memory is short. When
+ * the cache is full, entries whose values have been reclaimed or are past their nextUpdate are evicted first, then
+ * the least recently used.
+ * </p>
+ */
+abstract class RevocationCache<K, V>
+{
+    private static final int DEFAULT_MAX_SIZE = 64;
+
+    interface Loader<V>
+    {
+        V load()
+            throws Exception;
+    }
+
+    private final ConcurrentHashMap<K, Entry<V>> cache = new ConcurrentHashMap<K, Entry<V>>();
+
+    private final AtomicLong hits = new AtomicLong(0L);
+    private final AtomicLong misses = new AtomicLong(0L);
+    private final AtomicLong fetches = new AtomicLong(0L);
+    private final AtomicLong fetchFailures = new AtomicLong(0L);
+    private final AtomicLong refreshes = new AtomicLong(0L);
+    private final AtomicLong evictions = new AtomicLong(0L);
+
+    /**
+     * Return the nextUpdate of a freshly loaded value.
+     *
+     * @return the time the value is due to be superseded, or null if there is none.
+     */
+    abstract Date getNextUpdate(K key, V value);
+
+    /**
+     * Return the maximum time a value may be used for after it was loaded, regardless of its nextUpdate.
+     *
+     * @return the maximum age in milliseconds, or 0 for no limit.
+     */
+    long getMaxAgeMillis()
+    {
+        return 0L;
+    }
+
+    int getMaxSize()
+    {
+        return Math.max(1, Properties.asInteger(Properties.X509_REVOCATION_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * Return the value for key, if one is cached that is current at validDate, otherwise load a new value.
+     *
+     * @param key the key for the value.
+     * @param validDate the date the value is to be valid for.
+     * @param loader the means of loading a new value, if one is needed.
+     * @return the cached or loaded value.
+     * @throws Exception if a value needed to be loaded and the loader failed.
+     */
+    V get(K key, Date validDate, Loader<V> loader)
+        throws Exception
+    {
+        long now = System.currentTimeMillis();
+
+        Entry<V> entry = cache.get(key);
+        if (entry != null)
+        {
+            Loaded<V> loaded = entry.loaded;
+            V value = (loaded == null) ? null : loaded.getValue();
+            if (value != null && !isTooOld(loaded, now) && loaded.isCurrent(validDate))
+            {
+                hits.incrementAndGet();
+                entry.lastAccess = now;
+
+                if (loaded.refreshTime <= now && entry.inflight.get() == null)
+                {
+                    return refresh(key, entry, value, loader);
+                }
+
+                return value;
+            }
+        }
+
+        misses.incrementAndGet();
+
+        return load(key, loader);
+    }
+
+    void clear()
+    {
+        cache.clear();
+    }
+
+    int size()
+    {
+        return cache.size();
+    }
+
+    long getHits()
+    {
+        return hits.get();
+    }
+
+    long getMisses()
+    {
+        return misses.get();
+    }
+
+    long getFetches()
+    {
+        return fetches.get();
+    }
+
+    long getFetchFailures()
+    {
+        return fetchFailures.get();
+    }
+
+    long getRefreshes()
+    {
+        return refreshes.get();
+    }
+
+    long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    private boolean isTooOld(Loaded<V> loaded, long now)
+    {
+        long maxAge = getMaxAgeMillis();
+
+        return maxAge > 0 && (now - loaded.loadTime) > maxAge;
+    }
+
+    private boolean isExpired(Loaded<V> loaded, long now)
+    {
+        return now >= loaded.expiryTime || isTooOld(loaded, now) || loaded.getValue() == null;
+    }
+
+    private V load(K key, Loader<V> loader)
+        throws Exception
+    {
+        for (;;)
+        {
+            Entry<V> entry = cache.get(key);
+            if (entry == null)
+            {
+                Entry<V> newEntry = new Entry<V>();
+
+                entry = cache.putIfAbsent(key, newEntry);
+                if (entry == null)
+                {
+                    entry = newEntry;
+                }
+            }
+
+            FutureTask<V> inflight = entry.inflight.get();
+            if (inflight == null)
+            {
+                FutureTask<V> task = createTask(key, entry, loader);
+                if (!entry.inflight.compareAndSet(null, task))
+                {
+                    continue;
+                }
+
+                inflight = task;
+                inflight.run();
+            }
+
+            try
+            {
+                return inflight.get();
+            }
+            catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception)
+                {
+                    throw (Exception)cause;
+                }
+                throw (Error)cause;
+            }
+        }
+    }
+
+    /*
+     * The value is still current, so if the fetch fails (or another thread is already making it) the cached
+     * value is returned.
+     */
+    private V refresh(K key, Entry<V> entry, V current, Loader<V> loader)
+        throws InterruptedException
+    {
+        FutureTask<V> task = createTask(key, entry, loader);
+        if (!entry.inflight.compareAndSet(null, task))
+        {
+            return current;
+        }
+
+        refreshes.incrementAndGet();
+        task.run();
+
+        try
+        {
+            return task.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof Error)
+            {
+                throw (Error)e.getCause();
+            }
+            return current;
+        }
+    }
+
+    private FutureTask<V> createTask(final K key, final Entry<V> entry, final Loader<V> loader)
+    {
+        final AtomicReference<FutureTask<V>> self = new AtomicReference<FutureTask<V>>();
+
+        FutureTask<V> task = new FutureTask<V>(new Callable<V>()
+        {
+            public V call()
+                throws Exception
+            {
+                try
+                {
+                    fetches.incrementAndGet();
+
+                    V value = loader.load();
+
+                    long now = System.currentTimeMillis();
+                    entry.loaded = new Loaded<V>(value, now, getNextUpdate(key, value));
+                    entry.lastAccess = now;
+
+                    if (cache.get(key) != entry)
+                    {
+                        // removed, or evicted, while loading
+                        cache.putIfAbsent(key, entry);
+                    }
+
+                    evict();
+
+                    return value;
+                }
+                catch (Exception e)
+                {
+                    fetchFailures.incrementAndGet();
+
+                    Loaded<V> loaded = entry.loaded;
+                    if (loaded == null || isExpired(loaded, System.currentTimeMillis()))
+                    {
+                        cache.remove(key, entry);
+                    }
+
+                    throw e;
+                }
+                finally
+                {
+                    entry.inflight.compareAndSet(self.get(), null);
+                }
+            }
+        });
+
+        self.set(task);
+
+        return task;
+    }
+
+    private void evict()
+    {
+        int maxSize = getMaxSize();
+        long now = System.currentTimeMillis();
+
+        while (cache.size() > maxSize)
+        {
+            Map.Entry<K, Entry<V>> oldest = null;
+
+            for (Iterator<Map.Entry<K, Entry<V>>> it = cache.entrySet().iterator(); it.hasNext();)
+            {
+                Map.Entry<K, Entry<V>> candidate = it.next();
+                Entry<V> entry = candidate.getValue();
+
+                // entries still being loaded for the first time are left alone
+                if (entry.loaded == null)
+                {
+                    continue;
+                }
+
+                if (isExpired(entry.loaded, now))
+                {
+                    oldest = candidate;
+                    break;
+                }
+
+                if (oldest == null || entry.lastAccess < oldest.getValue().lastAccess)
+                {
+                    oldest = candidate;
+                }
+            }
+
+            if (oldest == null)
+            {
+                break;
+            }
+
+            if (cache.remove(oldest.getKey(), oldest.getValue()))
+            {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class Entry<V>
+    {
+        final AtomicReference<FutureTask<V>> inflight = new AtomicReference<FutureTask<V>>();
+
+        volatile Loaded<V> loaded;
+        volatile long lastAccess;
+    }
+
+    private static final class Loaded<V>
+    {
+        final SoftReference<V> ref;
+        final long loadTime;
+        final Date nextUpdate;
+        final long expiryTime;
+        final long refreshTime;
+
+        Loaded(V value, long loadTime, Date nextUpdate)
+        {
+            this.ref = new SoftReference<V>(value);
+            this.loadTime = loadTime;
+            this.nextUpdate = nextUpdate;
+
+            if (nextUpdate == null || nextUpdate.getTime() <= loadTime)
+            {
+                // nothing to refresh towards
+                this.expiryTime = nextUpdate == null ? Long.MAX_VALUE : nextUpdate.getTime();
+                this.refreshTime = Long.MAX_VALUE;
+            }
+            else
+            {
+                this.expiryTime = nextUpdate.getTime();
+                this.refreshTime = loadTime + (expiryTime - loadTime) / 4 * 3;
+            }
+        }
+
+        V getValue()
+        {
+            return ref.get();
+        }
+
+        boolean isCurrent(Date validDate)
+        {
+            return nextUpdate == null || !nextUpdate.before(validDate);
+        }
+    }
+}
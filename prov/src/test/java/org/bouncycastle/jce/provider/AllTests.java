@@ -31,6 +31,7 @@ public static Test suite()
 
         suite.addTestSuite(CrlCacheTest.class);
         suite.addTestSuite(MultiValuedRDNEmailTest.class);
+        suite.addTestSuite(RevocationCacheTest.class);
 
         return new BCTestSetup(suite);
     }
@@ -0,0 +1,289 @@
+package org.bouncycastle.jce.provider;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import org.bouncycastle.util.Properties;
+
+/**
+ * Exercises the concurrency, eviction and refresh behaviour of the {@link RevocationCache} underlying
+ * {@link CrlCache} and {@link OcspCache}.
+ */
+public class RevocationCacheTest
+    extends TestCase
+{
+    public String getName()
+    {
+        return "RevocationCache";
+    }
+
+    public void testSingleFlight()
+        throws Exception
+    {
+        final TestCache cache = new TestCache();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Date now = new Date();
+        final TestLoader loader = new TestLoader(new Date(now.getTime() + 100000), release);
+
+        final Object[] results = new Object[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; ++i)
+        {
+            final int index = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        results[index] = cache.get("dp", now, loader);
+                    }
+                    catch (Exception e)
+                    {
+                        results[index] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        // let every thread reach the cache before the (single) fetch completes
+        Thread.sleep(200);
+        release.countDown();
+
+        for (int i = 0; i < threads.length; ++i)
+        {
+            threads[i].join();
+        }
+
+        assertEquals(1, loader.count.get());
+        assertEquals(1, cache.getFetches());
+        for (int i = 0; i < results.length; ++i)
+        {
+            assertSame(results[0], results[i]);
+        }
+
+        assertSame(results[0], cache.get("dp", now, loader));
+        assertEquals(1, loader.count.get());
+        assertTrue(cache.getHits() >= 1);
+    }
+
+    public void testFetchFailure()
+        throws Exception
+    {
+        TestCache cache = new TestCache();
+        Date now = new Date();
+
+        try
+        {
+            cache.get("dp", now, new RevocationCache.Loader<TestValue>()
+            {
+                public TestValue load()
+                    throws IOException
+                {
+                    throw new IOException("unreachable");
+                }
+            });
+            fail("no exception");
+        }
+        catch (IOException e)
+        {
+            assertEquals("unreachable", e.getMessage());
+        }
+
+        assertEquals(1, cache.getFetchFailures());
+        assertEquals(0, cache.size());
+
+        TestLoader loader = new TestLoader(new Date(now.getTime() + 100000), null);
+
+        assertNotNull(cache.get("dp", now, loader));
+        assertEquals(1, cache.size());
+    }
+
+    public void testValidDate()
+        throws Exception
+    {
+        TestCache cache = new TestCache();
+        Date now = new Date();
+        TestLoader loader = new TestLoader(new Date(now.getTime() + 100000), null);
+
+        TestValue value = cache.get("dp", now, loader);
+
+        // still current for an earlier validation date
+        assertSame(value, cache.get("dp", new Date(now.getTime() - 100000), loader));
+
+        // not current past its nextUpdate, so a new value is fetched
+        TestValue later = cache.get("dp", new Date(now.getTime() + 200000), loader);
+        assertNotSame(value, later);
+        assertEquals(2, loader.count.get());
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testEviction()
+        throws Exception
+    {
+        TestCache cache = new TestCache();
+        Date now = new Date();
+        TestLoader loader = new TestLoader(new Date(now.getTime() + 100000), null);
+
+        System.setProperty(Properties.X509_REVOCATION_CACHE_MAX_SIZE, "2");
+        try
+        {
+            TestValue a = cache.get("a", now, loader);
+            Thread.sleep(5);
+            TestValue b = cache.get("b", now, loader);
+            Thread.sleep(5);
+
+            // "a" becomes the most recently used
+            assertSame(a, cache.get("a", now, loader));
+            Thread.sleep(5);
+
+            cache.get("c", now, loader);
+
+            assertEquals(2, cache.size());
+            assertEquals(1, cache.getEvictions());
+            assertSame(a, cache.get("a", now, loader));
+            assertNotSame(b, cache.get("b", now, loader));
+        }
+        finally
+        {
+            System.getProperties().remove(Properties.X509_REVOCATION_CACHE_MAX_SIZE);
+        }
+    }
+
+    public void testRefresh()
+        throws Exception
+    {
+        TestCache cache = new TestCache();
+        Date now = new Date();
+        TestLoader loader = new TestLoader(new Date(now.getTime() + 400), null);
+
+        TestValue value = cache.get("dp", now, loader);
+
+        Thread.sleep(350);
+
+        // past three quarters of the lifetime: the value is refreshed by the calling thread
+        TestValue refreshed = cache.get("dp", now, loader);
+        assertNotSame(value, refreshed);
+        assertEquals(1, cache.getRefreshes());
+        assertEquals(2, loader.count.get());
+        assertSame(refreshed, cache.get("dp", now, loader));
+    }
+
+    public void testRefreshFailure()
+        throws Exception
+    {
+        TestCache cache = new TestCache();
+        Date now = new Date();
+
+        TestValue value = cache.get("dp", now, new TestLoader(new Date(now.getTime() + 400), null));
+
+        Thread.sleep(350);
+
+        // the cached value is still current, so a failed refresh is not reported to the caller
+        assertSame(value, cache.get("dp", now, new RevocationCache.Loader<TestValue>()
+        {
+            public TestValue load()
+                throws IOException
+            {
+                throw new IOException("unreachable");
+            }
+        }));
+        assertEquals(1, cache.getFetchFailures());
+        assertEquals(1, cache.size());
+    }
+
+    public void testRefreshInProgress()
+        throws Exception
+    {
+        final TestCache cache = new TestCache();
+        final Date now = new Date();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final TestValue value = cache.get("dp", now, new TestLoader(new Date(now.getTime() + 400), null));
+
+        Thread.sleep(350);
+
+        final TestLoader slowLoader = new TestLoader(new Date(now.getTime() + 100000), release);
+        final Object[] result = new Object[1];
+        Thread refresher = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    result[0] = cache.get("dp", now, slowLoader);
+                }
+                catch (Exception e)
+                {
+                    result[0] = e;
+                }
+            }
+        };
+        refresher.start();
+
+        for (int i = 0; i < 50 && slowLoader.count.get() == 0; ++i)
+        {
+            Thread.sleep(20);
+        }
+        assertEquals(1, slowLoader.count.get());
+
+        // while one thread refreshes, others are given the cached value rather than waiting
+        assertSame(value, cache.get("dp", now, slowLoader));
+
+        release.countDown();
+        refresher.join();
+
+        assertTrue(result[0] instanceof TestValue);
+        assertNotSame(value, result[0]);
+        assertEquals(1, slowLoader.count.get());
+    }
+
+    static class TestValue
+    {
+        final Date nextUpdate;
+
+        TestValue(Date nextUpdate)
+        {
+            this.nextUpdate = nextUpdate;
+        }
+    }
+
+    static class TestCache
+        extends RevocationCache<String, TestValue>
+    {
+        Date getNextUpdate(String key, TestValue value)
+        {
+            return value.nextUpdate;
+        }
+    }
+
+    static class TestLoader
+        implements RevocationCache.Loader<TestValue>
+    {
+        final AtomicInteger count = new AtomicInteger(0);
+        final CountDownLatch release;
+        final Date nextUpdate;
+
+        TestLoader(Date nextUpdate, CountDownLatch release)
+        {
+            this.nextUpdate = nextUpdate;
+            this.release = release;
+        }
+
+        public TestValue load()
+            throws Exception
+        {
+            count.incrementAndGet();
+            if (release != null)
+            {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return new TestValue(nextUpdate);
+        }
+    }
+}
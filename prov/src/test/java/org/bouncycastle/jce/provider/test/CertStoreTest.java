@@ -1,5 +1,11 @@
 package org.bouncycastle.jce.provider.test;
 
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.jcajce.IndexedCRLStore;
+import org.bouncycastle.jcajce.IndexedCertStore;
+import org.bouncycastle.jcajce.PKIXCRLStoreSelector;
+import org.bouncycastle.jcajce.PKIXCertStoreSelector;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.util.test.SimpleTest;
 
@@ -17,6 +23,8 @@
 import java.util.Iterator;
 import java.util.List;
 
+import javax.security.auth.x500.X500Principal;
+
 public class CertStoreTest
     extends SimpleTest
 {
@@ -26,6 +34,7 @@ public void performTest()
     {
         basicTest();
         orderTest();
+        indexedTest();
     }
 
     private void basicTest()
@@ -116,6 +125,144 @@ private void basicTest()
         }
     }
 
+    private void indexedTest()
+        throws Exception
+    {
+        CertificateFactory cf = CertificateFactory.getInstance("X.509", "BC");
+
+        X509Certificate rootCert = (X509Certificate)cf
+                .generateCertificate(new ByteArrayInputStream(
+                        CertPathTest.rootCertBin));
+        X509Certificate interCert = (X509Certificate)cf
+                .generateCertificate(new ByteArrayInputStream(
+                        CertPathTest.interCertBin));
+        X509Certificate finalCert = (X509Certificate)cf
+                .generateCertificate(new ByteArrayInputStream(
+                        CertPathTest.finalCertBin));
+        X509CRL rootCrl = (X509CRL)cf.generateCRL(new ByteArrayInputStream(
+                CertPathTest.rootCrlBin));
+        X509CRL interCrl = (X509CRL)cf
+                .generateCRL(new ByteArrayInputStream(
+                        CertPathTest.interCrlBin));
+
+        List list = new ArrayList();
+        list.add(finalCert);
+        list.add(rootCrl);
+        list.add(rootCert);
+        list.add(interCrl);
+        list.add(interCert);
+        CollectionCertStoreParameters ccsp = new CollectionCertStoreParameters(list);
+        CertStore collection = CertStore.getInstance("Collection", ccsp, "BC");
+        CertStore indexed = CertStore.getInstance("IndexedCollection", ccsp, "BC");
+
+        List certSelectors = new ArrayList();
+        certSelectors.add(null);
+        certSelectors.add(new X509CertSelector());
+
+        X509CertSelector selector = new X509CertSelector();
+        selector.setSubject(interCert.getSubjectX500Principal());
+        certSelectors.add(selector);
+
+        selector = new X509CertSelector();
+        selector.setSubject(new X500Principal("CN=Unknown"));
+        certSelectors.add(selector);
+
+        selector = new X509CertSelector();
+        selector.setIssuer(rootCert.getSubjectX500Principal());
+        selector.setSerialNumber(interCert.getSerialNumber());
+        certSelectors.add(selector);
+
+        selector = new X509CertSelector();
+        selector.setIssuer(rootCert.getSubjectX500Principal());
+        certSelectors.add(selector);
+
+        selector = new X509CertSelector();
+        selector.setCertificate(finalCert);
+        certSelectors.add(selector);
+
+        selector = new X509CertSelector();
+        selector.setSubjectPublicKey(rootCert.getPublicKey());
+        certSelectors.add(selector);
+
+        for (int i = 0; i != list.size(); i++)
+        {
+            if (list.get(i) instanceof X509Certificate)
+            {
+                byte[] keyId = ((X509Certificate)list.get(i)).getExtensionValue(Extension.subjectKeyIdentifier.getId());
+                if (keyId != null)
+                {
+                    selector = new X509CertSelector();
+                    selector.setSubjectKeyIdentifier(ASN1OctetString.getInstance(keyId).getOctets());
+                    certSelectors.add(selector);
+                }
+            }
+        }
+
+        for (int i = 0; i != certSelectors.size(); i++)
+        {
+            X509CertSelector certSelector = (X509CertSelector)certSelectors.get(i);
+
+            List expected = new ArrayList(collection.getCertificates(certSelector));
+            if (!expected.equals(new ArrayList(indexed.getCertificates(certSelector))))
+            {
+                fail("indexed certificate lookup " + i + " wrong");
+            }
+
+            if (certSelector != null)
+            {
+                PKIXCertStoreSelector pkixSelector = new PKIXCertStoreSelector.Builder(certSelector).build();
+                if (!expected.equals(new ArrayList(new IndexedCertStore(list).getMatches(pkixSelector))))
+                {
+                    fail("indexed store certificate lookup " + i + " wrong");
+                }
+            }
+        }
+
+        List crlSelectors = new ArrayList();
+        crlSelectors.add(null);
+        crlSelectors.add(new X509CRLSelector());
+
+        X509CRLSelector crlSelector = new X509CRLSelector();
+        crlSelector.addIssuer(interCrl.getIssuerX500Principal());
+        crlSelectors.add(crlSelector);
+
+        crlSelector = new X509CRLSelector();
+        crlSelector.addIssuer(interCrl.getIssuerX500Principal());
+        crlSelector.addIssuer(rootCrl.getIssuerX500Principal());
+        crlSelectors.add(crlSelector);
+
+        crlSelector = new X509CRLSelector();
+        crlSelector.addIssuer(new X500Principal("CN=Unknown"));
+        crlSelectors.add(crlSelector);
+
+        for (int i = 0; i != crlSelectors.size(); i++)
+        {
+            X509CRLSelector selectorCRL = (X509CRLSelector)crlSelectors.get(i);
+
+            List expected = new ArrayList(collection.getCRLs(selectorCRL));
+            if (!expected.equals(new ArrayList(indexed.getCRLs(selectorCRL))))
+            {
+                fail("indexed CRL lookup " + i + " wrong");
+            }
+
+            if (selectorCRL != null)
+            {
+                PKIXCRLStoreSelector pkixSelector = new PKIXCRLStoreSelector.Builder(selectorCRL).build();
+                if (!expected.equals(new ArrayList(new IndexedCRLStore(list).getMatches(pkixSelector))))
+                {
+                    fail("indexed store CRL lookup " + i + " wrong");
+                }
+            }
+        }
+
+        // the collection is copied on creation
+        list.remove(finalCert);
+        if (!indexed.getCertificates(null).contains(finalCert))
+        {
+            fail("indexed store not a copy");
+        }
+    }
+
     private void orderTest()
         throws Exception
     {
@@ -0,0 +1,88 @@
+package org.bouncycastle.jsse;
+
+/**
+ * Timings and counts for a single handshake, as reported to a {@link BCHandshakeMetricsListener}.
+ * <p>
+ * Times are in nanoseconds (as measured by {@link System#nanoTime()}), and only include the work done by
+ * this peer. The phases don't cover all of the handshake (e.g. message encoding and hashing are only part of
+ * the total).
+ * </p>
+ */
+public interface BCHandshakeMetrics
+{
+    /**
+     * @return true if the handshake completed successfully.
+     */
+    boolean isCompleted();
+
+    /**
+     * @return for a failed handshake, the name of the fatal alert raised or received (e.g.
+     *         "handshake_failure"), or null if none.
+     */
+    String getAlert();
+
+    boolean isServer();
+
+    boolean isRenegotiation();
+
+    /**
+     * @return true if a session was resumed (or, for TLS 1.3, a resumption PSK was used), i.e. an abbreviated
+     *         handshake.
+     */
+    boolean isResumed();
+
+    /**
+     * @return the standard name of the negotiated protocol (e.g. "TLSv1.3"), or "NONE" if not (yet) negotiated.
+     */
+    String getProtocol();
+
+    /**
+     * @return the standard name of the negotiated cipher suite, or null if not (yet) negotiated.
+     */
+    String getCipherSuite();
+
+    /**
+     * @return the standard name of the group used for key exchange (e.g. "x25519"), or null if none.
+     */
+    String getNamedGroup();
+
+    /**
+     * @return the time from the start of the handshake until it completed (or failed).
+     */
+    long getTotalNanos();
+
+    /**
+     * @return the time spent on ephemeral key generation, key agreement/transport and key derivation. For TLS 1.2
+     *         and earlier, this includes creating and verifying the ServerKeyExchange signature.
+     */
+    long getKeyExchangeNanos();
+
+    /**
+     * @return the time spent creating and verifying CertificateVerify signatures.
+     */
+    long getSignatureNanos();
+
+    /**
+     * @return the time spent checking the peer's certificate (chain), including in the trust manager.
+     */
+    long getCertificateVerificationNanos();
+
+    /**
+     * @return the time spent waiting for records from the peer. Only measured for an SSLSocket.
+     */
+    long getPeerWaitNanos();
+
+    long getRecordsRead();
+
+    long getRecordsWritten();
+
+    /**
+     * @return the number of bytes (of records, including headers) read during the handshake.
+     */
+    long getBytesRead();
+
+    /**
+     * @return the number of bytes (of records, including headers) written during the handshake.
+     */
+    long getBytesWritten();
+}
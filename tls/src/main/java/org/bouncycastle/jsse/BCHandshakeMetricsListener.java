@@ -0,0 +1,16 @@
+package org.bouncycastle.jsse;
+
+/**
+ * Receives the {@link BCHandshakeMetrics} for each handshake of a {@link BCSSLSocket} or {@link BCSSLEngine}.
+ */
+public interface BCHandshakeMetricsListener
+{
+    /**
+     * Called once a handshake (including a renegotiation) has completed or failed. Called on the thread
+     * driving the handshake, so implementations should return quickly; any {@link RuntimeException} thrown
+     * is ignored.
+     *
+     * @param metrics the metrics for the handshake.
+     */
+    void notifyHandshakeMetrics(BCHandshakeMetrics metrics);
+}
@@ -0,0 +1,87 @@
+package org.bouncycastle.jsse;
+
+import org.bouncycastle.tls.OCSPStaplingManager;
+
+/**
+ * A BCJSSE-specific interface to expose extended functionality on {@link javax.net.ssl.SSLSessionContext}
+ * implementations.
+ */
+public interface BCSSLSessionContext
+{
+    /**
+     * Returns the provider of the keys used to protect the (TLS 1.3) session tickets issued by servers
+     * using this context.
+     * 
+     * @return the {@link BCSessionTicketKeyProvider}, or null if session tickets are disabled.
+     */
+    BCSessionTicketKeyProvider getSessionTicketKeyProvider();
+
+    /**
+     * Sets the provider of the keys used to protect the (TLS 1.3) session tickets issued by servers
+     * using this context. By default, each context uses its own randomly generated, regularly rotated
+     * keys.
+     * 
+     * @param sessionTicketKeyProvider
+     *            the {@link BCSessionTicketKeyProvider} to use, or null to disable session tickets.
+     */
+    void setSessionTicketKeyProvider(BCSessionTicketKeyProvider sessionTicketKeyProvider);
+
+    /**
+     * Returns the source of the OCSP responses stapled by servers using this context.
+     *
+     * @return the {@link OCSPStaplingManager}, or null if OCSP stapling is disabled.
+     */
+    OCSPStaplingManager getOCSPStaplingManager();
+
+    /**
+     * Sets the source of the OCSP responses stapled by servers using this context (in response to the
+     * "status_request" and "status_request_v2" extensions). Stapling is disabled by default. Setting this
+     * has no effect if the "jdk.tls.server.enableStatusRequestExtension" system property is false.
+     *
+     * @param ocspStaplingManager
+     *            the {@link OCSPStaplingManager} to use, or null to disable OCSP stapling.
+     */
+    void setOCSPStaplingManager(OCSPStaplingManager ocspStaplingManager);
+
+    /**
+     * @return the number of session tickets issued by servers using this context.
+     */
+    long getSessionTicketsIssued();
+
+    /**
+     * @return the number of handshakes in which a client offered one or more session tickets to a
+     *         server using this context.
+     */
+    long getSessionTicketResumptionAttempts();
+
+    /**
+     * @return the number of handshakes in which a server using this context resumed a session from a
+     *         ticket. Together with {@link #getSessionTicketResumptionAttempts()} this gives the
+     *         resumption hit rate.
+     */
+    long getSessionTicketResumptions();
+
+    /**
+     * @return the number of lookups (by session ID, or by peer for client contexts) that found a
+     *         resumable session in this context's session cache.
+     */
+    long getSessionCacheHits();
+
+    /**
+     * @return the number of lookups (by session ID, or by peer for client contexts) that did not find a
+     *         resumable session in this context's session cache.
+     */
+    long getSessionCacheMisses();
+
+    /**
+     * @return the number of sessions removed from this context's session cache to keep it within the
+     *         configured size (see {@link javax.net.ssl.SSLSessionContext#setSessionCacheSize(int)}).
+     */
+    long getSessionCacheEvictions();
+
+    /**
+     * @return the number of expired or invalidated sessions removed from this context's session cache by
+     *         its periodic sweep.
+     */
+    long getSessionCacheExpirations();
+}
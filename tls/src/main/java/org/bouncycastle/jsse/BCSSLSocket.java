@@ -19,6 +19,17 @@
 
     void setBCHandshakeApplicationProtocolSelector(BCApplicationProtocolSelector<SSLSocket> selector);
 
+    BCHandshakeMetricsListener getBCHandshakeMetricsListener();
+
+    /**
+     * Sets a listener to receive timings and counts for each subsequent handshake (see
+     * {@link BCHandshakeMetrics}). Set to <code>null</code> (the default) to disable measurement.
+     *
+     * @param listener
+     *            the {@link BCHandshakeMetricsListener}, or <code>null</code>.
+     */
+    void setBCHandshakeMetricsListener(BCHandshakeMetricsListener listener);
+
     void setBCSessionToResume(BCExtendedSSLSession session);
 
     BCExtendedSSLSession getBCHandshakeSession();
@@ -0,0 +1,54 @@
+package org.bouncycastle.jsse;
+
+import javax.crypto.SecretKey;
+
+import org.bouncycastle.util.Arrays;
+
+/**
+ * A key used by a BCJSSE server to protect the (TLS 1.3) session tickets it issues. Tickets are
+ * constructed following RFC 5077 4. "Recommended Ticket Construction", so the key consists of a
+ * 16-byte name identifying it, an AES key for encryption, and a key for HMAC-SHA256.
+ */
+public final class BCSessionTicketKey
+{
+    public static final int NAME_LENGTH = 16;
+
+    private final byte[] name;
+    private final SecretKey encryptionKey;
+    private final SecretKey macKey;
+
+    public BCSessionTicketKey(byte[] name, SecretKey encryptionKey, SecretKey macKey)
+    {
+        if (null == name || name.length != NAME_LENGTH)
+        {
+            throw new IllegalArgumentException("'name' must have length " + NAME_LENGTH);
+        }
+        if (null == encryptionKey)
+        {
+            throw new NullPointerException("'encryptionKey' cannot be null");
+        }
+        if (null == macKey)
+        {
+            throw new NullPointerException("'macKey' cannot be null");
+        }
+
+        this.name = Arrays.clone(name);
+        this.encryptionKey = encryptionKey;
+        this.macKey = macKey;
+    }
+
+    public SecretKey getEncryptionKey()
+    {
+        return encryptionKey;
+    }
+
+    public SecretKey getMacKey()
+    {
+        return macKey;
+    }
+
+    public byte[] getName()
+    {
+        return Arrays.clone(name);
+    }
+}
@@ -0,0 +1,29 @@
+package org.bouncycastle.jsse;
+
+/**
+ * Supplies the keys a BCJSSE server uses to protect its (TLS 1.3) session tickets. Servers behind a
+ * load balancer can share an implementation backed by a common key store, so that a ticket issued by
+ * one node can be used to resume the session on any other node.
+ * <p>
+ * Implementations are expected to rotate the encryption key periodically, while continuing to
+ * recognise recently retired keys for decryption. Implementations must be thread-safe.
+ * </p>
+ */
+public interface BCSessionTicketKeyProvider
+{
+    /**
+     * Return the key to use to protect a newly issued ticket.
+     * 
+     * @return the current {@link BCSessionTicketKey}, or null to not issue a ticket.
+     */
+    BCSessionTicketKey getEncryptionKey();
+
+    /**
+     * Return the key with the given name, for use in recovering the state from a ticket.
+     * 
+     * @param name the name of the key (see {@link BCSessionTicketKey#getName()}).
+     * @return the {@link BCSessionTicketKey} with the given name, or null if the key is unknown or
+     *         has been retired.
+     */
+    BCSessionTicketKey getDecryptionKey(byte[] name);
+}
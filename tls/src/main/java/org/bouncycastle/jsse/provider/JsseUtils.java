@@ -41,6 +41,7 @@
 import org.bouncycastle.tls.AlertDescription;
 import org.bouncycastle.tls.AlertLevel;
 import org.bouncycastle.tls.Certificate;
+import org.bouncycastle.tls.CertificateCompressionAlgorithm;
 import org.bouncycastle.tls.CertificateEntry;
 import org.bouncycastle.tls.CertificateStatus;
 import org.bouncycastle.tls.CertificateStatusType;
@@ -80,6 +81,8 @@
     // TODO SunJSSE additionally checks KeyGenerator.getInstance("SunTlsExtendedMasterSecret")
     private static final boolean provTlsUseExtendedMasterSecret =
         PropertyUtils.getBooleanSystemProperty("jdk.tls.useExtendedMasterSecret", true);
+    private static final boolean provTlsEnableCertificateCompression =
+        PropertyUtils.getBooleanSystemProperty("org.bouncycastle.jsse.enableCertificateCompression", true);
 
     private static final int provTlsClientMaxInboundCertChainLen;
     private static final int provTlsServerMaxInboundCertChainLen;
@@ -154,6 +157,11 @@ static void appendCipherSuiteDetail(StringBuilder sb,  int cipherSuite)
         }
     }
 
+    static int[] getCertificateCompressionAlgorithms()
+    {
+        return provTlsEnableCertificateCompression ? new int[]{ CertificateCompressionAlgorithm.zlib } : null;
+    }
+
     static String[] getArray(Collection<String> c)
     {
         return c.toArray(new String[c.size()]);
@@ -163,6 +163,37 @@ public boolean permits(Set<BCCryptoPrimitive> primitives, String algorithm, Key
         return true;
     }
 
+    /*
+     * NOTE: Value equality lets validation results be cached across handshakes that apply the same
+     * constraints (see ProvX509TrustManager).
+     */
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof ProvAlgorithmConstraints))
+        {
+            return false;
+        }
+
+        ProvAlgorithmConstraints other = (ProvAlgorithmConstraints)obj;
+        return enableX509Constraints == other.enableX509Constraints
+            && configAlgorithmConstraints == other.configAlgorithmConstraints
+            && (null == supportedSignatureAlgorithms
+                ?   null == other.supportedSignatureAlgorithms
+                :   supportedSignatureAlgorithms.equals(other.supportedSignatureAlgorithms));
+    }
+
+    public int hashCode()
+    {
+        int hc = enableX509Constraints ? 1 : 0;
+        hc = 31 * hc + System.identityHashCode(configAlgorithmConstraints);
+        hc = 31 * hc + (null == supportedSignatureAlgorithms ? 0 : supportedSignatureAlgorithms.hashCode());
+        return hc;
+    }
+
     private String getAlgorithm(String algorithmBC)
     {
         int colonPos = algorithmBC.indexOf(':');
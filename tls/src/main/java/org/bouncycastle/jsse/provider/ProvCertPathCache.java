@@ -0,0 +1,176 @@
+package org.bouncycastle.jsse.provider;
+
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bouncycastle.jsse.java.security.BCAlgorithmConstraints;
+
+/**
+ * A bounded, time-limited cache of the trusted chains built by {@link ProvX509TrustManager}, so that a
+ * certificate chain that arrives repeatedly only has its certification path built (and signatures checked)
+ * once per cache lifetime.
+ * <p>
+ * Entries are keyed on the exact received chain, the algorithm constraints and the validation date. The
+ * cache belongs to a single trust manager (and so a single set of trust anchors), and is cleared if the trust
+ * anchors of its PKIX parameters are replaced.
+ */
+class ProvCertPathCache
+{
+    private final int maxSize;
+    private final long lifetimeMillis;
+    private final Map<Key, CacheEntry> entries;
+
+    private Set<TrustAnchor> trustAnchors = null;
+
+    ProvCertPathCache(final int maxSize, long lifetimeMillis)
+    {
+        this.maxSize = maxSize;
+        this.lifetimeMillis = lifetimeMillis;
+        this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    X509Certificate[] get(Set<TrustAnchor> trustAnchors, X509Certificate[] chain,
+        BCAlgorithmConstraints algorithmConstraints, Date date)
+    {
+        Key key = new Key(chain, algorithmConstraints, date);
+        long now = System.currentTimeMillis();
+
+        synchronized (this)
+        {
+            checkTrustAnchors(trustAnchors);
+
+            CacheEntry entry = entries.get(key);
+            if (null == entry)
+            {
+                return null;
+            }
+            if (now >= entry.expiresAt)
+            {
+                entries.remove(key);
+                return null;
+            }
+            return entry.trustedChain.clone();
+        }
+    }
+
+    void put(Set<TrustAnchor> trustAnchors, X509Certificate[] chain, BCAlgorithmConstraints algorithmConstraints,
+        Date date, X509Certificate[] trustedChain)
+    {
+        Key key = new Key(chain, algorithmConstraints, date);
+        long now = System.currentTimeMillis();
+
+        long expiresAt = now + lifetimeMillis;
+
+        // Validating at the current time, so the result can't outlive any certificate in the chain
+        if (null == date)
+        {
+            for (X509Certificate cert : trustedChain)
+            {
+                expiresAt = Math.min(expiresAt, cert.getNotAfter().getTime());
+            }
+        }
+
+        if (now >= expiresAt)
+        {
+            return;
+        }
+
+        CacheEntry entry = new CacheEntry(trustedChain.clone(), expiresAt);
+
+        synchronized (this)
+        {
+            checkTrustAnchors(trustAnchors);
+
+            entries.put(key, entry);
+        }
+    }
+
+    // NOTE: PKIXParameters returns the same (unmodifiable) set until its trust anchors are replaced
+    private void checkTrustAnchors(Set<TrustAnchor> trustAnchors)
+    {
+        if (this.trustAnchors != trustAnchors)
+        {
+            entries.clear();
+            this.trustAnchors = trustAnchors;
+        }
+    }
+
+    private static final class CacheEntry
+    {
+        final X509Certificate[] trustedChain;
+        final long expiresAt;
+
+        CacheEntry(X509Certificate[] trustedChain, long expiresAt)
+        {
+            this.trustedChain = trustedChain;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Key
+    {
+        private final List<X509Certificate> chain;
+        private final BCAlgorithmConstraints algorithmConstraints;
+        private final Date date;
+        private final int hashCode;
+
+        Key(X509Certificate[] chain, BCAlgorithmConstraints algorithmConstraints, Date date)
+        {
+            this.chain = Arrays.asList(chain.clone());
+            this.algorithmConstraints = algorithmConstraints;
+            this.date = date;
+
+            int hc = this.chain.hashCode();
+            hc = 31 * hc + (null == algorithmConstraints ? 0 : algorithmConstraints.hashCode());
+            hc = 31 * hc + (null == date ? 0 : date.hashCode());
+            this.hashCode = hc;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+
+            Key other = (Key)obj;
+            return hashCode == other.hashCode
+                && chain.equals(other.chain)
+                && JsseUtils.equals(algorithmConstraints, other.algorithmConstraints)
+                && JsseUtils.equals(date, other.date);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.bouncycastle.jsse.provider;
+
+import org.bouncycastle.jsse.BCHandshakeMetrics;
+import org.bouncycastle.jsse.BCHandshakeMetricsListener;
+import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.NamedGroup;
+import org.bouncycastle.tls.TlsHandshakeMetrics;
+import org.bouncycastle.tls.TlsHandshakeMetricsListener;
+
+class ProvHandshakeMetrics
+    implements BCHandshakeMetrics
+{
+    static TlsHandshakeMetricsListener adaptListener(final BCHandshakeMetricsListener listener)
+    {
+        if (null == listener)
+        {
+            return null;
+        }
+
+        return new TlsHandshakeMetricsListener()
+        {
+            public void notifyHandshakeMetrics(TlsHandshakeMetrics metrics)
+            {
+                listener.notifyHandshakeMetrics(new ProvHandshakeMetrics(metrics));
+            }
+        };
+    }
+
+    protected final TlsHandshakeMetrics metrics;
+
+    ProvHandshakeMetrics(TlsHandshakeMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    public boolean isCompleted()
+    {
+        return metrics.isCompleted();
+    }
+
+    public String getAlert()
+    {
+        short alertDescription = metrics.getAlertDescription();
+        return alertDescription < 0 ? null : AlertDescription.getName(alertDescription);
+    }
+
+    public boolean isServer()
+    {
+        return metrics.isServer();
+    }
+
+    public boolean isRenegotiation()
+    {
+        return metrics.isRenegotiation();
+    }
+
+    public boolean isResumed()
+    {
+        return metrics.isResumed();
+    }
+
+    public String getProtocol()
+    {
+        return ProvSSLContextSpi.getProtocolVersionName(metrics.getNegotiatedVersion());
+    }
+
+    public String getCipherSuite()
+    {
+        int cipherSuite = metrics.getCipherSuite();
+        return cipherSuite < 0 ? null : ProvSSLContextSpi.getCipherSuiteName(cipherSuite);
+    }
+
+    public String getNamedGroup()
+    {
+        int namedGroup = metrics.getNegotiatedGroup();
+        return namedGroup < 0 ? null : NamedGroup.getStandardName(namedGroup);
+    }
+
+    public long getTotalNanos()
+    {
+        return metrics.getTotalNanos();
+    }
+
+    public long getKeyExchangeNanos()
+    {
+        return metrics.getPhaseNanos(TlsHandshakeMetrics.KEY_EXCHANGE);
+    }
+
+    public long getSignatureNanos()
+    {
+        return metrics.getPhaseNanos(TlsHandshakeMetrics.SIGNATURE);
+    }
+
+    public long getCertificateVerificationNanos()
+    {
+        return metrics.getPhaseNanos(TlsHandshakeMetrics.CERTIFICATE_VERIFICATION);
+    }
+
+    public long getPeerWaitNanos()
+    {
+        return metrics.getPhaseNanos(TlsHandshakeMetrics.PEER_WAIT);
+    }
+
+    public long getRecordsRead()
+    {
+        return metrics.getRecordsRead();
+    }
+
+    public long getRecordsWritten()
+    {
+        return metrics.getRecordsWritten();
+    }
+
+    public long getBytesRead()
+    {
+        return metrics.getBytesRead();
+    }
+
+    public long getBytesWritten()
+    {
+        return metrics.getBytesWritten();
+    }
+
+    public String toString()
+    {
+        return metrics.toString();
+    }
+}
@@ -19,6 +19,7 @@
 
 import org.bouncycastle.jsse.BCApplicationProtocolSelector;
 import org.bouncycastle.jsse.BCExtendedSSLSession;
+import org.bouncycastle.jsse.BCHandshakeMetricsListener;
 import org.bouncycastle.jsse.BCSSLConnection;
 import org.bouncycastle.jsse.BCSSLEngine;
 import org.bouncycastle.jsse.BCSSLParameters;
@@ -34,7 +35,10 @@
 
 /*
  * TODO[jsse] Known limitations (relative to SSLEngine javadoc): 1. The wrap() and unwrap() methods
- * are synchronized, so will not execute concurrently with each other. 2. Never delegates tasks i.e.
+ * synchronize on the engine, so will not execute concurrently with each other, unless the system property
+ * "org.bouncycastle.jsse.engine.duplex" is set to true, in which case they use separate inbound/outbound
+ * locks once the initial handshake has completed. 2. Unless the system property
+ * "org.bouncycastle.jsse.engine.delegatedTasks" is set to true, never delegates tasks i.e.
  * getDelegatedTasks() will always return null; CPU-intensive parts of the handshake will execute
  * during wrap/unwrap calls.
  */
@@ -46,8 +50,13 @@
 
     protected final ContextData contextData;
     protected final ProvSSLParameters sslParameters;
+    protected final boolean useDelegatedTasks = PropertyUtils
+        .getBooleanSystemProperty("org.bouncycastle.jsse.engine.delegatedTasks", false);
+    protected final boolean useDuplex = PropertyUtils
+        .getBooleanSystemProperty("org.bouncycastle.jsse.engine.duplex", false);
 
     protected boolean enableSessionCreation = true;
+    protected BCHandshakeMetricsListener handshakeMetricsListener = null;
     protected boolean useClientMode = true;
     protected boolean useClientModeSet = false;
 
@@ -62,6 +71,23 @@
 
     protected SSLException deferredException = null;
 
+    /*
+     * If useDuplex is set, once the initial handshake has completed (and FINISHED has been reported), unwrap
+     * and wrap only synchronize on inboundLock and outboundLock respectively, allowing full-duplex operation.
+     * Lock ordering is inboundLock, then outboundLock, then the engine monitor, then the protocol's record
+     * write lock.
+     */
+    private final Object inboundLock = new Object();
+    private final Object outboundLock = new Object();
+    protected volatile boolean duplexReady = false;
+
+    /*
+     * A handshake step waiting to be executed via getDelegatedTask(). While non-null, wrap/unwrap make no
+     * progress and report NEED_TASK.
+     */
+    protected DelegatedTask delegatedTask = null;
+    protected boolean delegatedTaskIssued = false;
+
     protected ProvSSLEngine(ContextData contextData)
     {
         this(contextData, null, -1);
@@ -106,10 +132,24 @@ public synchronized void beginHandshake()
                 TlsClientProtocol clientProtocol = new TlsClientProtocol();
                 this.protocol = clientProtocol;
 
-                ProvTlsClient client = new ProvTlsClient(this, sslParameters);
+                final ProvTlsClient client = new ProvTlsClient(this, sslParameters);
                 this.protocolPeer = client;
 
-                clientProtocol.connect(client);
+                if (useDelegatedTasks)
+                {
+                    // ClientHello generation includes ephemeral key share generation
+                    setDelegatedTask(new DelegatedTask()
+                    {
+                        protected void runTask() throws IOException
+                        {
+                            ((TlsClientProtocol)protocol).connect(client);
+                        }
+                    });
+                }
+                else
+                {
+                    clientProtocol.connect(client);
+                }
             }
             else
             {
@@ -167,7 +207,22 @@ public BCX509Key chooseServerKey(String[] keyTypes, Principal[] issuers)
     }
 
     @Override
-    public synchronized void closeInbound()
+    public void closeInbound()
+        throws SSLException
+    {
+        synchronized (inboundLock)
+        {
+            synchronized (outboundLock)
+            {
+                synchronized (this)
+                {
+                    closeInboundImpl();
+                }
+            }
+        }
+    }
+
+    private void closeInboundImpl()
         throws SSLException
     {
         if (closedEarly)
@@ -180,6 +235,9 @@ else if (null == protocol)
         }
         else
         {
+            awaitDelegatedTask();
+            cancelDelegatedTask();
+
             try
             {
                 protocol.closeInput();
@@ -192,7 +250,21 @@ else if (null == protocol)
     }
 
     @Override
-    public synchronized void closeOutbound()
+    public void closeOutbound()
+    {
+        synchronized (inboundLock)
+        {
+            synchronized (outboundLock)
+            {
+                synchronized (this)
+                {
+                    closeOutboundImpl();
+                }
+            }
+        }
+    }
+
+    private void closeOutboundImpl()
     {
         if (closedEarly)
         {
@@ -204,6 +276,9 @@ else if (null == protocol)
         }
         else
         {
+            awaitDelegatedTask();
+            cancelDelegatedTask();
+
             try
             {
                 protocol.close();
@@ -226,6 +301,11 @@ public synchronized BCApplicationProtocolSelector<SSLEngine> getBCHandshakeAppli
         return sslParameters.getEngineAPSelector();
     }
 
+    public synchronized BCHandshakeMetricsListener getBCHandshakeMetricsListener()
+    {
+        return handshakeMetricsListener;
+    }
+
     public BCExtendedSSLSession getBCHandshakeSession()
     {
         return getBCHandshakeSessionImpl();
@@ -249,7 +329,13 @@ public synchronized BCSSLConnection getConnection()
     @Override
     public synchronized Runnable getDelegatedTask()
     {
-        return null;
+        if (null == delegatedTask || delegatedTaskIssued)
+        {
+            return null;
+        }
+
+        this.delegatedTaskIssued = true;
+        return delegatedTask;
     }
 
     @Override
@@ -285,6 +371,10 @@ public synchronized SSLSession getHandshakeSession()
     @Override
     public synchronized SSLEngineResult.HandshakeStatus getHandshakeStatus()
     {
+        if (delegatedTask != null)
+        {
+            return HandshakeStatus.NEED_TASK;
+        }
         if (protocol != null)
         {
             if (protocol.getAvailableOutputBytes() > 0 || deferredException != null)
@@ -368,6 +458,11 @@ public synchronized void setBCHandshakeApplicationProtocolSelector(BCApplication
         sslParameters.setEngineAPSelector(selector);
     }
 
+    public synchronized void setBCHandshakeMetricsListener(BCHandshakeMetricsListener listener)
+    {
+        this.handshakeMetricsListener = listener;
+    }
+
     public synchronized void setBCSessionToResume(BCExtendedSSLSession session)
     {
         if (null == session)
@@ -446,7 +541,26 @@ public synchronized void setWantClientAuth(boolean want)
     }
 
     @Override
-    public synchronized SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length)
+    public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length)
+        throws SSLException
+    {
+        synchronized (inboundLock)
+        {
+            if (duplexReady && !protocol.isClosed())
+            {
+                return unwrapDuplex(src, dsts, offset, length);
+            }
+
+            synchronized (this)
+            {
+                SSLEngineResult result = unwrapImpl(src, dsts, offset, length);
+                updateDuplexReady();
+                return result;
+            }
+        }
+    }
+
+    private SSLEngineResult unwrapImpl(ByteBuffer src, ByteBuffer[] dsts, int offset, int length)
         throws SSLException
     {
         // TODO[jsse] Argument checks - see javadoc
@@ -461,6 +575,11 @@ public synchronized SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, in
         if (!initialHandshakeBegun)
         {
             beginHandshake();
+
+            if (delegatedTask != null)
+            {
+                return new SSLEngineResult(Status.OK, HandshakeStatus.NEED_TASK, 0, 0);
+            }
         }
 
         switch (initialHandshakeStatus)
@@ -486,9 +605,23 @@ public synchronized SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, in
             }
 
             bytesConsumed = preview.getRecordSize();
-            byte[] record = new byte[bytesConsumed];
+            final byte[] record = new byte[bytesConsumed];
             src.get(record);
 
+            if (useDelegatedTasks && initialHandshakeStatus == HandshakeStatus.NEED_UNWRAP)
+            {
+                // Processing of handshake messages (key exchange, signatures, certificate validation)
+                setDelegatedTask(new DelegatedTask()
+                {
+                    protected void runTask() throws IOException
+                    {
+                        protocol.offerInput(record, 0, record.length);
+                    }
+                });
+
+                return new SSLEngineResult(Status.OK, HandshakeStatus.NEED_TASK, bytesConsumed, 0);
+            }
+
             protocol.offerInput(record, 0, record.length);
         }
         catch (IOException e)
@@ -513,20 +646,7 @@ public synchronized SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, in
             return new SSLEngineResult(Status.OK, HandshakeStatus.NEED_WRAP, bytesConsumed, 0);
         }
 
-        int appDataAvailable = protocol.getAvailableInputBytes(), bytesProduced = 0;
-        for (int dstIndex = 0; appDataAvailable > 0; ++dstIndex)
-        {
-            ByteBuffer dst = dsts[offset + dstIndex];
-            int count = Math.min(dst.remaining(), appDataAvailable);
-            if (count > 0)
-            {
-                int numRead = protocol.readInput(dst, count);
-                assert numRead == count;
-
-                bytesProduced += count;
-                appDataAvailable -= count;
-            }
-        }
+        int bytesProduced = readAppData(dsts, offset);
 
         HandshakeStatus resultHandshakeStatus = getHandshakeStatus();
         if (resultHandshakeStatus == HandshakeStatus.NOT_HANDSHAKING)
@@ -542,7 +662,26 @@ public synchronized SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, in
     }
 
     @Override
-    public synchronized SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst)
+    public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst)
+        throws SSLException
+    {
+        synchronized (outboundLock)
+        {
+            if (duplexReady && !protocol.isClosed())
+            {
+                return wrapDuplex(srcs, offset, length, dst);
+            }
+
+            synchronized (this)
+            {
+                SSLEngineResult result = wrapImpl(srcs, offset, length, dst);
+                updateDuplexReady();
+                return result;
+            }
+        }
+    }
+
+    private SSLEngineResult wrapImpl(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst)
         throws SSLException
     {
         if (deferredException != null)
@@ -564,6 +703,11 @@ public synchronized SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int leng
             beginHandshake();
         }
 
+        if (delegatedTask != null)
+        {
+            return new SSLEngineResult(Status.OK, HandshakeStatus.NEED_TASK, 0, 0);
+        }
+
         int bytesProduced = 0;
 
         final int outputAvailable = protocol.getAvailableOutputBytes();
@@ -738,6 +882,188 @@ synchronized ProvSSLSession getSessionImpl()
         return dummySession;
     }
 
+    /*
+     * A delegated task runs without the engine lock, so the protocol must not be touched (e.g. to close it) until
+     * any task that is running has finished.
+     */
+    private void awaitDelegatedTask()
+    {
+        boolean interrupted = false;
+        while (null != delegatedTask && delegatedTask.running)
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cancelDelegatedTask()
+    {
+        this.delegatedTask = null;
+        this.delegatedTaskIssued = false;
+    }
+
+    private void setDelegatedTask(DelegatedTask delegatedTask)
+    {
+        this.delegatedTask = delegatedTask;
+        this.delegatedTaskIssued = false;
+    }
+
+    /*
+     * Called with only inboundLock held. The protocol serializes its own output, so concurrent wrapDuplex
+     * calls are safe; any output generated here (e.g. an alert) is reported via NEED_WRAP.
+     */
+    private SSLEngineResult unwrapDuplex(ByteBuffer src, ByteBuffer[] dsts, int offset, int length)
+        throws SSLException
+    {
+        int bytesConsumed = 0;
+        try
+        {
+            RecordPreview preview = getRecordPreview(src);
+            if (preview == null || src.remaining() < preview.getRecordSize())
+            {
+                return new SSLEngineResult(Status.BUFFER_UNDERFLOW, getDuplexHandshakeStatus(), 0, 0);
+            }
+            if (hasInsufficientSpace(dsts, offset, length, preview.getContentLimit()))
+            {
+                return new SSLEngineResult(Status.BUFFER_OVERFLOW, getDuplexHandshakeStatus(), 0, 0);
+            }
+
+            bytesConsumed = preview.getRecordSize();
+            byte[] record = new byte[bytesConsumed];
+            src.get(record);
+
+            protocol.offerInput(record, 0, record.length);
+        }
+        catch (IOException e)
+        {
+            throw new SSLException(e);
+        }
+
+        int bytesProduced = readAppData(dsts, offset);
+
+        return new SSLEngineResult(getStatus(), getDuplexHandshakeStatus(), bytesConsumed, bytesProduced);
+    }
+
+    /*
+     * Called with only outboundLock held. Output can be queued concurrently by unwrapDuplex (e.g. an alert, or a
+     * key update), so the application data is previewed and written atomically by the protocol, and the output is
+     * drained a whole record at a time.
+     */
+    private SSLEngineResult wrapDuplex(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst)
+        throws SSLException
+    {
+        try
+        {
+            int bytesConsumed = 0;
+
+            int srcRemaining = getTotalRemaining(srcs, offset, length, protocol.getApplicationDataLimit());
+            if (srcRemaining > 0)
+            {
+                byte[] buffer = new byte[srcRemaining];
+                for (int srcIndex = 0, pos = 0; pos < srcRemaining; ++srcIndex)
+                {
+                    ByteBuffer src = srcs[offset + srcIndex].duplicate();
+                    int count = Math.min(src.remaining(), srcRemaining - pos);
+                    src.get(buffer, pos, count);
+                    pos += count;
+                }
+
+                // Writes nothing if there is pending output (or closure), which must be sent first
+                int written = protocol.tryWriteApplicationData(buffer, 0, srcRemaining, dst.remaining());
+                if (written < 0)
+                {
+                    return new SSLEngineResult(Status.BUFFER_OVERFLOW, getDuplexHandshakeStatus(), 0, 0);
+                }
+
+                for (int srcIndex = 0; bytesConsumed < written; ++srcIndex)
+                {
+                    ByteBuffer src = srcs[offset + srcIndex];
+                    int count = Math.min(src.remaining(), written - bytesConsumed);
+                    ((java.nio.Buffer)src).position(src.position() + count);
+                    bytesConsumed += count;
+                }
+            }
+
+            int bytesProduced = readOutputRecords(dst);
+            if (bytesConsumed < 1 && bytesProduced < 1 && protocol.getAvailableOutputBytes() > 0)
+            {
+                return new SSLEngineResult(Status.BUFFER_OVERFLOW, HandshakeStatus.NEED_WRAP, 0, 0);
+            }
+
+            return new SSLEngineResult(getStatus(), getDuplexHandshakeStatus(), bytesConsumed, bytesProduced);
+        }
+        catch (IOException e)
+        {
+            // TODO[jsse] Throw a subclass of SSLException?
+            throw new SSLException(e);
+        }
+    }
+
+    /*
+     * Output (including a close_notify sent in response to the peer's) is reported via NEED_WRAP; once it has
+     * been drained, closure is reported by the CLOSED status of the result.
+     */
+    private HandshakeStatus getDuplexHandshakeStatus()
+    {
+        return protocol.getAvailableOutputBytes() > 0 ? HandshakeStatus.NEED_WRAP : HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private int readAppData(ByteBuffer[] dsts, int offset)
+    {
+        int appDataAvailable = protocol.getAvailableInputBytes(), bytesProduced = 0;
+        for (int dstIndex = 0; appDataAvailable > 0; ++dstIndex)
+        {
+            ByteBuffer dst = dsts[offset + dstIndex];
+            int count = Math.min(dst.remaining(), appDataAvailable);
+            if (count > 0)
+            {
+                int numRead = protocol.readInput(dst, count);
+                assert numRead == count;
+
+                bytesProduced += count;
+                appDataAvailable -= count;
+            }
+        }
+        return bytesProduced;
+    }
+
+    private int readOutputRecords(ByteBuffer dst)
+    {
+        int bytesProduced = 0;
+        for (;;)
+        {
+            int recordSize = protocol.previewOutputRecord();
+            if (recordSize < 1 || dst.remaining() < recordSize)
+            {
+                return bytesProduced;
+            }
+
+            int numRead = protocol.readOutput(dst, recordSize);
+            assert numRead == recordSize;
+
+            bytesProduced += recordSize;
+        }
+    }
+
+    private void updateDuplexReady()
+    {
+        if (useDuplex && !duplexReady && returnedFinished && null != connection && null == delegatedTask
+            && null == deferredException && !protocol.isHandshaking() && !protocol.isClosed())
+        {
+            this.duplexReady = true;
+        }
+    }
+
     private RecordPreview getRecordPreview(ByteBuffer src)
         throws IOException
     {
@@ -780,4 +1106,65 @@ private boolean hasInsufficientSpace(ByteBuffer[] dsts, int off, int len, int am
     {
         return getTotalRemaining(dsts, off, len, amount) < amount;
     }
+
+    /*
+     * Runs without the engine lock, so that slow trust manager or key manager calls don't block the engine's other
+     * methods. The protocol is still never accessed concurrently: until the task has finished, wrap/unwrap make no
+     * progress and report NEED_TASK, and closeInbound/closeOutbound wait for it. Any failure is reported via a
+     * subsequent wrap call, in the same way as for a failure during unwrap.
+     */
+    protected abstract class DelegatedTask
+        implements Runnable
+    {
+        // NOTE: Guarded by the engine lock
+        boolean running = false;
+
+        public void run()
+        {
+            synchronized (ProvSSLEngine.this)
+            {
+                if (delegatedTask != this || running)
+                {
+                    // Already run (or running), or cancelled by closeInbound/closeOutbound
+                    return;
+                }
+
+                this.running = true;
+            }
+
+            SSLException failure = null;
+            try
+            {
+                runTask();
+            }
+            catch (SSLException e)
+            {
+                failure = e;
+            }
+            catch (IOException e)
+            {
+                failure = new SSLException(e);
+            }
+            catch (RuntimeException e)
+            {
+                failure = new SSLException(e);
+            }
+            finally
+            {
+                synchronized (ProvSSLEngine.this)
+                {
+                    if (null != failure)
+                    {
+                        deferredException = failure;
+                    }
+
+                    this.running = false;
+                    cancelDelegatedTask();
+                    ProvSSLEngine.this.notifyAll();
+                }
+            }
+        }
+
+        protected abstract void runTask() throws IOException;
+    }
 }
@@ -5,55 +5,93 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSessionContext;
 
 import org.bouncycastle.jsse.BCSNIServerName;
+import org.bouncycastle.jsse.BCSSLSessionContext;
+import org.bouncycastle.jsse.BCSessionTicketKeyProvider;
+import org.bouncycastle.tls.BasicTlsPSKResumption;
+import org.bouncycastle.tls.OCSPStaplingManager;
 import org.bouncycastle.tls.SessionID;
 import org.bouncycastle.tls.TlsSession;
 import org.bouncycastle.tls.TlsUtils;
 
 class ProvSSLSessionContext
-    implements SSLSessionContext
+    implements SSLSessionContext, BCSSLSessionContext
 {
     private static final Logger LOG = Logger.getLogger(ProvSSLSessionContext.class.getName());
 
     private static final int provSessionCacheSize = PropertyUtils
         .getIntegerSystemProperty("javax.net.ssl.sessionCacheSize", 20480, 0, Integer.MAX_VALUE);
 
-    // NOTE: This is configured as a simple LRU cache using the "access order" constructor
+    private static final int provSessionCacheShards = PropertyUtils
+        .getIntegerSystemProperty("org.bouncycastle.jsse.sessionCacheShards", 16, 1, 256);
+
+    private static final int MAX_SESSION_TICKETS_PER_PEER = 4;
+
+    // Each shard is checked for expired sessions at most this often (as part of a normal cache access)
+    private static final long SWEEP_INTERVAL_MILLIS = 30 * 1000L;
+
+    /*
+     * NOTE: Sessions are partitioned by session ID across independently locked shards, each a simple LRU
+     * cache holding its share of sessionCacheSize (the shares differ by at most one, and sum to exactly
+     * sessionCacheSize). Eviction is therefore only approximately LRU: the LRU order is per-shard rather
+     * than global, so a shard may evict a session that is more recently used than others retained
+     * elsewhere, and when sessionCacheSize is smaller than the number of shards, some shards hold nothing.
+     */
+    private final SessionShard[] sessionShards;
+    protected final ConcurrentHashMap<String, SessionEntry> sessionsByPeer = new ConcurrentHashMap<String, SessionEntry>();
+    protected final ReferenceQueue<ProvSSLSession> sessionsQueue = new ReferenceQueue<ProvSSLSession>();
+
+    // TLS 1.3 session tickets received by clients, by peer (each list most recent first), also as an LRU cache
     @SuppressWarnings("serial")
-    protected final Map<SessionID, SessionEntry> sessionsByID = new LinkedHashMap<SessionID, SessionEntry>(16, 0.75f, true)
+    protected final Map<String, LinkedList<SessionTicketEntry>> sessionTicketsByPeer =
+        new LinkedHashMap<String, LinkedList<SessionTicketEntry>>(16, 0.75f, true)
     {
-        protected boolean removeEldestEntry(Map.Entry<SessionID, SessionEntry> eldest)
+        protected boolean removeEldestEntry(Map.Entry<String, LinkedList<SessionTicketEntry>> eldest)
         {
-            boolean shouldRemove = sessionCacheSize > 0 && size() > sessionCacheSize;
-            if (shouldRemove)
-            {
-                removeSessionByPeer(eldest.getValue());
-            }
-            return shouldRemove;
+            return sessionCacheSize > 0 && size() > sessionCacheSize;
         }
     };
-    protected final Map<String, SessionEntry> sessionsByPeer = new HashMap<String, SessionEntry>();
-    protected final ReferenceQueue<ProvSSLSession> sessionsQueue = new ReferenceQueue<ProvSSLSession>();
 
     protected final ContextData contextData;
 
-    protected int sessionCacheSize = provSessionCacheSize;
-    protected int sessionTimeoutSeconds = 86400; // 24hrs (in seconds)
+    protected volatile int sessionCacheSize = provSessionCacheSize;
+    protected volatile int sessionTimeoutSeconds = 86400; // 24hrs (in seconds)
+
+    protected volatile BCSessionTicketKeyProvider sessionTicketKeyProvider;
+    protected volatile OCSPStaplingManager ocspStaplingManager = null;
+    protected final AtomicLong sessionTicketsIssued = new AtomicLong();
+    protected final AtomicLong sessionTicketResumptionAttempts = new AtomicLong();
+    protected final AtomicLong sessionTicketResumptions = new AtomicLong();
 
     ProvSSLSessionContext(ContextData contextData)
     {
         this.contextData = contextData;
+        this.sessionTicketKeyProvider = new ProvSessionTicketKeyProvider(this, contextData.getCrypto().getSecureRandom());
+
+        int shardCount = 1;
+        while (shardCount < provSessionCacheShards)
+        {
+            shardCount <<= 1;
+        }
+
+        this.sessionShards = new SessionShard[shardCount];
+        for (int i = 0; i < shardCount; ++i)
+        {
+            sessionShards[i] = new SessionShard(i);
+        }
     }
 
     ContextData getContextData()
@@ -61,37 +99,83 @@ ContextData getContextData()
         return contextData;
     }
 
-    synchronized ProvSSLSession getSessionImpl(byte[] sessionID)
+    ProvSSLSession getSessionImpl(byte[] sessionID)
     {
         processQueue();
 
-        return getSessionImpl(mapGet(sessionsByID, makeSessionID(sessionID)));
+        SessionID id = makeSessionID(sessionID);
+        if (null == id)
+        {
+            return null;
+        }
+
+        SessionShard shard = getShard(id);
+        synchronized (shard)
+        {
+            ProvSSLSession session = getSessionImpl(shard, shard.sessions.get(id));
+            shard.recordLookup(null != session);
+            return session;
+        }
     }
 
-    synchronized ProvSSLSession getSessionImpl(String hostName, int port)
+    ProvSSLSession getSessionImpl(String hostName, int port)
     {
         processQueue();
 
-        SessionEntry sessionEntry = mapGet(sessionsByPeer, makePeerKey(hostName, port));
-        ProvSSLSession session = getSessionImpl(sessionEntry);
-        if (session != null)
+        String peerKey = makePeerKey(hostName, port);
+        SessionEntry sessionEntry = mapGet(sessionsByPeer, peerKey);
+        if (null == sessionEntry)
         {
-            // NOTE: For the current simple cache implementation, need to 'access' the sessionByIDs entry
-            sessionsByID.get(sessionEntry.getSessionID());
+            if (null != peerKey)
+            {
+                SessionShard shard = getShard(peerKey.hashCode());
+                synchronized (shard)
+                {
+                    shard.recordLookup(false);
+                }
+            }
+            return null;
+        }
+
+        SessionShard shard = getShard(sessionEntry.getSessionID());
+        synchronized (shard)
+        {
+            // NOTE: 'access' the entry in its shard, so the LRU order reflects lookups by peer too
+            ProvSSLSession session = null;
+            if (shard.sessions.get(sessionEntry.getSessionID()) == sessionEntry)
+            {
+                session = getSessionImpl(shard, sessionEntry);
+            }
+            else
+            {
+                removeSessionByPeer(sessionEntry);
+            }
+
+            shard.recordLookup(null != session);
+            return session;
         }
-        return session;
     }
 
-    synchronized void removeSession(byte[] sessionID)
+    void removeSession(byte[] sessionID)
     {
-        SessionEntry sessionEntry = mapRemove(sessionsByID, makeSessionID(sessionID));
-        if (null != sessionEntry)
+        SessionID id = makeSessionID(sessionID);
+        if (null == id)
         {
-            removeSessionByPeer(sessionEntry);
+            return;
+        }
+
+        SessionShard shard = getShard(id);
+        synchronized (shard)
+        {
+            SessionEntry sessionEntry = shard.sessions.remove(id);
+            if (null != sessionEntry)
+            {
+                removeSessionByPeer(sessionEntry);
+            }
         }
     }
 
-    synchronized ProvSSLSession reportSession(ProvSSLSessionHandshake handshakeSession, String peerHost, int peerPort,
+    ProvSSLSession reportSession(ProvSSLSessionHandshake handshakeSession, String peerHost, int peerPort,
         TlsSession tlsSession, JsseSessionParameters jsseSessionParameters, boolean addToCache)
     {
         processQueue();
@@ -99,44 +183,240 @@ synchronized ProvSSLSession reportSession(ProvSSLSessionHandshake handshakeSessi
         // Capture the SNI requested during this handshake so it survives onto the established session.
         List<BCSNIServerName> requestedServerNames = handshakeSession.getRequestedServerNames();
 
-        if (!addToCache)
+        SessionID sessionID = addToCache ? makeSessionID(tlsSession.getSessionID()) : null;
+        if (null == sessionID)
         {
             return new ProvSSLSession(this, handshakeSession.getValueMap(), peerHost, peerPort,
                 handshakeSession.getCreationTime(), tlsSession, jsseSessionParameters, requestedServerNames);
         }
 
-        SessionID sessionID = makeSessionID(tlsSession.getSessionID());
-        SessionEntry sessionEntry = mapGet(sessionsByID, sessionID);
-
-        ProvSSLSession session = sessionEntry == null ? null : sessionEntry.get();
-        if (null == session || session.getTlsSession() != tlsSession)
+        SessionShard shard = getShard(sessionID);
+        synchronized (shard)
         {
-            session = new ProvSSLSession(this, handshakeSession.getValueMap(), peerHost, peerPort,
-                handshakeSession.getCreationTime(), tlsSession, jsseSessionParameters, requestedServerNames);
+            sweepIfDue(shard);
 
-            if (null != sessionID)
+            SessionEntry sessionEntry = shard.sessions.get(sessionID);
+
+            ProvSSLSession session = sessionEntry == null ? null : sessionEntry.get();
+            if (null == session || session.getTlsSession() != tlsSession)
             {
+                session = new ProvSSLSession(this, handshakeSession.getValueMap(), peerHost, peerPort,
+                    handshakeSession.getCreationTime(), tlsSession, jsseSessionParameters, requestedServerNames);
+
                 sessionEntry = new SessionEntry(sessionID, session, sessionsQueue);
-                sessionsByID.put(sessionID, sessionEntry);
+                shard.sessions.put(sessionID, sessionEntry);
+
+                evictExcess(shard, getShardCapacity(shard));
+            }
+
+            // NOTE: Updated while holding the shard lock, so an evicted entry can't be re-added here
+            if (shard.sessions.containsKey(sessionID))
+            {
+                mapAdd(sessionsByPeer, sessionEntry.getPeerKey(), sessionEntry);
+            }
+
+            return session;
+        }
+    }
+
+    void addSessionTicket(String peerHost, int peerPort, BasicTlsPSKResumption sessionTicket,
+        JsseSessionParameters jsseSessionParameters)
+    {
+        String peerKey = makePeerKey(peerHost, peerPort);
+        if (null == peerKey)
+        {
+            return;
+        }
+
+        synchronized (sessionTicketsByPeer)
+        {
+            LinkedList<SessionTicketEntry> tickets = sessionTicketsByPeer.get(peerKey);
+            if (null == tickets)
+            {
+                tickets = new LinkedList<SessionTicketEntry>();
+                sessionTicketsByPeer.put(peerKey, tickets);
+            }
+
+            tickets.addFirst(new SessionTicketEntry(sessionTicket, jsseSessionParameters));
+
+            while (tickets.size() > MAX_SESSION_TICKETS_PER_PEER)
+            {
+                tickets.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Remove and return the most recent usable session ticket for the given peer. Tickets are
+     * single-use, per the recommendation of RFC 8446 C.4.
+     */
+    SessionTicketEntry takeSessionTicket(String peerHost, int peerPort)
+    {
+        String peerKey = makePeerKey(peerHost, peerPort);
+
+        long currentTime = System.currentTimeMillis();
+        long creationTimeLimit = getCreationTimeLimit(currentTime);
+
+        synchronized (sessionTicketsByPeer)
+        {
+            LinkedList<SessionTicketEntry> tickets = mapGet(sessionTicketsByPeer, peerKey);
+            if (null == tickets)
+            {
+                return null;
+            }
+
+            SessionTicketEntry result = null;
+            while (null == result && !tickets.isEmpty())
+            {
+                SessionTicketEntry entry = tickets.removeFirst();
+                BasicTlsPSKResumption sessionTicket = entry.getSessionTicket();
+                if (!sessionTicket.isExpired(currentTime) && sessionTicket.getTicketReceiptTime() >= creationTimeLimit)
+                {
+                    result = entry;
+                }
+            }
+
+            if (tickets.isEmpty())
+            {
+                sessionTicketsByPeer.remove(peerKey);
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * @return the lifetime (in seconds) of session tickets issued by servers using this context.
+     */
+    long getSessionTicketLifetime()
+    {
+        // RFC 8446 4.6.1. Servers MUST NOT use any value greater than 604800 seconds (7 days).
+        int timeout = getSessionTimeout();
+        return timeout < 1 ? 604800L : Math.min(timeout, 604800L);
+    }
+
+    void notifySessionTicketIssued()
+    {
+        sessionTicketsIssued.incrementAndGet();
+    }
+
+    void notifySessionTicketsOffered(boolean resumed)
+    {
+        sessionTicketResumptionAttempts.incrementAndGet();
+        if (resumed)
+        {
+            sessionTicketResumptions.incrementAndGet();
+        }
+    }
+
+    public BCSessionTicketKeyProvider getSessionTicketKeyProvider()
+    {
+        return sessionTicketKeyProvider;
+    }
+
+    public void setSessionTicketKeyProvider(BCSessionTicketKeyProvider sessionTicketKeyProvider)
+    {
+        this.sessionTicketKeyProvider = sessionTicketKeyProvider;
+    }
+
+    public OCSPStaplingManager getOCSPStaplingManager()
+    {
+        return ocspStaplingManager;
+    }
+
+    public void setOCSPStaplingManager(OCSPStaplingManager ocspStaplingManager)
+    {
+        this.ocspStaplingManager = ocspStaplingManager;
+    }
+
+    public long getSessionTicketsIssued()
+    {
+        return sessionTicketsIssued.get();
+    }
+
+    public long getSessionTicketResumptionAttempts()
+    {
+        return sessionTicketResumptionAttempts.get();
+    }
+
+    public long getSessionTicketResumptions()
+    {
+        return sessionTicketResumptions.get();
+    }
+
+    public long getSessionCacheHits()
+    {
+        long total = 0;
+        for (int i = 0; i < sessionShards.length; ++i)
+        {
+            SessionShard shard = sessionShards[i];
+            synchronized (shard)
+            {
+                total += shard.hits;
             }
         }
+        return total;
+    }
 
-        if (null != sessionEntry)
+    public long getSessionCacheMisses()
+    {
+        long total = 0;
+        for (int i = 0; i < sessionShards.length; ++i)
         {
-            mapAdd(sessionsByPeer, sessionEntry.getPeerKey(), sessionEntry);
+            SessionShard shard = sessionShards[i];
+            synchronized (shard)
+            {
+                total += shard.misses;
+            }
         }
+        return total;
+    }
 
-        return session;
+    public long getSessionCacheEvictions()
+    {
+        long total = 0;
+        for (int i = 0; i < sessionShards.length; ++i)
+        {
+            SessionShard shard = sessionShards[i];
+            synchronized (shard)
+            {
+                total += shard.evictions;
+            }
+        }
+        return total;
     }
 
-    public synchronized Enumeration<byte[]> getIds()
+    public long getSessionCacheExpirations()
     {
-        removeAllExpiredSessions();
+        long total = 0;
+        for (int i = 0; i < sessionShards.length; ++i)
+        {
+            SessionShard shard = sessionShards[i];
+            synchronized (shard)
+            {
+                total += shard.expirations;
+            }
+        }
+        return total;
+    }
+
+    public Enumeration<byte[]> getIds()
+    {
+        processQueue();
 
-        ArrayList<byte[]> ids = new ArrayList<byte[]>(sessionsByID.size());
-        for (SessionID sessionID : sessionsByID.keySet())
+        ArrayList<byte[]> ids = new ArrayList<byte[]>();
+        for (int i = 0; i < sessionShards.length; ++i)
         {
-            ids.add(sessionID.getBytes());
+            SessionShard shard = sessionShards[i];
+            synchronized (shard)
+            {
+                removeExpiredSessions(shard);
+
+                for (SessionID sessionID : shard.sessions.keySet())
+                {
+                    ids.add(sessionID.getBytes());
+                }
+            }
         }
         return Collections.enumeration(ids);
     }
@@ -151,12 +431,12 @@ public SSLSession getSession(byte[] sessionID)
         return getSessionImpl(sessionID);
     }
 
-    public synchronized int getSessionCacheSize()
+    public int getSessionCacheSize()
     {
         return sessionCacheSize;
     }
 
-    public synchronized int getSessionTimeout()
+    public int getSessionTimeout()
     {
         return sessionTimeoutSeconds;
     }
@@ -175,22 +455,16 @@ public synchronized void setSessionCacheSize(int size) throws IllegalArgumentExc
 
         this.sessionCacheSize = size;
 
-        removeAllExpiredSessions();
+        processQueue();
 
         // Immediately remove LRU sessions in excess of the new limit
-        if (sessionCacheSize > 0)
+        for (int i = 0; i < sessionShards.length; ++i)
         {
-            int currentSize = sessionsByID.size();
-            if (currentSize > sessionCacheSize)
+            SessionShard shard = sessionShards[i];
+            synchronized (shard)
             {
-                Iterator<SessionEntry> iter = sessionsByID.values().iterator();
-                while (iter.hasNext() && currentSize > sessionCacheSize)
-                {
-                    SessionEntry sessionEntry = iter.next();
-                    iter.remove();
-                    removeSessionByPeer(sessionEntry);
-                    --currentSize;
-                }
+                removeExpiredSessions(shard);
+                evictExcess(shard, getShardCapacity(shard));
             }
         }
     }
@@ -209,30 +483,70 @@ public synchronized void setSessionTimeout(int seconds) throws IllegalArgumentEx
 
         this.sessionTimeoutSeconds = seconds;
 
-        removeAllExpiredSessions();
+        processQueue();
+
+        for (int i = 0; i < sessionShards.length; ++i)
+        {
+            SessionShard shard = sessionShards[i];
+            synchronized (shard)
+            {
+                removeExpiredSessions(shard);
+            }
+        }
     }
 
-    private ProvSSLSession getSessionImpl(SessionEntry sessionEntry)
+    // NOTE: Must be called with the shard locked
+    private ProvSSLSession getSessionImpl(SessionShard shard, SessionEntry sessionEntry)
     {
+        sweepIfDue(shard);
+
         if (sessionEntry != null)
         {
             ProvSSLSession session = sessionEntry.get();
             if (session != null)
             {
-                if (!invalidateIfCreatedBefore(sessionEntry, getCreationTimeLimit()))
+                if (!invalidateIfCreatedBefore(sessionEntry, getCreationTimeLimit(System.currentTimeMillis())))
                 {
                     return session;
                 }
             }
 
-            removeSession(sessionEntry);
+            removeSession(shard, sessionEntry);
         }
         return null;
     }
 
-    private long getCreationTimeLimit()
+    private long getCreationTimeLimit(long currentTime)
     {
-        return sessionTimeoutSeconds < 1 ? Long.MIN_VALUE : (System.currentTimeMillis() - 1000L * sessionTimeoutSeconds);
+        int timeoutSeconds = sessionTimeoutSeconds;
+        return timeoutSeconds < 1 ? Long.MIN_VALUE : (currentTime - 1000L * timeoutSeconds);
+    }
+
+    /*
+     * The cache size is split exactly: each shard gets (cacheSize / shardCount) sessions, and the first
+     * (cacheSize % shardCount) shards one more. A capacity of 0 means the shard holds no sessions at all.
+     */
+    private int getShardCapacity(SessionShard shard)
+    {
+        int cacheSize = sessionCacheSize;
+        if (cacheSize < 1)
+        {
+            return Integer.MAX_VALUE;
+        }
+
+        int shardCount = sessionShards.length;
+        return cacheSize / shardCount + (shard.index < cacheSize % shardCount ? 1 : 0);
+    }
+
+    private SessionShard getShard(SessionID sessionID)
+    {
+        return getShard(sessionID.hashCode());
+    }
+
+    private SessionShard getShard(int hash)
+    {
+        hash ^= (hash >>> 16);
+        return sessionShards[hash & (sessionShards.length - 1)];
     }
 
     private boolean invalidateIfCreatedBefore(SessionEntry sessionEntry, long creationTimeLimit)
@@ -256,7 +570,11 @@ private void processQueue()
         SessionEntry sessionEntry;
         while ((sessionEntry = (SessionEntry)sessionsQueue.poll()) != null)
         {
-            removeSession(sessionEntry);
+            SessionShard shard = getShard(sessionEntry.getSessionID());
+            synchronized (shard)
+            {
+                removeSession(shard, sessionEntry);
+            }
             ++count;
         }
 
@@ -266,13 +584,31 @@ private void processQueue()
         }
     }
 
-    private void removeAllExpiredSessions()
+    // NOTE: Must be called with the shard locked
+    private void evictExcess(SessionShard shard, int shardCapacity)
     {
-        processQueue();
+        int excess = shard.sessions.size() - shardCapacity;
+        if (excess > 0)
+        {
+            Iterator<SessionEntry> iter = shard.sessions.values().iterator();
+            while (iter.hasNext() && excess > 0)
+            {
+                SessionEntry sessionEntry = iter.next();
+                iter.remove();
+                removeSessionByPeer(sessionEntry);
+                --excess;
+                ++shard.evictions;
+            }
+        }
+    }
 
-        long creationTimeLimit = getCreationTimeLimit();
+    // NOTE: Must be called with the shard locked
+    private void removeExpiredSessions(SessionShard shard)
+    {
+        long currentTime = System.currentTimeMillis();
+        long creationTimeLimit = getCreationTimeLimit(currentTime);
 
-        Iterator<SessionEntry> iter = sessionsByID.values().iterator();
+        Iterator<SessionEntry> iter = shard.sessions.values().iterator();
         while (iter.hasNext())
         {
             SessionEntry sessionEntry = iter.next();
@@ -280,20 +616,42 @@ private void removeAllExpiredSessions()
             {
                 iter.remove();
                 removeSessionByPeer(sessionEntry);
+                ++shard.expirations;
             }
         }
+
+        shard.nextSweepTime = currentTime + SWEEP_INTERVAL_MILLIS;
     }
 
-    private void removeSession(SessionEntry sessionEntry)
+    /*
+     * Expired sessions are otherwise only noticed when looked up, so periodically sweep each shard as part
+     * of an access to it. The cost is amortized over the accesses in the sweep interval.
+     */
+    // NOTE: Must be called with the shard locked
+    private void sweepIfDue(SessionShard shard)
     {
-        mapRemove(sessionsByID, sessionEntry.getSessionID(), sessionEntry);
+        if (System.currentTimeMillis() >= shard.nextSweepTime)
+        {
+            removeExpiredSessions(shard);
+        }
+    }
+
+    // NOTE: Must be called with the shard locked
+    private void removeSession(SessionShard shard, SessionEntry sessionEntry)
+    {
+        SessionID sessionID = sessionEntry.getSessionID();
+        if (shard.sessions.get(sessionID) == sessionEntry)
+        {
+            shard.sessions.remove(sessionID);
+        }
 
         removeSessionByPeer(sessionEntry);
     }
 
     private boolean removeSessionByPeer(SessionEntry sessionEntry)
     {
-        return mapRemove(sessionsByPeer, sessionEntry.getPeerKey(), sessionEntry);
+        String peerKey = sessionEntry.getPeerKey();
+        return null != peerKey && sessionsByPeer.remove(peerKey, sessionEntry);
     }
 
     private static String makePeerKey(ProvSSLSession session)
@@ -332,35 +690,56 @@ private static <K, V> V mapGet(Map<K, V> map, K key)
         return key == null ? null : map.get(key);
     }
 
-    private static <K, V> V mapRemove(Map<K, V> map, K key)
+    static final class SessionTicketEntry
     {
-        if (map == null)
+        private final BasicTlsPSKResumption sessionTicket;
+        private final JsseSessionParameters jsseSessionParameters;
+
+        SessionTicketEntry(BasicTlsPSKResumption sessionTicket, JsseSessionParameters jsseSessionParameters)
         {
-            throw new NullPointerException();
+            this.sessionTicket = sessionTicket;
+            this.jsseSessionParameters = jsseSessionParameters;
+        }
+
+        JsseSessionParameters getJsseSessionParameters()
+        {
+            return jsseSessionParameters;
+        }
+
+        BasicTlsPSKResumption getSessionTicket()
+        {
+            return sessionTicket;
         }
-        return key == null ? null : map.remove(key);
     }
 
-    private static <K, V> boolean mapRemove(Map<K, V> map, K key, V value)
+    private static final class SessionShard
     {
-        if (map == null || value == null)
+        final int index;
+
+        // NOTE: This is configured as a simple LRU cache using the "access order" constructor
+        final LinkedHashMap<SessionID, SessionEntry> sessions = new LinkedHashMap<SessionID, SessionEntry>(16, 0.75f, true);
+
+        long nextSweepTime = 0L;
+
+        // Statistics are kept per shard (and updated under the shard lock) to avoid a contended global counter
+        long hits = 0L, misses = 0L, evictions = 0L, expirations = 0L;
+
+        SessionShard(int index)
         {
-            throw new NullPointerException();
+            this.index = index;
         }
-        if (key != null)
+
+        void recordLookup(boolean hit)
         {
-            // TODO[jsse] From 1.8 there is a 2-argument remove method to accomplish this 
-            V removed = map.remove(key);
-            if (removed == value)
+            if (hit)
             {
-                return true;
+                ++hits;
             }
-            if (removed != null)
+            else
             {
-                map.put(key, removed);
+                ++misses;
             }
         }
-        return false;
     }
 
     private static final class SessionEntry
@@ -21,6 +21,7 @@
 
 import org.bouncycastle.jsse.BCApplicationProtocolSelector;
 import org.bouncycastle.jsse.BCExtendedSSLSession;
+import org.bouncycastle.jsse.BCHandshakeMetricsListener;
 import org.bouncycastle.jsse.BCSSLConnection;
 import org.bouncycastle.jsse.BCSSLParameters;
 import org.bouncycastle.jsse.BCX509Key;
@@ -46,9 +47,10 @@
     protected String peerHost = null;
     protected String peerHostSNI = null;
     protected boolean enableSessionCreation = true;
+    protected BCHandshakeMetricsListener handshakeMetricsListener = null;
     protected boolean useClientMode = true;
 
-    protected TlsProtocol protocol = null;
+    protected volatile TlsProtocol protocol = null;
     protected ProvTlsPeer protocolPeer = null;
     protected HandshakeTimeoutInputStream handshakeTimeoutInput = null;
     protected ProvSSLConnection connection = null;
@@ -185,6 +187,11 @@ public synchronized BCApplicationProtocolSelector<SSLSocket> getBCHandshakeAppli
         return sslParameters.getSocketAPSelector();
     }
 
+    public synchronized BCHandshakeMetricsListener getBCHandshakeMetricsListener()
+    {
+        return handshakeMetricsListener;
+    }
+
     public BCExtendedSSLSession getBCHandshakeSession()
     {
         return getBCHandshakeSessionImpl();
@@ -313,6 +320,11 @@ public synchronized void setBCHandshakeApplicationProtocolSelector(BCApplication
         sslParameters.setSocketAPSelector(selector);
     }
 
+    public synchronized void setBCHandshakeMetricsListener(BCHandshakeMetricsListener listener)
+    {
+        this.handshakeMetricsListener = listener;
+    }
+
     public synchronized void setBCSessionToResume(BCExtendedSSLSession session)
     {
         if (null == session)
@@ -545,11 +557,24 @@ synchronized ProvSSLSession getSessionImpl()
         return dummySession;
     }
 
-    synchronized void handshakeIfNecessary(boolean resumable) throws IOException
+    void handshakeIfNecessary(boolean resumable) throws IOException
     {
-        if (protocol == null || protocol.isHandshaking())
+        /*
+         * Avoid taking the socket monitor on every read/write once the handshake is complete, so that
+         * concurrent reader and writer threads don't contend for it.
+         */
+        TlsProtocol protocol = this.protocol;
+        if (protocol != null && !protocol.isHandshaking())
         {
-            startHandshake(resumable);
+            return;
+        }
+
+        synchronized (this)
+        {
+            if (this.protocol == null || this.protocol.isHandshaking())
+            {
+                startHandshake(resumable);
+            }
         }
     }
 
@@ -0,0 +1,308 @@
+package org.bouncycastle.jsse.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Vector;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.bouncycastle.jsse.BCSessionTicketKey;
+import org.bouncycastle.jsse.BCSessionTicketKeyProvider;
+import org.bouncycastle.tls.Certificate;
+import org.bouncycastle.tls.CertificateType;
+import org.bouncycastle.tls.ProtocolVersion;
+import org.bouncycastle.tls.SessionParameters;
+import org.bouncycastle.tls.TlsUtils;
+import org.bouncycastle.tls.crypto.CryptoHashAlgorithm;
+import org.bouncycastle.tls.crypto.TlsCertificate;
+import org.bouncycastle.tls.crypto.TlsHMAC;
+import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCrypto;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Strings;
+
+/**
+ * The session state carried (encrypted) in a TLS 1.3 session ticket issued by a BCJSSE server, so that
+ * the server needn't keep any state of its own to resume the session.
+ * <p>
+ * The ticket is constructed per RFC 5077 4. "Recommended Ticket Construction", i.e. key_name (16
+ * bytes), IV (16 bytes), the state encrypted using AES-CBC, and an HMAC-SHA256 over all of those.
+ * </p>
+ */
+class ProvSessionTicket
+{
+    private static final short STATE_VERSION = 1;
+
+    private static final int IV_LENGTH = 16;
+    private static final int MAC_LENGTH = 32;
+
+    static boolean canEncode(SessionParameters sessionParameters)
+    {
+        return canEncode(sessionParameters.getLocalCertificate())
+            && canEncode(sessionParameters.getPeerCertificate());
+    }
+
+    static ProvSessionTicket open(JcaTlsCrypto crypto, BCSessionTicketKeyProvider keyProvider, byte[] ticket)
+    {
+        int cipherTextLength = ticket.length - (BCSessionTicketKey.NAME_LENGTH + IV_LENGTH + MAC_LENGTH);
+        if (cipherTextLength < 16 || (cipherTextLength & 15) != 0)
+        {
+            return null;
+        }
+
+        BCSessionTicketKey key = keyProvider.getDecryptionKey(
+            Arrays.copyOfRange(ticket, 0, BCSessionTicketKey.NAME_LENGTH));
+        if (null == key)
+        {
+            return null;
+        }
+
+        try
+        {
+            int macOff = ticket.length - MAC_LENGTH;
+            byte[] mac = calculateMac(crypto, key, ticket, 0, macOff);
+            if (!Arrays.constantTimeAreEqual(MAC_LENGTH, mac, 0, ticket, macOff))
+            {
+                return null;
+            }
+
+            int ivOff = BCSessionTicketKey.NAME_LENGTH;
+
+            Cipher cipher = crypto.getHelper().createCipher("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, key.getEncryptionKey(), new IvParameterSpec(ticket, ivOff, IV_LENGTH));
+            byte[] state = cipher.doFinal(ticket, ivOff + IV_LENGTH, cipherTextLength);
+
+            return parseState(crypto, state);
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    static byte[] seal(JcaTlsCrypto crypto, BCSessionTicketKey key, ProvSessionTicket sessionTicket)
+        throws IOException
+    {
+        byte[] state = sessionTicket.encodeState();
+
+        byte[] iv = new byte[IV_LENGTH];
+        crypto.getSecureRandom().nextBytes(iv);
+
+        byte[] cipherText;
+        try
+        {
+            Cipher cipher = crypto.getHelper().createCipher("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, key.getEncryptionKey(), new IvParameterSpec(iv));
+            cipherText = cipher.doFinal(state);
+        }
+        catch (Exception e)
+        {
+            throw new IOException("Failed to encrypt session ticket: " + e.getMessage());
+        }
+        finally
+        {
+            Arrays.fill(state, (byte)0);
+        }
+
+        int macOff = BCSessionTicketKey.NAME_LENGTH + IV_LENGTH + cipherText.length;
+
+        byte[] ticket = new byte[macOff + MAC_LENGTH];
+        System.arraycopy(key.getName(), 0, ticket, 0, BCSessionTicketKey.NAME_LENGTH);
+        System.arraycopy(iv, 0, ticket, BCSessionTicketKey.NAME_LENGTH, IV_LENGTH);
+        System.arraycopy(cipherText, 0, ticket, BCSessionTicketKey.NAME_LENGTH + IV_LENGTH, cipherText.length);
+
+        byte[] mac = calculateMac(crypto, key, ticket, 0, macOff);
+        System.arraycopy(mac, 0, ticket, macOff, MAC_LENGTH);
+
+        return ticket;
+    }
+
+    private static byte[] calculateMac(JcaTlsCrypto crypto, BCSessionTicketKey key, byte[] buf, int off, int len)
+    {
+        byte[] macKey = key.getMacKey().getEncoded();
+
+        TlsHMAC hmac = crypto.createHMACForHash(CryptoHashAlgorithm.sha256);
+        hmac.setKey(macKey, 0, macKey.length);
+        hmac.update(buf, off, len);
+        return hmac.calculateMAC();
+    }
+
+    private static boolean canEncode(Certificate certificate)
+    {
+        return null == certificate || certificate.getCertificateType() == CertificateType.X509;
+    }
+
+    private static void encodeCertificate(Certificate certificate, OutputStream output) throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        if (null != certificate)
+        {
+            for (int i = 0; i < certificate.getLength(); ++i)
+            {
+                TlsUtils.writeOpaque24(certificate.getCertificateAt(i).getEncoded(), buf);
+            }
+        }
+        TlsUtils.writeOpaque24(buf.toByteArray(), output);
+    }
+
+    private static Certificate parseCertificate(JcaTlsCrypto crypto, InputStream input) throws IOException
+    {
+        byte[] encoding = TlsUtils.readOpaque24(input);
+        if (encoding.length < 1)
+        {
+            return null;
+        }
+
+        ByteArrayInputStream buf = new ByteArrayInputStream(encoding);
+        Vector<TlsCertificate> certs = new Vector<TlsCertificate>();
+        while (buf.available() > 0)
+        {
+            certs.addElement(crypto.createCertificate(TlsUtils.readOpaque24(buf, 1)));
+        }
+
+        TlsCertificate[] certificateList = new TlsCertificate[certs.size()];
+        certs.copyInto(certificateList);
+        return new Certificate(certificateList);
+    }
+
+    private static ProvSessionTicket parseState(JcaTlsCrypto crypto, byte[] state) throws IOException
+    {
+        ByteArrayInputStream input = new ByteArrayInputStream(state);
+        try
+        {
+            if (STATE_VERSION != TlsUtils.readUint8(input))
+            {
+                return null;
+            }
+
+            long creationTime = (TlsUtils.readUint32(input) << 32) | TlsUtils.readUint32(input);
+            long ticketLifetime = TlsUtils.readUint32(input);
+            long ticketAgeAdd = TlsUtils.readUint32(input);
+            int cipherSuite = TlsUtils.readUint16(input);
+            ProtocolVersion negotiatedVersion = TlsUtils.readVersion(input);
+            byte[] psk = TlsUtils.readOpaque8(input, 1);
+            Certificate localCertificate = parseCertificate(crypto, input);
+            Certificate peerCertificate = parseCertificate(crypto, input);
+            byte[] endpointIDAlgorithm = TlsUtils.readOpaque8(input);
+
+            if (input.available() > 0)
+            {
+                return null;
+            }
+
+            return new ProvSessionTicket(creationTime, ticketLifetime, ticketAgeAdd, cipherSuite, negotiatedVersion,
+                psk, localCertificate, peerCertificate,
+                endpointIDAlgorithm.length < 1 ? null : Strings.fromUTF8ByteArray(endpointIDAlgorithm));
+        }
+        finally
+        {
+            Arrays.fill(state, (byte)0);
+        }
+    }
+
+    private final long creationTime;
+    private final long ticketLifetime;
+    private final long ticketAgeAdd;
+    private final int cipherSuite;
+    private final ProtocolVersion negotiatedVersion;
+    private final byte[] psk;
+    private final Certificate localCertificate;
+    private final Certificate peerCertificate;
+    private final String endpointIDAlgorithm;
+
+    ProvSessionTicket(long creationTime, long ticketLifetime, long ticketAgeAdd, int cipherSuite,
+        ProtocolVersion negotiatedVersion, byte[] psk, Certificate localCertificate, Certificate peerCertificate,
+        String endpointIDAlgorithm)
+    {
+        this.creationTime = creationTime;
+        this.ticketLifetime = ticketLifetime;
+        this.ticketAgeAdd = ticketAgeAdd;
+        this.cipherSuite = cipherSuite;
+        this.negotiatedVersion = negotiatedVersion;
+        this.psk = psk;
+        this.localCertificate = localCertificate;
+        this.peerCertificate = peerCertificate;
+        this.endpointIDAlgorithm = endpointIDAlgorithm;
+    }
+
+    int getCipherSuite()
+    {
+        return cipherSuite;
+    }
+
+    String getEndpointIDAlgorithm()
+    {
+        return endpointIDAlgorithm;
+    }
+
+    ProtocolVersion getNegotiatedVersion()
+    {
+        return negotiatedVersion;
+    }
+
+    Certificate getPeerCertificate()
+    {
+        return peerCertificate;
+    }
+
+    long getTicketAgeAdd()
+    {
+        return ticketAgeAdd;
+    }
+
+    TlsSecret createPSK(JcaTlsCrypto crypto)
+    {
+        return crypto.createSecret(psk);
+    }
+
+    SessionParameters createSessionParameters()
+    {
+        /*
+         * NOTE: A TLS 1.3 session has no further use for the master secret once established, so it isn't
+         * carried in the ticket, and the resumed session has none.
+         */
+        return new SessionParameters.Builder()
+            .setCipherSuite(cipherSuite)
+            .setExtendedMasterSecret(true)
+            .setLocalCertificate(localCertificate)
+            .setNegotiatedVersion(negotiatedVersion)
+            .setPeerCertificate(peerCertificate)
+            .build();
+    }
+
+    /**
+     * RFC 8446 4.2.11. The client's view of the age of the ticket is the obfuscated_ticket_age less the
+     * ticket_age_add (modulo 2^32), and a ticket older than its lifetime must not be accepted (RFC 8446 4.6.1).
+     */
+    boolean isValidTicketAge(long obfuscatedTicketAge)
+    {
+        long ticketAge = (obfuscatedTicketAge - ticketAgeAdd) & 0xFFFFFFFFL;
+        return ticketAge < ticketLifetime * 1000L;
+    }
+
+    boolean isExpired(long currentTime)
+    {
+        return currentTime - creationTime >= ticketLifetime * 1000L || currentTime < creationTime - 60000L;
+    }
+
+    private byte[] encodeState() throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TlsUtils.writeUint8(STATE_VERSION, output);
+        TlsUtils.writeUint64(creationTime, output);
+        TlsUtils.writeUint32(ticketLifetime, output);
+        TlsUtils.writeUint32(ticketAgeAdd, output);
+        TlsUtils.writeUint16(cipherSuite, output);
+        TlsUtils.writeVersion(negotiatedVersion, output);
+        TlsUtils.writeOpaque8(psk, output);
+        encodeCertificate(localCertificate, output);
+        encodeCertificate(peerCertificate, output);
+        TlsUtils.writeOpaque8(null == endpointIDAlgorithm ? TlsUtils.EMPTY_BYTES
+            : Strings.toUTF8ByteArray(endpointIDAlgorithm), output);
+        return output.toByteArray();
+    }
+}
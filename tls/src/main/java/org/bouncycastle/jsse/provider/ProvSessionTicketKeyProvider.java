@@ -0,0 +1,114 @@
+package org.bouncycastle.jsse.provider;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jsse.BCSessionTicketKey;
+import org.bouncycastle.jsse.BCSessionTicketKeyProvider;
+import org.bouncycastle.util.Arrays;
+
+/**
+ * The default {@link BCSessionTicketKeyProvider}: a new random key is generated every rotation period,
+ * and retired keys remain available for decryption for as long as tickets issued under them may be
+ * valid.
+ */
+class ProvSessionTicketKeyProvider
+    implements BCSessionTicketKeyProvider
+{
+    private static final int provKeyRotationSeconds = PropertyUtils
+        .getIntegerSystemProperty("org.bouncycastle.jsse.server.sessionTicketKeyRotation", 3600, 1, 604800);
+
+    private final ProvSSLSessionContext sslSessionContext;
+    private final SecureRandom random;
+    private final long rotationMillis;
+
+    // NOTE: Most recent key first
+    private final LinkedList<KeyEntry> keys = new LinkedList<KeyEntry>();
+
+    ProvSessionTicketKeyProvider(ProvSSLSessionContext sslSessionContext, SecureRandom random)
+    {
+        this.sslSessionContext = sslSessionContext;
+        this.random = random;
+        this.rotationMillis = 1000L * provKeyRotationSeconds;
+    }
+
+    public synchronized BCSessionTicketKey getEncryptionKey()
+    {
+        long now = System.currentTimeMillis();
+
+        KeyEntry current = keys.isEmpty() ? null : keys.getFirst();
+        if (null == current || now - current.creationTime >= rotationMillis)
+        {
+            current = new KeyEntry(generateKey(), now);
+            keys.addFirst(current);
+
+            removeRetiredKeys(now);
+        }
+
+        return current.key;
+    }
+
+    public synchronized BCSessionTicketKey getDecryptionKey(byte[] name)
+    {
+        removeRetiredKeys(System.currentTimeMillis());
+
+        for (KeyEntry entry : keys)
+        {
+            if (Arrays.constantTimeAreEqual(name, entry.name))
+            {
+                return entry.key;
+            }
+        }
+        return null;
+    }
+
+    private BCSessionTicketKey generateKey()
+    {
+        byte[] name = new byte[BCSessionTicketKey.NAME_LENGTH];
+        byte[] encryptionKey = new byte[16];
+        byte[] macKey = new byte[32];
+
+        random.nextBytes(name);
+        random.nextBytes(encryptionKey);
+        random.nextBytes(macKey);
+
+        return new BCSessionTicketKey(name, new SecretKeySpec(encryptionKey, "AES"),
+            new SecretKeySpec(macKey, "HmacSHA256"));
+    }
+
+    private void removeRetiredKeys(long now)
+    {
+        /*
+         * A key stops issuing tickets once it is rotated out, after which its tickets can remain valid
+         * for up to the ticket lifetime.
+         */
+        long retentionMillis = rotationMillis + 1000L * sslSessionContext.getSessionTicketLifetime();
+
+        Iterator<KeyEntry> iter = keys.iterator();
+        while (iter.hasNext())
+        {
+            KeyEntry entry = iter.next();
+            if (now - entry.creationTime >= retentionMillis)
+            {
+                iter.remove();
+            }
+        }
+    }
+
+    private static final class KeyEntry
+    {
+        final BCSessionTicketKey key;
+        final byte[] name;
+        final long creationTime;
+
+        KeyEntry(BCSessionTicketKey key, long creationTime)
+        {
+            this.key = key;
+            this.name = key.getName();
+            this.creationTime = creationTime;
+        }
+    }
+}
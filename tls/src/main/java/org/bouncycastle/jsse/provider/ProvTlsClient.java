@@ -19,6 +19,7 @@
 import org.bouncycastle.jsse.provider.SignatureSchemeInfo.PerConnection;
 import org.bouncycastle.tls.AlertDescription;
 import org.bouncycastle.tls.AlertLevel;
+import org.bouncycastle.tls.BasicTlsPSKResumption;
 import org.bouncycastle.tls.CertificateRequest;
 import org.bouncycastle.tls.CertificateStatusRequest;
 import org.bouncycastle.tls.CertificateStatusRequestItemV2;
@@ -39,6 +40,8 @@
 import org.bouncycastle.tls.TlsDHGroupVerifier;
 import org.bouncycastle.tls.TlsExtensionsUtils;
 import org.bouncycastle.tls.TlsFatalAlert;
+import org.bouncycastle.tls.TlsHandshakeMetricsListener;
+import org.bouncycastle.tls.TlsPSKResumption;
 import org.bouncycastle.tls.TlsServerCertificate;
 import org.bouncycastle.tls.TlsSession;
 import org.bouncycastle.tls.TlsUtils;
@@ -405,12 +408,54 @@ public Vector getEarlyKeyShareGroups()
         return super.getEarlyKeyShareGroups();
     }
 
+    @Override
+    public TlsHandshakeMetricsListener getHandshakeMetricsListener()
+    {
+        return ProvHandshakeMetrics.adaptListener(manager.getBCHandshakeMetricsListener());
+    }
+
     @Override
     public int getMaxCertificateChainLength()
     {
         return JsseUtils.getMaxInboundCertChainLenClient();
     }
 
+    @Override
+    public int[] getCertificateCompressionAlgorithms()
+    {
+        return JsseUtils.getCertificateCompressionAlgorithms();
+    }
+
+    @Override
+    public Vector<TlsPSKResumption> getResumptionPSKs()
+    {
+        if (!provClientEnableSessionResumption || null != sslParameters.getSessionToResume())
+        {
+            return null;
+        }
+
+        ProvSSLSessionContext sslSessionContext = manager.getContextData().getClientSessionContext();
+
+        ProvSSLSessionContext.SessionTicketEntry entry;
+        while (null != (entry = sslSessionContext.takeSessionTicket(manager.getPeerHost(), manager.getPeerPort())))
+        {
+            BasicTlsPSKResumption sessionTicket = entry.getSessionTicket();
+            if (isResumable(sessionTicket.getSessionParameters(), entry.getJsseSessionParameters()))
+            {
+                if (LOG.isLoggable(Level.FINE))
+                {
+                    LOG.fine(clientID + " offering session ticket");
+                }
+
+                Vector<TlsPSKResumption> result = new Vector<TlsPSKResumption>(1);
+                result.addElement(sessionTicket);
+                return result;
+            }
+        }
+
+        return null;
+    }
+
     @Override
     public int getHandshakeTimeoutMillis()
     {
@@ -616,6 +661,21 @@ public void notifyServerVersion(ProtocolVersion serverVersion) throws IOExceptio
         super.notifyServerVersion(serverVersion);
     }
 
+    @Override
+    public void notifyResumptionPSK(TlsPSKResumption resumptionPSK) throws IOException
+    {
+        if (!provClientEnableSessionResumption || !(resumptionPSK instanceof BasicTlsPSKResumption))
+        {
+            return;
+        }
+
+        JsseSessionParameters jsseSessionParameters = new JsseSessionParameters(
+            sslParameters.getEndpointIdentificationAlgorithm(), null);
+
+        manager.getContextData().getClientSessionContext().addSessionTicket(manager.getPeerHost(),
+            manager.getPeerPort(), (BasicTlsPSKResumption)resumptionPSK, jsseSessionParameters);
+    }
+
     @Override
     public void notifySessionToResume(TlsSession session)
     {
@@ -729,23 +789,30 @@ protected SessionParameters getResumableSessionParameters(ProvSSLSession provSSL
         // TODO[resumption] Avoid the copy somehow?
         SessionParameters sessionParameters = tlsSession.exportSessionParameters();
 
+        // NOTE: TLS 1.3 sessions are only resumed via session tickets (see getResumptionPSKs)
+        if (null == sessionParameters ||
+            TlsUtils.isTLSv13(sessionParameters.getNegotiatedVersion()) ||
+            !isResumable(sessionParameters, provSSLSession.getJsseSessionParameters()))
+        {
+            return null;
+        }
+
+        return sessionParameters;
+    }
+
+    protected boolean isResumable(SessionParameters sessionParameters, JsseSessionParameters jsseSessionParameters)
+    {
         {
             if (null == sessionParameters ||
                 !Arrays.contains(getCipherSuites(), sessionParameters.getCipherSuite()))
             {
-                return null;
+                return false;
             }
 
             ProtocolVersion sessionVersion = sessionParameters.getNegotiatedVersion();
             if (!ProtocolVersion.contains(getProtocolVersions(), sessionVersion))
             {
-                return null;
-            }
-
-            // TODO[tls13] Resumption/PSK 
-            if (TlsUtils.isTLSv13(sessionVersion))
-            {
-                return null;
+                return false;
             }
         }
 
@@ -753,7 +820,6 @@ protected SessionParameters getResumableSessionParameters(ProvSSLSession provSSL
             String connectionEndpointID = sslParameters.getEndpointIdentificationAlgorithm();
             if (null != connectionEndpointID)
             {
-                JsseSessionParameters jsseSessionParameters = provSSLSession.getJsseSessionParameters();
                 String sessionEndpointID = jsseSessionParameters.getEndpointIDAlgorithm();
                 if (!connectionEndpointID.equalsIgnoreCase(sessionEndpointID))
                 {
@@ -762,12 +828,12 @@ protected SessionParameters getResumableSessionParameters(ProvSSLSession provSSL
                         LOG.finer(clientID + ": Session not resumable - endpoint ID algorithm mismatch; connection: "
                             + connectionEndpointID + ", session: " + sessionEndpointID);
                     }
-                    return null;
+                    return false;
                 }
             }
         }
 
-        return sessionParameters;
+        return true;
     }
 
     protected TlsCredentials selectClientCredentials12(Principal[] issuers, short[] certificateTypes)
@@ -5,6 +5,7 @@
 import java.security.cert.X509Certificate;
 import java.util.List;
 
+import org.bouncycastle.jsse.BCHandshakeMetricsListener;
 import org.bouncycastle.jsse.BCX509Key;
 import org.bouncycastle.tls.SecurityParameters;
 
@@ -20,6 +21,8 @@
 
     ProvSSLSessionHandshake getBCHandshakeSessionImpl();
 
+    BCHandshakeMetricsListener getBCHandshakeMetricsListener();
+
     ContextData getContextData();
 
     boolean getEnableSessionCreation();
@@ -21,19 +21,24 @@
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.jsse.BCSNIMatcher;
 import org.bouncycastle.jsse.BCSNIServerName;
+import org.bouncycastle.jsse.BCSessionTicketKey;
+import org.bouncycastle.jsse.BCSessionTicketKeyProvider;
 import org.bouncycastle.jsse.BCX509Key;
 import org.bouncycastle.jsse.provider.SignatureSchemeInfo.PerConnection;
 import org.bouncycastle.tls.AlertDescription;
 import org.bouncycastle.tls.AlertLevel;
+import org.bouncycastle.tls.BasicTlsPSKResumption;
 import org.bouncycastle.tls.Certificate;
 import org.bouncycastle.tls.CertificateRequest;
-import org.bouncycastle.tls.CertificateStatus;
 import org.bouncycastle.tls.ClientCertificateType;
 import org.bouncycastle.tls.DefaultTlsServer;
 import org.bouncycastle.tls.KeyExchangeAlgorithm;
 import org.bouncycastle.tls.NamedGroup;
+import org.bouncycastle.tls.NewSessionTicket;
+import org.bouncycastle.tls.OCSPStaplingManager;
 import org.bouncycastle.tls.ProtocolName;
 import org.bouncycastle.tls.ProtocolVersion;
+import org.bouncycastle.tls.PskIdentity;
 import org.bouncycastle.tls.SecurityParameters;
 import org.bouncycastle.tls.ServerName;
 import org.bouncycastle.tls.SessionParameters;
@@ -43,11 +48,14 @@
 import org.bouncycastle.tls.TlsDHUtils;
 import org.bouncycastle.tls.TlsExtensionsUtils;
 import org.bouncycastle.tls.TlsFatalAlert;
+import org.bouncycastle.tls.TlsHandshakeMetricsListener;
+import org.bouncycastle.tls.TlsPSKResumption;
 import org.bouncycastle.tls.TlsSession;
 import org.bouncycastle.tls.TlsUtils;
 import org.bouncycastle.tls.TrustedAuthority;
 import org.bouncycastle.tls.crypto.DHGroup;
 import org.bouncycastle.tls.crypto.TlsDHConfig;
+import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCrypto;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.encoders.Hex;
@@ -71,10 +79,12 @@
     private static final boolean provServerEnableSessionResumption = PropertyUtils
         .getBooleanSystemProperty("org.bouncycastle.jsse.server.enableSessionResumption", true);
 
-    // TODO[jsse] Support status_request and status_request_v2 extensions
-//    private static final boolean provServerEnableStatusRequest = PropertyUtils.getBooleanSystemProperty(
-//        "jdk.tls.server.enableStatusRequestExtension", false);
-    private static final boolean provServerEnableStatusRequest = false;
+    private static final boolean provServerEnableSessionTickets = PropertyUtils
+        .getBooleanSystemProperty("org.bouncycastle.jsse.server.enableSessionTickets", true);
+
+    // NOTE: OCSP stapling also requires an OCSPStaplingManager to be set on the server session context
+    private static final boolean provServerEnableStatusRequest = PropertyUtils.getBooleanSystemProperty(
+        "jdk.tls.server.enableStatusRequestExtension", true);
 
     private static final boolean provServerEnableTrustedCAKeys = PropertyUtils
         .getBooleanSystemProperty("org.bouncycastle.jsse.server.enableTrustedCAKeysExtension", false);
@@ -180,6 +190,8 @@ private static BigInteger parseDHParameter(String s, int beginIndex, int endInde
     protected final JsseSecurityParameters jsseSecurityParameters = new JsseSecurityParameters();
 
     protected ProvSSLSession sslSession = null;
+    protected ProvSessionTicket resumptionTicket = null;
+    protected boolean sessionTicketsOffered = false;
     protected BCSNIServerName matchedSNIServerName = null;
     protected Set<String> keyManagerMissCache = null;
     protected TlsCredentials credentials = null;
@@ -212,13 +224,13 @@ public TlsContext getTlsContext()
     @Override
     protected boolean allowCertificateStatus()
     {
-        return provServerEnableStatusRequest;
+        return provServerEnableStatusRequest && null != getOCSPStaplingManager();
     }
 
     @Override
     protected boolean allowMultiCertStatus()
     {
-        return provServerEnableStatusRequest;
+        return provServerEnableStatusRequest && null != getOCSPStaplingManager();
     }
 
     @Override
@@ -443,12 +455,24 @@ public boolean allowLegacyResumption()
         return JsseUtils.allowLegacyResumption();
     }
 
+    @Override
+    public TlsHandshakeMetricsListener getHandshakeMetricsListener()
+    {
+        return ProvHandshakeMetrics.adaptListener(manager.getBCHandshakeMetricsListener());
+    }
+
     @Override
     public int getMaxCertificateChainLength()
     {
         return JsseUtils.getMaxInboundCertChainLenServer();
     }
 
+    @Override
+    public int[] getCertificateCompressionAlgorithms()
+    {
+        return JsseUtils.getCertificateCompressionAlgorithms();
+    }
+
     @Override
     public int getHandshakeTimeoutMillis()
     {
@@ -532,57 +556,9 @@ public CertificateRequest getCertificateRequest() throws IOException
     }
 
     @Override
-    public CertificateStatus getCertificateStatus() throws IOException
-    {
-        // TODO[jsse] Support status_request and status_request_v2 extensions
-//        SecurityParameters securityParameters = context.getSecurityParametersHandshake();
-//        int statusRequestVersion = securityParameters.getStatusRequestVersion();
-//
-//        if (statusRequestVersion == 2)
-//        {
-//            int count = statusRequestV2.size();
-//            for (int i = 0; i < count; ++i)
-//            {
-//                CertificateStatusRequestItemV2 item = (CertificateStatusRequestItemV2)statusRequestV2.get(i);
-//                short statusType = item.getStatusType();
-//                if (CertificateStatusType.ocsp_multi == statusType)
-//                {
-//                    int chainLength = credentials.getCertificate().getLength();
-//                    Vector ocspResponseList = new Vector(chainLength);
-//                    for (int j = 0; j < chainLength; ++j)
-//                    {
-//                        // TODO Actual OCSP response
-//                        ocspResponseList.add(null);
-//                    }
-//
-//                    return new CertificateStatus(CertificateStatusType.ocsp_multi, ocspResponseList);
-//                }
-//                else if (CertificateStatusType.ocsp == statusType)
-//                {
-//                    // TODO Actual OCSP response
-//                    OCSPResponse ocspResponse;
-//
-//                    return new CertificateStatus(CertificateStatusType.ocsp, ocspResponse);
-//                }
-//            }
-//        }
-//        else if (statusRequestVersion == 1)
-//        {
-//            if (CertificateStatusType.ocsp == certificateStatusRequest.getStatusType())
-//            {
-//                OCSPStatusRequest ocspStatusRequest = certificateStatusRequest.getOCSPStatusRequest();
-//
-//                @SuppressWarnings("unchecked")
-//                Vector<ResponderID> responderIDList = ocspStatusRequest.getResponderIDList();
-//                Extensions requestExtensions = ocspStatusRequest.getRequestExtensions();
-//
-//                X509Certificate eeCert = JsseUtils.getEndEntity(getCrypto(), credentials.getCertificate());
-//
-//                // ...
-//            }
-//        }
-
-        return null;
+    protected OCSPStaplingManager getOCSPStaplingManager()
+    {
+        return manager.getContextData().getServerSessionContext().getOCSPStaplingManager();
     }
 
     @Override
@@ -665,6 +641,23 @@ public int getSelectedCipherSuite() throws IOException
             }
         }
 
+        if (null != resumptionTicket)
+        {
+            // NOTE: The ticket's cipher suite was checked against the offered and enabled ones in getResumptionPSK
+            this.selectedCipherSuite = resumptionTicket.getCipherSuite();
+            this.credentials = null;
+
+            String selectedCipherSuiteName = contextData.validateNegotiatedCipherSuite(sslParameters,
+                selectedCipherSuite);
+
+            if (LOG.isLoggable(Level.FINE))
+            {
+                LOG.fine(serverID + " selected cipher suite (resumption): " + selectedCipherSuiteName);
+            }
+
+            return selectedCipherSuite;
+        }
+
         if (DummyX509KeyManager.INSTANCE == contextData.getX509KeyManager())
         {
             // We don't support anonymous cipher suites, so there has to be a (real) key manager
@@ -708,6 +701,99 @@ public Hashtable<Integer, byte[]> getServerExtensions() throws IOException
         return result;
     }
 
+    @Override
+    public NewSessionTicket getNewSessionTicket13(SessionParameters sessionParameters, TlsSecret resumptionPSK,
+        long ticketAgeAdd) throws IOException
+    {
+        if (!provServerEnableSessionResumption || !provServerEnableSessionTickets)
+        {
+            return null;
+        }
+
+        ProvSSLSessionContext sslSessionContext = manager.getContextData().getServerSessionContext();
+        BCSessionTicketKeyProvider keyProvider = sslSessionContext.getSessionTicketKeyProvider();
+        if (null == keyProvider || !ProvSessionTicket.canEncode(sessionParameters))
+        {
+            return null;
+        }
+
+        BCSessionTicketKey key = keyProvider.getEncryptionKey();
+        if (null == key)
+        {
+            return null;
+        }
+
+        long ticketLifetime = sslSessionContext.getSessionTicketLifetime();
+
+        ProvSessionTicket sessionTicket = new ProvSessionTicket(System.currentTimeMillis(), ticketLifetime,
+            ticketAgeAdd, sessionParameters.getCipherSuite(), sessionParameters.getNegotiatedVersion(),
+            resumptionPSK.extract(), sessionParameters.getLocalCertificate(), sessionParameters.getPeerCertificate(),
+            sslParameters.getEndpointIdentificationAlgorithm());
+
+        byte[] ticket = ProvSessionTicket.seal(manager.getContextData().getCrypto(), key, sessionTicket);
+
+        sslSessionContext.notifySessionTicketIssued();
+
+        return new NewSessionTicket(ticketLifetime, ticket);
+    }
+
+    @Override
+    public TlsPSKResumption getResumptionPSK(@SuppressWarnings("rawtypes") Vector identities) throws IOException
+    {
+        /*
+         * NOTE: BCJSSE has no support for external PSKs, so any offered PSK is presumed to be a session ticket.
+         * This may be called again after a HelloRetryRequest.
+         */
+        this.sessionTicketsOffered = true;
+        this.resumptionTicket = null;
+
+        if (!provServerEnableSessionResumption || !provServerEnableSessionTickets)
+        {
+            return null;
+        }
+
+        ContextData contextData = manager.getContextData();
+        BCSessionTicketKeyProvider keyProvider = contextData.getServerSessionContext().getSessionTicketKeyProvider();
+        if (null == keyProvider)
+        {
+            return null;
+        }
+
+        JcaTlsCrypto crypto = contextData.getCrypto();
+        long currentTime = System.currentTimeMillis();
+
+        for (int i = 0; i < identities.size(); ++i)
+        {
+            PskIdentity identity = (PskIdentity)identities.elementAt(i);
+            byte[] ticket = identity.getIdentity();
+
+            ProvSessionTicket sessionTicket = ProvSessionTicket.open(crypto, keyProvider, ticket);
+            if (null != sessionTicket
+                && !sessionTicket.isExpired(currentTime)
+                && sessionTicket.isValidTicketAge(identity.getObfuscatedTicketAge())
+                && isResumable(sessionTicket))
+            {
+                if (LOG.isLoggable(Level.FINE))
+                {
+                    LOG.fine(serverID + " accepted session ticket");
+                }
+
+                this.resumptionTicket = sessionTicket;
+
+                return new BasicTlsPSKResumption(ticket, sessionTicket.createPSK(crypto),
+                    TlsUtils.getPRFAlgorithm13(sessionTicket.getCipherSuite()),
+                    sessionTicket.createSessionParameters());
+            }
+        }
+
+        if (LOG.isLoggable(Level.FINER))
+        {
+            LOG.finer(serverID + " found no usable session ticket amongst " + identities.size() + " offered PSK(s)");
+        }
+
+        return null;
+    }
+
     @Override
     public TlsSession getSessionToResume(byte[] sessionID)
     {
@@ -750,7 +836,14 @@ public void notifySession(TlsSession session)
         byte[] sessionID = session.getSessionID();
 
         boolean isResumed = (null != sslSession && sslSession.getTlsSession() == session);
-        if (isResumed)
+        if (null != resumptionTicket && context.getSecurityParametersHandshake().isResumedSession())
+        {
+            if (LOG.isLoggable(Level.FINE))
+            {
+                LOG.fine(serverID + " resumed session from ticket");
+            }
+        }
+        else if (isResumed)
         {
             if (LOG.isLoggable(Level.FINE))
             {
@@ -917,6 +1010,13 @@ public synchronized void notifyHandshakeComplete() throws IOException
                 connectionTlsSession, jsseSessionParameters, addToCache);
         }
 
+        if (sessionTicketsOffered)
+        {
+            boolean resumed = context.getSecurityParametersConnection().isResumedSession();
+
+            manager.getContextData().getServerSessionContext().notifySessionTicketsOffered(resumed);
+        }
+
         manager.notifyHandshakeComplete(new ProvSSLConnection(this));
     }
 
@@ -1098,6 +1198,47 @@ protected boolean isResumable(ProvSSLSession provSSLSession, TlsSession tlsSessi
         return true;
     }
 
+    protected boolean isResumable(ProvSessionTicket sessionTicket)
+    {
+        SecurityParameters securityParameters = context.getSecurityParametersHandshake();
+
+        int cipherSuite = sessionTicket.getCipherSuite();
+
+        if (!securityParameters.getNegotiatedVersion().equals(sessionTicket.getNegotiatedVersion()) ||
+            !Arrays.contains(getCipherSuites(), cipherSuite) ||
+            !Arrays.contains(offeredCipherSuites, cipherSuite))
+        {
+            return false;
+        }
+
+        if (sslParameters.getNeedClientAuth() && sessionTicket.getPeerCertificate() == null)
+        {
+            return false;
+        }
+
+        String connectionEndpointID = sslParameters.getEndpointIdentificationAlgorithm();
+        if (null != connectionEndpointID)
+        {
+            String sessionEndpointID = sessionTicket.getEndpointIDAlgorithm();
+            if (!connectionEndpointID.equalsIgnoreCase(sessionEndpointID))
+            {
+                if (LOG.isLoggable(Level.FINER))
+                {
+                    LOG.finer(serverID + ": Session ticket not resumable - endpoint ID algorithm mismatch; connection: "
+                        + connectionEndpointID + ", session: " + sessionEndpointID);
+                }
+                return false;
+            }
+        }
+
+        /*
+         * NOTE: RFC 8446 4.2.11. [..] In TLS 1.3, the SNI value is always explicitly specified in the
+         * resumption handshake, and there is no need for the server to associate an SNI value with the
+         * ticket.
+         */
+        return true;
+    }
+
     protected TlsCredentials selectCredentials(Principal[] issuers, int keyExchangeAlgorithm) throws IOException
     {
         switch (keyExchangeAlgorithm)
@@ -22,6 +22,7 @@
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -52,6 +53,10 @@
         .getBooleanSystemProperty("com.sun.net.ssl.checkRevocation", false);
     private static final boolean provTrustManagerCheckEKU = PropertyUtils
         .getBooleanSystemProperty("org.bouncycastle.jsse.trustManager.checkEKU", true);
+    private static final int provTrustManagerCacheSize = PropertyUtils
+        .getIntegerSystemProperty("org.bouncycastle.jsse.trustManager.cacheSize", 256, 0, 65536);
+    private static final int provTrustManagerCacheLifetime = PropertyUtils
+        .getIntegerSystemProperty("org.bouncycastle.jsse.trustManager.cacheLifetime", 300, 1, 86400);
 
     private static final Map<String, Integer> keyUsagesServer = createKeyUsagesServer();
 
@@ -88,8 +93,11 @@ private static Map<String, Integer> createKeyUsagesServer()
     private final JcaJceHelper helper;
     private final Set<X509Certificate> trustedCerts;
     private final PKIXBuilderParameters pkixParametersTemplate;
+    private final ProvCertPathCache certPathCache;
     private final X509TrustManager exportX509TrustManager;
 
+    private volatile Provider pkixProvider = null;
+
     ProvX509TrustManager(boolean fipsMode, JcaJceHelper helper, Set<TrustAnchor> trustAnchors)
         throws InvalidAlgorithmParameterException
     {
@@ -108,6 +116,7 @@ private static Map<String, Integer> createKeyUsagesServer()
             this.pkixParametersTemplate.setRevocationEnabled(provCheckRevocation);
         }
 
+        this.certPathCache = createCertPathCache(pkixParametersTemplate);
         this.exportX509TrustManager = X509TrustManagerUtil.exportX509TrustManager(this);
     }
 
@@ -143,9 +152,15 @@ else if (baseParameters instanceof PKIXBuilderParameters)
             this.pkixParametersTemplate.setSigProvider(baseParameters.getSigProvider());
         }
 
+        this.certPathCache = createCertPathCache(pkixParametersTemplate);
         this.exportX509TrustManager = X509TrustManagerUtil.exportX509TrustManager(this);
     }
 
+    ProvCertPathCache getCertPathCache()
+    {
+        return certPathCache;
+    }
+
     X509TrustManager getExportX509TrustManager()
     {
         return exportX509TrustManager;
@@ -210,9 +225,28 @@ private X509Certificate[] buildCertPath(X509Certificate[] chain, BCAlgorithmCons
             return new X509Certificate[]{ eeCert };
         }
 
-        // TODO Can we cache the CertificateFactory instance?
-        CertificateFactory certificateFactory = helper.createCertificateFactory("X.509");
-        Provider pkixProvider = certificateFactory.getProvider();
+        /*
+         * Results are only cached when they can't depend on anything but the chain and the parameters in
+         * the key (e.g. no revocation checks, whose outcome changes over time).
+         */
+        boolean useCache = null != certPathCache && statusResponses.isEmpty()
+            && !pkixParametersTemplate.isRevocationEnabled();
+
+        Set<TrustAnchor> trustAnchors = null;
+        Date date = null;
+        if (useCache)
+        {
+            trustAnchors = pkixParametersTemplate.getTrustAnchors();
+            date = pkixParametersTemplate.getDate();
+
+            X509Certificate[] trustedChain = certPathCache.get(trustAnchors, chain, algorithmConstraints, date);
+            if (null != trustedChain)
+            {
+                return trustedChain;
+            }
+        }
+
+        Provider pkixProvider = getPKIXProvider();
 
         CertStoreParameters certStoreParameters = getCertStoreParameters(eeCert, chain);
         CertStore certStore;
@@ -253,7 +287,14 @@ private X509Certificate[] buildCertPath(X509Certificate[] chain, BCAlgorithmCons
          * chain. SunJSSE appears to consider this to be any trusted cert in original-location
          * cacerts file with alias.contains(" [jdk")
          */
-        return getTrustedChain(result.getCertPath(), result.getTrustAnchor());
+        X509Certificate[] trustedChain = getTrustedChain(result.getCertPath(), result.getTrustAnchor());
+
+        if (useCache)
+        {
+            certPathCache.put(trustAnchors, chain, algorithmConstraints, date, trustedChain);
+        }
+
+        return trustedChain;
     }
 
     private void checkTrusted(X509Certificate[] chain, String authType, TransportData transportData,
@@ -278,6 +319,18 @@ private void checkTrusted(X509Certificate[] chain, String authType, TransportDat
         checkExtendedTrust(trustedChain, transportData, checkServerTrusted);
     }
 
+    private Provider getPKIXProvider() throws GeneralSecurityException
+    {
+        Provider result = pkixProvider;
+        if (null == result)
+        {
+            CertificateFactory certificateFactory = helper.createCertificateFactory("X.509");
+            result = certificateFactory.getProvider();
+            pkixProvider = result;
+        }
+        return result;
+    }
+
     // NOTE: We avoid re-reading eeCert from chain[0]
     private CertStoreParameters getCertStoreParameters(X509Certificate eeCert, X509Certificate[] chain)
     {
@@ -476,6 +529,18 @@ private static void checkEndpointID(X509Certificate certificate, String endpoint
         }
     }
 
+    private static ProvCertPathCache createCertPathCache(PKIXBuilderParameters pkixParametersTemplate)
+    {
+        // Custom PKIXCertPathCheckers might be stateful, or time-dependent (e.g. revocation checkers)
+        if (null == pkixParametersTemplate || provTrustManagerCacheSize < 1
+            || !pkixParametersTemplate.getCertPathCheckers().isEmpty())
+        {
+            return null;
+        }
+
+        return new ProvCertPathCache(provTrustManagerCacheSize, provTrustManagerCacheLifetime * 1000L);
+    }
+
     private static X509CertSelector createTargetCertConstraints(final X509Certificate eeCert,
         final CertSelector userConstraints)
     {
@@ -239,6 +239,11 @@ public Vector getExternalPSKs()
         return null;
     }
 
+    public Vector getResumptionPSKs()
+    {
+        return null;
+    }
+
     public boolean isFallback()
     {
         /*
@@ -300,6 +305,13 @@ public Hashtable getClientExtensions()
             {
                 TlsExtensionsUtils.addCertificateAuthoritiesExtension(clientExtensions, certificateAuthorities);
             }
+
+            int[] certificateCompressionAlgorithms = CertificateCompression.getSupportedAlgorithms(
+                getCertificateCompressionAlgorithms());
+            if (certificateCompressionAlgorithms != null)
+            {
+                TlsExtensionsUtils.addCompressCertificateExtension(clientExtensions, certificateCompressionAlgorithms);
+            }
         }
 
         if (offeringPreTLSv13)
@@ -521,4 +533,20 @@ public void notifyNewSessionTicket(NewSessionTicket newSessionTicket)
         throws IOException
     {
     }
+
+    public void notifyResumptionPSK(TlsPSKResumption resumptionPSK)
+        throws IOException
+    {
+    }
+
+    public byte[] getEarlyData(TlsPSKResumption resumptionPSK)
+        throws IOException
+    {
+        return null;
+    }
+
+    public void notifyEarlyDataAccepted(boolean accepted)
+        throws IOException
+    {
+    }
 }
@@ -67,6 +67,16 @@ public int getHandshakeResendTimeMillis()
         return 1000;
     }
 
+    public int getReplayWindowSize()
+    {
+        return 64;
+    }
+
+    public TlsHandshakeMetricsListener getHandshakeMetricsListener()
+    {
+        return null;
+    }
+
     public boolean allowLegacyResumption()
     {
         return false;
@@ -87,6 +97,11 @@ public short[] getPskKeyExchangeModes()
         return new short[]{ PskKeyExchangeMode.psk_dhe_ke };
     }
 
+    public int[] getCertificateCompressionAlgorithms()
+    {
+        return null;
+    }
+
     public boolean requiresCloseNotify()
     {
         return true;
@@ -7,6 +7,7 @@
 import org.bouncycastle.tls.crypto.TlsCrypto;
 import org.bouncycastle.tls.crypto.TlsDHConfig;
 import org.bouncycastle.tls.crypto.TlsECConfig;
+import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.util.Integers;
 
 /**
@@ -352,6 +353,11 @@ public TlsPSKExternal getExternalPSK(Vector identities) throws IOException
         return null;
     }
 
+    public TlsPSKResumption getResumptionPSK(Vector identities) throws IOException
+    {
+        return null;
+    }
+
     public void notifySession(TlsSession session)
     {
     }
@@ -723,10 +729,63 @@ public Vector getServerSupplementalData()
         return null;
     }
 
+    /**
+     * Supplies the OCSP responses to staple for "status_request" (and, if {@link #allowMultiCertStatus()},
+     * "status_request_v2") requests; see {@link #getCertificateStatus()}. A single manager would normally be
+     * shared by all the server instances for a given set of credentials.
+     *
+     * @return an {@link OCSPStaplingManager}, or null (the default) to not send any certificate status.
+     */
+    protected OCSPStaplingManager getOCSPStaplingManager()
+    {
+        return null;
+    }
+
     public CertificateStatus getCertificateStatus()
         throws IOException
     {
-        return null;
+        OCSPStaplingManager staplingManager = getOCSPStaplingManager();
+        if (null == staplingManager)
+        {
+            return null;
+        }
+
+        SecurityParameters securityParameters = context.getSecurityParametersHandshake();
+        Certificate serverCertificate = securityParameters.getLocalCertificate();
+
+        switch (securityParameters.getStatusRequestVersion())
+        {
+        case 2:
+        {
+            boolean ocsp = false, ocspMulti = false;
+            for (int i = 0; i < statusRequestV2.size(); ++i)
+            {
+                short statusType = ((CertificateStatusRequestItemV2)statusRequestV2.elementAt(i)).getStatusType();
+                ocsp |= (CertificateStatusType.ocsp == statusType);
+                ocspMulti |= (CertificateStatusType.ocsp_multi == statusType);
+            }
+
+            if (ocspMulti)
+            {
+                return staplingManager.getCertificateStatus(serverCertificate, true);
+            }
+            if (ocsp)
+            {
+                return staplingManager.getCertificateStatus(serverCertificate, false);
+            }
+            return null;
+        }
+        case 1:
+        {
+            if (CertificateStatusType.ocsp == certificateStatusRequest.getStatusType())
+            {
+                return staplingManager.getCertificateStatus(serverCertificate, false);
+            }
+            return null;
+        }
+        default:
+            return null;
+        }
     }
 
     public CertificateRequest getCertificateRequest()
@@ -784,4 +843,20 @@ public NewSessionTicket getNewSessionTicket()
          */
         return new NewSessionTicket(0L, TlsUtils.EMPTY_BYTES);
     }
+
+    public NewSessionTicket getNewSessionTicket13(SessionParameters sessionParameters, TlsSecret resumptionPSK,
+        long ticketAgeAdd) throws IOException
+    {
+        return null;
+    }
+
+    public long getMaxEarlyDataSize()
+    {
+        return 0L;
+    }
+
+    public boolean acceptEarlyData(TlsPSKResumption resumptionPSK, byte[] clientHelloID) throws IOException
+    {
+        return false;
+    }
 }
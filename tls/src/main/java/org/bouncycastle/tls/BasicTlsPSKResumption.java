@@ -0,0 +1,129 @@
+package org.bouncycastle.tls;
+
+import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.util.Arrays;
+
+public class BasicTlsPSKResumption
+    implements TlsPSKResumption
+{
+    protected final byte[] identity;
+    protected final TlsSecret key;
+    protected final int prfAlgorithm;
+    protected final SessionParameters sessionParameters;
+    protected final long ticketLifetime;
+    protected final long ticketAgeAdd;
+    protected final long ticketReceiptTime;
+    protected final long maxEarlyDataSize;
+
+    public BasicTlsPSKResumption(byte[] identity, TlsSecret key, int prfAlgorithm,
+        SessionParameters sessionParameters)
+    {
+        this(identity, key, prfAlgorithm, sessionParameters, 0L, 0L, System.currentTimeMillis());
+    }
+
+    /**
+     * @param ticketLifetime the ticket_lifetime (in seconds) from the NewSessionTicket.
+     * @param ticketAgeAdd the ticket_age_add from the NewSessionTicket.
+     * @param ticketReceiptTime the time (in milliseconds since the epoch) at which the ticket was
+     *            received.
+     */
+    public BasicTlsPSKResumption(byte[] identity, TlsSecret key, int prfAlgorithm,
+        SessionParameters sessionParameters, long ticketLifetime, long ticketAgeAdd, long ticketReceiptTime)
+    {
+        this(identity, key, prfAlgorithm, sessionParameters, ticketLifetime, ticketAgeAdd, ticketReceiptTime, 0L);
+    }
+
+    /**
+     * @param ticketLifetime the ticket_lifetime (in seconds) from the NewSessionTicket.
+     * @param ticketAgeAdd the ticket_age_add from the NewSessionTicket.
+     * @param ticketReceiptTime the time (in milliseconds since the epoch) at which the ticket was
+     *            received.
+     * @param maxEarlyDataSize the max_early_data_size from the NewSessionTicket (0 if absent).
+     */
+    public BasicTlsPSKResumption(byte[] identity, TlsSecret key, int prfAlgorithm,
+        SessionParameters sessionParameters, long ticketLifetime, long ticketAgeAdd, long ticketReceiptTime,
+        long maxEarlyDataSize)
+    {
+        if (!TlsUtils.isValidUint32(ticketLifetime))
+        {
+            throw new IllegalArgumentException("'ticketLifetime' should be a uint32");
+        }
+        if (!TlsUtils.isValidUint32(ticketAgeAdd))
+        {
+            throw new IllegalArgumentException("'ticketAgeAdd' should be a uint32");
+        }
+        if (!TlsUtils.isValidUint32(maxEarlyDataSize))
+        {
+            throw new IllegalArgumentException("'maxEarlyDataSize' should be a uint32");
+        }
+
+        this.identity = Arrays.clone(identity);
+        this.key = key;
+        this.prfAlgorithm = prfAlgorithm;
+        this.sessionParameters = sessionParameters;
+        this.ticketLifetime = ticketLifetime;
+        this.ticketAgeAdd = ticketAgeAdd;
+        this.ticketReceiptTime = ticketReceiptTime;
+        this.maxEarlyDataSize = maxEarlyDataSize;
+    }
+
+    public byte[] getIdentity()
+    {
+        return identity;
+    }
+
+    public TlsSecret getKey()
+    {
+        return key;
+    }
+
+    public int getPRFAlgorithm()
+    {
+        return prfAlgorithm;
+    }
+
+    public long getObfuscatedTicketAge()
+    {
+        /*
+         * RFC 8446 4.2.11. The "obfuscated_ticket_age" field of each PskIdentity contains an
+         * obfuscated version of the ticket age formed by taking the age in milliseconds and adding
+         * the "ticket_age_add" value that was included with the ticket, modulo 2^32.
+         */
+        long ticketAge = Math.max(0L, System.currentTimeMillis() - ticketReceiptTime);
+        return (ticketAge + ticketAgeAdd) & 0xFFFFFFFFL;
+    }
+
+    public SessionParameters getSessionParameters()
+    {
+        return sessionParameters;
+    }
+
+    public long getMaxEarlyDataSize()
+    {
+        return maxEarlyDataSize;
+    }
+
+    public long getTicketAgeAdd()
+    {
+        return ticketAgeAdd;
+    }
+
+    public long getTicketLifetime()
+    {
+        return ticketLifetime;
+    }
+
+    public long getTicketReceiptTime()
+    {
+        return ticketReceiptTime;
+    }
+
+    /**
+     * @param currentTime the current time in milliseconds since the epoch.
+     * @return true if the ticket lifetime has elapsed at the given time.
+     */
+    public boolean isExpired(long currentTime)
+    {
+        return currentTime - ticketReceiptTime >= ticketLifetime * 1000L;
+    }
+}
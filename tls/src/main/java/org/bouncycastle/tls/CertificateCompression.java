@@ -0,0 +1,230 @@
+package org.bouncycastle.tls;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.bouncycastle.util.Arrays;
+
+/**
+ * Implements the RFC 8879 certificate compression algorithms supported by this package (currently
+ * only zlib), and caches compressed encodings of local Certificate messages.
+ */
+class CertificateCompression
+{
+    private static final int CACHE_SIZE = 16;
+
+    /*
+     * The cache is keyed on the uncompressed encoding (not the Certificate instance), since a server
+     * typically re-creates an equal Certificate for each handshake, and the encoding of a Certificate can
+     * vary (e.g. with stapled OCSP responses in the entry extensions).
+     */
+    @SuppressWarnings("serial")
+    private static final Map<CacheKey, byte[]> cache = new LinkedHashMap<CacheKey, byte[]>(16, 0.75f, true)
+    {
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, byte[]> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    static boolean isSupported(int algorithm)
+    {
+        return CertificateCompressionAlgorithm.zlib == algorithm;
+    }
+
+    /**
+     * Select the first of the local algorithms (in preference order) that is supported, and also offered by
+     * the peer.
+     *
+     * @return the selected algorithm, or -1 if there is none.
+     */
+    static int selectAlgorithm(int[] localAlgorithms, int[] peerAlgorithms)
+    {
+        if (null != localAlgorithms && null != peerAlgorithms)
+        {
+            for (int i = 0; i < localAlgorithms.length; ++i)
+            {
+                int algorithm = localAlgorithms[i];
+                if (isSupported(algorithm) && Arrays.contains(peerAlgorithms, algorithm))
+                {
+                    return algorithm;
+                }
+            }
+        }
+        return -1;
+    }
+
+    static int[] getSupportedAlgorithms(int[] algorithms)
+    {
+        if (null == algorithms)
+        {
+            return null;
+        }
+
+        int count = 0;
+        int[] supported = new int[algorithms.length];
+        for (int i = 0; i < algorithms.length; ++i)
+        {
+            int algorithm = algorithms[i];
+            if (isSupported(algorithm) && !TlsUtils.contains(supported, 0, count, algorithm))
+            {
+                supported[count++] = algorithm;
+            }
+        }
+        return count < 1 ? null : TlsUtils.truncate(supported, count);
+    }
+
+    static CompressedCertificate compress(int algorithm, byte[] certificateMessage) throws IOException
+    {
+        CacheKey key = new CacheKey(algorithm, certificateMessage);
+
+        byte[] compressed;
+        synchronized (cache)
+        {
+            compressed = cache.get(key);
+        }
+
+        if (null == compressed)
+        {
+            compressed = implCompress(algorithm, certificateMessage);
+
+            synchronized (cache)
+            {
+                cache.put(key, compressed);
+            }
+        }
+
+        return new CompressedCertificate(algorithm, certificateMessage.length, compressed);
+    }
+
+    static byte[] decompress(CompressedCertificate compressedCertificate, int maxUncompressedLength)
+        throws IOException
+    {
+        int algorithm = compressedCertificate.getAlgorithm();
+        int uncompressedLength = compressedCertificate.getUncompressedLength();
+
+        if (!isSupported(algorithm))
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+        if (uncompressedLength > maxUncompressedLength)
+        {
+            throw new TlsFatalAlert(AlertDescription.bad_certificate,
+                "Compressed certificate uncompressed_length exceeds " + maxUncompressedLength);
+        }
+
+        byte[] compressed = compressedCertificate.getCompressedCertificateMessage();
+        byte[] uncompressed = new byte[uncompressedLength];
+
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(compressed);
+
+            int count = 0;
+            while (count < uncompressedLength)
+            {
+                int n = inflater.inflate(uncompressed, count, uncompressedLength - count);
+                if (n < 1)
+                {
+                    break;
+                }
+                count += n;
+            }
+
+            // Consume any trailer (and detect excess output) once the expected length has been produced
+            if (count == uncompressedLength && !inflater.finished())
+            {
+                count += inflater.inflate(new byte[1]);
+            }
+
+            /*
+             * RFC 8879 4. If the received CompressedCertificate message cannot be decompressed, [..] MUST
+             * abort the connection with the "bad_certificate" alert. [..] the resulting decompressed
+             * message MUST be exactly uncompressed_length bytes.
+             */
+            if (count != uncompressedLength || !inflater.finished() || inflater.getRemaining() > 0)
+            {
+                throw new TlsFatalAlert(AlertDescription.bad_certificate,
+                    "Compressed certificate has invalid uncompressed_length");
+            }
+        }
+        catch (DataFormatException e)
+        {
+            throw new TlsFatalAlert(AlertDescription.bad_certificate, "Compressed certificate is invalid", e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+
+        return uncompressed;
+    }
+
+    private static byte[] implCompress(int algorithm, byte[] data) throws IOException
+    {
+        if (!isSupported(algorithm))
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try
+        {
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buf = new byte[4096];
+            while (!deflater.finished())
+            {
+                int n = deflater.deflate(buf);
+                output.write(buf, 0, n);
+            }
+            return output.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private static final class CacheKey
+    {
+        private final int algorithm;
+        private final byte[] encoding;
+        private final int hashCode;
+
+        CacheKey(int algorithm, byte[] encoding)
+        {
+            this.algorithm = algorithm;
+            this.encoding = encoding;
+            this.hashCode = algorithm * 31 + Arrays.hashCode(encoding);
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof CacheKey))
+            {
+                return false;
+            }
+
+            CacheKey other = (CacheKey)obj;
+            return algorithm == other.algorithm && Arrays.areEqual(encoding, other.encoding);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * RFC 8879 CompressedCertificate message.
+ */
+public class CompressedCertificate
+{
+    protected final int algorithm;
+    protected final int uncompressedLength;
+    protected final byte[] compressedCertificateMessage;
+
+    /**
+     * @param algorithm
+     *            see {@link CertificateCompressionAlgorithm} for valid constants.
+     * @param uncompressedLength
+     *            the length of the (uncompressed) Certificate message body.
+     * @param compressedCertificateMessage
+     *            the compressed Certificate message body.
+     */
+    public CompressedCertificate(int algorithm, int uncompressedLength, byte[] compressedCertificateMessage)
+    {
+        if (!TlsUtils.isValidUint16(algorithm))
+        {
+            throw new IllegalArgumentException("'algorithm' should be a uint16");
+        }
+        if (!TlsUtils.isValidUint24(uncompressedLength))
+        {
+            throw new IllegalArgumentException("'uncompressedLength' should be a uint24");
+        }
+        if (null == compressedCertificateMessage || compressedCertificateMessage.length < 1
+            || !TlsUtils.isValidUint24(compressedCertificateMessage.length))
+        {
+            throw new IllegalArgumentException("'compressedCertificateMessage' should have length from 1 to 2^24 - 1");
+        }
+
+        this.algorithm = algorithm;
+        this.uncompressedLength = uncompressedLength;
+        this.compressedCertificateMessage = compressedCertificateMessage;
+    }
+
+    /**
+     * @return see {@link CertificateCompressionAlgorithm} for valid constants.
+     */
+    public int getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    public int getUncompressedLength()
+    {
+        return uncompressedLength;
+    }
+
+    public byte[] getCompressedCertificateMessage()
+    {
+        return compressedCertificateMessage;
+    }
+
+    /**
+     * Encode this {@link CompressedCertificate} to an {@link OutputStream}.
+     *
+     * @param output the {@link OutputStream} to encode to.
+     * @throws IOException
+     */
+    public void encode(OutputStream output)
+        throws IOException
+    {
+        TlsUtils.writeUint16(algorithm, output);
+        TlsUtils.writeUint24(uncompressedLength, output);
+        TlsUtils.writeOpaque24(compressedCertificateMessage, output);
+    }
+
+    /**
+     * Parse a {@link CompressedCertificate} from an {@link InputStream}.
+     *
+     * @param input the {@link InputStream} to parse from.
+     * @return a {@link CompressedCertificate} object.
+     * @throws IOException
+     */
+    public static CompressedCertificate parse(InputStream input)
+        throws IOException
+    {
+        int algorithm = TlsUtils.readUint16(input);
+        int uncompressedLength = TlsUtils.readUint24(input);
+        byte[] compressedCertificateMessage = TlsUtils.readOpaque24(input, 1);
+        return new CompressedCertificate(algorithm, uncompressedLength, compressedCertificateMessage);
+    }
+}
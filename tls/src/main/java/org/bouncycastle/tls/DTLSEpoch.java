@@ -6,7 +6,7 @@
 
 class DTLSEpoch
 {
-    private final DTLSReplayWindow replayWindow = new DTLSReplayWindow();
+    private final DTLSReplayWindow replayWindow;
 
     private final int epoch;
     private final TlsCipher cipher;
@@ -14,7 +14,8 @@
 
     private long sequenceNumber = 0;
 
-    DTLSEpoch(int epoch, TlsCipher cipher, int recordHeaderLengthRead, int recordHeaderLengthWrite)    
+    DTLSEpoch(int epoch, TlsCipher cipher, int recordHeaderLengthRead, int recordHeaderLengthWrite,
+        int replayWindowSize)
     {
         if (epoch < 0)
         {
@@ -29,6 +30,7 @@
         this.cipher = cipher;
         this.recordHeaderLengthRead = recordHeaderLengthRead;
         this.recordHeaderLengthWrite = recordHeaderLengthWrite;
+        this.replayWindow = new DTLSReplayWindow(replayWindowSize);
     }
 
     synchronized long allocateSequenceNumber() throws IOException
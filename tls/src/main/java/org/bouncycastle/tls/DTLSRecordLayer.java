@@ -102,6 +102,7 @@ private static void sendDatagram(DatagramSender sender, byte[] buf, int off, int
     private final TlsContext context;
     private final TlsPeer peer;
     private final DatagramTransport transport;
+    private final int replayWindowSize;
 
     private final ByteQueue recordQueue = new ByteQueue();
     private final Object writeLock = new Object();
@@ -134,10 +135,12 @@ private static void sendDatagram(DatagramSender sender, byte[] buf, int off, int
         this.context = context;
         this.peer = peer;
         this.transport = transport;
+        this.replayWindowSize = peer.getReplayWindowSize();
 
         this.inHandshake = true;
 
-        this.currentEpoch = new DTLSEpoch(0, TlsNullNullCipher.INSTANCE, RECORD_HEADER_LENGTH, RECORD_HEADER_LENGTH);        
+        this.currentEpoch = new DTLSEpoch(0, TlsNullNullCipher.INSTANCE, RECORD_HEADER_LENGTH, RECORD_HEADER_LENGTH,
+            replayWindowSize);
         this.pendingEpoch = null;
         this.readEpoch = currentEpoch;
         this.writeEpoch = currentEpoch;
@@ -145,6 +148,11 @@ private static void sendDatagram(DatagramSender sender, byte[] buf, int off, int
         setPlaintextLimit(MAX_FRAGMENT_LENGTH);
     }
 
+    TlsContext getContext()
+    {
+        return context;
+    }
+
     boolean isClosed()
     {
         return closed;
@@ -209,7 +217,7 @@ void initPendingEpoch(TlsCipher pendingCipher)
 
         // TODO Check for overflow
         this.pendingEpoch = new DTLSEpoch(writeEpoch.getEpoch() + 1, pendingCipher, recordHeaderLengthRead,
-            recordHeaderLengthWrite);
+            recordHeaderLengthWrite, replayWindowSize);
     }
 
     void handshakeSuccessful(DTLSHandshakeRetransmit retransmit)
@@ -5,15 +5,45 @@
  * <p>
  * Support fast rejection of duplicate records by maintaining a sliding receive window
  * </p>
+ * <p>
+ * The window is a ring of 64-bit blocks, as described in RFC 6479, with one block more than the window size
+ * requires, so that advancing the window only clears the blocks it moves into (rather than shifting the whole
+ * bitmap).
+ * </p>
  */
 class DTLSReplayWindow
 {
+    static final int DEFAULT_WINDOW_SIZE = 64;
+    static final int MAX_WINDOW_SIZE = 65536;
+
     private static final long VALID_SEQ_MASK = 0x0000FFFFFFFFFFFFL;
 
-    private static final long WINDOW_SIZE = 64L;
+    private final long windowSize;
+    private final long[] bitmap;
 
     private long latestConfirmedSeq = -1;
-    private long bitmap = 0;
+
+    /**
+     * @param windowSize the number of sequence numbers covered by the window, rounded up to a multiple of 64.
+     */
+    DTLSReplayWindow(int windowSize)
+    {
+        if (windowSize < DEFAULT_WINDOW_SIZE || windowSize > MAX_WINDOW_SIZE)
+        {
+            throw new IllegalArgumentException("'windowSize' must be from " + DEFAULT_WINDOW_SIZE + " to "
+                + MAX_WINDOW_SIZE);
+        }
+
+        int blocks = (windowSize + 63) >>> 6;
+
+        this.windowSize = (long)blocks << 6;
+        this.bitmap = new long[blocks + 1];
+    }
+
+    int getWindowSize()
+    {
+        return (int)windowSize;
+    }
 
     /**
      * Check whether a received record with the given sequence number should be rejected as a duplicate.
@@ -31,11 +61,11 @@ boolean shouldDiscard(long seq)
         if (seq <= latestConfirmedSeq)
         {
             long diff = latestConfirmedSeq - seq;
-            if (diff >= WINDOW_SIZE)
+            if (diff >= windowSize)
             {
                 return true;
             }
-            if ((bitmap & (1L << diff)) != 0)
+            if ((bitmap[getBlockIndex(seq)] & (1L << (int)seq)) != 0)
             {
                 return true;
             }
@@ -59,24 +89,33 @@ boolean reportAuthenticated(long seq)
         if (seq <= latestConfirmedSeq)
         {
             long diff = latestConfirmedSeq - seq;
-            if (diff < WINDOW_SIZE)
+            if (diff < windowSize)
             {
-                bitmap |= (1L << diff);
+                bitmap[getBlockIndex(seq)] |= (1L << (int)seq);
             }
             return false;
         }
         else
         {
-            long diff = seq - latestConfirmedSeq;
-            if (diff >= WINDOW_SIZE)
+            // Clear the blocks the window advances into
+            long latestBlock = latestConfirmedSeq < 0 ? -1 : (latestConfirmedSeq >>> 6);
+            long blocksAdvanced = (seq >>> 6) - latestBlock;
+            if (blocksAdvanced >= bitmap.length)
             {
-                bitmap = 1;
+                for (int i = 0; i < bitmap.length; ++i)
+                {
+                    bitmap[i] = 0L;
+                }
             }
             else
             {
-                bitmap <<= (int)diff;        // for earlier JDKs
-                bitmap |= 1;
+                for (long block = latestBlock + 1; block <= (seq >>> 6); ++block)
+                {
+                    bitmap[(int)(block % bitmap.length)] = 0L;
+                }
             }
+
+            bitmap[getBlockIndex(seq)] |= (1L << (int)seq);
             latestConfirmedSeq = seq;
             return true;
         }
@@ -91,6 +130,17 @@ void reset(long seq)
 
         // Discard future records unless sequence number > 'seq'
         latestConfirmedSeq = seq;
-        bitmap = -1L >>> Math.max(0, 63 - seq);
+        for (int i = 0; i < bitmap.length; ++i)
+        {
+            bitmap[i] = -1L;
+        }
+
+        // NOTE: Later sequence numbers in the current block must remain clear
+        bitmap[getBlockIndex(seq)] = -1L >>> (63 - ((int)seq & 63));
+    }
+
+    private int getBlockIndex(long seq)
+    {
+        return (int)((seq >>> 6) % bitmap.length);
     }
 }
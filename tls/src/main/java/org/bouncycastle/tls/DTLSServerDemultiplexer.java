@@ -0,0 +1,692 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bouncycastle.tls.crypto.TlsCrypto;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Strings;
+
+/**
+ * A DTLS server front-end that serves many clients over a single (bound, unconnected) {@link DatagramChannel}.
+ * <p>
+ * {@link #run()} receives datagrams on the channel and routes each one to an {@link Association}: by
+ * connection ID (RFC 9146) for tls12_cid records, otherwise by peer address. A datagram from an unknown peer
+ * is only accepted as a ClientHello with a valid cookie (see {@link DTLSVerifier}), so no per-client state is
+ * kept until the client has shown that it can receive at its claimed address. Each verified ClientHello
+ * starts a new association, whose handshake is run on the {@link Executor}; the {@link Handler} is then
+ * notified (also on the executor) of the established association.
+ * <p>
+ * An association that negotiated a connection ID follows its peer to a new address, once a (newest) record
+ * using the connection ID has been authenticated from there (RFC 9146 6).
+ */
+public class DTLSServerDemultiplexer
+    implements TlsCloseable
+{
+    public interface Handler
+    {
+        /**
+         * Create the {@link TlsServer} for a new association. Called on the executor.
+         */
+        TlsServer createServer(SocketAddress peerAddress) throws IOException;
+
+        /**
+         * Called on the executor once the handshake for an association has completed. The association may be
+         * serviced from this thread, or handed off elsewhere. If an exception is thrown, the association is
+         * closed.
+         */
+        void notifyAccepted(Association association) throws IOException;
+
+        /**
+         * Called on the executor if the handshake for a new association fails.
+         */
+        void notifyAcceptFailed(SocketAddress peerAddress, IOException e);
+    }
+
+    private static final Datagram CLOSED = new Datagram(null, null);
+
+    /*
+     * In a tls12_cid record the connection ID follows the type (1), version (2), epoch (2) and sequence number
+     * (6) fields of the DTLS record header (RFC 9146 4).
+     */
+    private static final int CONNECTION_ID_OFFSET = 1 + 2 + 2 + 6;
+
+    private final DatagramChannel channel;
+    private final int receiveLimit, sendLimit;
+    private final TlsCrypto crypto;
+    private final Executor executor;
+    private final Handler handler;
+    private final DTLSServerProtocol serverProtocol = new DTLSServerProtocol();
+
+    private final ConcurrentHashMap<SocketAddress, Association> addressMap =
+        new ConcurrentHashMap<SocketAddress, Association>();
+    private final ConcurrentHashMap<ConnectionIDKey, Association> connectionIDMap =
+        new ConcurrentHashMap<ConnectionIDKey, Association>();
+
+    // NOTE: Copy-on-write; the distinct lengths of the registered connection IDs (typically just one)
+    private volatile int[] connectionIDLengths = new int[0];
+
+    private volatile DTLSVerifier verifier;
+    private volatile int maxAssociations = 10000;
+    private volatile int receiveQueueCapacity = 64;
+
+    /**
+     * @param channel  a bound, unconnected {@link DatagramChannel} in blocking mode.
+     * @param mtu      the path MTU, used (as in {@link UDPTransport}) to derive the receive and send limits.
+     * @param crypto   the {@link TlsCrypto} to use for cookie generation.
+     * @param executor the {@link Executor} to run handshakes (and {@link Handler} callbacks) on.
+     * @param handler  the {@link Handler} for new associations.
+     */
+    public DTLSServerDemultiplexer(DatagramChannel channel, int mtu, TlsCrypto crypto, Executor executor,
+        Handler handler)
+    {
+        if (null == channel)
+        {
+            throw new NullPointerException("'channel' cannot be null");
+        }
+        if (!channel.socket().isBound() || channel.isConnected())
+        {
+            throw new IllegalArgumentException("'channel' must be bound and unconnected");
+        }
+        if (!channel.isBlocking())
+        {
+            throw new IllegalArgumentException("'channel' must be in blocking mode");
+        }
+        if (null == crypto)
+        {
+            throw new NullPointerException("'crypto' cannot be null");
+        }
+        if (null == executor)
+        {
+            throw new NullPointerException("'executor' cannot be null");
+        }
+        if (null == handler)
+        {
+            throw new NullPointerException("'handler' cannot be null");
+        }
+
+        this.channel = channel;
+        this.receiveLimit = mtu - UDPTransport.MIN_IP_OVERHEAD - UDPTransport.UDP_OVERHEAD;
+        this.sendLimit = mtu - UDPTransport.MAX_IP_OVERHEAD - UDPTransport.UDP_OVERHEAD;
+        this.crypto = crypto;
+        this.executor = executor;
+        this.handler = handler;
+        this.verifier = new DTLSVerifier(crypto);
+    }
+
+    /**
+     * @return the number of current associations (including those still handshaking).
+     */
+    public int getAssociationCount()
+    {
+        return addressMap.size();
+    }
+
+    public int getMaxAssociations()
+    {
+        return maxAssociations;
+    }
+
+    /**
+     * Limit the number of concurrent associations; new clients are ignored while the limit is reached.
+     */
+    public void setMaxAssociations(int maxAssociations)
+    {
+        if (maxAssociations < 1)
+        {
+            throw new IllegalArgumentException("'maxAssociations' must be positive");
+        }
+
+        this.maxAssociations = maxAssociations;
+    }
+
+    public int getReceiveQueueCapacity()
+    {
+        return receiveQueueCapacity;
+    }
+
+    /**
+     * Limit the number of datagrams queued for each (new) association; further datagrams are dropped while
+     * the queue is full.
+     */
+    public void setReceiveQueueCapacity(int receiveQueueCapacity)
+    {
+        if (receiveQueueCapacity < 1)
+        {
+            throw new IllegalArgumentException("'receiveQueueCapacity' must be positive");
+        }
+
+        this.receiveQueueCapacity = receiveQueueCapacity;
+    }
+
+    /**
+     * Replace the cookie secret (see {@link DTLSVerifier}). Clients that are mid-way through the cookie
+     * exchange will simply be sent a new cookie.
+     */
+    public void renewVerifier()
+    {
+        this.verifier = new DTLSVerifier(crypto);
+    }
+
+    /**
+     * Receive and dispatch datagrams until the channel is closed.
+     */
+    public void run() throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(receiveLimit);
+
+        try
+        {
+            for (;;)
+            {
+                ((java.nio.Buffer)buf).clear();
+
+                SocketAddress source = channel.receive(buf);
+                if (null != source)
+                {
+                    dispatch(source, buf.array(), buf.position());
+                }
+            }
+        }
+        catch (ClosedChannelException e)
+        {
+            // NOTE: Includes AsynchronousCloseException from close()
+        }
+    }
+
+    /**
+     * Close the channel, and the (datagram transports of) all associations.
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            channel.close();
+        }
+        finally
+        {
+            Iterator<Association> it = addressMap.values().iterator();
+            while (it.hasNext())
+            {
+                it.next().datagramTransport.close();
+            }
+        }
+    }
+
+    private void dispatch(SocketAddress source, byte[] data, int len)
+    {
+        Association association = null;
+        if (len > DTLSRecordLayer.RECORD_HEADER_LENGTH && ContentType.tls12_cid == TlsUtils.readUint8(data, 0))
+        {
+            association = getAssociationByConnectionID(data, len);
+        }
+        if (null == association)
+        {
+            association = addressMap.get(source);
+        }
+        if (null != association)
+        {
+            association.datagramTransport.enqueue(new Datagram(source, TlsUtils.copyOfRangeExact(data, 0, len)));
+            return;
+        }
+
+        if (addressMap.size() >= maxAssociations)
+        {
+            return;
+        }
+
+        final DTLSRequest request = verifier.verifyRequest(getClientID(source), data, 0, len,
+            new CookieSender(source));
+        if (null == request)
+        {
+            return;
+        }
+
+        final Association newAssociation = new Association(source, receiveQueueCapacity);
+        if (null != addressMap.putIfAbsent(source, newAssociation))
+        {
+            return;
+        }
+
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    handshake(newAssociation, request);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            addressMap.remove(source, newAssociation);
+        }
+    }
+
+    private Association getAssociationByConnectionID(byte[] data, int len)
+    {
+        int[] lengths = connectionIDLengths;
+        for (int i = 0; i < lengths.length; ++i)
+        {
+            int connectionIDLength = lengths[i];
+            if (len >= DTLSRecordLayer.RECORD_HEADER_LENGTH + connectionIDLength)
+            {
+                Association association = connectionIDMap.get(new ConnectionIDKey(data, CONNECTION_ID_OFFSET, connectionIDLength));
+                if (null != association)
+                {
+                    return association;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void handshake(Association association, DTLSRequest request)
+    {
+        SocketAddress peerAddress = association.getPeerAddress();
+
+        try
+        {
+            TlsServer server = handler.createServer(peerAddress);
+            DTLSTransport dtlsTransport = serverProtocol.accept(server, association.datagramTransport, request);
+
+            association.dtlsTransport = dtlsTransport;
+
+            registerConnectionID(association, dtlsTransport.getContext().getSecurityParameters().getConnectionIDPeer());
+        }
+        catch (IOException e)
+        {
+            acceptFailed(association, e);
+            return;
+        }
+        catch (RuntimeException e)
+        {
+            acceptFailed(association, new TlsFatalAlert(AlertDescription.internal_error, e));
+            return;
+        }
+
+        boolean accepted = false;
+        try
+        {
+            handler.notifyAccepted(association);
+            accepted = true;
+        }
+        catch (IOException e)
+        {
+            // NOTE: The association is closed below
+        }
+        finally
+        {
+            // NOTE: Also on a RuntimeException, which is then left to the executor
+            if (!accepted)
+            {
+                try
+                {
+                    association.close();
+                }
+                catch (IOException ce)
+                {
+                }
+            }
+        }
+    }
+
+    private void acceptFailed(Association association, IOException e)
+    {
+        // NOTE: Removes the association from the address (and connection ID) maps
+        association.datagramTransport.close();
+
+        handler.notifyAcceptFailed(association.getPeerAddress(), e);
+    }
+
+    private void registerConnectionID(Association association, byte[] connectionID)
+    {
+        if (TlsUtils.isNullOrEmpty(connectionID))
+        {
+            return;
+        }
+
+        ConnectionIDKey key = new ConnectionIDKey(connectionID, 0, connectionID.length);
+
+        // NOTE: A duplicate connection ID is left unregistered (the association is still reachable by address)
+        if (null != connectionIDMap.putIfAbsent(key, association))
+        {
+            return;
+        }
+
+        association.connectionIDKey = key;
+
+        synchronized (this)
+        {
+            int[] lengths = connectionIDLengths;
+            if (!Arrays.contains(lengths, connectionID.length))
+            {
+                this.connectionIDLengths = Arrays.append(lengths, connectionID.length);
+            }
+        }
+
+        // The association may have closed concurrently
+        if (association.datagramTransport.isClosed())
+        {
+            connectionIDMap.remove(key, association);
+        }
+    }
+
+    private static byte[] getClientID(SocketAddress source)
+    {
+        if (source instanceof InetSocketAddress)
+        {
+            InetSocketAddress inetSource = (InetSocketAddress)source;
+            if (null != inetSource.getAddress())
+            {
+                byte[] address = inetSource.getAddress().getAddress();
+                byte[] clientID = new byte[address.length + 2];
+                System.arraycopy(address, 0, clientID, 0, address.length);
+                TlsUtils.writeUint16(inetSource.getPort(), clientID, address.length);
+                return clientID;
+            }
+        }
+        return Strings.toUTF8ByteArray(source.toString());
+    }
+
+    private void send(SocketAddress target, byte[] buf, int off, int len) throws IOException
+    {
+        if (len > sendLimit)
+        {
+            /*
+             * RFC 4347 4.1.1. "If the application attempts to send a record larger than the MTU,
+             * the DTLS implementation SHOULD generate an error, thus avoiding sending a packet
+             * which will be fragmented."
+             */
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        channel.send(ByteBuffer.wrap(buf, off, len), target);
+    }
+
+    /**
+     * A single DTLS association (one client) served by the demultiplexer. Application data is sent and
+     * received via the {@link DatagramTransport} methods (which wrap the association's {@link DTLSTransport}).
+     */
+    public final class Association
+        implements DatagramTransport
+    {
+        private final AssociationTransport datagramTransport;
+        private final DTLSRecordCallback recordCallback = new DTLSRecordCallback()
+        {
+            public void recordAccepted(int flags)
+            {
+                if ((flags & DTLSRecordFlags.IS_NEWEST) != 0 && (flags & DTLSRecordFlags.USES_CONNECTION_ID) != 0)
+                {
+                    updatePeerAddress(datagramTransport.lastSource);
+                }
+            }
+        };
+
+        private volatile SocketAddress peerAddress;
+        private volatile DTLSTransport dtlsTransport = null;
+        private volatile ConnectionIDKey connectionIDKey = null;
+
+        Association(SocketAddress peerAddress, int receiveQueueCapacity)
+        {
+            this.datagramTransport = new AssociationTransport(receiveQueueCapacity);
+            this.peerAddress = peerAddress;
+        }
+
+        /**
+         * @return the current address of the peer.
+         */
+        public SocketAddress getPeerAddress()
+        {
+            return peerAddress;
+        }
+
+        /**
+         * @return the connection ID (RFC 9146) the peer uses for this association, or null if none.
+         */
+        public byte[] getConnectionID()
+        {
+            ConnectionIDKey key = connectionIDKey;
+            return null == key ? null : Arrays.clone(key.value);
+        }
+
+        public int getReceiveLimit() throws IOException
+        {
+            return dtlsTransport.getReceiveLimit();
+        }
+
+        public int getSendLimit() throws IOException
+        {
+            return dtlsTransport.getSendLimit();
+        }
+
+        public int receive(byte[] buf, int off, int len, int waitMillis) throws IOException
+        {
+            return dtlsTransport.receive(buf, off, len, waitMillis, recordCallback);
+        }
+
+        public void send(byte[] buf, int off, int len) throws IOException
+        {
+            dtlsTransport.send(buf, off, len);
+        }
+
+        public void close() throws IOException
+        {
+            try
+            {
+                dtlsTransport.close();
+            }
+            finally
+            {
+                datagramTransport.close();
+            }
+        }
+
+        private void updatePeerAddress(SocketAddress newPeerAddress)
+        {
+            SocketAddress oldPeerAddress = this.peerAddress;
+            if (null == newPeerAddress || newPeerAddress.equals(oldPeerAddress) || datagramTransport.isClosed())
+            {
+                return;
+            }
+
+            Association other;
+            while (null != (other = addressMap.putIfAbsent(newPeerAddress, this)) && this != other)
+            {
+                /*
+                 * NOTE: An authenticated record from our peer came from this address, so the other
+                 * association's peer is no longer there. Its transport is closed (without sending it
+                 * anything, since it would reach our peer), so that its handler sees it end.
+                 */
+                other.datagramTransport.close();
+                addressMap.remove(newPeerAddress, other);
+            }
+
+            addressMap.remove(oldPeerAddress, this);
+
+            this.peerAddress = newPeerAddress;
+
+            // The association may have closed concurrently (under its old address)
+            if (datagramTransport.isClosed())
+            {
+                addressMap.remove(newPeerAddress, this);
+            }
+        }
+
+        private final class AssociationTransport
+            implements DatagramTransport
+        {
+            private final BlockingQueue<Datagram> queue;
+            private final AtomicBoolean closed = new AtomicBoolean(false);
+
+            // NOTE: Only accessed by the thread receiving (so the record callback sees the matching source)
+            private SocketAddress lastSource = null;
+
+            AssociationTransport(int receiveQueueCapacity)
+            {
+                this.queue = new LinkedBlockingQueue<Datagram>(receiveQueueCapacity);
+            }
+
+            public int getReceiveLimit()
+            {
+                return receiveLimit;
+            }
+
+            public int getSendLimit()
+            {
+                return sendLimit;
+            }
+
+            public int receive(byte[] buf, int off, int len, int waitMillis) throws IOException
+            {
+                Datagram datagram;
+                try
+                {
+                    datagram = waitMillis == 0 ? queue.take() : queue.poll(waitMillis, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+
+                if (null == datagram)
+                {
+                    return -1;
+                }
+                if (CLOSED == datagram)
+                {
+                    // Leave the marker for any other waiting receiver
+                    queue.offer(CLOSED);
+                    throw new ClosedChannelException();
+                }
+
+                this.lastSource = datagram.source;
+
+                int length = Math.min(len, datagram.data.length);
+                System.arraycopy(datagram.data, 0, buf, off, length);
+                return length;
+            }
+
+            public void send(byte[] buf, int off, int len) throws IOException
+            {
+                if (closed.get())
+                {
+                    throw new ClosedChannelException();
+                }
+
+                DTLSServerDemultiplexer.this.send(peerAddress, buf, off, len);
+            }
+
+            public void close()
+            {
+                if (closed.compareAndSet(false, true))
+                {
+                    addressMap.remove(peerAddress, Association.this);
+
+                    ConnectionIDKey key = connectionIDKey;
+                    if (null != key)
+                    {
+                        connectionIDMap.remove(key, Association.this);
+                    }
+
+                    queue.clear();
+                    queue.offer(CLOSED);
+                }
+            }
+
+            void enqueue(Datagram datagram)
+            {
+                // NOTE: As for a full socket buffer, excess datagrams are dropped
+                if (!closed.get())
+                {
+                    queue.offer(datagram);
+                }
+            }
+
+            boolean isClosed()
+            {
+                return closed.get();
+            }
+        }
+    }
+
+    private final class CookieSender
+        implements DatagramSender
+    {
+        private final SocketAddress target;
+
+        CookieSender(SocketAddress target)
+        {
+            this.target = target;
+        }
+
+        public int getSendLimit()
+        {
+            return sendLimit;
+        }
+
+        public void send(byte[] buf, int off, int len) throws IOException
+        {
+            DTLSServerDemultiplexer.this.send(target, buf, off, len);
+        }
+    }
+
+    private static final class Datagram
+    {
+        final SocketAddress source;
+        final byte[] data;
+
+        Datagram(SocketAddress source, byte[] data)
+        {
+            this.source = source;
+            this.data = data;
+        }
+    }
+
+    private static final class ConnectionIDKey
+    {
+        private final byte[] value;
+        private final int hashCode;
+
+        ConnectionIDKey(byte[] buf, int off, int len)
+        {
+            this.value = TlsUtils.copyOfRangeExact(buf, off, off + len);
+            this.hashCode = Arrays.hashCode(value);
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof ConnectionIDKey))
+            {
+                return false;
+            }
+
+            ConnectionIDKey other = (ConnectionIDKey)obj;
+            return Arrays.areEqual(value, other.value);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
@@ -13,6 +13,11 @@
         this.recordLayer = recordLayer;
     }
 
+    TlsContext getContext()
+    {
+        return recordLayer.getContext();
+    }
+
     public int getReceiveLimit()
         throws IOException
     {
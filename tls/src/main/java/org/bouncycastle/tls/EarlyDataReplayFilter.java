@@ -0,0 +1,170 @@
+package org.bouncycastle.tls;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bouncycastle.util.Arrays;
+
+/**
+ * A bounded anti-replay filter for TLS 1.3 early data, along the lines of the "ClientHello recording"
+ * described in RFC 8446 8.2. Each ClientHello is identified by a unique value (e.g. its PSK binder), and
+ * early data is only accepted for the first ClientHello seen with a given value.
+ * <p>
+ * Values are recorded in two time buckets, each covering one window; a value is remembered for at least
+ * one window, and at most two. The filter is only effective for ClientHellos received within the window
+ * (RFC 8446 8.3), so servers should also limit the ticket age (or ticket lifetime) they accept early data
+ * for. When the capacity is reached, further early data is rejected (rather than risking a replay) until
+ * the older bucket expires.
+ * <p>
+ * Instances are thread-safe, and can be shared between connections (and servers).
+ */
+public class EarlyDataReplayFilter
+{
+    private final long windowMillis;
+    private final int capacity;
+
+    private Set<Key> currentBucket = new HashSet<Key>();
+    private Set<Key> previousBucket = new HashSet<Key>();
+    private long currentBucketStart = Long.MIN_VALUE;
+
+    /**
+     * @param windowMillis the length (in milliseconds) of the replay window.
+     * @param capacity the maximum number of values to record.
+     */
+    public EarlyDataReplayFilter(long windowMillis, int capacity)
+    {
+        if (windowMillis < 1L)
+        {
+            throw new IllegalArgumentException("'windowMillis' must be positive");
+        }
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("'capacity' must be positive");
+        }
+
+        this.windowMillis = windowMillis;
+        this.capacity = capacity;
+    }
+
+    public long getWindowMillis()
+    {
+        return windowMillis;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Check whether early data can be accepted for a ClientHello, recording its identifying value if so.
+     *
+     * @param clientHelloID a value unique to the ClientHello (e.g. its PSK binder).
+     * @return true if the value has not been seen within the window (and there was capacity to record it).
+     */
+    public boolean checkAndRecord(byte[] clientHelloID)
+    {
+        return checkAndRecord(clientHelloID, System.currentTimeMillis());
+    }
+
+    /**
+     * Check whether early data can be accepted for a ClientHello, recording its identifying value if so.
+     *
+     * @param clientHelloID a value unique to the ClientHello (e.g. its PSK binder).
+     * @param currentTimeMillis the current time (in milliseconds since the epoch).
+     * @return true if the value has not been seen within the window (and there was capacity to record it).
+     */
+    public synchronized boolean checkAndRecord(byte[] clientHelloID, long currentTimeMillis)
+    {
+        if (TlsUtils.isNullOrEmpty(clientHelloID))
+        {
+            throw new IllegalArgumentException("'clientHelloID' cannot be null or empty");
+        }
+
+        rotate(currentTimeMillis);
+
+        Key key = new Key(clientHelloID);
+        if (currentBucket.contains(key) || previousBucket.contains(key))
+        {
+            return false;
+        }
+        if (currentBucket.size() + previousBucket.size() >= capacity)
+        {
+            return false;
+        }
+
+        currentBucket.add(key);
+        return true;
+    }
+
+    /**
+     * @return the number of values currently recorded.
+     */
+    public synchronized int size()
+    {
+        return currentBucket.size() + previousBucket.size();
+    }
+
+    private void rotate(long currentTimeMillis)
+    {
+        if (currentBucketStart == Long.MIN_VALUE)
+        {
+            this.currentBucketStart = currentTimeMillis;
+            return;
+        }
+
+        long elapsed = currentTimeMillis - currentBucketStart;
+        if (elapsed < windowMillis)
+        {
+            return;
+        }
+
+        if (elapsed < 2 * windowMillis)
+        {
+            Set<Key> expired = previousBucket;
+            expired.clear();
+
+            this.previousBucket = currentBucket;
+            this.currentBucket = expired;
+            this.currentBucketStart += windowMillis;
+        }
+        else
+        {
+            previousBucket.clear();
+            currentBucket.clear();
+            this.currentBucketStart = currentTimeMillis;
+        }
+    }
+
+    private static final class Key
+    {
+        private final byte[] value;
+        private final int hashCode;
+
+        Key(byte[] value)
+        {
+            this.value = Arrays.clone(value);
+            this.hashCode = Arrays.hashCode(value);
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+
+            Key other = (Key)obj;
+            return Arrays.areEqual(value, other.value);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
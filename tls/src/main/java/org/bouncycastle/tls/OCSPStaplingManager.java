@@ -0,0 +1,582 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPResponse;
+import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
+import org.bouncycastle.asn1.ocsp.ResponseBytes;
+import org.bouncycastle.asn1.ocsp.SingleResponse;
+import org.bouncycastle.tls.crypto.CryptoHashAlgorithm;
+import org.bouncycastle.tls.crypto.TlsCertificate;
+import org.bouncycastle.tls.crypto.TlsCrypto;
+import org.bouncycastle.tls.crypto.TlsCryptoUtils;
+import org.bouncycastle.tls.crypto.TlsHash;
+import org.bouncycastle.util.Arrays;
+
+/**
+ * A cache of OCSP responses for a server's certificates, for stapling (RFC 6066 "status_request" and RFC 6961
+ * "status_request_v2"). Responses are obtained by a {@link Fetcher}, kept per certificate, and refreshed in
+ * the background by a {@link ScheduledExecutorService} (half-way to the response's nextUpdate time), so that
+ * a handshake only ever reads from the cache.
+ * <p>
+ * A certificate is added to the cache the first time its status is requested (or when it is
+ * {@link #register(Certificate) registered}); until the first fetch completes, no status is available for
+ * it. A response is only cached if it has a single response whose CertID matches the certificate and its
+ * issuer, and is never served after that single response's nextUpdate time (or, if it has none, once it is
+ * older than {@link #getMaxAgeMillis()}).
+ * <p>
+ * A certificate whose status has not been requested (or which has not been registered) for
+ * {@link #getIdleMillis()} is dropped from the cache when it is next due to be refreshed, so certificates
+ * that are no longer in use are not refreshed forever; {@link #unregister(Certificate)} drops them at once.
+ * See {@link AbstractTlsServer#getOCSPStaplingManager()}.
+ */
+public class OCSPStaplingManager
+{
+    /**
+     * Obtains OCSP responses, e.g. from the OCSP responder named in the certificate's authority
+     * information access extension.
+     */
+    public interface Fetcher
+    {
+        /**
+         * Fetch a current OCSP response for a certificate. Called from the {@link ScheduledExecutorService},
+         * so implementations must be thread-safe.
+         *
+         * @param certificate the certificate whose status is wanted.
+         * @param issuer      the issuer of the certificate.
+         * @return an {@link OCSPResponse}.
+         * @throws IOException if no response could be obtained.
+         */
+        OCSPResponse fetchOCSPResponse(TlsCertificate certificate, TlsCertificate issuer) throws IOException;
+    }
+
+    private static final long DEFAULT_REFRESH_MILLIS = 60 * 60 * 1000L;
+    private static final long DEFAULT_RETRY_MILLIS = 60 * 1000L;
+    private static final long DEFAULT_MAX_AGE_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long DEFAULT_IDLE_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long MIN_REFRESH_MILLIS = 10 * 1000L;
+
+    private final TlsCrypto crypto;
+    private final Fetcher fetcher;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentHashMap entries = new ConcurrentHashMap();
+
+    private volatile long refreshMillis = DEFAULT_REFRESH_MILLIS;
+    private volatile long retryMillis = DEFAULT_RETRY_MILLIS;
+    private volatile long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private volatile long idleMillis = DEFAULT_IDLE_MILLIS;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong fetchFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param crypto   the {@link TlsCrypto} to check the CertID of fetched responses with.
+     * @param fetcher  the {@link Fetcher} to obtain OCSP responses with.
+     * @param executor the {@link ScheduledExecutorService} to fetch (and refresh) responses on.
+     */
+    public OCSPStaplingManager(TlsCrypto crypto, Fetcher fetcher, ScheduledExecutorService executor)
+    {
+        if (null == crypto)
+        {
+            throw new NullPointerException("'crypto' cannot be null");
+        }
+        if (null == fetcher)
+        {
+            throw new NullPointerException("'fetcher' cannot be null");
+        }
+        if (null == executor)
+        {
+            throw new NullPointerException("'executor' cannot be null");
+        }
+
+        this.crypto = crypto;
+        this.fetcher = fetcher;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the interval at which responses without a nextUpdate time are refreshed.
+     */
+    public long getRefreshMillis()
+    {
+        return refreshMillis;
+    }
+
+    public void setRefreshMillis(long refreshMillis)
+    {
+        if (refreshMillis < MIN_REFRESH_MILLIS)
+        {
+            throw new IllegalArgumentException("'refreshMillis' must be at least " + MIN_REFRESH_MILLIS);
+        }
+
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * @return the time for which a response without a nextUpdate time may be served after it was fetched.
+     */
+    public long getMaxAgeMillis()
+    {
+        return maxAgeMillis;
+    }
+
+    public void setMaxAgeMillis(long maxAgeMillis)
+    {
+        if (maxAgeMillis < MIN_REFRESH_MILLIS)
+        {
+            throw new IllegalArgumentException("'maxAgeMillis' must be at least " + MIN_REFRESH_MILLIS);
+        }
+
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @return the time after which a certificate whose status has not been requested is dropped from the cache.
+     */
+    public long getIdleMillis()
+    {
+        return idleMillis;
+    }
+
+    public void setIdleMillis(long idleMillis)
+    {
+        if (idleMillis < 1L)
+        {
+            throw new IllegalArgumentException("'idleMillis' must be positive");
+        }
+
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * @return the delay before a failed fetch is retried.
+     */
+    public long getRetryMillis()
+    {
+        return retryMillis;
+    }
+
+    public void setRetryMillis(long retryMillis)
+    {
+        if (retryMillis < 1L)
+        {
+            throw new IllegalArgumentException("'retryMillis' must be positive");
+        }
+
+        this.retryMillis = retryMillis;
+    }
+
+    /**
+     * @return the number of status requests that were served from the cache.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of status requests for which no current response was cached.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of successful fetches.
+     */
+    public long getFetches()
+    {
+        return fetches.get();
+    }
+
+    /**
+     * @return the number of fetches that failed (or returned an unusable response).
+     */
+    public long getFetchFailures()
+    {
+        return fetchFailures.get();
+    }
+
+    /**
+     * @return the number of certificates dropped from the cache because their status was not requested.
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of certificates in the cache.
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Start fetching responses for each certificate of a chain (other than the last), so that they are
+     * available before the first handshake that uses it.
+     */
+    public void register(Certificate chain) throws IOException
+    {
+        for (int i = 0; i + 1 < chain.getLength(); ++i)
+        {
+            getEntry(chain, i);
+        }
+    }
+
+    /**
+     * Remove the responses for each certificate of a chain, and stop refreshing them.
+     */
+    public void unregister(Certificate chain) throws IOException
+    {
+        for (int i = 0; i + 1 < chain.getLength(); ++i)
+        {
+            Entry entry = (Entry)entries.remove(new Key(chain.getCertificateAt(i).getEncoded()));
+            if (null != entry)
+            {
+                entry.cancel();
+            }
+        }
+    }
+
+    /**
+     * Remove all responses, and stop refreshing them.
+     */
+    public void clear()
+    {
+        Iterator it = entries.values().iterator();
+        while (it.hasNext())
+        {
+            ((Entry)it.next()).cancel();
+            it.remove();
+        }
+    }
+
+    /**
+     * @param chain the server's certificate chain.
+     * @param index the index in the chain of the certificate whose status is wanted.
+     * @return the cached {@link OCSPResponse}, or null if none is currently available.
+     */
+    public OCSPResponse getOCSPResponse(Certificate chain, int index) throws IOException
+    {
+        if (index < 0 || index + 1 >= chain.getLength())
+        {
+            return null;
+        }
+
+        OCSPResponse response = getEntry(chain, index).getResponse();
+        if (null == response)
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return response;
+    }
+
+    /**
+     * @param chain the server's certificate chain.
+     * @param multi whether to return an {@link CertificateStatusType#ocsp_multi} status (for
+     *              "status_request_v2") rather than an {@link CertificateStatusType#ocsp} one.
+     * @return a {@link CertificateStatus} from the cached responses, or null if none are currently available.
+     */
+    public CertificateStatus getCertificateStatus(Certificate chain, boolean multi) throws IOException
+    {
+        if (null == chain || chain.getLength() < 2)
+        {
+            return null;
+        }
+
+        if (!multi)
+        {
+            OCSPResponse response = getOCSPResponse(chain, 0);
+            return null == response ? null : new CertificateStatus(CertificateStatusType.ocsp, response);
+        }
+
+        int count = chain.getLength() - 1;
+        Vector responses = new Vector(count);
+        boolean any = false;
+        for (int i = 0; i < count; ++i)
+        {
+            OCSPResponse response = getOCSPResponse(chain, i);
+            responses.addElement(response);
+            any |= (null != response);
+        }
+        return any ? new CertificateStatus(CertificateStatusType.ocsp_multi, responses) : null;
+    }
+
+    private Entry getEntry(Certificate chain, int index) throws IOException
+    {
+        TlsCertificate certificate = chain.getCertificateAt(index);
+        Key key = new Key(certificate.getEncoded());
+
+        Entry entry = (Entry)entries.get(key);
+        if (null == entry)
+        {
+            Entry newEntry = new Entry(key, certificate, chain.getCertificateAt(index + 1));
+            entry = (Entry)entries.putIfAbsent(key, newEntry);
+            if (null == entry)
+            {
+                entry = newEntry;
+                entry.schedule(0L);
+                return entry;
+            }
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        return entry;
+    }
+
+    private static BasicOCSPResponse getBasicResponse(OCSPResponse response) throws IOException
+    {
+        if (OCSPResponseStatus.SUCCESSFUL != response.getResponseStatus().getIntValue())
+        {
+            throw new IOException("OCSP response status not successful");
+        }
+
+        ResponseBytes responseBytes = response.getResponseBytes();
+        if (null == responseBytes || !OCSPObjectIdentifiers.id_pkix_ocsp_basic.equals(responseBytes.getResponseType()))
+        {
+            throw new IOException("OCSP response is not a basic response");
+        }
+
+        return BasicOCSPResponse.getInstance(responseBytes.getResponse().getOctets());
+    }
+
+    private static int getCryptoHashAlgorithm(ASN1ObjectIdentifier hashOID)
+    {
+        int[] candidates = { CryptoHashAlgorithm.sha1, CryptoHashAlgorithm.sha224, CryptoHashAlgorithm.sha256,
+            CryptoHashAlgorithm.sha384, CryptoHashAlgorithm.sha512 };
+
+        for (int i = 0; i < candidates.length; ++i)
+        {
+            if (TlsCryptoUtils.getOIDForHash(candidates[i]).equals(hashOID))
+            {
+                return candidates[i];
+            }
+        }
+        return -1;
+    }
+
+    private final class Entry
+        implements Runnable
+    {
+        private final Key key;
+        private final TlsCertificate certificate;
+        private final TlsCertificate issuer;
+
+        private volatile CachedResponse cached = null;
+        private volatile ScheduledFuture future = null;
+        private volatile boolean cancelled = false;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Entry(Key key, TlsCertificate certificate, TlsCertificate issuer)
+        {
+            this.key = key;
+            this.certificate = certificate;
+            this.issuer = issuer;
+        }
+
+        OCSPResponse getResponse()
+        {
+            CachedResponse cached = this.cached;
+            return null != cached && System.currentTimeMillis() < cached.expiresAt ? cached.response : null;
+        }
+
+        void cancel()
+        {
+            this.cancelled = true;
+
+            ScheduledFuture future = this.future;
+            if (null != future)
+            {
+                future.cancel(false);
+            }
+        }
+
+        void schedule(long delayMillis)
+        {
+            if (cancelled || entries.get(key) != this)
+            {
+                return;
+            }
+
+            try
+            {
+                this.future = executor.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // The executor has been shut down; the entry is dropped so a later request can retry
+                entries.remove(key, this);
+            }
+        }
+
+        public void run()
+        {
+            if (System.currentTimeMillis() - lastUsed > idleMillis)
+            {
+                if (entries.remove(key, this))
+                {
+                    evictions.incrementAndGet();
+                }
+                return;
+            }
+
+            long delayMillis;
+            try
+            {
+                OCSPResponse fetched = fetcher.fetchOCSPResponse(certificate, issuer);
+                if (null == fetched)
+                {
+                    throw new IOException("No OCSP response");
+                }
+
+                SingleResponse singleResponse = findSingleResponse(getBasicResponse(fetched));
+                if (null == singleResponse)
+                {
+                    throw new IOException("OCSP response does not cover the certificate");
+                }
+
+                long now = System.currentTimeMillis();
+                long expiresAt;
+                ASN1GeneralizedTime nextUpdate = singleResponse.getNextUpdate();
+                if (null == nextUpdate)
+                {
+                    long maxAgeMillis = OCSPStaplingManager.this.maxAgeMillis;
+
+                    expiresAt = now + maxAgeMillis;
+                    delayMillis = Math.max(MIN_REFRESH_MILLIS, Math.min(refreshMillis, maxAgeMillis / 2));
+                }
+                else
+                {
+                    expiresAt = nextUpdate.getDate().getTime();
+                    if (expiresAt <= now)
+                    {
+                        throw new IOException("OCSP response has expired");
+                    }
+                    delayMillis = Math.max(MIN_REFRESH_MILLIS, (expiresAt - now) / 2);
+                }
+
+                this.cached = new CachedResponse(fetched, expiresAt);
+                fetches.incrementAndGet();
+            }
+            catch (Exception e)
+            {
+                fetchFailures.incrementAndGet();
+
+                // NOTE: Any previous response continues to be served until its nextUpdate time
+                delayMillis = retryMillis;
+            }
+
+            schedule(delayMillis);
+        }
+
+        private SingleResponse findSingleResponse(BasicOCSPResponse basicResponse) throws IOException
+        {
+            org.bouncycastle.asn1.x509.Certificate issuerCert = org.bouncycastle.asn1.x509.Certificate
+                .getInstance(issuer.getEncoded());
+            byte[] issuerName = issuerCert.getSubject().getEncoded(ASN1Encoding.DER);
+            byte[] issuerKey = issuerCert.getSubjectPublicKeyInfo().getPublicKeyData().getBytes();
+
+            ASN1Sequence singleResponses = basicResponse.getTbsResponseData().getResponses();
+            for (int i = 0; i < singleResponses.size(); ++i)
+            {
+                SingleResponse singleResponse = SingleResponse.getInstance(singleResponses.getObjectAt(i));
+                CertID certID = singleResponse.getCertID();
+
+                if (!certID.getSerialNumber().hasValue(certificate.getSerialNumber()))
+                {
+                    continue;
+                }
+
+                int cryptoHashAlgorithm = getCryptoHashAlgorithm(certID.getHashAlgorithm().getAlgorithm());
+                if (cryptoHashAlgorithm < 0 || !crypto.hasCryptoHashAlgorithm(cryptoHashAlgorithm))
+                {
+                    continue;
+                }
+
+                if (Arrays.constantTimeAreEqual(calculateHash(cryptoHashAlgorithm, issuerName),
+                        certID.getIssuerNameHash().getOctets())
+                    && Arrays.constantTimeAreEqual(calculateHash(cryptoHashAlgorithm, issuerKey),
+                        certID.getIssuerKeyHash().getOctets()))
+                {
+                    return singleResponse;
+                }
+            }
+            return null;
+        }
+
+        private byte[] calculateHash(int cryptoHashAlgorithm, byte[] data)
+        {
+            TlsHash hash = crypto.createHash(cryptoHashAlgorithm);
+            hash.update(data, 0, data.length);
+            return hash.calculateHash();
+        }
+    }
+
+    private static final class CachedResponse
+    {
+        final OCSPResponse response;
+        final long expiresAt;
+
+        CachedResponse(OCSPResponse response, long expiresAt)
+        {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Key
+    {
+        private final byte[] encoding;
+        private final int hashCode;
+
+        Key(byte[] encoding)
+        {
+            this.encoding = encoding;
+            this.hashCode = Arrays.hashCode(encoding);
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+
+            Key other = (Key)obj;
+            return hashCode == other.hashCode && Arrays.areEqual(encoding, other.encoding);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
@@ -11,6 +11,7 @@
 import org.bouncycastle.tls.crypto.TlsHash;
 import org.bouncycastle.tls.crypto.TlsHashOutputStream;
 import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.util.Arrays;
 
 public class OfferedPsks
 {
@@ -102,6 +103,19 @@ public int getIndexOfIdentity(PskIdentity pskIdentity)
         return -1;
     }
 
+    public int getIndexOfIdentity(byte[] identity)
+    {
+        for (int i = 0, count = identities.size(); i < count; ++i)
+        {
+            PskIdentity pskIdentity = (PskIdentity)identities.elementAt(i);
+            if (Arrays.areEqual(identity, pskIdentity.getIdentity()))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public void encode(OutputStream output) throws IOException
     {
         // identities
@@ -160,8 +174,7 @@ static void encodeBinders(OutputStream output, TlsCrypto crypto, TlsHandshakeHas
             TlsPSK psk = psks[i];
             TlsSecret earlySecret = earlySecrets[i];
 
-            // TODO[tls13-psk] Handle resumption PSKs
-            boolean isExternalPSK = true;
+            boolean isExternalPSK = !(psk instanceof TlsPSKResumption);
             int pskCryptoHashAlgorithm = TlsCryptoUtils.getHashForPRF(psk.getPRFAlgorithm());
 
             // TODO[tls13-psk] Cache the transcript hashes per algorithm to avoid duplicates for multiple PSKs
@@ -18,6 +18,12 @@
 {
     private static int DEFAULT_PLAINTEXT_LIMIT = (1 << 14);
 
+    /*
+     * The number of buffered bytes at which a gathering write is passed to the output, so that a single
+     * (large) gathering write doesn't have to be buffered in full.
+     */
+    private static final int GATHERING_LIMIT = (1 << 18);
+
     private final Record inputRecord = new Record();
     private final SequenceNumber readSeqNo = new SequenceNumber(), writeSeqNo = new SequenceNumber();
 
@@ -34,6 +40,18 @@
     private int plaintextLimit = DEFAULT_PLAINTEXT_LIMIT;
     private int ciphertextLimit = DEFAULT_PLAINTEXT_LIMIT;
     private boolean ignoreChangeCipherSpec = false;
+    private boolean earlyDataRead = false;
+    private long earlyDataSkipRemaining = -1L;
+
+    private final OutputBuffer outputBuffer = new OutputBuffer();
+    private int coalescingLimit = 0;
+    private boolean gathering = false;
+    private long recordsWritten = 0L;
+    private long outputFlushes = 0L;
+    private long recordsRead = 0L;
+    private long bytesRead = 0L, bytesWritten = 0L;
+    private boolean measureReadWait = false;
+    private long readWaitNanos = 0L;
 
     RecordStream(TlsProtocol handler, InputStream input, OutputStream output)
     {
@@ -58,6 +76,74 @@ void setWriteVersion(ProtocolVersion writeVersion)
         this.writeVersion = writeVersion;
     }
 
+    int getCoalescingLimit()
+    {
+        return coalescingLimit;
+    }
+
+    void setCoalescingLimit(int coalescingLimit) throws IOException
+    {
+        if (coalescingLimit < 0)
+        {
+            throw new IllegalArgumentException("'coalescingLimit' cannot be negative");
+        }
+
+        this.coalescingLimit = coalescingLimit;
+
+        if (coalescingLimit == 0)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * While gathering, application data records are buffered (up to an internal limit) regardless of the
+     * coalescing limit. Ending a gathering write leaves any buffered output for the caller to flush.
+     */
+    void setGathering(boolean gathering)
+    {
+        this.gathering = gathering;
+    }
+
+    long getOutputFlushes()
+    {
+        return outputFlushes;
+    }
+
+    long getRecordsWritten()
+    {
+        return recordsWritten;
+    }
+
+    long getRecordsRead()
+    {
+        return recordsRead;
+    }
+
+    long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the total time spent blocked reading records, while measurement was enabled (see
+     *         {@link #setMeasureReadWait(boolean)}).
+     */
+    long getReadWaitNanos()
+    {
+        return readWaitNanos;
+    }
+
+    void setMeasureReadWait(boolean measureReadWait)
+    {
+        this.measureReadWait = measureReadWait;
+    }
+
     void setIgnoreChangeCipherSpec(boolean ignoreChangeCipherSpec)
     {
         this.ignoreChangeCipherSpec = ignoreChangeCipherSpec;
@@ -113,6 +199,61 @@ void enablePendingCipherWrite()
         writeSeqNo.reset();
     }
 
+    /**
+     * Start protecting written records with the (TLS 1.3) early data cipher, ahead of the handshake.
+     */
+    void enableEarlyDataWrite(TlsCipher earlyDataCipher)
+    {
+        this.writeCipher = earlyDataCipher;
+        writeSeqNo.reset();
+    }
+
+    /**
+     * Revert to unprotected writes, after early data was sent but a HelloRetryRequest was received.
+     */
+    void disableEarlyDataWrite()
+    {
+        this.writeCipher = TlsNullNullCipher.INSTANCE;
+        writeSeqNo.reset();
+    }
+
+    /**
+     * Start reading records with the (TLS 1.3) early data cipher. Any deferred read cipher is held back
+     * until {@link #notifyEndOfEarlyData()}.
+     */
+    void enableEarlyDataRead(TlsCipher earlyDataCipher)
+    {
+        this.readCipher = earlyDataCipher;
+        this.ciphertextLimit = readCipher.getCiphertextDecodeLimit(plaintextLimit);
+        readSeqNo.reset();
+        this.earlyDataRead = true;
+    }
+
+    void notifyEndOfEarlyData()
+        throws IOException
+    {
+        if (!earlyDataRead || null == readCipherDeferred)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        this.earlyDataRead = false;
+        this.readCipher = readCipherDeferred;
+        this.readCipherDeferred = null;
+        this.ciphertextLimit = readCipher.getCiphertextDecodeLimit(plaintextLimit);
+        readSeqNo.reset();
+    }
+
+    /**
+     * RFC 8446 4.2.10. Skip over rejected early data: records that fail deprotection (or, before any cipher
+     * is enabled, all "application_data" records) are discarded, up to the given limit on the amount of early
+     * data, until a record is successfully processed.
+     */
+    void skipEarlyData(long maxEarlyDataSize)
+    {
+        this.earlyDataSkipRemaining = Math.max(0L, maxEarlyDataSize);
+    }
+
     void finaliseHandshake()
         throws IOException
     {
@@ -197,6 +338,9 @@ boolean readFullRecord(byte[] input, int inputOff, int inputLen)
 
         checkLength(length, ciphertextLimit, AlertDescription.record_overflow);
 
+        ++recordsRead;
+        bytesRead += inputLen;
+
         if (ignoreChangeCipherSpec && ContentType.change_cipher_spec == recordType)
         {
             checkChangeCipherSpec(input, inputOff + RecordFormat.FRAGMENT_OFFSET, length);
@@ -205,6 +349,10 @@ boolean readFullRecord(byte[] input, int inputOff, int inputLen)
 
         TlsDecodeResult decoded = decodeAndVerify(recordType, recordVersion, input,
             inputOff + RecordFormat.FRAGMENT_OFFSET, length);
+        if (null == decoded)
+        {
+            return true;
+        }
 
         handler.processRecord(decoded.contentType, decoded.buf, decoded.off, decoded.len);
         return true;
@@ -213,6 +361,8 @@ boolean readFullRecord(byte[] input, int inputOff, int inputLen)
     boolean readRecord()
         throws IOException
     {
+        long waitStart = measureReadWait ? System.nanoTime() : 0L;
+
         if (!inputRecord.readHeader(input))
         {
             return false;
@@ -228,6 +378,14 @@ boolean readRecord()
 
         inputRecord.readFragment(input, length);
 
+        if (measureReadWait)
+        {
+            readWaitNanos += System.nanoTime() - waitStart;
+        }
+
+        ++recordsRead;
+        bytesRead += RecordFormat.FRAGMENT_OFFSET + length;
+
         TlsDecodeResult decoded;
         try
         {
@@ -244,15 +402,35 @@ boolean readRecord()
             inputRecord.reset();
         }
 
+        if (null == decoded)
+        {
+            return true;
+        }
+
         handler.processRecord(decoded.contentType, decoded.buf, decoded.off, decoded.len);
         return true;
     }
 
+    /**
+     * @return the decoded record, or null if the record was skipped (see {@link #skipEarlyData(long)}).
+     */
     TlsDecodeResult decodeAndVerify(short recordType, ProtocolVersion recordVersion, byte[] ciphertext, int off, int len)
         throws IOException
     {
-        long seqNo = readSeqNo.nextValue(AlertDescription.unexpected_message);
-        TlsDecodeResult decoded = readCipher.decodeCiphertext(seqNo, recordType, recordVersion, ciphertext, off, len);
+        TlsDecodeResult decoded;
+        if (earlyDataSkipRemaining < 0L)
+        {
+            long seqNo = readSeqNo.nextValue(AlertDescription.unexpected_message);
+            decoded = readCipher.decodeCiphertext(seqNo, recordType, recordVersion, ciphertext, off, len);
+        }
+        else
+        {
+            decoded = decodeOrSkipEarlyData(recordType, recordVersion, ciphertext, off, len);
+            if (null == decoded)
+            {
+                return null;
+            }
+        }
 
         checkLength(decoded.len, plaintextLimit, AlertDescription.record_overflow);
 
@@ -268,6 +446,51 @@ TlsDecodeResult decodeAndVerify(short recordType, ProtocolVersion recordVersion,
         return decoded;
     }
 
+    private TlsDecodeResult decodeOrSkipEarlyData(short recordType, ProtocolVersion recordVersion, byte[] ciphertext,
+        int off, int len) throws IOException
+    {
+        if (ContentType.application_data == recordType)
+        {
+            if (readCipher.usesOpaqueRecordTypeDecode())
+            {
+                // NOTE: The sequence number only advances once a record is successfully deprotected
+                long seqNo = readSeqNo.currentValue();
+                try
+                {
+                    TlsDecodeResult decoded = readCipher.decodeCiphertext(seqNo, recordType, recordVersion,
+                        ciphertext, off, len);
+                    readSeqNo.nextValue(AlertDescription.unexpected_message);
+                    this.earlyDataSkipRemaining = -1L;
+                    return decoded;
+                }
+                catch (TlsFatalAlert e)
+                {
+                    if (AlertDescription.bad_record_mac != e.getAlertDescription())
+                    {
+                        throw e;
+                    }
+                }
+            }
+
+            /*
+             * RFC 8446 4.2.10. The server then skips past early data by attempting to deprotect received
+             * records using the handshake traffic key, discarding records which fail deprotection (up to the
+             * configured max_early_data_size).
+             */
+            this.earlyDataSkipRemaining -= Math.max(0, readCipher.getPlaintextDecodeLimit(len));
+            if (earlyDataSkipRemaining < 0L)
+            {
+                throw new TlsFatalAlert(AlertDescription.unexpected_message, "Too much early data skipped");
+            }
+            return null;
+        }
+
+        this.earlyDataSkipRemaining = -1L;
+
+        long seqNo = readSeqNo.nextValue(AlertDescription.unexpected_message);
+        return readCipher.decodeCiphertext(seqNo, recordType, recordVersion, ciphertext, off, len);
+    }
+
     void writeRecord(short contentType, byte[] plaintext, int plaintextOffset, int plaintextLength)
         throws IOException
     {
@@ -304,9 +527,46 @@ void writeRecord(short contentType, byte[] plaintext, int plaintextOffset, int p
         TlsUtils.writeVersion(recordVersion, encoded.buf, encoded.off + RecordFormat.VERSION_OFFSET);
         TlsUtils.writeUint16(ciphertextLength, encoded.buf, encoded.off + RecordFormat.LENGTH_OFFSET);
 
+        ++recordsWritten;
+        bytesWritten += encoded.len;
+
+        int bufferLimit = gathering ? Math.max(coalescingLimit, GATHERING_LIMIT) : coalescingLimit;
+        if (bufferLimit > 0)
+        {
+            outputBuffer.append(encoded.buf, encoded.off, encoded.len);
+
+            /*
+             * Only application data is held back; any other record (handshake, alert, etc.) is sent
+             * immediately, along with any application data buffered ahead of it.
+             */
+            if (contentType == ContentType.application_data && outputBuffer.len < bufferLimit)
+            {
+                return;
+            }
+
+            flush();
+            return;
+        }
+
+        writeOutput(encoded.buf, encoded.off, encoded.len);
+    }
+
+    void flush() throws IOException
+    {
+        if (outputBuffer.len > 0)
+        {
+            int len = outputBuffer.len;
+            outputBuffer.len = 0;
+
+            writeOutput(outputBuffer.buf, 0, len);
+        }
+    }
+
+    private void writeOutput(byte[] buf, int off, int len) throws IOException
+    {
         try
         {
-            output.write(encoded.buf, encoded.off, encoded.len);
+            output.write(buf, off, len);
         }
         catch (InterruptedIOException e)
         {
@@ -314,11 +574,13 @@ void writeRecord(short contentType, byte[] plaintext, int plaintextOffset, int p
         }
 
         output.flush();
+        ++outputFlushes;
     }
 
     void close() throws IOException
     {
         inputRecord.reset();
+        outputBuffer.reset();
 
         IOException io = null;
         try
@@ -368,7 +630,7 @@ private short checkRecordType(byte[] buf, int off)
     {
         short recordType = TlsUtils.readUint8(buf, off);
 
-        if (null != readCipherDeferred && recordType == ContentType.application_data)
+        if (null != readCipherDeferred && recordType == ContentType.application_data && !earlyDataRead)
         {
             this.readCipher = readCipherDeferred;
             this.readCipherDeferred = null;
@@ -396,7 +658,7 @@ else if (readCipher.usesOpaqueRecordTypeDecode())
             {
             case ContentType.application_data:
             {
-                if (!handler.isApplicationDataReady())
+                if (!handler.isApplicationDataReady() && earlyDataSkipRemaining < 0L)
                 {
                     throw new TlsFatalAlert(AlertDescription.unexpected_message,
                         "Not ready for " + ContentType.getText(ContentType.application_data));
@@ -507,6 +769,31 @@ private void resize(int length)
         }
     }
 
+    private static class OutputBuffer
+    {
+        private byte[] buf = TlsUtils.EMPTY_BYTES;
+        private int len = 0;
+
+        void append(byte[] data, int off, int length)
+        {
+            int required = len + length;
+            if (buf.length < required)
+            {
+                byte[] tmp = new byte[Math.max(required, buf.length * 2)];
+                System.arraycopy(buf, 0, tmp, 0, len);
+                buf = tmp;
+            }
+            System.arraycopy(data, off, buf, len, length);
+            len = required;
+        }
+
+        void reset()
+        {
+            buf = TlsUtils.EMPTY_BYTES;
+            len = 0;
+        }
+    }
+
     private static class SequenceNumber
     {
         private long value = 0L;
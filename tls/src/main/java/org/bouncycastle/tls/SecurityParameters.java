@@ -27,6 +27,8 @@
     TlsSecret exporterMasterSecret = null;
     TlsSecret handshakeSecret = null;
     TlsSecret masterSecret = null;
+    // NOTE: Not cleared with the handshake secrets; needed for any post-handshake NewSessionTicket (TLS 1.3)
+    TlsSecret resumptionMasterSecret = null;
     TlsSecret trafficSecretClient = null;
     TlsSecret trafficSecretServer = null;
     byte[] clientRandom = null;
@@ -258,6 +260,11 @@ public TlsSecret getHandshakeSecret()
         return handshakeSecret;
     }
 
+    public TlsSecret getResumptionMasterSecret()
+    {
+        return resumptionMasterSecret;
+    }
+
     public TlsSecret getMasterSecret()
     {
         return masterSecret;
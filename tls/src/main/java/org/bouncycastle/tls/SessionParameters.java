@@ -29,7 +29,9 @@ public Builder()
         public SessionParameters build()
         {
             validate(this.cipherSuite >= 0, "cipherSuite");
-            validate(this.masterSecret != null, "masterSecret");
+            // NOTE: A TLS 1.3 session resumed from a ticket has no master secret
+            validate(this.masterSecret != null
+                || (null != this.negotiatedVersion && TlsUtils.isTLSv13(this.negotiatedVersion)), "masterSecret");
             return new SessionParameters(cipherSuite, localCertificate, masterSecret, negotiatedVersion,
                 peerCertificate, pskIdentity, srpIdentity, encodedServerExtensions, extendedMasterSecret);
         }
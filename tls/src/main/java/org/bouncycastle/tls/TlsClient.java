@@ -32,6 +32,16 @@
      */
     Vector getExternalPSKs();
 
+    /**
+     * Return the {@link TlsPSKResumption resumption PSKs} to offer in the ClientHello. Note that this will
+     * only be called when TLS 1.3 or higher is amongst the offered protocol versions. Resumption PSKs
+     * that are incompatible with the offered cipher suites are silently dropped.
+     * 
+     * @return a {@link Vector} of {@link TlsPSKResumption} instances, or null if none should be offered.
+     * @see #notifyResumptionPSK(TlsPSKResumption)
+     */
+    Vector getResumptionPSKs();
+
     boolean isFallback();
 
     // Hashtable is (Integer -> byte[])
@@ -123,4 +133,45 @@ Vector getClientSupplementalData()
      */
     void notifyNewSessionTicket(NewSessionTicket newSessionTicket)
         throws IOException;
+
+    /**
+     * RFC 8446 4.6.1. New Session Ticket Message
+     * <p>
+     * This method will be called when a (TLS 1.3) NewSessionTicket message is received after the
+     * handshake has completed. The ticket is wrapped, along with the PSK derived from it and the
+     * parameters of the current session, as a {@link TlsPSKResumption} that can later be returned from
+     * {@link #getResumptionPSKs()}.
+     *
+     * @param resumptionPSK the resumption PSK established by the ticket.
+     * @throws IOException
+     */
+    void notifyResumptionPSK(TlsPSKResumption resumptionPSK)
+        throws IOException;
+
+    /**
+     * RFC 8446 4.2.10. Early Data Indication
+     * <p>
+     * This method will be called when the first PSK offered in the ClientHello is a
+     * {@link TlsPSKResumption} whose ticket permits early data (see
+     * {@link TlsPSKResumption#getMaxEarlyDataSize()}). Any data returned is sent as 0-RTT application
+     * data immediately after the ClientHello. Note that early data can be replayed by an attacker, so
+     * should only be used for requests that are safe to repeat.
+     *
+     * @param resumptionPSK the resumption PSK that will protect the early data.
+     * @return the early data to send (at most {@link TlsPSKResumption#getMaxEarlyDataSize()} bytes), or
+     *         null to not send early data.
+     * @throws IOException
+     */
+    byte[] getEarlyData(TlsPSKResumption resumptionPSK)
+        throws IOException;
+
+    /**
+     * Notifies the client, after early data was sent, whether the server accepted it. If not, the server
+     * has discarded the early data, and the application may send it again once the handshake completes.
+     *
+     * @param accepted true if the server accepted the early data.
+     * @throws IOException
+     */
+    void notifyEarlyDataAccepted(boolean accepted)
+        throws IOException;
 }
@@ -9,6 +9,7 @@
 import java.util.Vector;
 
 import org.bouncycastle.tls.crypto.TlsAgreement;
+import org.bouncycastle.tls.crypto.TlsCipher;
 import org.bouncycastle.tls.crypto.TlsCrypto;
 import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.tls.crypto.TlsStreamSigner;
@@ -30,6 +31,10 @@
     protected CertificateStatus certificateStatus = null;
     protected CertificateRequest certificateRequest = null;
 
+    TlsPSKResumption earlyDataPSK = null;
+    boolean earlyDataPSKSelected = false;
+    boolean earlyDataWriting = false;
+
     /**
      * Constructor for non-blocking mode.<br>
      * <br>
@@ -120,6 +125,10 @@ protected void cleanupHandshake()
 
         this.certificateStatus = null;
         this.certificateRequest = null;
+
+        this.earlyDataPSK = null;
+        this.earlyDataPSKSelected = false;
+        this.earlyDataWriting = false;
     }
 
     protected TlsContext getContext()
@@ -167,6 +176,26 @@ protected void handle13HandshakeMessage(short type, HandshakeMessageInput buf)
             }
             break;
         }
+        case HandshakeType.compressed_certificate:
+        {
+            switch (this.connection_state)
+            {
+            case CS_SERVER_ENCRYPTED_EXTENSIONS:
+            {
+                skip13CertificateRequest();
+                // NB: Fall through to next case label
+            }
+            case CS_SERVER_CERTIFICATE_REQUEST:
+            {
+                receive13ServerCompressedCertificate(buf);
+                this.connection_state = CS_SERVER_CERTIFICATE;
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+            break;
+        }
         case HandshakeType.certificate_request:
         {
             switch (this.connection_state)
@@ -244,10 +273,17 @@ protected void handle13HandshakeMessage(short type, HandshakeMessageInput buf)
                 recordStream.setIgnoreChangeCipherSpec(false);
 
                 /*
-                 * TODO[tls13] After receiving the server's Finished message, if the server has accepted early
-                 * data, an EndOfEarlyData message will be sent to indicate the key change. This message will
-                 * be encrypted with the 0-RTT traffic keys.
+                 * RFC 8446 4.5. If the server sent an "early_data" extension in EncryptedExtensions, the
+                 * client MUST send an EndOfEarlyData message after receiving the server Finished. [..] This
+                 * message is encrypted under keys derived from the client_early_traffic_secret.
                  */
+                if (earlyDataWriting)
+                {
+                    send13EndOfEarlyDataMessage();
+                    this.earlyDataWriting = false;
+
+                    recordStream.enablePendingCipherWrite();
+                }
 
                 if (null != certificateRequest)
                 {
@@ -271,8 +307,10 @@ protected void handle13HandshakeMessage(short type, HandshakeMessageInput buf)
 
                     if (null != clientCredentials)
                     {
+                        long phaseStart = startHandshakePhase();
                         DigitallySigned certificateVerify = TlsUtils.generate13CertificateVerify(tlsClientContext,
                             clientCredentials, handshakeHash);
+                        endHandshakePhase(TlsHandshakeMetrics.SIGNATURE, phaseStart);
                         send13CertificateVerifyMessage(certificateVerify);
                         this.connection_state = CS_CLIENT_CERTIFICATE_VERIFY;
                     }
@@ -282,6 +320,7 @@ protected void handle13HandshakeMessage(short type, HandshakeMessageInput buf)
                 this.connection_state = CS_CLIENT_FINISHED;
 
                 TlsUtils.establish13PhaseApplication(tlsClientContext, serverFinishedTranscriptHash, recordStream);
+                TlsUtils.establish13ResumptionMasterSecret(tlsClientContext, TlsUtils.getCurrentPRFHash(handshakeHash));
 
                 recordStream.enablePendingCipherWrite();
                 recordStream.enablePendingCipherRead(false);
@@ -338,7 +377,6 @@ protected void handle13HandshakeMessage(short type, HandshakeMessageInput buf)
         case HandshakeType.certificate_url:
         case HandshakeType.client_hello:
         case HandshakeType.client_key_exchange:
-        case HandshakeType.compressed_certificate:
         case HandshakeType.end_of_early_data:
         case HandshakeType.hello_request:
         case HandshakeType.hello_verify_request:
@@ -359,11 +397,6 @@ protected void handleHandshakeMessage(short type, HandshakeMessageInput buf)
         if (connection_state > CS_CLIENT_HELLO
             && TlsUtils.isTLSv13(securityParameters.getNegotiatedVersion()))
         {
-            if (securityParameters.isResumedSession())
-            {
-                throw new TlsFatalAlert(AlertDescription.internal_error);
-            }
-
             handle13HandshakeMessage(type, buf);
             return;
         }
@@ -647,7 +680,9 @@ protected void handleHandshakeMessage(short type, HandshakeMessageInput buf)
                 if (isSSL)
                 {
                     // NOTE: For SSLv3 (only), master_secret needed to calculate session hash
+                    long phaseStart = startHandshakePhase();
                     establishMasterSecret(tlsClientContext, keyExchange);
+                    endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
                 }
 
                 securityParameters.sessionHash = TlsUtils.getCurrentPRFHash(handshakeHash);
@@ -655,7 +690,9 @@ protected void handleHandshakeMessage(short type, HandshakeMessageInput buf)
                 if (!isSSL)
                 {
                     // NOTE: For (D)TLS, session hash potentially needed for extended_master_secret
+                    long phaseStart = startHandshakePhase();
                     establishMasterSecret(tlsClientContext, keyExchange);
+                    endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
                 }
 
                 this.keyExchange = null;
@@ -664,8 +701,10 @@ protected void handleHandshakeMessage(short type, HandshakeMessageInput buf)
 
                 if (clientAuthSigner != null)
                 {
+                    long phaseStart = startHandshakePhase();
                     DigitallySigned certificateVerify = TlsUtils.generateCertificateVerifyClient(tlsClientContext,
                         clientAuthSigner, clientAuthAlgorithm, clientAuthStreamSigner, handshakeHash);
+                    endHandshakePhase(TlsHandshakeMetrics.SIGNATURE, phaseStart);
                     sendCertificateVerifyMessage(certificateVerify);
                     this.connection_state = CS_CLIENT_CERTIFICATE_VERIFY;
                 }
@@ -703,7 +742,9 @@ protected void handleHandshakeMessage(short type, HandshakeMessageInput buf)
             {
                 handleServerCertificate();
 
+                long phaseStart = startHandshakePhase();
                 keyExchange.processServerKeyExchange(buf);
+                endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
 
                 assertEmpty(buf);
                 break;
@@ -811,8 +852,10 @@ protected void handleHandshakeMessage(short type, HandshakeMessageInput buf)
     protected void handleServerCertificate()
         throws IOException
     {
+        long phaseStart = startHandshakePhase();
         TlsUtils.processServerCertificate(tlsClientContext, certificateStatus, keyExchange, authentication,
             clientExtensions, serverExtensions);
+        endHandshakePhase(TlsHandshakeMetrics.CERTIFICATE_VERIFICATION, phaseStart);
     }
 
     protected void handleSupplementalData(Vector serverSupplementalData)
@@ -1039,9 +1082,9 @@ protected void process13ServerHello(ServerHello serverHello, boolean afterHelloR
         securityParameters.statusRequestVersion = clientExtensions.containsKey(TlsExtensionsUtils.EXT_status_request) ? 1 : 0;
 
         TlsSecret pskEarlySecret = null;
+        TlsPSK selectedPSK = null;
         {
             int selected_identity = TlsExtensionsUtils.getPreSharedKeyServerHello(extensions);
-            TlsPSK selectedPSK = null;
 
             if (selected_identity >= 0)
             {
@@ -1059,6 +1102,7 @@ protected void process13ServerHello(ServerHello serverHello, boolean afterHelloR
                 pskEarlySecret = clientBinders.earlySecrets[selected_identity];
 
                 this.selectedPSK13 = true;
+                this.earlyDataPSKSelected = (null != earlyDataPSK && selectedPSK == earlyDataPSK);
             }
 
             tlsClient.notifySelectedPSK(selectedPSK);
@@ -1092,8 +1136,10 @@ protected void process13ServerHello(ServerHello serverHello, boolean afterHelloR
                     throw new TlsFatalAlert(AlertDescription.illegal_parameter);
                 }
 
+                long phaseStart = startHandshakePhase();
                 agreement.receivePeerValue(serverShare.getKeyExchange());
                 sharedSecret = agreement.calculateSecret();
+                endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
 
                 if (!afterHelloRetryRequest)
                 {
@@ -1105,10 +1151,29 @@ protected void process13ServerHello(ServerHello serverHello, boolean afterHelloR
         this.clientAgreements = null;
         this.clientBinders = null;
 
+        long phaseStart = startHandshakePhase();
         TlsUtils.establish13PhaseSecrets(tlsClientContext, pskEarlySecret, sharedSecret);
+        endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
 
         invalidateSession();
-        this.tlsSession = TlsUtils.importSession(securityParameters.getSessionID(), null);
+
+        if (selectedPSK instanceof TlsPSKResumption)
+        {
+            SessionParameters resumedSessionParameters = ((TlsPSKResumption)selectedPSK).getSessionParameters();
+            if (null == resumedSessionParameters)
+            {
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+            }
+
+            securityParameters.resumedSession = true;
+
+            this.sessionParameters = resumedSessionParameters.copy();
+            this.tlsSession = TlsUtils.importSession(securityParameters.getSessionID(), sessionParameters);
+        }
+        else
+        {
+            this.tlsSession = TlsUtils.importSession(securityParameters.getSessionID(), null);
+        }
     }
 
     protected void process13ServerHelloCoda(ServerHello serverHello, boolean afterHelloRetryRequest) throws IOException
@@ -1123,17 +1188,23 @@ protected void process13ServerHelloCoda(ServerHello serverHello, boolean afterHe
             recordStream.setIgnoreChangeCipherSpec(true);
 
             /*
-             * TODO[tls13] If offering early_data, the record is placed immediately after the first
-             * ClientHello.
+             * NOTE: If we sent early data, the record was already placed immediately after the ClientHello.
              */
             /*
              * TODO[tls13] Ideally wait until just after Server Finished received, but then we'd need to defer
              * the enabling of the pending write cipher
              */
-            sendChangeCipherSpecMessage();
+            if (null == earlyDataPSK)
+            {
+                sendChangeCipherSpecMessage();
+            }
         }
 
-        recordStream.enablePendingCipherWrite();
+        // NOTE: If still writing early data, the handshake write cipher waits on EncryptedExtensions
+        if (!earlyDataWriting)
+        {
+            recordStream.enablePendingCipherWrite();
+        }
         recordStream.enablePendingCipherRead(false);
     }
 
@@ -1596,6 +1667,32 @@ protected void receive13EncryptedExtensions(ByteArrayInputStream buf)
 
         this.expectSessionTicket = false;
 
+        if (null != earlyDataPSK)
+        {
+            boolean earlyDataAccepted = TlsExtensionsUtils.hasEarlyDataIndication(serverExtensions);
+            if (earlyDataAccepted)
+            {
+                /*
+                 * RFC 8446 4.2.10. If the server supplies an "early_data" extension, the client MUST verify
+                 * that the server's selected_identity is 0. [..] a client MUST verify that [the selected
+                 * cipher suite is the same as that associated with the PSK].
+                 */
+                if (!earlyDataPSKSelected || !earlyDataWriting || securityParameters.getCipherSuite() !=
+                    earlyDataPSK.getSessionParameters().getCipherSuite())
+                {
+                    throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+                }
+            }
+            else if (earlyDataWriting)
+            {
+                this.earlyDataWriting = false;
+
+                recordStream.enablePendingCipherWrite();
+            }
+
+            tlsClient.notifyEarlyDataAccepted(earlyDataAccepted);
+        }
+
         if (null != sessionClientExtensions)
         {
             tlsClient.processServerExtensions(serverExtensions);
@@ -1612,8 +1709,6 @@ protected void receive13NewSessionTicket(ByteArrayInputStream buf)
             throw new TlsFatalAlert(AlertDescription.unexpected_message);
         }
 
-        // TODO[tls13] Do something more than just ignore them
-
 //        struct {
 //            uint32 ticket_lifetime;
 //            uint32 ticket_age_add;
@@ -1622,12 +1717,44 @@ protected void receive13NewSessionTicket(ByteArrayInputStream buf)
 //            Extension extensions<0..2^16-2>;
 //        } NewSessionTicket;
 
-        TlsUtils.readUint32(buf);
-        TlsUtils.readUint32(buf);
-        TlsUtils.readOpaque8(buf);
-        TlsUtils.readOpaque16(buf);
-        TlsUtils.readOpaque16(buf);
+        long ticketLifetime = TlsUtils.readUint32(buf);
+        long ticketAgeAdd = TlsUtils.readUint32(buf);
+        byte[] ticketNonce = TlsUtils.readOpaque8(buf);
+        byte[] ticket = TlsUtils.readOpaque16(buf, 1);
+        byte[] extEncoding = TlsUtils.readOpaque16(buf);
         assertEmpty(buf);
+
+        Hashtable ticketExtensions = readExtensionsData13(HandshakeType.new_session_ticket, extEncoding);
+        long maxEarlyDataSize = Math.max(0L, TlsExtensionsUtils.getEarlyDataMaxSize(ticketExtensions));
+
+        /*
+         * RFC 8446 4.6.1. Servers MUST NOT use any value greater than 604800 seconds (7 days). The
+         * value of zero indicates that the ticket should be discarded immediately.
+         */
+        if (ticketLifetime > 604800L)
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+        if (ticketLifetime == 0L)
+        {
+            return;
+        }
+
+        TlsSession session = tlsClientContext.getSession();
+        SessionParameters sessionParameters = null == session ? null : session.exportSessionParameters();
+        if (null == sessionParameters)
+        {
+            return;
+        }
+
+        SecurityParameters securityParameters = tlsClientContext.getSecurityParametersConnection();
+        TlsSecret resumptionPSK = TlsUtils.getResumptionPSK13(securityParameters, ticketNonce);
+
+        TlsPSKResumption resumptionPSKInfo = new BasicTlsPSKResumption(ticket, resumptionPSK,
+            securityParameters.getPRFAlgorithm(), sessionParameters, ticketLifetime, ticketAgeAdd,
+            System.currentTimeMillis(), maxEarlyDataSize);
+
+        tlsClient.notifyResumptionPSK(resumptionPSKInfo);
     }
 
     protected void receive13ServerCertificate(ByteArrayInputStream buf)
@@ -1644,6 +1771,29 @@ protected void receive13ServerCertificate(ByteArrayInputStream buf)
         handleServerCertificate();
     }
 
+    protected void receive13ServerCompressedCertificate(ByteArrayInputStream buf)
+        throws IOException
+    {
+        CompressedCertificate compressedCertificate = CompressedCertificate.parse(buf);
+
+        TlsProtocol.assertEmpty(buf);
+
+        /*
+         * RFC 8879 4. If the peer receives a CompressedCertificate message with an algorithm it did not
+         * offer, it MUST abort the connection with an "illegal_parameter" alert.
+         */
+        int[] offeredAlgorithms = TlsExtensionsUtils.getCompressCertificateExtension(clientExtensions);
+        if (null == offeredAlgorithms || !Arrays.contains(offeredAlgorithms, compressedCertificate.getAlgorithm()))
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        byte[] certificateMessage = CertificateCompression.decompress(compressedCertificate,
+            TlsUtils.getMaxHandshakeMessageSize(tlsClient));
+
+        receive13ServerCertificate(new ByteArrayInputStream(certificateMessage));
+    }
+
     protected void receive13ServerCertificateVerify(ByteArrayInputStream buf)
         throws IOException
     {
@@ -1657,7 +1807,9 @@ protected void receive13ServerCertificateVerify(ByteArrayInputStream buf)
 
         assertEmpty(buf);
 
+        long phaseStart = startHandshakePhase();
         TlsUtils.verify13CertificateVerifyServer(tlsClientContext, handshakeHash, certificateVerify);
+        endHandshakePhase(TlsHandshakeMetrics.SIGNATURE, phaseStart);
     }
 
     protected void receive13ServerFinished(ByteArrayInputStream buf)
@@ -1752,8 +1904,10 @@ protected void send13ClientHelloRetry() throws IOException
          * - If a "key_share" extension was supplied in the HelloRetryRequest, replacing the list of shares
          * with a list containing a single KeyShareEntry from the indicated group
          */
+        long phaseStart = startHandshakePhase();
         this.clientAgreements = TlsUtils.addKeyShareToClientHelloRetry(tlsClientContext, clientHelloExtensions,
             retryGroup);
+        endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
 
         /*
          * TODO[tls13] Optionally adding, removing, or changing the length of the "padding"
@@ -1765,10 +1919,20 @@ protected void send13ClientHelloRetry() throws IOException
             recordStream.setIgnoreChangeCipherSpec(true);
 
             /*
-             * TODO[tls13] If offering early_data, the record is placed immediately after the first
+             * NOTE: If we sent early data, the record was already placed immediately after the first
              * ClientHello.
              */
-            sendChangeCipherSpecMessage();
+            if (null == earlyDataPSK)
+            {
+                sendChangeCipherSpecMessage();
+            }
+        }
+
+        // RFC 8446 4.2.10. A client MUST NOT include the "early_data" extension in its followup ClientHello.
+        if (earlyDataWriting)
+        {
+            recordStream.disableEarlyDataWrite();
+            this.earlyDataWriting = false;
         }
 
         sendClientHelloMessage();
@@ -1914,7 +2078,9 @@ protected void sendClientHello()
             offeredCipherSuites);
 
         // TODO[tls13-psk] Perhaps don't add key_share if external PSK(s) offered and 'psk_dhe_ke' not offered  
+        long phaseStart = startHandshakePhase();
         this.clientAgreements = TlsUtils.addKeyShareToClientHello(tlsClientContext, tlsClient, clientExtensions);
+        endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
 
         if (shouldUseEMS && TlsUtils.isExtendedMasterSecretOptional(supportedVersions))
         {
@@ -1986,12 +2152,82 @@ else if (offeringTLSv12Minus)
 
 
 
+        byte[] earlyData = getEarlyData(offeredCipherSuites);
+
         int bindersSize = null == clientBinders ? 0 : clientBinders.bindersSize;
 
         this.clientHello = new ClientHello(legacy_version, securityParameters.getClientRandom(), legacy_session_id,
             null, offeredCipherSuites, clientExtensions, bindersSize);
 
         sendClientHelloMessage();
+
+        if (null != earlyData)
+        {
+            send13EarlyData(earlyData);
+        }
+    }
+
+    private byte[] getEarlyData(int[] offeredCipherSuites) throws IOException
+    {
+        /*
+         * RFC 8446 4.2.10. When a PSK is used and early data is allowed for that PSK, the client can send
+         * Application Data in its first flight of messages. [..] the PSK used to encrypt the early data MUST
+         * be the first PSK listed in the client's "pre_shared_key" extension.
+         */
+        if (null == clientBinders || !(clientBinders.psks[0] instanceof TlsPSKResumption))
+        {
+            return null;
+        }
+
+        TlsPSKResumption resumptionPSK = (TlsPSKResumption)clientBinders.psks[0];
+        SessionParameters resumptionSessionParameters = resumptionPSK.getSessionParameters();
+        long maxEarlyDataSize = resumptionPSK.getMaxEarlyDataSize();
+
+        if (maxEarlyDataSize < 1L ||
+            null == resumptionSessionParameters ||
+            !Arrays.contains(offeredCipherSuites, resumptionSessionParameters.getCipherSuite()))
+        {
+            return null;
+        }
+
+        byte[] earlyData = tlsClient.getEarlyData(resumptionPSK);
+        if (TlsUtils.isNullOrEmpty(earlyData))
+        {
+            return null;
+        }
+        if (earlyData.length > maxEarlyDataSize)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error, "Early data exceeds max_early_data_size");
+        }
+
+        TlsExtensionsUtils.addEarlyDataIndication(clientExtensions);
+        this.earlyDataPSK = resumptionPSK;
+        return earlyData;
+    }
+
+    protected void send13EarlyData(byte[] earlyData) throws IOException
+    {
+        // See RFC 8446 D.4. If offering early data, the record is placed immediately after the first ClientHello.
+        sendChangeCipherSpecMessage();
+
+        TlsCipher earlyDataCipher = TlsUtils.initEarlyDataCipher(tlsClientContext,
+            earlyDataPSK.getSessionParameters().getCipherSuite(), clientBinders.earlySecrets[0], handshakeHash);
+
+        recordStream.enableEarlyDataWrite(earlyDataCipher);
+        this.earlyDataWriting = true;
+
+        int fragmentLimit = recordStream.getPlaintextLimit();
+        for (int off = 0; off < earlyData.length; off += fragmentLimit)
+        {
+            int len = Math.min(fragmentLimit, earlyData.length - off);
+            safeWriteRecord(ContentType.application_data, earlyData, off, len);
+        }
+    }
+
+    protected void send13EndOfEarlyDataMessage() throws IOException
+    {
+        HandshakeMessageOutput message = new HandshakeMessageOutput(HandshakeType.end_of_early_data, 0);
+        message.send(this);
     }
 
     protected void sendClientHelloMessage() throws IOException
@@ -2013,7 +2249,9 @@ protected void sendClientKeyExchange()
         throws IOException
     {
         HandshakeMessageOutput message = new HandshakeMessageOutput(HandshakeType.client_key_exchange);
+        long phaseStart = startHandshakePhase();
         keyExchange.generateClientKeyExchange(message);
+        endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
         message.send(this);
     }
 
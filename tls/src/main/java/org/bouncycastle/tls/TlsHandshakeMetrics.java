@@ -0,0 +1,237 @@
+package org.bouncycastle.tls;
+
+/**
+ * Timings and counts for a single handshake, as reported to a {@link TlsHandshakeMetricsListener}.
+ * <p>
+ * Times are in nanoseconds (as measured by {@link System#nanoTime()}), and only include the work done by
+ * this peer. The phases don't cover all of the handshake (e.g. message encoding and hashing, or time spent
+ * waiting for input in non-blocking mode, are only part of the total).
+ */
+public class TlsHandshakeMetrics
+{
+    /**
+     * Ephemeral key generation, key agreement/transport and key derivation. For (D)TLS 1.2 and earlier,
+     * this includes creating and verifying the ServerKeyExchange signature.
+     */
+    public static final int KEY_EXCHANGE = 0;
+
+    /**
+     * Creating and verifying CertificateVerify signatures.
+     */
+    public static final int SIGNATURE = 1;
+
+    /**
+     * Checking the peer's certificate (chain), i.e. the time spent in {@link TlsAuthentication} (client) or
+     * {@link TlsServer#notifyClientCertificate(Certificate)} (server).
+     */
+    public static final int CERTIFICATE_VERIFICATION = 2;
+
+    /**
+     * Waiting for records from the peer. Only measured in blocking mode.
+     */
+    public static final int PEER_WAIT = 3;
+
+    private static final int PHASE_COUNT = 4;
+
+    private final boolean server;
+    private final boolean renegotiation;
+    private final long startNanos;
+    private final long startRecordsRead, startRecordsWritten, startBytesRead, startBytesWritten, startReadWaitNanos;
+    private final long[] phaseNanos = new long[PHASE_COUNT];
+
+    private boolean completed = false;
+    private short alertDescription = -1;
+    private boolean resumed = false;
+    private ProtocolVersion negotiatedVersion = null;
+    private int cipherSuite = -1;
+    private int negotiatedGroup = -1;
+    private long totalNanos = 0L;
+    private long recordsRead = 0L, recordsWritten = 0L, bytesRead = 0L, bytesWritten = 0L;
+
+    TlsHandshakeMetrics(boolean server, boolean renegotiation, RecordStream recordStream)
+    {
+        this.server = server;
+        this.renegotiation = renegotiation;
+        this.startNanos = System.nanoTime();
+        this.startRecordsRead = recordStream.getRecordsRead();
+        this.startRecordsWritten = recordStream.getRecordsWritten();
+        this.startBytesRead = recordStream.getBytesRead();
+        this.startBytesWritten = recordStream.getBytesWritten();
+        this.startReadWaitNanos = recordStream.getReadWaitNanos();
+    }
+
+    /**
+     * @return true if the handshake completed successfully.
+     */
+    public boolean isCompleted()
+    {
+        return completed;
+    }
+
+    /**
+     * @return for a failed handshake, the {@link AlertDescription} of the fatal alert raised or received (if
+     *         any), otherwise -1.
+     */
+    public short getAlertDescription()
+    {
+        return alertDescription;
+    }
+
+    public boolean isServer()
+    {
+        return server;
+    }
+
+    public boolean isRenegotiation()
+    {
+        return renegotiation;
+    }
+
+    /**
+     * @return true if a session was resumed (or, for TLS 1.3, a resumption PSK was used), i.e. an abbreviated
+     *         handshake.
+     */
+    public boolean isResumed()
+    {
+        return resumed;
+    }
+
+    /**
+     * @return the negotiated version, or null if not (yet) negotiated.
+     */
+    public ProtocolVersion getNegotiatedVersion()
+    {
+        return negotiatedVersion;
+    }
+
+    /**
+     * @return the negotiated {@link CipherSuite}, or -1 if not (yet) negotiated.
+     */
+    public int getCipherSuite()
+    {
+        return cipherSuite;
+    }
+
+    /**
+     * @return the {@link NamedGroup} used for key exchange, or -1 if none.
+     */
+    public int getNegotiatedGroup()
+    {
+        return negotiatedGroup;
+    }
+
+    /**
+     * @return the time from the start of the handshake until it completed (or failed).
+     */
+    public long getTotalNanos()
+    {
+        return totalNanos;
+    }
+
+    /**
+     * @param phase one of {@link #KEY_EXCHANGE}, {@link #SIGNATURE}, {@link #CERTIFICATE_VERIFICATION},
+     *              {@link #PEER_WAIT}.
+     * @return the time spent in the given phase.
+     */
+    public long getPhaseNanos(int phase)
+    {
+        if (phase < 0 || phase >= PHASE_COUNT)
+        {
+            throw new IllegalArgumentException("'phase' is not a valid phase: " + phase);
+        }
+
+        return phaseNanos[phase];
+    }
+
+    public long getRecordsRead()
+    {
+        return recordsRead;
+    }
+
+    public long getRecordsWritten()
+    {
+        return recordsWritten;
+    }
+
+    /**
+     * @return the number of bytes (of records, including headers) read during the handshake.
+     */
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of bytes (of records, including headers) written during the handshake.
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(server ? "server" : "client");
+        sb.append(completed ? " handshake completed" : " handshake failed");
+        if (alertDescription >= 0)
+        {
+            sb.append(" (").append(AlertDescription.getText(alertDescription)).append(')');
+        }
+        if (null != negotiatedVersion)
+        {
+            sb.append(": ").append(negotiatedVersion);
+        }
+        if (cipherSuite >= 0)
+        {
+            sb.append(", cipherSuite=0x").append(Integer.toHexString(cipherSuite));
+        }
+        if (negotiatedGroup >= 0)
+        {
+            sb.append(", ").append(NamedGroup.getName(negotiatedGroup));
+        }
+        sb.append(resumed ? ", resumed" : ", full");
+        sb.append(", total=").append(totalNanos / 1000L).append("us");
+        sb.append(", keyExchange=").append(phaseNanos[KEY_EXCHANGE] / 1000L).append("us");
+        sb.append(", signature=").append(phaseNanos[SIGNATURE] / 1000L).append("us");
+        sb.append(", certificateVerification=").append(phaseNanos[CERTIFICATE_VERIFICATION] / 1000L).append("us");
+        sb.append(", peerWait=").append(phaseNanos[PEER_WAIT] / 1000L).append("us");
+        sb.append(", records=").append(recordsRead).append('/').append(recordsWritten);
+        sb.append(", bytes=").append(bytesRead).append('/').append(bytesWritten);
+        return sb.toString();
+    }
+
+    void addPhaseNanos(int phase, long nanos)
+    {
+        phaseNanos[phase] += nanos;
+    }
+
+    void setAlertDescription(short alertDescription)
+    {
+        if (this.alertDescription < 0)
+        {
+            this.alertDescription = alertDescription;
+        }
+    }
+
+    void finish(boolean completed, SecurityParameters securityParameters, RecordStream recordStream)
+    {
+        this.completed = completed;
+        this.totalNanos = System.nanoTime() - startNanos;
+
+        if (null != securityParameters)
+        {
+            this.resumed = securityParameters.isResumedSession();
+            this.negotiatedVersion = securityParameters.getNegotiatedVersion();
+            this.cipherSuite = securityParameters.getCipherSuite() == CipherSuite.TLS_NULL_WITH_NULL_NULL
+                ? -1 : securityParameters.getCipherSuite();
+            this.negotiatedGroup = securityParameters.getNegotiatedGroup();
+        }
+
+        this.recordsRead = recordStream.getRecordsRead() - startRecordsRead;
+        this.recordsWritten = recordStream.getRecordsWritten() - startRecordsWritten;
+        this.bytesRead = recordStream.getBytesRead() - startBytesRead;
+        this.bytesWritten = recordStream.getBytesWritten() - startBytesWritten;
+        this.phaseNanos[PEER_WAIT] += recordStream.getReadWaitNanos() - startReadWaitNanos;
+    }
+}
@@ -0,0 +1,17 @@
+package org.bouncycastle.tls;
+
+/**
+ * Receives the {@link TlsHandshakeMetrics} for each handshake (see
+ * {@link TlsPeer#getHandshakeMetricsListener()}).
+ */
+public interface TlsHandshakeMetricsListener
+{
+    /**
+     * Called once a handshake (including a renegotiation) has completed or failed. Called on the thread
+     * driving the handshake, so implementations should return quickly; any {@link RuntimeException} thrown
+     * is ignored.
+     *
+     * @param metrics the metrics for the handshake.
+     */
+    void notifyHandshakeMetrics(TlsHandshakeMetrics metrics);
+}
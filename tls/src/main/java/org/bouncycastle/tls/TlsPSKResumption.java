@@ -0,0 +1,24 @@
+package org.bouncycastle.tls;
+
+/**
+ * A TLS 1.3 resumption PSK, as established by a NewSessionTicket message (see RFC 8446 4.6.1).
+ */
+public interface TlsPSKResumption
+    extends TlsPSK
+{
+    /**
+     * @return the obfuscated_ticket_age to send along with this PSK's identity in a ClientHello.
+     */
+    long getObfuscatedTicketAge();
+
+    /**
+     * @return the {@link SessionParameters} of the session in which this PSK was established.
+     */
+    SessionParameters getSessionParameters();
+
+    /**
+     * @return the max_early_data_size from the NewSessionTicket "early_data" extension, or 0 if the ticket
+     *         does not permit early data.
+     */
+    long getMaxEarlyDataSize();
+}
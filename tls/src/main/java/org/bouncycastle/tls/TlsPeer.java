@@ -56,6 +56,33 @@
      */
     int getHandshakeResendTimeMillis();
 
+    /**
+     * <p>
+     * NOTE: Only respected by DTLS protocols.
+     * </p>
+     * <p>
+     * Specify the size, in records, of the anti-replay window (RFC 6347 4.1.2.6) kept for each epoch. The
+     * size is rounded up to a multiple of 64, and must be between 64 and 65536. A larger window avoids
+     * discarding records that are heavily reordered on high-rate links.
+     * </p>
+     *
+     * @return the replay window size, in records.
+     */
+    int getReplayWindowSize();
+
+    /**
+     * <p>
+     * NOTE: Currently only respected by TLS protocols.
+     * </p>
+     * <p>
+     * Specify a listener to receive timings and counts for each handshake (see {@link TlsHandshakeMetrics}).
+     * When this returns null (the default), no measurements are taken.
+     * </p>
+     *
+     * @return a {@link TlsHandshakeMetricsListener}, or null to disable handshake metrics.
+     */
+    TlsHandshakeMetricsListener getHandshakeMetricsListener();
+
     boolean allowLegacyResumption();
 
     int getMaxCertificateChainLength();
@@ -64,6 +91,18 @@
 
     short[] getPskKeyExchangeModes();
 
+    /**
+     * RFC 8879 certificate compression (TLS 1.3 only). A client offers these algorithms for the server's
+     * Certificate message; a server uses the first of these algorithms (that is also offered by the client)
+     * to compress its Certificate message. Currently only {@link CertificateCompressionAlgorithm#zlib} is
+     * implemented; other algorithms are ignored.
+     *
+     * @return the certificate compression algorithms to use, in order of preference (see
+     *         {@link CertificateCompressionAlgorithm} for valid constants), or null to disable
+     *         certificate compression.
+     */
+    int[] getCertificateCompressionAlgorithms();
+
     /**
      * This option is provided as a last resort for interoperability with TLS peers that fail to
      * correctly send a close_notify alert at end of stream. Implementations SHOULD return true;
@@ -129,6 +129,8 @@ protected boolean isTLSv13ConnectionState()
      * Queues for data from some protocols.
      */
     private ByteQueue applicationDataQueue = new ByteQueue(0);
+    private ByteBuffer applicationDataTarget = null;
+    private byte[] inputRecordCopy = null;
     private ByteQueue alertQueue = new ByteQueue(2);
     private ByteQueue handshakeQueue = new ByteQueue(0);
 //    private ByteQueue heartbeatQueue = new ByteQueue();
@@ -140,6 +142,9 @@ protected boolean isTLSv13ConnectionState()
 
     TlsHandshakeHash handshakeHash;
 
+    private TlsHandshakeMetricsListener handshakeMetricsListener = null;
+    private TlsHandshakeMetrics handshakeMetrics = null;
+
     private TlsInputStream tlsInputStream = null;
     private TlsOutputStream tlsOutputStream = null;
 
@@ -151,6 +156,7 @@ protected boolean isTLSv13ConnectionState()
 //    private volatile boolean keyUpdatePendingReceive = false;
     private volatile boolean keyUpdatePendingSend = false;
     private volatile boolean resumableHandshake = false;
+    private volatile boolean writeCoalescingDeferFlush = false;
     private volatile int appDataSplitMode = ADS_MODE_1_Nsub1;
 
     protected TlsSession tlsSession = null;
@@ -241,6 +247,11 @@ protected void handleAlertMessage(short alertLevel, short alertDescription)
         }
         else
         {
+            if (null != handshakeMetrics)
+            {
+                handshakeMetrics.setAlertDescription(alertDescription);
+            }
+
             handleFailure();
 
             throw new TlsFatalAlertReceived(alertDescription);
@@ -286,10 +297,14 @@ protected void handleClose(boolean user_canceled)
     {
         if (!closed)
         {
-            this.closed = true;
+            synchronized (recordWriteLock)
+            {
+                this.closed = true;
+            }
 
             if (!appDataReady)
             {
+                notifyHandshakeFailed();
                 cleanupHandshake();
 
                 if (user_canceled)
@@ -316,6 +331,11 @@ protected void handleException(short alertDescription, String message, Throwable
 
         if (!closed)
         {
+            if (null != handshakeMetrics)
+            {
+                handshakeMetrics.setAlertDescription(alertDescription);
+            }
+
             raiseAlertFatal(alertDescription, message, e);
 
             handleFailure();
@@ -324,8 +344,11 @@ protected void handleException(short alertDescription, String message, Throwable
 
     protected void handleFailure() throws IOException
     {
-        this.closed = true;
-        this.failed = true;
+        synchronized (recordWriteLock)
+        {
+            this.closed = true;
+            this.failed = true;
+        }
 
         /*
          * RFC 2246 7.2.1. The session becomes unresumable if any connection is terminated
@@ -336,6 +359,7 @@ protected void handleFailure() throws IOException
 
         if (!appDataReady)
         {
+            notifyHandshakeFailed();
             cleanupHandshake();
         }
 
@@ -449,6 +473,14 @@ protected void beginHandshake(boolean renegotiation)
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
+        this.handshakeMetricsListener = peer.getHandshakeMetricsListener();
+        if (null != handshakeMetricsListener)
+        {
+            this.handshakeMetrics = new TlsHandshakeMetrics(ConnectionEnd.server == securityParameters.getEntity(),
+                renegotiation, recordStream);
+            recordStream.setMeasureReadWait(blocking);
+        }
+
         securityParameters.extendedPadding = peer.shouldUseExtendedPadding();
     }
 
@@ -543,6 +575,8 @@ protected void completeHandshake()
             }
 
             context.handshakeComplete(getPeer(), this.tlsSession);
+
+            notifyHandshakeMetrics(true, securityParameters);
         }
         finally
         {
@@ -550,6 +584,54 @@ protected void completeHandshake()
         }
     }
 
+    /**
+     * @return the start time for a handshake phase (see {@link #endHandshakePhase(int, long)}), or 0 if handshake
+     *         metrics are disabled.
+     */
+    long startHandshakePhase()
+    {
+        return null == handshakeMetrics ? 0L : System.nanoTime();
+    }
+
+    void endHandshakePhase(int phase, long startNanos)
+    {
+        if (null != handshakeMetrics)
+        {
+            handshakeMetrics.addPhaseNanos(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void notifyHandshakeFailed()
+    {
+        if (null != handshakeMetrics)
+        {
+            notifyHandshakeMetrics(false, getContext().getSecurityParameters());
+        }
+    }
+
+    private void notifyHandshakeMetrics(boolean completed, SecurityParameters securityParameters)
+    {
+        TlsHandshakeMetrics metrics = this.handshakeMetrics;
+        if (null == metrics)
+        {
+            return;
+        }
+
+        this.handshakeMetrics = null;
+        recordStream.setMeasureReadWait(false);
+
+        metrics.finish(completed, securityParameters, recordStream);
+
+        try
+        {
+            handshakeMetricsListener.notifyHandshakeMetrics(metrics);
+        }
+        catch (RuntimeException e)
+        {
+            // Ignore: metrics are not allowed to affect the connection
+        }
+    }
+
     protected void processRecord(short protocol, byte[] buf, int off, int len)
         throws IOException
     {
@@ -566,11 +648,23 @@ protected void processRecord(short protocol, byte[] buf, int off, int len)
         }
         case ContentType.application_data:
         {
-            if (!appDataReady)
+            if (!appDataReady && !receiveEarlyData(len))
             {
                 throw new TlsFatalAlert(AlertDescription.unexpected_message);
             }
-            applicationDataQueue.addData(buf, off, len);
+            // Deliver straight to the caller's buffer during processInput(), preserving order with queued data
+            ByteBuffer target = applicationDataTarget;
+            if (null != target && applicationDataQueue.available() == 0)
+            {
+                int direct = Math.min(len, target.remaining());
+                target.put(buf, off, direct);
+                off += direct;
+                len -= direct;
+            }
+            if (len > 0)
+            {
+                applicationDataQueue.addData(buf, off, len);
+            }
 //            processApplicationDataQueue();
             break;
         }
@@ -963,10 +1057,32 @@ protected void safeWriteRecord(short type, byte[] buf, int offset, int len)
         }
     }
 
+    protected void safeFlush()
+        throws IOException
+    {
+        try
+        {
+            recordStream.flush();
+        }
+        catch (TlsFatalAlert e)
+        {
+            handleException(e.getAlertDescription(), "Failed to flush output", e);
+            throw e;
+        }
+        catch (IOException e)
+        {
+            handleException(AlertDescription.internal_error, "Failed to flush output", e);
+            throw e;
+        }
+    }
+
     protected void writeRecord(short type, byte[] buf, int off, int len)
         throws IOException
     {
-        recordStream.writeRecord(type, buf, off, len);
+        synchronized (recordWriteLock)
+        {
+            recordStream.writeRecord(type, buf, off, len);
+        }
     }
 
     /**
@@ -1010,69 +1126,203 @@ public void writeApplicationData(byte[] buf, int off, int len)
 
         synchronized (recordWriteLock)
         {
-            while (len > 0)
+            writeApplicationDataRecords(buf, off, len);
+
+            if (!writeCoalescingDeferFlush)
             {
-                if (closed)
+                safeFlush();
+            }
+        }
+    }
+
+    /**
+     * Write application data gathered from a sequence of buffers (see
+     * {@link java.nio.channels.GatheringByteChannel}). Usable in both blocking/non-blocking modes.<br>
+     * <br>
+     * The data is fragmented into records as if it were a single contiguous buffer (so records are not cut
+     * short at buffer boundaries), and the records are passed to the underlying transport (or the output
+     * buffer) together, in as few writes as possible. Buffers backed by an accessible array are read without
+     * an intermediate copy. The position of each buffer is advanced by the number of bytes written from it.<br>
+     * <br>
+     * This method must not be called until after the initial handshake is complete. Attempting to call it
+     * earlier will result in an {@link IllegalStateException}.
+     *
+     * @param srcs The buffers containing application data to send
+     * @return The total number of bytes of application data written
+     * @throws IllegalStateException If called before the initial handshake has completed.
+     * @throws IOException           If connection is already closed, or for encryption or transport errors.
+     */
+    public long writeApplicationData(ByteBuffer[] srcs)
+        throws IOException
+    {
+        return writeApplicationData(srcs, 0, srcs.length);
+    }
+
+    /**
+     * Write application data gathered from a subsequence of the given buffers.
+     *
+     * @param srcs   The buffers containing application data to send
+     * @param offset The offset within the buffer array of the first buffer to be used
+     * @param length The number of buffers to be used
+     * @return The total number of bytes of application data written
+     * @throws IllegalStateException If called before the initial handshake has completed.
+     * @throws IOException           If connection is already closed, or for encryption or transport errors.
+     * @see #writeApplicationData(ByteBuffer[])
+     */
+    public long writeApplicationData(ByteBuffer[] srcs, int offset, int length)
+        throws IOException
+    {
+        if (srcs == null)
+        {
+            throw new NullPointerException();
+        }
+        if ((offset | length | (srcs.length - offset - length)) < 0)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = offset; i < offset + length; ++i)
+        {
+            if (srcs[i] == null)
+            {
+                throw new NullPointerException();
+            }
+        }
+
+        if (!appDataReady)
+        {
+            throw new IllegalStateException("Cannot write application data until initial handshake completed.");
+        }
+
+        synchronized (recordWriteLock)
+        {
+            int plaintextLimit = recordStream.getPlaintextLimit();
+            byte[] staging = null;
+            int stagingLen = 0;
+            long total = 0L;
+
+            recordStream.setGathering(true);
+            try
+            {
+                for (int i = offset; i < offset + length; ++i)
+                {
+                    ByteBuffer src = srcs[i];
+
+                    while (src.hasRemaining())
+                    {
+                        int remaining = src.remaining();
+
+                        // Whole records can be written straight from an array-backed buffer
+                        if (stagingLen == 0 && remaining >= plaintextLimit && src.hasArray())
+                        {
+                            int toWrite = remaining - (remaining % plaintextLimit);
+                            writeApplicationDataRecords(src.array(), src.arrayOffset() + src.position(), toWrite);
+                            ((java.nio.Buffer)src).position(src.position() + toWrite);
+                            total += toWrite;
+                            continue;
+                        }
+
+                        if (staging == null)
+                        {
+                            staging = new byte[plaintextLimit];
+                        }
+
+                        int toCopy = Math.min(remaining, plaintextLimit - stagingLen);
+                        src.get(staging, stagingLen, toCopy);
+                        stagingLen += toCopy;
+                        total += toCopy;
+
+                        if (stagingLen == plaintextLimit)
+                        {
+                            writeApplicationDataRecords(staging, 0, stagingLen);
+                            stagingLen = 0;
+                        }
+                    }
+                }
+
+                if (stagingLen > 0)
                 {
-                    throw new IOException("Cannot write application data on closed/failed TLS connection");
+                    writeApplicationDataRecords(staging, 0, stagingLen);
                 }
+            }
+            finally
+            {
+                recordStream.setGathering(false);
+            }
 
+            if (!writeCoalescingDeferFlush)
+            {
+                safeFlush();
+            }
+
+            return total;
+        }
+    }
+
+    private void writeApplicationDataRecords(byte[] buf, int off, int len)
+        throws IOException
+    {
+        while (len > 0)
+        {
+            if (closed)
+            {
+                throw new IOException("Cannot write application data on closed/failed TLS connection");
+            }
+
+            /*
+             * RFC 5246 6.2.1. Zero-length fragments of Application data MAY be sent as they are
+             * potentially useful as a traffic analysis countermeasure.
+             * 
+             * NOTE: Actually, implementations appear to have settled on 1/n-1 record splitting.
+             */
+            if (appDataSplitEnabled)
+            {
                 /*
-                 * RFC 5246 6.2.1. Zero-length fragments of Application data MAY be sent as they are
-                 * potentially useful as a traffic analysis countermeasure.
+                 * Protect against known IV attack!
                  * 
-                 * NOTE: Actually, implementations appear to have settled on 1/n-1 record splitting.
+                 * DO NOT REMOVE THIS CODE, EXCEPT YOU KNOW EXACTLY WHAT YOU ARE DOING HERE.
                  */
-                if (appDataSplitEnabled)
+                switch (appDataSplitMode)
                 {
-                    /*
-                     * Protect against known IV attack!
-                     * 
-                     * DO NOT REMOVE THIS CODE, EXCEPT YOU KNOW EXACTLY WHAT YOU ARE DOING HERE.
-                     */
-                    switch (appDataSplitMode)
-                    {
-                    case ADS_MODE_0_N_FIRSTONLY:
-                    {
-                        this.appDataSplitEnabled = false;
-                        // NB: Fall through to next case label
-                    }
-                    case ADS_MODE_0_N:
-                    {
-                        safeWriteRecord(ContentType.application_data, TlsUtils.EMPTY_BYTES, 0, 0);
-                        break;
-                    }
-                    case ADS_MODE_1_Nsub1:
-                    default:
-                    {
-                        if (len > 1)
-                        {
-                            safeWriteRecord(ContentType.application_data, buf, off, 1);
-                            ++off;
-                            --len;
-                        }
-                        break;
-                    }
-                    }
+                case ADS_MODE_0_N_FIRSTONLY:
+                {
+                    this.appDataSplitEnabled = false;
+                    // NB: Fall through to next case label
                 }
-                else if (keyUpdateEnabled)
+                case ADS_MODE_0_N:
                 {
-                    if (keyUpdatePendingSend)
-                    {
-                        send13KeyUpdate(false);
-                    }
-                    else if (recordStream.needsKeyUpdate())
+                    safeWriteRecord(ContentType.application_data, TlsUtils.EMPTY_BYTES, 0, 0);
+                    break;
+                }
+                case ADS_MODE_1_Nsub1:
+                default:
+                {
+                    if (len > 1)
                     {
-                        send13KeyUpdate(true);
+                        safeWriteRecord(ContentType.application_data, buf, off, 1);
+                        ++off;
+                        --len;
                     }
+                    break;
+                }
                 }
-
-                // Fragment data according to the current fragment limit.
-                int toWrite = Math.min(len, recordStream.getPlaintextLimit());
-                safeWriteRecord(ContentType.application_data, buf, off, toWrite);
-                off += toWrite;
-                len -= toWrite;
             }
+            else if (keyUpdateEnabled)
+            {
+                if (keyUpdatePendingSend)
+                {
+                    send13KeyUpdate(false);
+                }
+                else if (recordStream.needsKeyUpdate())
+                {
+                    send13KeyUpdate(true);
+                }
+            }
+
+            // Fragment data according to the current fragment limit.
+            int toWrite = Math.min(len, recordStream.getPlaintextLimit());
+            safeWriteRecord(ContentType.application_data, buf, off, toWrite);
+            off += toWrite;
+            len -= toWrite;
         }
     }
 
@@ -1091,6 +1341,75 @@ public void setAppDataSplitMode(int appDataSplitMode)
         this.appDataSplitMode = appDataSplitMode;
     }
 
+    /**
+     * Get the current write coalescing limit.
+     *
+     * @return The number of buffered bytes at which coalesced records are written to the transport, or 0 if
+     *         write coalescing is disabled.
+     * @see #setWriteCoalescing(int, boolean)
+     */
+    public int getWriteCoalescingLimit()
+    {
+        return recordStream.getCoalescingLimit();
+    }
+
+    /**
+     * Check whether coalesced application data is held until an explicit {@link #flush()}.
+     *
+     * @see #setWriteCoalescing(int, boolean)
+     */
+    public boolean isWriteCoalescingDeferFlush()
+    {
+        return writeCoalescingDeferFlush;
+    }
+
+    /**
+     * Configure write coalescing of application data records. Only allowed in blocking mode.<br>
+     * <br>
+     * When enabled, records produced by {@link #writeApplicationData(byte[], int, int)} are accumulated
+     * and passed to the underlying OutputStream in a single write (followed by a single flush) once the
+     * buffered length reaches the limit, at the end of each call to writeApplicationData, or, if
+     * deferFlush is set, only when {@link #flush()} is called. Any non-application-data record (e.g. a
+     * handshake message or alert) causes buffered records to be sent immediately.
+     *
+     * @param limit      The number of buffered bytes at which coalesced records are written to the
+     *                   transport, or 0 to disable write coalescing (any buffered output is flushed).
+     * @param deferFlush If true, application data written with writeApplicationData is not flushed at the
+     *                   end of each call, but only when the limit is reached or {@link #flush()} is called.
+     * @throws IOException If flushing previously buffered output fails.
+     */
+    public void setWriteCoalescing(int limit, boolean deferFlush) throws IOException
+    {
+        if (!blocking)
+        {
+            throw new IllegalStateException("Cannot use setWriteCoalescing() in non-blocking mode!");
+        }
+
+        synchronized (recordWriteLock)
+        {
+            this.writeCoalescingDeferFlush = limit > 0 && deferFlush;
+
+            recordStream.setCoalescingLimit(limit);
+        }
+    }
+
+    /**
+     * @return The number of records written to the underlying transport (or output buffer) so far.
+     */
+    public long getRecordsWritten()
+    {
+        return recordStream.getRecordsWritten();
+    }
+
+    /**
+     * @return The number of write+flush operations issued on the underlying transport (or output buffer)
+     *         so far. Without write coalescing this equals {@link #getRecordsWritten()}.
+     */
+    public long getOutputFlushes()
+    {
+        return recordStream.getOutputFlushes();
+    }
+
     public boolean isResumableHandshake()
     {
         return resumableHandshake;
@@ -1245,21 +1564,24 @@ public int previewOutputRecord()
             throw new IllegalStateException("Cannot use previewOutputRecord() in blocking mode!");
         }
 
-        ByteQueue buffer = outputBuffer.getBuffer();
-        int available = buffer.available();
-        if (available < 1)
-        {
-            return 0;
-        }
-
-        if (available >= RecordFormat.FRAGMENT_OFFSET)
+        synchronized (recordWriteLock)
         {
-            int length = buffer.readUint16(RecordFormat.LENGTH_OFFSET);
-            int recordSize = RecordFormat.FRAGMENT_OFFSET + length;
+            ByteQueue buffer = outputBuffer.getBuffer();
+            int available = buffer.available();
+            if (available < 1)
+            {
+                return 0;
+            }
 
-            if (available >= recordSize)
+            if (available >= RecordFormat.FRAGMENT_OFFSET)
             {
-                return recordSize;
+                int length = buffer.readUint16(RecordFormat.LENGTH_OFFSET);
+                int recordSize = RecordFormat.FRAGMENT_OFFSET + length;
+
+                if (available >= recordSize)
+                {
+                    return recordSize;
+                }
             }
         }
 
@@ -1286,6 +1608,57 @@ public RecordPreview previewOutputRecord(int applicationDataSize) throws IOExcep
             throw new IOException("Connection is closed, cannot produce any more output");
         }
 
+        return implPreviewOutputRecord(applicationDataSize);
+    }
+
+    /**
+     * Non-blocking mode only. Write as much of the given application data as will fit in the records that
+     * {@link #previewOutputRecord(int)} would describe for it, provided there is no output waiting to be read, the
+     * connection is not closed, and those records will fit in outputLimit bytes. The preview and the write are
+     * atomic with respect to output produced by {@link #offerInput(byte[], int, int)} (e.g. alerts, or a key update),
+     * so that input and output can be processed on different threads; the written records are then the next
+     * {@link #readOutput(ByteBuffer, int)} will return.
+     *
+     * @param buf         The buffer containing the application data.
+     * @param off         The offset of the application data in buf.
+     * @param len         The number of bytes of application data available.
+     * @param outputLimit The space available for the records that will be written.
+     * @return The number of bytes of application data written; zero if output is pending or the connection is
+     *         closed; or -1 if the records would not fit in outputLimit bytes.
+     * @throws IOException If an error occurs while writing the application data.
+     */
+    public int tryWriteApplicationData(byte[] buf, int off, int len, int outputLimit) throws IOException
+    {
+        if (!appDataReady)
+        {
+            throw new IllegalStateException("Cannot use tryWriteApplicationData() until initial handshake completed.");
+        }
+        if (blocking)
+        {
+            throw new IllegalStateException("Cannot use tryWriteApplicationData() in blocking mode!");
+        }
+
+        synchronized (recordWriteLock)
+        {
+            if (len < 1 || closed || outputBuffer.getBuffer().available() != 0)
+            {
+                return 0;
+            }
+
+            RecordPreview preview = implPreviewOutputRecord(len);
+            if (preview.getRecordSize() > outputLimit)
+            {
+                return -1;
+            }
+
+            int count = preview.getContentLimit();
+            writeApplicationData(buf, off, count);
+            return count;
+        }
+    }
+
+    private RecordPreview implPreviewOutputRecord(int applicationDataSize) throws IOException
+    {
         if (applicationDataSize < 1)
         {
             return new RecordPreview(0, 0);
@@ -1414,6 +1787,121 @@ public void offerInput(byte[] input, int inputOff, int inputLen) throws IOExcept
         }
     }
 
+    /**
+     * Process input directly from a {@link ByteBuffer}, delivering any application data directly to another
+     * {@link ByteBuffer}. Only allowed in non-blocking mode, and only for record-aligned input (i.e. not after
+     * part of a record has been offered via {@link #offerInput(byte[], int, int)}).<br>
+     * <br>
+     * Any previously received application data not yet read is delivered first. Then each complete record
+     * at the start of the input is decrypted and processed, with application data written to
+     * applicationData, until either the input holds no further complete record, or applicationData is full.
+     * Nothing is retained from the input: its position is advanced past the records processed, leaving any
+     * partial record for the caller to complete with more input. Application data that doesn't fit is kept
+     * (see {@link #getAvailableInputBytes()}) and delivered first by the next call.<br>
+     * <br>
+     * Records are decrypted in place when the input is backed by an accessible array, so the consumed part
+     * of the input may be overwritten; other input (e.g. a direct buffer) is copied one record at a time.<br>
+     * <br>
+     * As for {@link #offerInput(byte[], int, int)}, you should always check for available output after
+     * calling this method.
+     *
+     * @param input           The buffer holding received (encrypted) data
+     * @param applicationData The buffer to hold decrypted application data
+     * @return The number of bytes of application data written to applicationData
+     * @throws IOException If an error occurs while decrypting or processing a record
+     */
+    public int processInput(ByteBuffer input, ByteBuffer applicationData) throws IOException
+    {
+        if (blocking)
+        {
+            throw new IllegalStateException("Cannot use processInput() in blocking mode! Use getInputStream() instead.");
+        }
+        if (inputBuffers.available() != 0)
+        {
+            throw new IllegalStateException("Can only use processInput() for record-aligned input.");
+        }
+        if (applicationData.isReadOnly())
+        {
+            throw new IllegalArgumentException("'applicationData' cannot be read-only");
+        }
+
+        int startPosition = applicationData.position();
+
+        int queued = Math.min(applicationDataQueue.available(), applicationData.remaining());
+        if (queued > 0)
+        {
+            applicationDataQueue.removeData(applicationData, queued, 0);
+        }
+
+        if (input.remaining() < RecordFormat.FRAGMENT_OFFSET)
+        {
+            return applicationData.position() - startPosition;
+        }
+        if (closed)
+        {
+            throw new IOException("Connection is closed, cannot accept any more input");
+        }
+
+        byte[] recordHeader = new byte[RecordFormat.FRAGMENT_OFFSET];
+
+        this.applicationDataTarget = applicationData;
+        try
+        {
+            while (input.remaining() >= RecordFormat.FRAGMENT_OFFSET && applicationDataQueue.available() == 0)
+            {
+                int position = input.position();
+                for (int i = 0; i < RecordFormat.FRAGMENT_OFFSET; ++i)
+                {
+                    recordHeader[i] = input.get(position + i);
+                }
+
+                int recordSize = safePreviewRecordHeader(recordHeader).getRecordSize();
+                if (input.remaining() < recordSize)
+                {
+                    // Wait for the rest of the record
+                    break;
+                }
+
+                byte[] record;
+                int recordOff;
+                if (input.hasArray())
+                {
+                    record = input.array();
+                    recordOff = input.arrayOffset() + position;
+                    ((java.nio.Buffer)input).position(position + recordSize);
+                }
+                else
+                {
+                    if (null == inputRecordCopy || inputRecordCopy.length < recordSize)
+                    {
+                        this.inputRecordCopy = new byte[recordSize];
+                    }
+                    record = inputRecordCopy;
+                    recordOff = 0;
+                    input.get(record, 0, recordSize);
+                }
+
+                safeReadFullRecord(record, recordOff, recordSize);
+
+                if (closed)
+                {
+                    if (!appDataReady)
+                    {
+                        // NOTE: Any close during the handshake should have raised an exception.
+                        throw new TlsFatalAlert(AlertDescription.internal_error);
+                    }
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            this.applicationDataTarget = null;
+        }
+
+        return applicationData.position() - startPosition;
+    }
+
     public int getApplicationDataLimit()
     {
         return recordStream.getPlaintextLimit();
@@ -1509,8 +1997,11 @@ public int getAvailableOutputBytes()
         {
             throw new IllegalStateException("Cannot use getAvailableOutputBytes() in blocking mode! Use getOutputStream() instead.");
         }
-        
-        return outputBuffer.getBuffer().available();
+
+        synchronized (recordWriteLock)
+        {
+            return outputBuffer.getBuffer().available();
+        }
     }
 
     /**
@@ -1533,9 +2024,12 @@ public int readOutput(byte[] buffer, int offset, int length)
             throw new IllegalStateException("Cannot use readOutput() in blocking mode! Use getOutputStream() instead.");
         }
         
-        int bytesToRead = Math.min(getAvailableOutputBytes(), length);
-        outputBuffer.getBuffer().removeData(buffer, offset, bytesToRead, 0);
-        return bytesToRead;
+        synchronized (recordWriteLock)
+        {
+            int bytesToRead = Math.min(getAvailableOutputBytes(), length);
+            outputBuffer.getBuffer().removeData(buffer, offset, bytesToRead, 0);
+            return bytesToRead;
+        }
     }
 
     /**
@@ -1557,9 +2051,12 @@ public int readOutput(ByteBuffer buffer, int length)
             throw new IllegalStateException("Cannot use readOutput() in blocking mode! Use getOutputStream() instead.");
         }
 
-        int bytesToRead = Math.min(getAvailableOutputBytes(), length);
-        outputBuffer.getBuffer().removeData(buffer, bytesToRead, 0);
-        return bytesToRead;
+        synchronized (recordWriteLock)
+        {
+            int bytesToRead = Math.min(getAvailableOutputBytes(), length);
+            outputBuffer.getBuffer().removeData(buffer, bytesToRead, 0);
+            return bytesToRead;
+        }
     }
 
     protected boolean establishSession(TlsSession sessionToResume)
@@ -1748,7 +2245,10 @@ protected void receive13KeyUpdate(ByteArrayInputStream buf) throws IOException
         recordStream.notifyKeyUpdateReceived();
 
 //        this.keyUpdatePendingReceive &= updateRequested;
-        this.keyUpdatePendingSend |= updateRequested;
+        synchronized (recordWriteLock)
+        {
+            this.keyUpdatePendingSend |= updateRequested;
+        }
     }
 
     protected void sendCertificateMessage(Certificate certificate, OutputStream endPointHash)
@@ -1782,6 +2282,16 @@ protected void sendCertificateMessage(Certificate certificate, OutputStream endP
     }
 
     protected void send13CertificateMessage(Certificate certificate) throws IOException
+    {
+        send13CertificateMessage(certificate, -1);
+    }
+
+    /**
+     * @param compressionAlgorithm
+     *            the RFC 8879 {@link CertificateCompressionAlgorithm} to send a CompressedCertificate
+     *            message with, or -1 to send a (plain) Certificate message.
+     */
+    protected void send13CertificateMessage(Certificate certificate, int compressionAlgorithm) throws IOException
     {
         if (null == certificate)
         {
@@ -1795,9 +2305,24 @@ protected void send13CertificateMessage(Certificate certificate) throws IOExcept
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
-        HandshakeMessageOutput message = new HandshakeMessageOutput(HandshakeType.certificate);
-        certificate.encode(context, message, null);
-        message.send(this);
+        if (compressionAlgorithm < 0)
+        {
+            HandshakeMessageOutput message = new HandshakeMessageOutput(HandshakeType.certificate);
+            certificate.encode(context, message, null);
+            message.send(this);
+        }
+        else
+        {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            certificate.encode(context, buf, null);
+
+            CompressedCertificate compressedCertificate = CertificateCompression.compress(compressionAlgorithm,
+                buf.toByteArray());
+
+            HandshakeMessageOutput message = new HandshakeMessageOutput(HandshakeType.compressed_certificate);
+            compressedCertificate.encode(message);
+            message.send(this);
+        }
 
         securityParameters.localCertificate = certificate;
     }
@@ -1874,13 +2399,16 @@ protected void send13KeyUpdate(boolean updateRequested) throws IOException
             ? KeyUpdateRequest.update_requested
             : KeyUpdateRequest.update_not_requested;
 
-        HandshakeMessageOutput.send(this, HandshakeType.key_update, TlsUtils.encodeUint8(requestUpdate));
+        synchronized (recordWriteLock)
+        {
+            HandshakeMessageOutput.send(this, HandshakeType.key_update, TlsUtils.encodeUint8(requestUpdate));
 
-        TlsUtils.update13TrafficSecretLocal(getContext());
-        recordStream.notifyKeyUpdateSent();
+            TlsUtils.update13TrafficSecretLocal(getContext());
+            recordStream.notifyKeyUpdateSent();
 
-//        this.keyUpdatePendingReceive |= updateRequested;
-        this.keyUpdatePendingSend &= updateRequested;
+//            this.keyUpdatePendingReceive |= updateRequested;
+            this.keyUpdatePendingSend &= updateRequested;
+        }
     }
 
     protected void sendSupplementalDataMessage(Vector supplementalData)
@@ -1902,9 +2430,29 @@ public void close()
         handleClose(true);
     }
 
+    /**
+     * Sends any application data held back by write coalescing to the underlying transport.
+     *
+     * @throws IOException If something goes wrong during flushing.
+     * @see #setWriteCoalescing(int, boolean)
+     */
     public void flush()
         throws IOException
     {
+        synchronized (recordWriteLock)
+        {
+            safeFlush();
+        }
+    }
+
+    /**
+     * Account for (TLS 1.3) early data received before the handshake completes.
+     *
+     * @return true if the early data should be accepted.
+     */
+    boolean receiveEarlyData(int length) throws IOException
+    {
+        return false;
     }
 
     boolean isApplicationDataReady()
@@ -6,6 +6,7 @@
 
 import org.bouncycastle.tls.crypto.TlsDHConfig;
 import org.bouncycastle.tls.crypto.TlsECConfig;
+import org.bouncycastle.tls.crypto.TlsSecret;
 
 /**
  * Interface describing a TLS server endpoint.
@@ -47,6 +48,23 @@
      */
     TlsPSKExternal getExternalPSK(Vector identities) throws IOException;
 
+    /**
+     * Return the {@link TlsPSKResumption resumption PSK} to select from the ClientHello, typically by
+     * decrypting one of the tickets previously issued via
+     * {@link #getNewSessionTicket13(SessionParameters, TlsSecret, long)}. Note that this will only be
+     * called when TLS 1.3 is being negotiated, and one or more PSKs are actually offered. It is called
+     * before {@link #getExternalPSK(Vector)}, which will not be called if a resumption PSK is selected.
+     * <p>
+     * NOTE: When a resumption PSK is selected, {@link #getSelectedCipherSuite()} must select a cipher
+     * suite with the same PRF algorithm as the PSK.
+     * 
+     * @param identities a {@link Vector} of {@link PskIdentity} instances.
+     * @return the {@link TlsPSKResumption} corresponding to the selected identity, or null to not select
+     *         any.
+     * @throws IOException if the handshake should be aborted.
+     */
+    TlsPSKResumption getResumptionPSK(Vector identities) throws IOException;
+
     void notifySession(TlsSession session);
 
     void notifyClientVersion(ProtocolVersion clientVersion) throws IOException;
@@ -143,4 +161,49 @@ void notifyClientCertificate(Certificate clientCertificate)
      */
     NewSessionTicket getNewSessionTicket()
         throws IOException;
+
+    /**
+     * RFC 8446 4.6.1. New Session Ticket Message
+     * <p>
+     * This method will be called once after each TLS 1.3 handshake completes (including resumed handshakes,
+     * since clients may use each ticket only once), to allow the server to issue a ticket for the session. A
+     * stateless server will typically construct the ticket by
+     * encrypting the session parameters and the resumption PSK under a (rotating) ticket key, so that
+     * the ticket can be recognised by {@link #getResumptionPSK(Vector)} in a later handshake.
+     *
+     * @param sessionParameters the {@link SessionParameters} of the established session.
+     * @param resumptionPSK the PSK that will be associated with the ticket.
+     * @param ticketAgeAdd the ticket_age_add value that will be sent with the ticket.
+     * @return A {@link NewSessionTicket} holding the ticket and its lifetime (in seconds), or null to not
+     *         send a ticket.
+     * @throws IOException
+     */
+    NewSessionTicket getNewSessionTicket13(SessionParameters sessionParameters, TlsSecret resumptionPSK,
+        long ticketAgeAdd) throws IOException;
+
+    /**
+     * RFC 8446 4.2.10. Early Data Indication
+     * <p>
+     * The max_early_data_size to advertise in TLS 1.3 session tickets, which is also the limit on the
+     * amount of early data that will be accepted, or skipped when rejected.
+     *
+     * @return the maximum amount of early data (in bytes), or 0 to not permit early data.
+     */
+    long getMaxEarlyDataSize();
+
+    /**
+     * RFC 8446 4.2.10. Early Data Indication
+     * <p>
+     * This method will be called when an initial ClientHello indicates early data, and resumes a session
+     * using the first PSK it offers. Accepted early data is delivered as ordinary application data, ahead
+     * of any data sent after the handshake. Since early data is not protected against replay (see RFC
+     * 8446 8.), a server accepting it should at least check that 'clientHelloID' has not been seen
+     * before, e.g. with an {@link EarlyDataReplayFilter}.
+     *
+     * @param resumptionPSK the resumption PSK selected for the handshake.
+     * @param clientHelloID a value unique to the ClientHello (its PSK binder).
+     * @return true to accept the early data, or false to reject (skip) it.
+     * @throws IOException
+     */
+    boolean acceptEarlyData(TlsPSKResumption resumptionPSK, byte[] clientHelloID) throws IOException;
 }
@@ -9,6 +9,7 @@
 import java.util.Vector;
 
 import org.bouncycastle.tls.crypto.TlsAgreement;
+import org.bouncycastle.tls.crypto.TlsCipher;
 import org.bouncycastle.tls.crypto.TlsCrypto;
 import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.util.Arrays;
@@ -23,6 +24,9 @@
     protected TlsKeyExchange keyExchange = null;
     protected CertificateRequest certificateRequest = null;
 
+    TlsCipher earlyDataCipher = null;
+    long earlyDataRemaining = -1L;
+
     /**
      * Constructor for non-blocking mode.<br>
      * <br>
@@ -100,6 +104,9 @@ protected void cleanupHandshake()
         this.offeredCipherSuites = null;
         this.keyExchange = null;
         this.certificateRequest = null;
+
+        this.earlyDataCipher = null;
+        this.earlyDataRemaining = -1L;
     }
 
     protected boolean expectCertificateVerifyMessage()
@@ -209,6 +216,12 @@ protected ServerHello generate13ServerHello(ClientHello clientHello, HandshakeMe
              * padding].
              */
 
+            // RFC 8446 4.1.2. Removing the "early_data" extension [..] if one was present.
+            if (TlsExtensionsUtils.hasEarlyDataIndication(clientHelloExtensions))
+            {
+                throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+            }
+
             byte[] cookie = TlsExtensionsUtils.getCookieExtension(clientHelloExtensions);
             if (!Arrays.areEqual(retryCookie, cookie))
             {
@@ -257,14 +270,23 @@ protected ServerHello generate13ServerHello(ClientHello clientHello, HandshakeMe
 
             tlsServer.processClientExtensions(clientHelloExtensions);
 
-            /*
-             * NOTE: Currently no server support for session resumption
-             * 
-             * If adding support, ensure securityParameters.tlsUnique is set to the localVerifyData, but
-             * ONLY when extended_master_secret has been negotiated (otherwise NULL).
-             */
+            if (null != selectedPSK && selectedPSK.psk instanceof TlsPSKResumption)
+            {
+                SessionParameters resumedSessionParameters = ((TlsPSKResumption)selectedPSK.psk)
+                    .getSessionParameters();
+                if (null == resumedSessionParameters)
+                {
+                    throw new TlsFatalAlert(AlertDescription.internal_error);
+                }
+
+                securityParameters.resumedSession = true;
+
+                this.sessionParameters = resumedSessionParameters.copy();
+                this.tlsSession = TlsUtils.importSession(TlsUtils.EMPTY_BYTES, sessionParameters);
+                this.sessionMasterSecret = null;
+            }
+            else
             {
-                // TODO[tls13] Resumption/PSK
                 securityParameters.resumedSession = false;
 
                 this.tlsSession = TlsUtils.importSession(TlsUtils.EMPTY_BYTES, null);
@@ -289,6 +311,13 @@ protected ServerHello generate13ServerHello(ClientHello clientHello, HandshakeMe
                 }
 
                 TlsUtils.negotiatedCipherSuite(securityParameters, cipherSuite);
+
+                if (securityParameters.isResumedSession() &&
+                    selectedPSK.psk.getPRFAlgorithm() != securityParameters.getPRFAlgorithm())
+                {
+                    throw new TlsFatalAlert(AlertDescription.internal_error,
+                        "Selected cipher suite incompatible with resumption PSK");
+                }
             }
 
             int[] clientSupportedGroups = securityParameters.getClientSupportedGroups();
@@ -312,6 +341,16 @@ protected ServerHello generate13ServerHello(ClientHello clientHello, HandshakeMe
 
                 this.retryCookie = tlsServerContext.getNonceGenerator().generateNonce(16);
 
+                /*
+                 * RFC 8446 4.2.10. The server then ignores early data by skipping all records with an
+                 * external content type of "application_data" (indicating that they are encrypted), up
+                 * to the configured max_early_data_size.
+                 */
+                if (TlsExtensionsUtils.hasEarlyDataIndication(clientHelloExtensions))
+                {
+                    recordStream.skipEarlyData(tlsServer.getMaxEarlyDataSize());
+                }
+
                 return generate13HelloRetryRequest(clientHello);
             }
         }
@@ -377,6 +416,22 @@ protected ServerHello generate13ServerHello(ClientHello clientHello, HandshakeMe
         securityParameters.encryptThenMAC = false;
         securityParameters.truncatedHMac = false;
 
+        if (!afterHelloRetryRequest && TlsExtensionsUtils.hasEarlyDataIndication(clientHelloExtensions))
+        {
+            if (acceptEarlyData(selectedPSK, clientHelloExtensions))
+            {
+                TlsExtensionsUtils.addEarlyDataIndication(serverEncryptedExtensions);
+
+                this.earlyDataCipher = TlsUtils.initEarlyDataCipher(tlsServerContext,
+                    securityParameters.getCipherSuite(), selectedPSK.earlySecret, handshakeHash);
+                this.earlyDataRemaining = tlsServer.getMaxEarlyDataSize();
+            }
+            else
+            {
+                recordStream.skipEarlyData(tlsServer.getMaxEarlyDataSize());
+            }
+        }
+
         /*
          * TODO[tls13] RFC 8446 4.4.2.1. OCSP Status and SCT Extensions.
          * 
@@ -406,6 +461,8 @@ protected ServerHello generate13ServerHello(ClientHello clientHello, HandshakeMe
                 throw new TlsFatalAlert(AlertDescription.illegal_parameter);
             }
 
+            long phaseStart = startHandshakePhase();
+
             TlsAgreement agreement = TlsUtils.createKeyShare(crypto, negotiatedGroup, true);
             if (agreement == null)
             {
@@ -419,9 +476,13 @@ protected ServerHello generate13ServerHello(ClientHello clientHello, HandshakeMe
             TlsExtensionsUtils.addKeyShareServerHello(serverHelloExtensions, serverShare);
 
             sharedSecret = agreement.calculateSecret();
+
+            endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
         }
 
+        long phaseStart = startHandshakePhase();
         TlsUtils.establish13PhaseSecrets(tlsServerContext, pskEarlySecret, sharedSecret);
+        endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
 
         this.serverExtensions = serverEncryptedExtensions;
 
@@ -434,6 +495,43 @@ protected ServerHello generate13ServerHello(ClientHello clientHello, HandshakeMe
             securityParameters.getCipherSuite(), serverHelloExtensions);
     }
 
+    private boolean acceptEarlyData(OfferedPsks.SelectedConfig selectedPSK, Hashtable clientHelloExtensions)
+        throws IOException
+    {
+        /*
+         * RFC 8446 4.2.10. In order to accept early data, the server MUST have accepted a PSK cipher suite
+         * and selected the first key offered in the client's "pre_shared_key" extension.
+         */
+        if (null == selectedPSK || 0 != selectedPSK.index || !(selectedPSK.psk instanceof TlsPSKResumption))
+        {
+            return false;
+        }
+
+        long maxEarlyDataSize = tlsServer.getMaxEarlyDataSize();
+        if (maxEarlyDataSize < 1L)
+        {
+            return false;
+        }
+
+        /*
+         * In addition, it MUST verify that the following values are the same as those associated with the
+         * selected PSK: The TLS version number [and] the selected cipher suite.
+         */
+        TlsPSKResumption resumptionPSK = (TlsPSKResumption)selectedPSK.psk;
+        SessionParameters resumedSessionParameters = resumptionPSK.getSessionParameters();
+        SecurityParameters securityParameters = tlsServerContext.getSecurityParametersHandshake();
+        if (!securityParameters.getNegotiatedVersion().equals(resumedSessionParameters.getNegotiatedVersion()) ||
+            securityParameters.getCipherSuite() != resumedSessionParameters.getCipherSuite())
+        {
+            return false;
+        }
+
+        OfferedPsks offeredPsks = TlsExtensionsUtils.getPreSharedKeyClientHello(clientHelloExtensions);
+        byte[] binder = (byte[])offeredPsks.getBinders().elementAt(0);
+
+        return tlsServer.acceptEarlyData(resumptionPSK, binder);
+    }
+
     protected ServerHello generateServerHello(ClientHello clientHello, HandshakeMessageInput clientHelloMessage)
         throws IOException
     {
@@ -874,11 +972,13 @@ protected void handle13HandshakeMessage(short type, HandshakeMessageInput buf)
         }
 
         /*
-         * TODO[tls13] Abbreviated handshakes (PSK resumption)
-         * 
-         * NOTE: No CertificateRequest, Certificate, CertificateVerify messages, but client
-         * might now send EndOfEarlyData after receiving server Finished message.
+         * NOTE: For PSK resumption there are no CertificateRequest, Certificate, CertificateVerify
+         * messages, but the client sends EndOfEarlyData (first) if we accepted early data.
          */
+        if (earlyDataRemaining >= 0L && type != HandshakeType.end_of_early_data)
+        {
+            throw new TlsFatalAlert(AlertDescription.unexpected_message);
+        }
 
         switch (type)
         {
@@ -939,6 +1039,20 @@ protected void handle13HandshakeMessage(short type, HandshakeMessageInput buf)
             }
             break;
         }
+        case HandshakeType.end_of_early_data:
+        {
+            switch (this.connection_state)
+            {
+            case CS_SERVER_FINISHED:
+            {
+                receive13EndOfEarlyData(buf);
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+            break;
+        }
         case HandshakeType.finished:
         {
             switch (this.connection_state)
@@ -958,6 +1072,9 @@ protected void handle13HandshakeMessage(short type, HandshakeMessageInput buf)
                 receive13ClientFinished(buf);
                 this.connection_state = CS_CLIENT_FINISHED;
 
+                buf.updateHash(handshakeHash);
+                TlsUtils.establish13ResumptionMasterSecret(tlsServerContext, TlsUtils.getCurrentPRFHash(handshakeHash));
+
                 // See RFC 8446 D.4.
                 recordStream.setIgnoreChangeCipherSpec(false);
 
@@ -965,6 +1082,8 @@ protected void handle13HandshakeMessage(short type, HandshakeMessageInput buf)
                 recordStream.enablePendingCipherRead(false);
 
                 completeHandshake();
+
+                send13NewSessionTicket();
                 break;
             }
             default:
@@ -984,7 +1103,6 @@ protected void handle13HandshakeMessage(short type, HandshakeMessageInput buf)
         case HandshakeType.client_key_exchange:
         case HandshakeType.compressed_certificate:
         case HandshakeType.encrypted_extensions:
-        case HandshakeType.end_of_early_data:
         case HandshakeType.hello_request:
         case HandshakeType.hello_verify_request:
         case HandshakeType.message_hash:
@@ -1006,11 +1124,6 @@ protected void handleHandshakeMessage(short type, HandshakeMessageInput buf)
         if (connection_state > CS_CLIENT_HELLO
             && TlsUtils.isTLSv13(securityParameters.getNegotiatedVersion()))
         {
-            if (securityParameters.isResumedSession())
-            {
-                throw new TlsFatalAlert(AlertDescription.internal_error);
-            }
-
             handle13HandshakeMessage(type, buf);
             return;
         }
@@ -1159,7 +1272,9 @@ protected void handleHandshakeMessage(short type, HandshakeMessageInput buf)
                     }
                 }
 
+                long phaseStart = startHandshakePhase();
                 byte[] serverKeyExchange = keyExchange.generateServerKeyExchange();
+                endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
                 if (serverKeyExchange != null)
                 {
                     sendServerKeyExchangeMessage(serverKeyExchange);
@@ -1440,7 +1555,9 @@ protected void notifyClientCertificate(Certificate clientCertificate)
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
+        long phaseStart = startHandshakePhase();
         TlsUtils.processClientCertificate(tlsServerContext, clientCertificate, keyExchange, tlsServer);
+        endHandshakePhase(TlsHandshakeMetrics.CERTIFICATE_VERIFICATION, phaseStart);
     }
 
     protected void receive13ClientCertificate(ByteArrayInputStream buf)
@@ -1477,7 +1594,9 @@ protected void receive13ClientCertificateVerify(ByteArrayInputStream buf)
 
         assertEmpty(buf);
 
+        long phaseStart = startHandshakePhase();
         TlsUtils.verify13CertificateVerifyClient(tlsServerContext, handshakeHash, certificateVerify);
+        endHandshakePhase(TlsHandshakeMetrics.SIGNATURE, phaseStart);
     }
 
     protected void receive13ClientFinished(ByteArrayInputStream buf) throws IOException
@@ -1511,7 +1630,9 @@ protected void receiveCertificateVerifyMessage(ByteArrayInputStream buf)
 
         assertEmpty(buf);
 
+        long phaseStart = startHandshakePhase();
         TlsUtils.verifyCertificateVerifyClient(tlsServerContext, certificateRequest, certificateVerify, handshakeHash);
+        endHandshakePhase(TlsHandshakeMetrics.SIGNATURE, phaseStart);
 
         handshakeHash.stopTracking();
     }
@@ -1525,7 +1646,9 @@ protected ClientHello receiveClientHelloMessage(ByteArrayInputStream buf)
     protected void receiveClientKeyExchangeMessage(ByteArrayInputStream buf)
         throws IOException
     {
+        long phaseStart = startHandshakePhase();
         keyExchange.processClientKeyExchange(buf);
+        endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
 
         assertEmpty(buf);
 
@@ -1533,7 +1656,9 @@ protected void receiveClientKeyExchangeMessage(ByteArrayInputStream buf)
         if (isSSL)
         {
             // NOTE: For SSLv3 (only), master_secret needed to calculate session hash
+            phaseStart = startHandshakePhase();
             establishMasterSecret(tlsServerContext, keyExchange);
+            endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
         }
 
         tlsServerContext.getSecurityParametersHandshake().sessionHash = TlsUtils.getCurrentPRFHash(handshakeHash);
@@ -1541,7 +1666,9 @@ protected void receiveClientKeyExchangeMessage(ByteArrayInputStream buf)
         if (!isSSL)
         {
             // NOTE: For (D)TLS, session hash potentially needed for extended_master_secret
+            phaseStart = startHandshakePhase();
             establishMasterSecret(tlsServerContext, keyExchange);
+            endHandshakePhase(TlsHandshakeMetrics.KEY_EXCHANGE, phaseStart);
         }
 
         this.keyExchange = null;
@@ -1565,6 +1692,93 @@ protected void send13EncryptedExtensionsMessage(Hashtable serverExtensions) thro
         message.send(this);
     }
 
+    protected void receive13EndOfEarlyData(ByteArrayInputStream buf)
+        throws IOException
+    {
+        if (earlyDataRemaining < 0L)
+        {
+            throw new TlsFatalAlert(AlertDescription.unexpected_message);
+        }
+
+        assertEmpty(buf);
+
+        this.earlyDataRemaining = -1L;
+
+        recordStream.notifyEndOfEarlyData();
+    }
+
+    boolean receiveEarlyData(int length) throws IOException
+    {
+        if (earlyDataRemaining < 0L)
+        {
+            return false;
+        }
+
+        /*
+         * RFC 8446 4.2.10. If the server chooses to accept the "early_data" extension [..] it MUST terminate
+         * the connection with an "unexpected_message" alert if it receives more than max_early_data_size bytes
+         * of 0-RTT data.
+         */
+        this.earlyDataRemaining -= length;
+        if (earlyDataRemaining < 0L)
+        {
+            throw new TlsFatalAlert(AlertDescription.unexpected_message, "Early data exceeds max_early_data_size");
+        }
+        return true;
+    }
+
+    protected void send13NewSessionTicket() throws IOException
+    {
+        TlsSession session = tlsServerContext.getSession();
+        SessionParameters sessionParameters = null == session ? null : session.exportSessionParameters();
+        if (null == sessionParameters)
+        {
+            return;
+        }
+
+        /*
+         * NOTE: Resumed handshakes also get a fresh ticket, since clients may treat tickets as single-use (RFC
+         * 8446 C.4).
+         */
+        SecurityParameters securityParameters = tlsServerContext.getSecurityParametersConnection();
+
+        byte[] ticketNonce = tlsServerContext.getNonceGenerator().generateNonce(8);
+        TlsSecret resumptionPSK = TlsUtils.getResumptionPSK13(securityParameters, ticketNonce);
+        long ticketAgeAdd = tlsServerContext.getCrypto().getSecureRandom().nextInt() & 0xFFFFFFFFL;
+
+        NewSessionTicket newSessionTicket = tlsServer.getNewSessionTicket13(sessionParameters, resumptionPSK,
+            ticketAgeAdd);
+        if (null == newSessionTicket)
+        {
+            return;
+        }
+
+        long ticketLifetime = newSessionTicket.getTicketLifetimeHint();
+        byte[] ticket = newSessionTicket.getTicket();
+
+        // RFC 8446 4.6.1. Servers MUST NOT use any value greater than 604800 seconds (7 days).
+        if (ticketLifetime < 1L || ticketLifetime > 604800L || TlsUtils.isNullOrEmpty(ticket))
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        Hashtable ticketExtensions = new Hashtable();
+
+        long maxEarlyDataSize = tlsServer.getMaxEarlyDataSize();
+        if (maxEarlyDataSize > 0L)
+        {
+            TlsExtensionsUtils.addEarlyDataMaxSize(ticketExtensions, maxEarlyDataSize);
+        }
+
+        HandshakeMessageOutput message = new HandshakeMessageOutput(HandshakeType.new_session_ticket);
+        TlsUtils.writeUint32(ticketLifetime, message);
+        TlsUtils.writeUint32(ticketAgeAdd, message);
+        TlsUtils.writeOpaque8(ticketNonce, message);
+        TlsUtils.writeOpaque16(ticket, message);
+        TlsUtils.writeOpaque16(writeExtensionsData(ticketExtensions), message);
+        message.send(this);
+    }
+
     protected void send13ServerHelloCoda(ServerHello serverHello, boolean afterHelloRetryRequest) throws IOException
     {
         final SecurityParameters securityParameters = tlsServerContext.getSecurityParametersHandshake();
@@ -1576,6 +1790,13 @@ protected void send13ServerHelloCoda(ServerHello serverHello, boolean afterHello
         recordStream.enablePendingCipherWrite();
         recordStream.enablePendingCipherRead(true);
 
+        // NOTE: The (deferred) handshake read cipher is held back until EndOfEarlyData is received
+        if (null != earlyDataCipher)
+        {
+            recordStream.enableEarlyDataRead(earlyDataCipher);
+            this.earlyDataCipher = null;
+        }
+
         send13EncryptedExtensionsMessage(serverExtensions);
         this.connection_state = CS_SERVER_ENCRYPTED_EXTENSIONS;
 
@@ -1622,15 +1843,23 @@ protected void send13ServerHelloCoda(ServerHello serverHello, boolean afterHello
                  */
 
                 Certificate serverCertificate = serverCredentials.getCertificate();
-                send13CertificateMessage(serverCertificate);
+
+                // RFC 8879 Compress the Certificate message if the client offered a supported algorithm
+                int compressionAlgorithm = CertificateCompression.selectAlgorithm(
+                    tlsServer.getCertificateCompressionAlgorithms(),
+                    TlsExtensionsUtils.getCompressCertificateExtension(clientExtensions));
+
+                send13CertificateMessage(serverCertificate, compressionAlgorithm);
                 securityParameters.tlsServerEndPoint = null;
                 this.connection_state = CS_SERVER_CERTIFICATE;
             }
     
             // CertificateVerify
             {
+                long phaseStart = startHandshakePhase();
                 DigitallySigned certificateVerify = TlsUtils.generate13CertificateVerify(tlsServerContext,
                     serverCredentials, handshakeHash);
+                endHandshakePhase(TlsHandshakeMetrics.SIGNATURE, phaseStart);
                 send13CertificateVerifyMessage(certificateVerify);
                 this.connection_state = CS_CLIENT_CERTIFICATE_VERIFY;
             }
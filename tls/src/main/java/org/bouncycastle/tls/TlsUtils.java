@@ -1936,6 +1936,33 @@ static void establish13PhaseApplication(TlsContext context, byte[] serverFinishe
             serverFinishedTranscriptHash);
     }
 
+    static void establish13ResumptionMasterSecret(TlsContext context, byte[] clientFinishedTranscriptHash)
+        throws IOException
+    {
+        SecurityParameters securityParameters = context.getSecurityParametersHandshake();
+
+        securityParameters.resumptionMasterSecret = deriveSecret(securityParameters,
+            securityParameters.getMasterSecret(), "res master", clientFinishedTranscriptHash);
+    }
+
+    static TlsSecret getResumptionPSK13(SecurityParameters securityParameters, byte[] ticketNonce)
+        throws IOException
+    {
+        TlsSecret resumptionMasterSecret = securityParameters.getResumptionMasterSecret();
+        if (null == resumptionMasterSecret)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        /*
+         * RFC 8446 4.6.1. The PSK associated with the ticket is computed as:
+         *
+         *     HKDF-Expand-Label(resumption_master_secret, "resumption", ticket_nonce, Hash.length)
+         */
+        return TlsCryptoUtils.hkdfExpandLabel(resumptionMasterSecret, securityParameters.getPRFCryptoHashAlgorithm(),
+            "resumption", ticketNonce, securityParameters.getPRFHashLength());
+    }
+
     static void establish13PhaseEarly(TlsContext context, byte[] clientHelloTranscriptHash, RecordStream recordStream)
         throws IOException
     {
@@ -1955,6 +1982,55 @@ static void establish13PhaseEarly(TlsContext context, byte[] clientHelloTranscri
             clientHelloTranscriptHash);
     }
 
+    /**
+     * Create the cipher protecting (client->server) early data, keyed from the client_early_traffic_secret
+     * for the given PSK early secret. This happens before the handshake has negotiated any parameters (on
+     * the client side at least), so the cipher suite is that of the session being resumed.
+     */
+    static TlsCipher initEarlyDataCipher(final TlsContext context, int cipherSuite, TlsSecret pskEarlySecret,
+        TlsHandshakeHash handshakeHash) throws IOException
+    {
+        final SecurityParameters earlyDataParameters = new SecurityParameters();
+        earlyDataParameters.entity = context.isServer() ? ConnectionEnd.server : ConnectionEnd.client;
+        earlyDataParameters.negotiatedVersion = ProtocolVersion.TLSv13;
+        negotiatedCipherSuite(earlyDataParameters, cipherSuite);
+
+        TlsCrypto crypto = context.getCrypto();
+
+        // NOTE: The handshake hash is still buffering at this point (only the ClientHello has been added)
+        TlsHash hash = crypto.createHash(earlyDataParameters.getPRFCryptoHashAlgorithm());
+        handshakeHash.copyBufferTo(new TlsHashOutputStream(hash));
+        byte[] clientHelloTranscriptHash = hash.calculateHash();
+
+        earlyDataParameters.trafficSecretClient = deriveSecret(earlyDataParameters, pskEarlySecret, "c e traffic",
+            clientHelloTranscriptHash);
+
+        int encryptionAlgorithm = getEncryptionAlgorithm(cipherSuite);
+        int macAlgorithm = getMACAlgorithm(cipherSuite);
+
+        if (encryptionAlgorithm < 0 || macAlgorithm < 0)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        TlsCryptoParameters cryptoParams = new TlsCryptoParameters(context)
+        {
+            public SecurityParameters getSecurityParametersHandshake()
+            {
+                return earlyDataParameters;
+            }
+        };
+
+        try
+        {
+            return crypto.createCipher(cryptoParams, encryptionAlgorithm, macAlgorithm);
+        }
+        finally
+        {
+            earlyDataParameters.trafficSecretClient.destroy();
+        }
+    }
+
     static void establish13PhaseHandshake(TlsContext context, byte[] serverHelloTranscriptHash,
         RecordStream recordStream) throws IOException
     {
@@ -2322,7 +2398,7 @@ static int getPRFAlgorithm(SecurityParameters securityParameters, int cipherSuit
         }
     }
 
-    static int getPRFAlgorithm13(int cipherSuite)
+    public static int getPRFAlgorithm13(int cipherSuite)
     {
         // NOTE: getPRFAlgorithms13 relies on the number of distinct return values
         switch (cipherSuite)
@@ -6057,8 +6133,11 @@ static void addPreSharedKeyToClientExtensions(TlsPSK[] psks, Hashtable clientExt
         {
             TlsPSK psk = psks[i];
 
-            // TODO[tls13-psk] Handle obfuscated_ticket_age for resumption PSKs
-            identities.add(new PskIdentity(psk.getIdentity(), 0L));
+            long obfuscatedTicketAge = psk instanceof TlsPSKResumption
+                ? ((TlsPSKResumption)psk).getObfuscatedTicketAge()
+                : 0L;
+
+            identities.add(new PskIdentity(psk.getIdentity(), obfuscatedTicketAge));
         }
 
         TlsExtensionsUtils.addPreSharedKeyClientHello(clientExtensions, new OfferedPsks(identities));
@@ -6073,26 +6152,50 @@ static OfferedPsks.BindersConfig addPreSharedKeyToClientHello(TlsClientContext c
         }
 
         TlsPSKExternal[] pskExternals = getPSKExternalsClient(client, offeredCipherSuites);
-        if (null == pskExternals)
+        TlsPSKResumption[] pskResumptions = getPSKResumptionsClient(client, offeredCipherSuites);
+
+        TlsPSK[] psks;
+        if (null == pskResumptions)
         {
-            return null;
+            if (null == pskExternals)
+            {
+                return null;
+            }
+
+            psks = pskExternals;
+        }
+        else if (null == pskExternals)
+        {
+            psks = pskResumptions;
+        }
+        else
+        {
+            // NOTE: Resumption PSKs are offered first
+            psks = new TlsPSK[pskResumptions.length + pskExternals.length];
+            System.arraycopy(pskResumptions, 0, psks, 0, pskResumptions.length);
+            System.arraycopy(pskExternals, 0, psks, pskResumptions.length, pskExternals.length);
         }
 
         short[] pskKeyExchangeModes = client.getPskKeyExchangeModes();
         if (isNullOrEmpty(pskKeyExchangeModes))
         {
+            if (null == pskExternals)
+            {
+                return null;
+            }
+
             throw new TlsFatalAlert(AlertDescription.internal_error,
                 "External PSKs configured but no PskKeyExchangeMode available");
         }
 
-        TlsSecret[] pskEarlySecrets = getPSKEarlySecrets(clientContext.getCrypto(), pskExternals);
+        TlsSecret[] pskEarlySecrets = getPSKEarlySecrets(clientContext.getCrypto(), psks);
 
-        int bindersSize = OfferedPsks.getBindersSize(pskExternals);
+        int bindersSize = OfferedPsks.getBindersSize(psks);
 
-        addPreSharedKeyToClientExtensions(pskExternals, clientExtensions);
+        addPreSharedKeyToClientExtensions(psks, clientExtensions);
         TlsExtensionsUtils.addPSKKeyExchangeModesExtension(clientExtensions, pskKeyExchangeModes);
 
-        return new OfferedPsks.BindersConfig(pskExternals, pskKeyExchangeModes, pskEarlySecrets, bindersSize);
+        return new OfferedPsks.BindersConfig(psks, pskKeyExchangeModes, pskEarlySecrets, bindersSize);
     }
 
     static OfferedPsks.BindersConfig addPreSharedKeyToClientHelloRetry(TlsClientContext clientContext,
@@ -6158,10 +6261,18 @@ static OfferedPsks.SelectedConfig selectPreSharedKey(TlsServerContext serverCont
             if (PskKeyExchangeMode.psk_dhe_ke == selectedMode)
             {
                 // TODO[tls13] Prefer to get the exact index from the server?
-                TlsPSKExternal psk = server.getExternalPSK(offeredPsks.getIdentities());
+                TlsPSK psk = server.getResumptionPSK(offeredPsks.getIdentities());
+                if (null == psk)
+                {
+                    psk = server.getExternalPSK(offeredPsks.getIdentities());
+                }
                 if (null != psk)
                 {
-                    int index = offeredPsks.getIndexOfIdentity(new PskIdentity(psk.getIdentity(), 0L));
+                    boolean isExternalPSK = !(psk instanceof TlsPSKResumption);
+
+                    int index = isExternalPSK
+                        ? offeredPsks.getIndexOfIdentity(new PskIdentity(psk.getIdentity(), 0L))
+                        : offeredPsks.getIndexOfIdentity(psk.getIdentity());
                     if (index >= 0)
                     {
                         /*
@@ -6177,8 +6288,6 @@ static OfferedPsks.SelectedConfig selectPreSharedKey(TlsServerContext serverCont
                         TlsCrypto crypto = serverContext.getCrypto();
                         TlsSecret earlySecret = getPSKEarlySecret(crypto, psk);
 
-                        // TODO[tls13-psk] Handle resumption PSKs
-                        boolean isExternalPSK = true;
                         int pskCryptoHashAlgorithm = TlsCryptoUtils.getHashForPRF(psk.getPRFAlgorithm());
 
                         byte[] transcriptHash;
@@ -6295,6 +6404,47 @@ static TlsPSKExternal[] getPSKExternalsClient(TlsClient client, int[] offeredCip
         return result;
     }
 
+    static TlsPSKResumption[] getPSKResumptionsClient(TlsClient client, int[] offeredCipherSuites)
+        throws IOException
+    {
+        Vector resumptionPSKs = client.getResumptionPSKs();
+        if (isNullOrEmpty(resumptionPSKs))
+        {
+            return null;
+        }
+
+        int[] prfAlgorithms = getPRFAlgorithms13(offeredCipherSuites);
+
+        int count = resumptionPSKs.size();
+        Vector v = new Vector(count);
+
+        for (int i = 0; i < count; ++i)
+        {
+            Object element = resumptionPSKs.elementAt(i);
+            if (!(element instanceof TlsPSKResumption))
+            {
+                throw new TlsFatalAlert(AlertDescription.internal_error,
+                    "Resumption PSKs element is not a TlsPSKResumption");
+            }
+
+            // NOTE: Unlike external PSKs, a ticket simply isn't offered if it doesn't suit this handshake
+            TlsPSKResumption pskResumption = (TlsPSKResumption)element;
+            if (Arrays.contains(prfAlgorithms, pskResumption.getPRFAlgorithm()))
+            {
+                v.addElement(pskResumption);
+            }
+        }
+
+        if (v.isEmpty())
+        {
+            return null;
+        }
+
+        TlsPSKResumption[] result = new TlsPSKResumption[v.size()];
+        v.copyInto(result);
+        return result;
+    }
+
     static Vector getPSKIndices(TlsPSK[] psks, int prfAlgorithm)
     {
         Vector v = new Vector(psks.length);
@@ -0,0 +1,212 @@
+package org.bouncycastle.tls.crypto.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.tls.NamedGroup;
+
+/**
+ * A bounded pool of pre-generated ephemeral key pairs, kept per {@link NamedGroup} and refilled in the
+ * background by an {@link Executor}, so that key pair generation can be moved off the handshake's critical
+ * path.
+ * <p>
+ * A group is pooled once a key pair has been requested for it (or it has been {@link #prefill(int) prefilled}),
+ * so the pool adapts to the groups actually negotiated. Each pooled key pair is handed out at most once, and
+ * at most {@link #getCapacity()} key pairs are held for each group. When the pool for a group is empty,
+ * {@link #take(int)} returns null and the caller is expected to generate a key pair inline.
+ */
+public abstract class EphemeralKeyPairPool
+{
+    private final Executor executor;
+    private final int capacity;
+    private final ConcurrentHashMap groups = new ConcurrentHashMap();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param executor the {@link Executor} to run refills on (typically backed by otherwise idle threads).
+     * @param capacity the maximum number of key pairs to hold for each named group.
+     */
+    protected EphemeralKeyPairPool(Executor executor, int capacity)
+    {
+        if (null == executor)
+        {
+            throw new NullPointerException("'executor' cannot be null");
+        }
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("'capacity' must be positive");
+        }
+
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return the number of requests that were served from the pool.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests that found the pool for their group empty.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of key pairs generated in the background.
+     */
+    public long getGenerated()
+    {
+        return generated.get();
+    }
+
+    /**
+     * @return the number of background key pair generations that failed.
+     */
+    public long getFailures()
+    {
+        return failures.get();
+    }
+
+    /**
+     * @return the number of key pairs currently held for the given named group.
+     */
+    public int getSize(int namedGroup)
+    {
+        GroupPool groupPool = (GroupPool)groups.get(Integer.valueOf(namedGroup));
+        return null == groupPool ? 0 : groupPool.size.get();
+    }
+
+    /**
+     * Start pooling key pairs for the given named group (if not already), and schedule a refill.
+     */
+    public void prefill(int namedGroup)
+    {
+        scheduleRefill(getGroupPool(namedGroup));
+    }
+
+    /**
+     * Remove a pre-generated key pair for the given named group, and schedule a refill.
+     *
+     * @return the key pair, or null if none is currently available.
+     */
+    public Object take(int namedGroup)
+    {
+        GroupPool groupPool = getGroupPool(namedGroup);
+
+        Object keyPair = groupPool.keyPairs.poll();
+        if (null == keyPair)
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            groupPool.size.decrementAndGet();
+            hits.incrementAndGet();
+        }
+
+        scheduleRefill(groupPool);
+
+        return keyPair;
+    }
+
+    /**
+     * Generate a fresh key pair for the given named group. Called from the {@link Executor}, so
+     * implementations must be thread-safe.
+     */
+    protected abstract Object generateKeyPair(int namedGroup) throws Exception;
+
+    private GroupPool getGroupPool(int namedGroup)
+    {
+        Integer key = Integer.valueOf(namedGroup);
+
+        GroupPool groupPool = (GroupPool)groups.get(key);
+        if (null == groupPool)
+        {
+            GroupPool newGroupPool = new GroupPool(namedGroup);
+            groupPool = (GroupPool)groups.putIfAbsent(key, newGroupPool);
+            if (null == groupPool)
+            {
+                groupPool = newGroupPool;
+            }
+        }
+        return groupPool;
+    }
+
+    private void scheduleRefill(GroupPool groupPool)
+    {
+        // NOTE: At most one refill per group is in progress, so only the refill task adds to the pool
+        if (groupPool.size.get() < capacity && groupPool.refilling.compareAndSet(false, true))
+        {
+            try
+            {
+                executor.execute(groupPool);
+            }
+            catch (RejectedExecutionException e)
+            {
+                groupPool.refilling.set(false);
+            }
+        }
+    }
+
+    private final class GroupPool
+        implements Runnable
+    {
+        final int namedGroup;
+        final ConcurrentLinkedQueue keyPairs = new ConcurrentLinkedQueue();
+        final AtomicInteger size = new AtomicInteger(0);
+        final AtomicBoolean refilling = new AtomicBoolean(false);
+
+        GroupPool(int namedGroup)
+        {
+            this.namedGroup = namedGroup;
+        }
+
+        public void run()
+        {
+            try
+            {
+                while (size.get() < capacity)
+                {
+                    Object keyPair;
+                    try
+                    {
+                        keyPair = generateKeyPair(namedGroup);
+                    }
+                    catch (Exception e)
+                    {
+                        failures.incrementAndGet();
+                        break;
+                    }
+
+                    keyPairs.offer(keyPair);
+                    size.incrementAndGet();
+                    generated.incrementAndGet();
+                }
+            }
+            finally
+            {
+                refilling.set(false);
+            }
+        }
+    }
+}
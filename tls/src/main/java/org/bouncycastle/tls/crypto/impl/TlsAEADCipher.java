@@ -424,9 +424,14 @@ private void rekeyCipher(SecurityParameters securityParameters, TlsAEADCipherImp
             ?   securityParameters.getTrafficSecretServer()
             :   securityParameters.getTrafficSecretClient();
 
-        // TODO[tls13] For early data, have to disable server->client
         if (null == secret)
         {
+            // Early data is client->server only, so the server->client direction is left unkeyed
+            if (serverSecret && null != securityParameters.getTrafficSecretClient())
+            {
+                return;
+            }
+
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
@@ -4,7 +4,9 @@
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.Vector;
+import java.util.concurrent.Executor;
 
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
 import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.agreement.srp.SRP6Client;
@@ -24,12 +26,16 @@
 import org.bouncycastle.crypto.engines.DESedeEngine;
 import org.bouncycastle.crypto.engines.SEEDEngine;
 import org.bouncycastle.crypto.engines.SM4Engine;
+import org.bouncycastle.crypto.generators.X25519KeyPairGenerator;
+import org.bouncycastle.crypto.generators.X448KeyPairGenerator;
 import org.bouncycastle.crypto.macs.HMac;
 import org.bouncycastle.crypto.modes.AEADBlockCipher;
 import org.bouncycastle.crypto.modes.CBCBlockCipher;
 import org.bouncycastle.crypto.modes.CCMBlockCipher;
 import org.bouncycastle.crypto.modes.GCMBlockCipher;
 import org.bouncycastle.crypto.params.SRP6GroupParameters;
+import org.bouncycastle.crypto.params.X25519KeyGenerationParameters;
+import org.bouncycastle.crypto.params.X448KeyGenerationParameters;
 import org.bouncycastle.crypto.prng.DigestRandomGenerator;
 import org.bouncycastle.tls.AlertDescription;
 import org.bouncycastle.tls.CertificateType;
@@ -64,6 +70,7 @@
 import org.bouncycastle.tls.crypto.TlsSRPConfig;
 import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.tls.crypto.impl.AbstractTlsCrypto;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyPairPool;
 import org.bouncycastle.tls.crypto.impl.Tls13NullCipher;
 import org.bouncycastle.tls.crypto.impl.TlsAEADCipher;
 import org.bouncycastle.tls.crypto.impl.TlsBlockCipher;
@@ -83,6 +90,8 @@
 {
     private final SecureRandom entropySource;
 
+    private volatile EphemeralKeyPairPool ephemeralKeyPairPool = null;
+
     // TODO[tls] Better default SecureRandom?
     public BcTlsCrypto()
     {
@@ -104,6 +113,75 @@ public SecureRandom getSecureRandom()
         return entropySource;
     }
 
+    /**
+     * Enable a pool of ephemeral key pairs, pre-generated (per named group) by the given {@link Executor},
+     * for use in (EC)DH and ML-KEM key exchange. Replaces any existing pool.
+     *
+     * @param executor the {@link Executor} to generate key pairs on.
+     * @param capacity the maximum number of key pairs to hold for each named group.
+     * @return the {@link EphemeralKeyPairPool}, e.g. to prefill particular groups or read metrics.
+     */
+    public EphemeralKeyPairPool enableEphemeralKeyPairPool(Executor executor, int capacity)
+    {
+        EphemeralKeyPairPool pool = new EphemeralKeyPairPool(executor, capacity)
+        {
+            protected Object generateKeyPair(int namedGroup)
+            {
+                return generatePooledKeyPair(namedGroup);
+            }
+        };
+
+        this.ephemeralKeyPairPool = pool;
+        return pool;
+    }
+
+    public void disableEphemeralKeyPairPool()
+    {
+        this.ephemeralKeyPairPool = null;
+    }
+
+    public EphemeralKeyPairPool getEphemeralKeyPairPool()
+    {
+        return ephemeralKeyPairPool;
+    }
+
+    AsymmetricCipherKeyPair takePooledKeyPair(int namedGroup)
+    {
+        EphemeralKeyPairPool pool = ephemeralKeyPairPool;
+        return null == pool ? null : (AsymmetricCipherKeyPair)pool.take(namedGroup);
+    }
+
+    protected AsymmetricCipherKeyPair generatePooledKeyPair(int namedGroup)
+    {
+        switch (namedGroup)
+        {
+        case NamedGroup.x25519:
+        {
+            X25519KeyPairGenerator keyPairGenerator = new X25519KeyPairGenerator();
+            keyPairGenerator.init(new X25519KeyGenerationParameters(getSecureRandom()));
+            return keyPairGenerator.generateKeyPair();
+        }
+        case NamedGroup.x448:
+        {
+            X448KeyPairGenerator keyPairGenerator = new X448KeyPairGenerator();
+            keyPairGenerator.init(new X448KeyGenerationParameters(getSecureRandom()));
+            return keyPairGenerator.generateKeyPair();
+        }
+        default:
+        {
+            if (NamedGroup.refersToASpecificCurve(namedGroup))
+            {
+                return new BcTlsECDomain(this, new TlsECConfig(namedGroup)).createKeyPair();
+            }
+            if (NamedGroup.refersToASpecificKem(namedGroup))
+            {
+                return new BcTlsMLKemDomain(this, new TlsKemConfig(namedGroup, false)).createKeyPair();
+            }
+            throw new IllegalArgumentException("NamedGroup not supported: " + NamedGroup.getText(namedGroup));
+        }
+        }
+    }
+
     public TlsCertificate createCertificate(byte[] encoding)
         throws IOException
     {
@@ -76,11 +76,13 @@ public static ECDomainParameters getDomainParameters(int namedGroup)
     }
     
     protected final BcTlsCrypto crypto;
+    protected final int namedGroup;
     protected final ECDomainParameters domainParameters;
 
     public BcTlsECDomain(BcTlsCrypto crypto, TlsECConfig ecConfig)
     {
         this.crypto = crypto;
+        this.namedGroup = ecConfig.getNamedGroup();
         this.domainParameters = getDomainParameters(ecConfig);
     }
 
@@ -124,6 +126,12 @@ public byte[] encodePublicKey(ECPublicKeyParameters publicKey)
     }
 
     public AsymmetricCipherKeyPair generateKeyPair()
+    {
+        AsymmetricCipherKeyPair keyPair = crypto.takePooledKeyPair(namedGroup);
+        return null != keyPair ? keyPair : createKeyPair();
+    }
+
+    AsymmetricCipherKeyPair createKeyPair()
     {
         ECKeyPairGenerator keyPairGenerator = new ECKeyPairGenerator();
         keyPairGenerator.init(new ECKeyGenerationParameters(domainParameters, crypto.getSecureRandom()));
@@ -35,12 +35,14 @@ public static MLKEMParameters getDomainParameters(TlsKemConfig kemConfig)
     }
 
     protected final BcTlsCrypto crypto;
+    protected final int namedGroup;
     protected final MLKEMParameters domainParameters;
     protected final boolean isServer;
 
     public BcTlsMLKemDomain(BcTlsCrypto crypto, TlsKemConfig kemConfig)
     {
         this.crypto = crypto;
+        this.namedGroup = kemConfig.getNamedGroup();
         this.domainParameters = getDomainParameters(kemConfig);
         this.isServer = kemConfig.isServer();
     }
@@ -79,6 +81,12 @@ public byte[] encodePublicKey(MLKEMPublicKeyParameters publicKey)
     }
 
     public AsymmetricCipherKeyPair generateKeyPair()
+    {
+        AsymmetricCipherKeyPair keyPair = crypto.takePooledKeyPair(namedGroup);
+        return null != keyPair ? keyPair : createKeyPair();
+    }
+
+    AsymmetricCipherKeyPair createKeyPair()
     {
         MLKEMKeyPairGenerator keyPairGenerator = new MLKEMKeyPairGenerator();
         keyPairGenerator.init(new MLKEMKeyGenerationParameters(crypto.getSecureRandom(), domainParameters));
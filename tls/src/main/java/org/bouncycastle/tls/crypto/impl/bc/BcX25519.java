@@ -2,8 +2,12 @@
 
 import java.io.IOException;
 
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.params.X25519PrivateKeyParameters;
+import org.bouncycastle.crypto.params.X25519PublicKeyParameters;
 import org.bouncycastle.math.ec.rfc7748.X25519;
 import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.NamedGroup;
 import org.bouncycastle.tls.TlsFatalAlert;
 import org.bouncycastle.tls.crypto.TlsAgreement;
 import org.bouncycastle.tls.crypto.TlsSecret;
@@ -25,6 +29,13 @@ public BcX25519(BcTlsCrypto crypto)
 
     public byte[] generateEphemeral() throws IOException
     {
+        AsymmetricCipherKeyPair keyPair = crypto.takePooledKeyPair(NamedGroup.x25519);
+        if (null != keyPair)
+        {
+            ((X25519PrivateKeyParameters)keyPair.getPrivate()).encode(privateKey, 0);
+            return ((X25519PublicKeyParameters)keyPair.getPublic()).getEncoded();
+        }
+
         X25519.generatePrivateKey(crypto.getSecureRandom(), privateKey);
 
         byte[] publicKey = new byte[X25519.POINT_SIZE];
@@ -2,8 +2,12 @@
 
 import java.io.IOException;
 
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.params.X448PrivateKeyParameters;
+import org.bouncycastle.crypto.params.X448PublicKeyParameters;
 import org.bouncycastle.math.ec.rfc7748.X448;
 import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.NamedGroup;
 import org.bouncycastle.tls.TlsFatalAlert;
 import org.bouncycastle.tls.crypto.TlsAgreement;
 import org.bouncycastle.tls.crypto.TlsSecret;
@@ -25,6 +29,13 @@ public BcX448(BcTlsCrypto crypto)
 
     public byte[] generateEphemeral() throws IOException
     {
+        AsymmetricCipherKeyPair keyPair = crypto.takePooledKeyPair(NamedGroup.x448);
+        if (null != keyPair)
+        {
+            ((X448PrivateKeyParameters)keyPair.getPrivate()).encode(privateKey, 0);
+            return ((X448PublicKeyParameters)keyPair.getPublic()).getEncoded();
+        }
+
         X448.generatePrivateKey(crypto.getSecureRandom(), privateKey);
 
         byte[] publicKey = new byte[X448.POINT_SIZE];
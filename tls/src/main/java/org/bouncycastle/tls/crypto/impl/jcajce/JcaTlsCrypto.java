@@ -5,6 +5,7 @@
 import java.security.AlgorithmParameters;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
+import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -13,6 +14,7 @@
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.Executor;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
@@ -61,6 +63,7 @@
 import org.bouncycastle.tls.crypto.impl.AEADNonceGenerator;
 import org.bouncycastle.tls.crypto.impl.AEADNonceGeneratorFactory;
 import org.bouncycastle.tls.crypto.impl.AbstractTlsCrypto;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyPairPool;
 import org.bouncycastle.tls.crypto.impl.Tls13NullCipher;
 import org.bouncycastle.tls.crypto.impl.TlsAEADCipher;
 import org.bouncycastle.tls.crypto.impl.TlsAEADCipherImpl;
@@ -95,6 +98,8 @@
     private final Hashtable supportedOther = new Hashtable();
     private final Hashtable supportedSignatureSchemes = new Hashtable();
 
+    private volatile EphemeralKeyPairPool ephemeralKeyPairPool = null;
+
     /**
      * Base constructor.
      *
@@ -152,6 +157,67 @@ public SecureRandom getSecureRandom()
         return entropySource;
     }
 
+    /**
+     * Enable a pool of ephemeral key pairs, pre-generated (per named group) by the given {@link Executor},
+     * for use in (EC)DH and ML-KEM key exchange. Replaces any existing pool.
+     *
+     * @param executor the {@link Executor} to generate key pairs on.
+     * @param capacity the maximum number of key pairs to hold for each named group.
+     * @return the {@link EphemeralKeyPairPool}, e.g. to prefill particular groups or read metrics.
+     */
+    public EphemeralKeyPairPool enableEphemeralKeyPairPool(Executor executor, int capacity)
+    {
+        EphemeralKeyPairPool pool = new EphemeralKeyPairPool(executor, capacity)
+        {
+            protected Object generateKeyPair(int namedGroup)
+            {
+                return generatePooledKeyPair(namedGroup);
+            }
+        };
+
+        this.ephemeralKeyPairPool = pool;
+        return pool;
+    }
+
+    public void disableEphemeralKeyPairPool()
+    {
+        this.ephemeralKeyPairPool = null;
+    }
+
+    public EphemeralKeyPairPool getEphemeralKeyPairPool()
+    {
+        return ephemeralKeyPairPool;
+    }
+
+    KeyPair takePooledKeyPair(int namedGroup)
+    {
+        EphemeralKeyPairPool pool = ephemeralKeyPairPool;
+        return null == pool ? null : (KeyPair)pool.take(namedGroup);
+    }
+
+    protected KeyPair generatePooledKeyPair(int namedGroup)
+    {
+        switch (namedGroup)
+        {
+        case NamedGroup.x25519:
+            return new JceX25519Domain(this).createKeyPair();
+        case NamedGroup.x448:
+            return new JceX448Domain(this).createKeyPair();
+        default:
+        {
+            if (NamedGroup.refersToASpecificCurve(namedGroup))
+            {
+                return new JceTlsECDomain(this, new TlsECConfig(namedGroup)).createKeyPair();
+            }
+            if (NamedGroup.refersToASpecificKem(namedGroup))
+            {
+                return new JceTlsMLKemDomain(this, new TlsKemConfig(namedGroup, false)).createKeyPair();
+            }
+            throw new IllegalArgumentException("NamedGroup not supported: " + NamedGroup.getText(namedGroup));
+        }
+        }
+    }
+
     public byte[] calculateKeyAgreement(String agreementAlgorithm, PrivateKey privateKey, PublicKey publicKey, String secretAlgorithm)
         throws GeneralSecurityException
     {
@@ -29,6 +29,7 @@
     implements TlsECDomain
 {
     protected final JcaTlsCrypto crypto;
+    protected final int namedGroup;
     protected final ECParameterSpec ecSpec;
     protected final ECCurve ecCurve;
 
@@ -41,6 +42,7 @@ public JceTlsECDomain(JcaTlsCrypto crypto, TlsECConfig ecConfig)
             if (null != spec)
             {
                 this.crypto = crypto;
+                this.namedGroup = namedGroup;
                 this.ecSpec =  spec;
                 this.ecCurve = ECUtil.convertCurve(spec.getCurve(), spec.getOrder(), spec.getCofactor());
                 return;
@@ -128,6 +130,12 @@ public byte[] encodePublicKey(PublicKey publicKey) throws IOException
     }
 
     public KeyPair generateKeyPair()
+    {
+        KeyPair keyPair = crypto.takePooledKeyPair(namedGroup);
+        return null != keyPair ? keyPair : createKeyPair();
+    }
+
+    KeyPair createKeyPair()
     {
         try
         {
@@ -14,13 +14,15 @@
 public class JceTlsMLKemDomain implements TlsKemDomain
 {
     protected final JcaTlsCrypto crypto;
+    protected final int namedGroup;
     protected final String kemName;
     protected final boolean isServer;
 
     public JceTlsMLKemDomain(JcaTlsCrypto crypto, TlsKemConfig kemConfig)
     {
         this.crypto = crypto;
-        this.kemName = NamedGroup.getKemName(kemConfig.getNamedGroup());
+        this.namedGroup = kemConfig.getNamedGroup();
+        this.kemName = NamedGroup.getKemName(namedGroup);
         this.isServer = kemConfig.isServer();
     }
 
@@ -57,6 +59,12 @@ public byte[] encodePublicKey(PublicKey publicKey)
     }
 
     public KeyPair generateKeyPair()
+    {
+        KeyPair keyPair = crypto.takePooledKeyPair(namedGroup);
+        return null != keyPair ? keyPair : createKeyPair();
+    }
+
+    KeyPair createKeyPair()
     {
         return KemUtil.generateKeyPair(crypto, kemName);
     }
@@ -9,6 +9,7 @@
 
 import org.bouncycastle.asn1.edec.EdECObjectIdentifiers;
 import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.NamedGroup;
 import org.bouncycastle.tls.TlsFatalAlert;
 import org.bouncycastle.tls.crypto.TlsAgreement;
 import org.bouncycastle.tls.crypto.TlsCryptoException;
@@ -64,6 +65,12 @@ public byte[] encodePublicKey(PublicKey publicKey) throws IOException
     }
 
     public KeyPair generateKeyPair()
+    {
+        KeyPair keyPair = crypto.takePooledKeyPair(NamedGroup.x25519);
+        return null != keyPair ? keyPair : createKeyPair();
+    }
+
+    KeyPair createKeyPair()
     {
         try
         {
@@ -22,6 +22,7 @@ public static Test suite()
         TestSuite suite = new TestSuite("JSSE provider internal tests");
 
         suite.addTestSuite(HostnameUtilTest.class);
+        suite.addTestSuite(ProvX509TrustManagerCacheTest.class);
 
         return suite;
     }
@@ -0,0 +1,195 @@
+package org.bouncycastle.jsse.provider;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.cert.CertificateException;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.jcajce.util.ProviderJcaJceHelper;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Tests for the cache of built certification paths in {@link ProvX509TrustManager}.
+ */
+public class ProvX509TrustManagerCacheTest
+    extends TestCase
+{
+    private static final String AUTH_TYPE = "ECDHE_ECDSA";
+
+    private KeyPair caKeyPair;
+    private X509Certificate caCert;
+    private X509Certificate eeCert;
+
+    protected void setUp() throws Exception
+    {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null)
+        {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+
+        caKeyPair = generateECKeyPair();
+        caCert = createCert(new X500Name("CN=Test CA"), caKeyPair.getPublic(), new X500Name("CN=Test CA"),
+            caKeyPair.getPrivate(), true);
+
+        KeyPair eeKeyPair = generateECKeyPair();
+        eeCert = createCert(new X500Name("CN=Test End Certificate"), eeKeyPair.getPublic(),
+            new X500Name("CN=Test CA"), caKeyPair.getPrivate(), false);
+    }
+
+    public void testRepeatedChainIsCached() throws Exception
+    {
+        ProvX509TrustManager trustManager = createTrustManager(caCert);
+        ProvCertPathCache cache = trustManager.getCertPathCache();
+        assertNotNull(cache);
+
+        X509Certificate[] chain = new X509Certificate[]{ eeCert, caCert };
+
+        trustManager.checkServerTrusted(chain, AUTH_TYPE);
+        assertEquals(1, cache.size());
+
+        // Served from the cache (and the result is still checked against the auth type)
+        trustManager.checkServerTrusted(chain, AUTH_TYPE);
+        assertEquals(1, cache.size());
+
+        // A different (but still valid) chain for the same end-entity gets its own entry
+        trustManager.checkServerTrusted(new X509Certificate[]{ eeCert }, AUTH_TYPE);
+        assertEquals(2, cache.size());
+    }
+
+    public void testFailuresAreNotCached() throws Exception
+    {
+        KeyPair otherKeyPair = generateECKeyPair();
+        X509Certificate otherCert = createCert(new X500Name("CN=Other CA"), otherKeyPair.getPublic(),
+            new X500Name("CN=Other CA"), otherKeyPair.getPrivate(), true);
+
+        ProvX509TrustManager trustManager = createTrustManager(otherCert);
+        ProvCertPathCache cache = trustManager.getCertPathCache();
+
+        X509Certificate[] chain = new X509Certificate[]{ eeCert, caCert };
+        for (int i = 0; i < 2; ++i)
+        {
+            try
+            {
+                trustManager.checkServerTrusted(chain, AUTH_TYPE);
+                fail("Untrusted chain accepted");
+            }
+            catch (CertificateException e)
+            {
+                // expected
+            }
+        }
+
+        assertEquals(0, cache.size());
+    }
+
+    public void testNoCacheWithRevocationChecking() throws Exception
+    {
+        PKIXBuilderParameters pkixParameters = new PKIXBuilderParameters(createTrustAnchors(caCert), null);
+        pkixParameters.setRevocationEnabled(true);
+
+        ProvX509TrustManager trustManager = new ProvX509TrustManager(false,
+            new ProviderJcaJceHelper(new BouncyCastleProvider()), pkixParameters);
+        ProvCertPathCache cache = trustManager.getCertPathCache();
+
+        try
+        {
+            // No CRLs available
+            trustManager.checkServerTrusted(new X509Certificate[]{ eeCert, caCert }, AUTH_TYPE);
+            fail("Chain accepted without revocation information");
+        }
+        catch (CertificateException e)
+        {
+            // expected
+        }
+
+        assertEquals(0, cache.size());
+    }
+
+    public void testCacheExpiryAndTrustAnchorChange() throws Exception
+    {
+        ProvCertPathCache cache = new ProvCertPathCache(2, 50L);
+
+        Set<TrustAnchor> anchors = createTrustAnchors(caCert);
+        X509Certificate[] chain = new X509Certificate[]{ eeCert, caCert };
+        X509Certificate[] trustedChain = new X509Certificate[]{ eeCert, caCert };
+
+        cache.put(anchors, chain, ProvAlgorithmConstraints.DEFAULT, null, trustedChain);
+
+        X509Certificate[] cached = cache.get(anchors, chain, ProvAlgorithmConstraints.DEFAULT, null);
+        assertNotNull(cached);
+        assertNotSame(trustedChain, cached);
+        assertEquals(eeCert, cached[0]);
+
+        // Different constraints
+        assertNull(cache.get(anchors, chain, ProvAlgorithmConstraints.DEFAULT_TLS_ONLY, null));
+        assertNull(cache.get(anchors, chain,
+            new ProvAlgorithmConstraints(null, new String[]{ "ecdsa_secp256r1_sha256" }, true), null));
+
+        // Replacing the trust anchors invalidates everything
+        assertNull(cache.get(createTrustAnchors(caCert), chain, ProvAlgorithmConstraints.DEFAULT, null));
+        assertEquals(0, cache.size());
+
+        cache.put(anchors, chain, ProvAlgorithmConstraints.DEFAULT, null, trustedChain);
+        assertNotNull(cache.get(anchors, chain, ProvAlgorithmConstraints.DEFAULT, null));
+
+        Thread.sleep(100L);
+
+        assertNull(cache.get(anchors, chain, ProvAlgorithmConstraints.DEFAULT, null));
+        assertEquals(0, cache.size());
+    }
+
+    private static X509Certificate createCert(X500Name subject, PublicKey subjectKey, X500Name issuer,
+        PrivateKey issuerKey, boolean isCA) throws Exception
+    {
+        long now = System.currentTimeMillis();
+
+        X509v3CertificateBuilder builder = new X509v3CertificateBuilder(issuer, BigInteger.valueOf(now),
+            new Date(now - 5000), new Date(now + 30 * 60 * 1000), subject,
+            SubjectPublicKeyInfo.getInstance(subjectKey.getEncoded()));
+
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(isCA));
+        builder.addExtension(Extension.keyUsage, true,
+            new KeyUsage(isCA ? KeyUsage.keyCertSign | KeyUsage.cRLSign : KeyUsage.digitalSignature));
+
+        return new JcaX509CertificateConverter().setProvider(BouncyCastleProvider.PROVIDER_NAME).getCertificate(
+            builder.build(new JcaContentSignerBuilder("SHA256withECDSA")
+                .setProvider(BouncyCastleProvider.PROVIDER_NAME).build(issuerKey)));
+    }
+
+    private static Set<TrustAnchor> createTrustAnchors(X509Certificate trustedCert)
+    {
+        return Collections.singleton(new TrustAnchor(trustedCert, null));
+    }
+
+    private static KeyPair generateECKeyPair() throws Exception
+    {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC", BouncyCastleProvider.PROVIDER_NAME);
+        kpg.initialize(256);
+        return kpg.generateKeyPair();
+    }
+
+    private static ProvX509TrustManager createTrustManager(X509Certificate trustedCert) throws Exception
+    {
+        return new ProvX509TrustManager(false, new ProviderJcaJceHelper(new BouncyCastleProvider()),
+            createTrustAnchors(trustedCert));
+    }
+}
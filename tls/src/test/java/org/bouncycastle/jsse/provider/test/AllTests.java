@@ -23,9 +23,11 @@ public static Test suite()
 
         suite.addTestSuite(BasicClientAuthTlsTest.class);
         suite.addTestSuite(BasicTlsTest.class);
+        suite.addTestSuite(CertificateCompressionTest.class);
         suite.addTestSuite(ConfigTest.class);
         suite.addTestSuite(ECDSACredentialsTest.class);
         suite.addTestSuite(EdDSACredentialsTest.class);
+        suite.addTestSuite(HandshakeMetricsTest.class);
         suite.addTestSuite(HandshakeTimeoutTest.class);
         suite.addTestSuite(InstanceTest.class);
         suite.addTestSuite(KeyManagerFactoryTest.class);
@@ -33,6 +35,10 @@ public static Test suite()
         suite.addTestSuite(PSSCredentialsTest.class);
         suite.addTestSuite(RequestedServerNamesTest.class);
         suite.addTestSuite(SLHDSACredentialsTest.class);
+        suite.addTestSuite(SessionCacheTest.class);
+        suite.addTestSuite(SessionTicketTest.class);
+        suite.addTestSuite(SSLEngineDelegatedTaskTest.class);
+        suite.addTestSuite(SSLEngineDuplexTest.class);
         suite.addTestSuite(SSLServerSocketTest.class);
         suite.addTestSuite(SSLSocketTest.class);
 
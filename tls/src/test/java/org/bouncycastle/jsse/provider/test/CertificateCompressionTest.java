@@ -0,0 +1,165 @@
+package org.bouncycastle.jsse.provider.test;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that a TLS 1.3 server compresses its Certificate message (RFC 8879), and that the client
+ * recovers the original certificate chain.
+ */
+public class CertificateCompressionTest
+    extends TestCase
+{
+    protected void setUp()
+    {
+        ProviderUtils.setupHighPriority(false);
+    }
+
+    public void testCompressedServerCertificate() throws Exception
+    {
+        char[] serverPassword = "serverPassword".toCharArray();
+
+        KeyPair caKeyPair = TestUtils.generateECKeyPair();
+        X509Certificate caCert = TestUtils.generateRootCert(caKeyPair);
+
+        // A large (but highly compressible) end-entity certificate
+        X500NameBuilder subject = new X500NameBuilder(BCStyle.INSTANCE);
+        for (int i = 0; i < 100; ++i)
+        {
+            subject.addRDN(BCStyle.OU, "Organizational Unit " + i);
+        }
+        subject.addRDN(BCStyle.CN, "Test End Certificate");
+
+        KeyPair eeKeyPair = TestUtils.generateECKeyPair();
+        X509Certificate eeCert = TestUtils.generateEndEntityCertSign(eeKeyPair.getPublic(), subject.build(),
+            caKeyPair.getPrivate(), caCert);
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(null, null);
+        ks.setKeyEntry("server", eeKeyPair.getPrivate(), serverPassword, new X509Certificate[]{ eeCert, caCert });
+
+        KeyStore ts = KeyStore.getInstance("JKS");
+        ts.load(null, null);
+        ts.setCertificateEntry("ca", caCert);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        kmf.init(ks, serverPassword);
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        tmf.init(ts);
+
+        SecureRandom random = SecureRandom.getInstance("DEFAULT", ProviderUtils.PROVIDER_NAME_BC);
+
+        SSLContext clientContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        clientContext.init(null, tmf.getTrustManagers(), random);
+
+        SSLContext serverContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        serverContext.init(kmf.getKeyManagers(), null, random);
+
+        for (int i = 0; i < 2; ++i)
+        {
+            SSLEngine clientEngine = clientContext.createSSLEngine();
+            clientEngine.setEnabledProtocols(new String[]{ "TLSv1.3" });
+            clientEngine.setUseClientMode(true);
+
+            SSLEngine serverEngine = serverContext.createSSLEngine();
+            serverEngine.setEnabledProtocols(new String[]{ "TLSv1.3" });
+            serverEngine.setUseClientMode(false);
+
+            int serverFlightBytes = handshake(clientEngine, serverEngine);
+
+            // The whole server flight is smaller than the (uncompressed) end-entity certificate alone
+            assertTrue(serverFlightBytes < eeCert.getEncoded().length);
+
+            Certificate[] peerCerts = clientEngine.getSession().getPeerCertificates();
+            assertEquals(2, peerCerts.length);
+            assertEquals(eeCert, peerCerts[0]);
+            assertEquals(caCert, peerCerts[1]);
+        }
+    }
+
+    /**
+     * @return the number of bytes produced by the server before the client completes the handshake.
+     */
+    private static int handshake(SSLEngine clientEngine, SSLEngine serverEngine) throws Exception
+    {
+        int netBufSize = Math.max(clientEngine.getSession().getPacketBufferSize(),
+            serverEngine.getSession().getPacketBufferSize());
+        int appBufSize = Math.max(clientEngine.getSession().getApplicationBufferSize(),
+            serverEngine.getSession().getApplicationBufferSize());
+
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer clientToServer = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer serverToClient = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer clientIn = ByteBuffer.allocate(appBufSize);
+        ByteBuffer serverIn = ByteBuffer.allocate(appBufSize);
+
+        clientEngine.beginHandshake();
+        serverEngine.beginHandshake();
+
+        int serverFlightBytes = 0;
+        for (int i = 0; i < 100; ++i)
+        {
+            if (!isHandshaking(clientEngine) && !isHandshaking(serverEngine))
+            {
+                return serverFlightBytes;
+            }
+
+            clientEngine.wrap(empty, clientToServer);
+
+            // NOTE: Excludes e.g. NewSessionTicket, sent once the client has completed the handshake
+            boolean clientHandshaking = isHandshaking(clientEngine);
+            int serverBytes = serverEngine.wrap(empty, serverToClient).bytesProduced();
+            if (clientHandshaking)
+            {
+                serverFlightBytes += serverBytes;
+            }
+
+            ((java.nio.Buffer)clientToServer).flip();
+            ((java.nio.Buffer)serverToClient).flip();
+
+            unwrapAvailable(clientEngine, serverToClient, clientIn);
+            unwrapAvailable(serverEngine, clientToServer, serverIn);
+
+            clientToServer.compact();
+            serverToClient.compact();
+        }
+
+        fail("Handshake did not complete");
+        return -1;
+    }
+
+    private static boolean isHandshaking(SSLEngine engine)
+    {
+        return engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private static void unwrapAvailable(SSLEngine engine, ByteBuffer src, ByteBuffer dst) throws Exception
+    {
+        while (src.hasRemaining())
+        {
+            SSLEngineResult result = engine.unwrap(src, dst);
+            if (result.getStatus() != Status.OK || result.bytesConsumed() < 1)
+            {
+                break;
+            }
+        }
+    }
+}
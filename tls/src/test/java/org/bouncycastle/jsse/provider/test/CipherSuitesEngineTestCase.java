@@ -57,21 +57,34 @@ protected void runTest() throws Throwable
             return;
         }
 
-        runTestConnection();
-        runTestConnection();
+        runTestConnection(false);
+        runTestConnection(false);
+        runTestConnection(true);
     }
 
-    private void runTestConnection() throws Throwable
+    private void runTestConnection(boolean delegatedTasks) throws Throwable
     {
         SSLContext clientContext = createSSLContextClient();
         SSLContext serverContext = createSSLContextServer();
 
-        SSLEngine clientEngine = clientContext.createSSLEngine();
+        SSLEngine clientEngine, serverEngine;
+
+        String delegatedTasksProperty = "org.bouncycastle.jsse.engine.delegatedTasks";
+        System.setProperty(delegatedTasksProperty, String.valueOf(delegatedTasks));
+        try
+        {
+            clientEngine = clientContext.createSSLEngine();
+            serverEngine = serverContext.createSSLEngine();
+        }
+        finally
+        {
+            System.clearProperty(delegatedTasksProperty);
+        }
+
         clientEngine.setEnabledCipherSuites(new String[]{ config.cipherSuite });
         clientEngine.setEnabledProtocols(new String[]{ config.protocol });
         clientEngine.setUseClientMode(true);
 
-        SSLEngine serverEngine = serverContext.createSSLEngine();
         serverEngine.setEnabledCipherSuites(new String[]{ config.cipherSuite });
         serverEngine.setEnabledProtocols(new String[]{ config.protocol });
         serverEngine.setUseClientMode(false);
@@ -98,23 +111,24 @@ private void runTestConnection() throws Throwable
         SSLEngineResult clientResult;
         SSLEngineResult serverResult;
 
+        int delegatedTaskCount = 0;
         boolean dataDone = false;
         while (!isEngineClosed(clientEngine) || !isEngineClosed(serverEngine))
         {
             clientResult = clientEngine.wrap(clientOut, clientToServer);
-            runDelegatedTasks(clientEngine, clientResult);
+            delegatedTaskCount += runDelegatedTasks(clientEngine, clientResult);
 
             serverResult = serverEngine.wrap(serverOut, serverToClient);
-            runDelegatedTasks(serverEngine, serverResult);
+            delegatedTaskCount += runDelegatedTasks(serverEngine, serverResult);
 
             ((java.nio.Buffer)clientToServer).flip();
             ((java.nio.Buffer)serverToClient).flip();
 
             clientResult = clientEngine.unwrap(serverToClient, clientIn);
-            runDelegatedTasks(clientEngine, clientResult);
+            delegatedTaskCount += runDelegatedTasks(clientEngine, clientResult);
 
             serverResult = serverEngine.unwrap(clientToServer, serverIn);
-            runDelegatedTasks(serverEngine, serverResult);
+            delegatedTaskCount += runDelegatedTasks(serverEngine, serverResult);
 
             clientToServer.compact();
             serverToClient.compact();
@@ -131,6 +145,8 @@ private void runTestConnection() throws Throwable
             }
         }
 
+        TestCase.assertEquals(delegatedTasks, delegatedTaskCount > 0);
+
         byte[] clientTlsUnique = TestUtils.getChannelBinding(clientEngine, "tls-unique");
         byte[] serverTlsUnique = TestUtils.getChannelBinding(serverEngine, "tls-unique");
 
@@ -184,19 +200,22 @@ private static boolean isEngineClosed(SSLEngine engine)
         return (engine.isOutboundDone() && engine.isInboundDone());
     }
 
-    private static void runDelegatedTasks(SSLEngine engine, SSLEngineResult result)
+    private static int runDelegatedTasks(SSLEngine engine, SSLEngineResult result)
     {
         if (HandshakeStatus.NEED_TASK != result.getHandshakeStatus())
         {
-            return;
+            return 0;
         }
 
+        int count = 0;
         Runnable runnable;
         while ((runnable = engine.getDelegatedTask()) != null)
         {
             runnable.run();
+            ++count;
         }
 
         assertTrue(HandshakeStatus.NEED_TASK != engine.getHandshakeStatus());
+        return count;
     }
 }
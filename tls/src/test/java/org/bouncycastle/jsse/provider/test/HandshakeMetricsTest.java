@@ -0,0 +1,186 @@
+package org.bouncycastle.jsse.provider.test;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.bouncycastle.jsse.BCHandshakeMetrics;
+import org.bouncycastle.jsse.BCHandshakeMetricsListener;
+import org.bouncycastle.jsse.BCSSLEngine;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that a {@link BCHandshakeMetricsListener} set on a BCJSSE SSLEngine receives the metrics for its
+ * handshake.
+ */
+public class HandshakeMetricsTest
+    extends TestCase
+{
+    protected void setUp()
+    {
+        ProviderUtils.setupHighPriority(false);
+    }
+
+    public void testHandshakeMetrics12() throws Exception
+    {
+        implTestHandshakeMetrics("TLSv1.2");
+    }
+
+    public void testHandshakeMetrics13() throws Exception
+    {
+        implTestHandshakeMetrics("TLSv1.3");
+    }
+
+    private void implTestHandshakeMetrics(String protocol) throws Exception
+    {
+        char[] serverPassword = "serverPassword".toCharArray();
+
+        KeyPair caKeyPair = TestUtils.generateECKeyPair();
+        X509Certificate caCert = TestUtils.generateRootCert(caKeyPair);
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(null, null);
+        ks.setKeyEntry("server", caKeyPair.getPrivate(), serverPassword, new X509Certificate[]{ caCert });
+
+        KeyStore ts = KeyStore.getInstance("JKS");
+        ts.load(null, null);
+        ts.setCertificateEntry("ca", caCert);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        kmf.init(ks, serverPassword);
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        tmf.init(ts);
+
+        SecureRandom random = SecureRandom.getInstance("DEFAULT", ProviderUtils.PROVIDER_NAME_BC);
+
+        SSLContext clientContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        clientContext.init(null, tmf.getTrustManagers(), random);
+
+        SSLContext serverContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        serverContext.init(kmf.getKeyManagers(), null, random);
+
+        SSLEngine clientEngine = clientContext.createSSLEngine();
+        clientEngine.setEnabledProtocols(new String[]{ protocol });
+        clientEngine.setUseClientMode(true);
+
+        SSLEngine serverEngine = serverContext.createSSLEngine();
+        serverEngine.setEnabledProtocols(new String[]{ protocol });
+        serverEngine.setUseClientMode(false);
+
+        RecordingListener clientListener = new RecordingListener();
+        RecordingListener serverListener = new RecordingListener();
+
+        ((BCSSLEngine)clientEngine).setBCHandshakeMetricsListener(clientListener);
+        ((BCSSLEngine)serverEngine).setBCHandshakeMetricsListener(serverListener);
+        assertSame(clientListener, ((BCSSLEngine)clientEngine).getBCHandshakeMetricsListener());
+
+        handshake(clientEngine, serverEngine);
+
+        checkMetrics(clientListener.metrics, false, protocol, clientEngine.getSession().getCipherSuite());
+        checkMetrics(serverListener.metrics, true, protocol, serverEngine.getSession().getCipherSuite());
+    }
+
+    private static void checkMetrics(BCHandshakeMetrics metrics, boolean server, String protocol,
+        String cipherSuite)
+    {
+        assertNotNull(metrics);
+        assertTrue(metrics.isCompleted());
+        assertNull(metrics.getAlert());
+        assertEquals(server, metrics.isServer());
+        assertFalse(metrics.isRenegotiation());
+        assertFalse(metrics.isResumed());
+        assertEquals(protocol, metrics.getProtocol());
+        assertEquals(cipherSuite, metrics.getCipherSuite());
+        if ("TLSv1.3".equals(protocol))
+        {
+            assertNotNull(metrics.getNamedGroup());
+        }
+        assertTrue(metrics.getKeyExchangeNanos() > 0);
+        assertTrue(metrics.getTotalNanos() >= metrics.getKeyExchangeNanos());
+        assertTrue(metrics.getRecordsRead() > 0);
+        assertTrue(metrics.getRecordsWritten() > 0);
+        assertTrue(metrics.getBytesRead() > metrics.getRecordsRead());
+        assertTrue(metrics.getBytesWritten() > metrics.getRecordsWritten());
+    }
+
+    private static void handshake(SSLEngine clientEngine, SSLEngine serverEngine) throws Exception
+    {
+        int netBufSize = Math.max(clientEngine.getSession().getPacketBufferSize(),
+            serverEngine.getSession().getPacketBufferSize());
+        int appBufSize = Math.max(clientEngine.getSession().getApplicationBufferSize(),
+            serverEngine.getSession().getApplicationBufferSize());
+
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer clientToServer = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer serverToClient = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer clientIn = ByteBuffer.allocate(appBufSize);
+        ByteBuffer serverIn = ByteBuffer.allocate(appBufSize);
+
+        clientEngine.beginHandshake();
+        serverEngine.beginHandshake();
+
+        for (int i = 0; i < 100; ++i)
+        {
+            if (!isHandshaking(clientEngine) && !isHandshaking(serverEngine))
+            {
+                return;
+            }
+
+            clientEngine.wrap(empty, clientToServer);
+            serverEngine.wrap(empty, serverToClient);
+
+            ((java.nio.Buffer)clientToServer).flip();
+            ((java.nio.Buffer)serverToClient).flip();
+
+            unwrapAvailable(clientEngine, serverToClient, clientIn);
+            unwrapAvailable(serverEngine, clientToServer, serverIn);
+
+            clientToServer.compact();
+            serverToClient.compact();
+        }
+
+        fail("Handshake did not complete");
+    }
+
+    private static boolean isHandshaking(SSLEngine engine)
+    {
+        return engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private static void unwrapAvailable(SSLEngine engine, ByteBuffer src, ByteBuffer dst) throws Exception
+    {
+        while (src.hasRemaining())
+        {
+            SSLEngineResult result = engine.unwrap(src, dst);
+            if (result.getStatus() != Status.OK || result.bytesConsumed() < 1)
+            {
+                break;
+            }
+        }
+    }
+
+    private static class RecordingListener
+        implements BCHandshakeMetricsListener
+    {
+        volatile BCHandshakeMetrics metrics = null;
+
+        public void notifyHandshakeMetrics(BCHandshakeMetrics metrics)
+        {
+            assertNull("notified more than once", this.metrics);
+
+            this.metrics = metrics;
+        }
+    }
+}
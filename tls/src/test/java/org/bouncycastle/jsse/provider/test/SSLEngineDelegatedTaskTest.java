@@ -0,0 +1,246 @@
+package org.bouncycastle.jsse.provider.test;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that while a delegated task is running (here, blocked in the trust manager), the SSLEngine's other
+ * methods don't block, and report NEED_TASK until the task has finished.
+ */
+public class SSLEngineDelegatedTaskTest
+    extends TestCase
+{
+    private static final String DELEGATED_TASKS_PROPERTY = "org.bouncycastle.jsse.engine.delegatedTasks";
+
+    protected void setUp()
+    {
+        ProviderUtils.setupHighPriority(false);
+    }
+
+    public void testSlowTrustManager() throws Exception
+    {
+        char[] serverPassword = "serverPassword".toCharArray();
+
+        KeyPair caKeyPair = TestUtils.generateECKeyPair();
+        X509Certificate caCert = TestUtils.generateRootCert(caKeyPair);
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(null, null);
+        ks.setKeyEntry("server", caKeyPair.getPrivate(), serverPassword, new X509Certificate[]{ caCert });
+
+        KeyStore ts = KeyStore.getInstance("JKS");
+        ts.load(null, null);
+        ts.setCertificateEntry("ca", caCert);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        kmf.init(ks, serverPassword);
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        tmf.init(ts);
+
+        BlockingTrustManager trustManager = new BlockingTrustManager((X509TrustManager)tmf.getTrustManagers()[0]);
+
+        SecureRandom random = SecureRandom.getInstance("DEFAULT", ProviderUtils.PROVIDER_NAME_BC);
+
+        SSLContext clientContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        clientContext.init(null, new TrustManager[]{ trustManager }, random);
+
+        SSLContext serverContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        serverContext.init(kmf.getKeyManagers(), null, random);
+
+        SSLEngine clientEngine, serverEngine;
+
+        System.setProperty(DELEGATED_TASKS_PROPERTY, "true");
+        try
+        {
+            clientEngine = clientContext.createSSLEngine();
+            serverEngine = serverContext.createSSLEngine();
+        }
+        finally
+        {
+            System.clearProperty(DELEGATED_TASKS_PROPERTY);
+        }
+
+        clientEngine.setEnabledProtocols(new String[]{ "TLSv1.3" });
+        clientEngine.setUseClientMode(true);
+
+        serverEngine.setEnabledProtocols(new String[]{ "TLSv1.3" });
+        serverEngine.setUseClientMode(false);
+
+        try
+        {
+            handshake(clientEngine, serverEngine, trustManager);
+        }
+        finally
+        {
+            trustManager.release.countDown();
+        }
+
+        assertTrue(trustManager.checked);
+    }
+
+    private static void handshake(SSLEngine clientEngine, SSLEngine serverEngine, BlockingTrustManager trustManager)
+        throws Exception
+    {
+        int netBufSize = Math.max(clientEngine.getSession().getPacketBufferSize(),
+            serverEngine.getSession().getPacketBufferSize());
+        int appBufSize = Math.max(clientEngine.getSession().getApplicationBufferSize(),
+            serverEngine.getSession().getApplicationBufferSize());
+
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer clientToServer = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer serverToClient = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer clientIn = ByteBuffer.allocate(appBufSize);
+        ByteBuffer serverIn = ByteBuffer.allocate(appBufSize);
+
+        clientEngine.beginHandshake();
+        serverEngine.beginHandshake();
+
+        for (int i = 0; i < 100; ++i)
+        {
+            if (!isHandshaking(clientEngine) && !isHandshaking(serverEngine))
+            {
+                return;
+            }
+
+            clientEngine.wrap(empty, clientToServer);
+            runDelegatedTasks(clientEngine, trustManager);
+            serverEngine.wrap(empty, serverToClient);
+            runDelegatedTasks(serverEngine, trustManager);
+
+            ((java.nio.Buffer)clientToServer).flip();
+            ((java.nio.Buffer)serverToClient).flip();
+
+            unwrapAvailable(clientEngine, serverToClient, clientIn, trustManager);
+            unwrapAvailable(serverEngine, clientToServer, serverIn, trustManager);
+
+            clientToServer.compact();
+            serverToClient.compact();
+        }
+
+        fail("Handshake did not complete");
+    }
+
+    private static void runDelegatedTasks(final SSLEngine engine, BlockingTrustManager trustManager)
+        throws Exception
+    {
+        Runnable task;
+        while (null != (task = engine.getDelegatedTask()))
+        {
+            Thread taskThread = new Thread(task);
+            taskThread.start();
+
+            while (taskThread.isAlive())
+            {
+                if (!trustManager.checked && trustManager.entered.await(10, TimeUnit.MILLISECONDS))
+                {
+                    // The task is blocked in the trust manager; the engine must still respond
+                    FutureTask<SSLEngineResult> probe = new FutureTask<SSLEngineResult>(new Callable<SSLEngineResult>()
+                    {
+                        public SSLEngineResult call() throws Exception
+                        {
+                            assertEquals(HandshakeStatus.NEED_TASK, engine.getHandshakeStatus());
+                            assertNull(engine.getDelegatedTask());
+
+                            return engine.wrap(ByteBuffer.allocate(0), ByteBuffer.allocate(
+                                engine.getSession().getPacketBufferSize()));
+                        }
+                    });
+                    new Thread(probe).start();
+
+                    SSLEngineResult result = probe.get(10, TimeUnit.SECONDS);
+                    assertEquals(HandshakeStatus.NEED_TASK, result.getHandshakeStatus());
+                    assertEquals(0, result.bytesProduced());
+
+                    trustManager.checked = true;
+                    trustManager.release.countDown();
+                }
+
+                taskThread.join(10);
+            }
+        }
+    }
+
+    private static boolean isHandshaking(SSLEngine engine)
+    {
+        return engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private static void unwrapAvailable(SSLEngine engine, ByteBuffer src, ByteBuffer dst,
+        BlockingTrustManager trustManager) throws Exception
+    {
+        while (src.hasRemaining())
+        {
+            SSLEngineResult result = engine.unwrap(src, dst);
+            if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK)
+            {
+                runDelegatedTasks(engine, trustManager);
+            }
+            if (result.getStatus() != Status.OK || result.bytesConsumed() < 1)
+            {
+                break;
+            }
+        }
+    }
+
+    private static class BlockingTrustManager
+        implements X509TrustManager
+    {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean checked = false;
+
+        private final X509TrustManager trustManager;
+
+        BlockingTrustManager(X509TrustManager trustManager)
+        {
+            this.trustManager = trustManager;
+        }
+
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException
+        {
+            trustManager.checkClientTrusted(chain, authType);
+        }
+
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException
+        {
+            entered.countDown();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new CertificateException(e);
+            }
+
+            trustManager.checkServerTrusted(chain, authType);
+        }
+
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return trustManager.getAcceptedIssuers();
+        }
+    }
+}
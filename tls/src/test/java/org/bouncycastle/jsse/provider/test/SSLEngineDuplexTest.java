@@ -0,0 +1,255 @@
+package org.bouncycastle.jsse.provider.test;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Random;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.TrustManagerFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that once the handshake has completed, wrap and unwrap can be driven concurrently on the same
+ * SSLEngine from different threads, both with and without "org.bouncycastle.jsse.engine.duplex" set.
+ */
+public class SSLEngineDuplexTest
+    extends TestCase
+{
+    private static final String DUPLEX_PROPERTY = "org.bouncycastle.jsse.engine.duplex";
+
+    private static final int MESSAGE_COUNT = 200;
+    private static final int MESSAGE_SIZE = 1000;
+
+    protected void setUp()
+    {
+        ProviderUtils.setupHighPriority(false);
+    }
+
+    public void testDuplex12() throws Exception
+    {
+        implTestDuplex("TLSv1.2", true);
+    }
+
+    public void testDuplex13() throws Exception
+    {
+        implTestDuplex("TLSv1.3", true);
+    }
+
+    public void testSynchronized12() throws Exception
+    {
+        implTestDuplex("TLSv1.2", false);
+    }
+
+    public void testSynchronized13() throws Exception
+    {
+        implTestDuplex("TLSv1.3", false);
+    }
+
+    private void implTestDuplex(String protocol, boolean duplex) throws Exception
+    {
+        char[] serverPassword = "serverPassword".toCharArray();
+
+        KeyPair caKeyPair = TestUtils.generateECKeyPair();
+        X509Certificate caCert = TestUtils.generateRootCert(caKeyPair);
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(null, null);
+        ks.setKeyEntry("server", caKeyPair.getPrivate(), serverPassword, new X509Certificate[]{ caCert });
+
+        KeyStore ts = KeyStore.getInstance("JKS");
+        ts.load(null, null);
+        ts.setCertificateEntry("ca", caCert);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        kmf.init(ks, serverPassword);
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        tmf.init(ts);
+
+        SecureRandom random = SecureRandom.getInstance("DEFAULT", ProviderUtils.PROVIDER_NAME_BC);
+
+        SSLContext clientContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        clientContext.init(null, tmf.getTrustManagers(), random);
+
+        SSLContext serverContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        serverContext.init(kmf.getKeyManagers(), null, random);
+
+        final SSLEngine clientEngine, serverEngine;
+
+        System.setProperty(DUPLEX_PROPERTY, String.valueOf(duplex));
+        try
+        {
+            clientEngine = clientContext.createSSLEngine();
+            serverEngine = serverContext.createSSLEngine();
+        }
+        finally
+        {
+            System.clearProperty(DUPLEX_PROPERTY);
+        }
+
+        clientEngine.setEnabledProtocols(new String[]{ protocol });
+        clientEngine.setUseClientMode(true);
+
+        serverEngine.setEnabledProtocols(new String[]{ protocol });
+        serverEngine.setUseClientMode(false);
+
+        handshake(clientEngine, serverEngine);
+
+        int netBufSize = clientEngine.getSession().getPacketBufferSize();
+        int appBufSize = clientEngine.getSession().getApplicationBufferSize();
+
+        final byte[] clientData = new byte[MESSAGE_COUNT * MESSAGE_SIZE];
+        final byte[] serverData = new byte[MESSAGE_COUNT * MESSAGE_SIZE];
+        Random dataRandom = new Random();
+        dataRandom.nextBytes(clientData);
+        dataRandom.nextBytes(serverData);
+
+        // Produce the server's records ahead of time, single-threaded
+        final ByteBuffer serverToClient = ByteBuffer.allocate(MESSAGE_COUNT * netBufSize);
+        wrapAll(serverEngine, serverData, serverToClient);
+        ((java.nio.Buffer)serverToClient).flip();
+
+        final ByteBuffer clientToServer = ByteBuffer.allocate(MESSAGE_COUNT * netBufSize);
+        final ByteBuffer clientIn = ByteBuffer.allocate(serverData.length + appBufSize);
+        final Exception[] failures = new Exception[2];
+
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    wrapAll(clientEngine, clientData, clientToServer);
+                }
+                catch (Exception e)
+                {
+                    failures[0] = e;
+                }
+            }
+        };
+        Thread reader = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    unwrapAll(clientEngine, serverToClient, clientIn);
+                }
+                catch (Exception e)
+                {
+                    failures[1] = e;
+                }
+            }
+        };
+
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        assertNull(failures[0]);
+        assertNull(failures[1]);
+
+        checkData(serverData, clientIn);
+
+        ((java.nio.Buffer)clientToServer).flip();
+        ByteBuffer serverIn = ByteBuffer.allocate(clientData.length + appBufSize);
+        unwrapAll(serverEngine, clientToServer, serverIn);
+
+        checkData(clientData, serverIn);
+    }
+
+    private static void checkData(byte[] expected, ByteBuffer actual)
+    {
+        ((java.nio.Buffer)actual).flip();
+        assertEquals(ByteBuffer.wrap(expected), actual);
+    }
+
+    private static void handshake(SSLEngine clientEngine, SSLEngine serverEngine) throws Exception
+    {
+        int netBufSize = Math.max(clientEngine.getSession().getPacketBufferSize(),
+            serverEngine.getSession().getPacketBufferSize());
+        int appBufSize = Math.max(clientEngine.getSession().getApplicationBufferSize(),
+            serverEngine.getSession().getApplicationBufferSize());
+
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer clientToServer = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer serverToClient = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer clientIn = ByteBuffer.allocate(appBufSize);
+        ByteBuffer serverIn = ByteBuffer.allocate(appBufSize);
+
+        clientEngine.beginHandshake();
+        serverEngine.beginHandshake();
+
+        for (int i = 0; i < 100; ++i)
+        {
+            if (!isHandshaking(clientEngine) && !isHandshaking(serverEngine))
+            {
+                return;
+            }
+
+            clientEngine.wrap(empty, clientToServer);
+            serverEngine.wrap(empty, serverToClient);
+
+            ((java.nio.Buffer)clientToServer).flip();
+            ((java.nio.Buffer)serverToClient).flip();
+
+            unwrapAvailable(clientEngine, serverToClient, clientIn);
+            unwrapAvailable(serverEngine, clientToServer, serverIn);
+
+            clientToServer.compact();
+            serverToClient.compact();
+        }
+
+        fail("Handshake did not complete");
+    }
+
+    private static boolean isHandshaking(SSLEngine engine)
+    {
+        return engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private static void unwrapAvailable(SSLEngine engine, ByteBuffer src, ByteBuffer dst) throws Exception
+    {
+        while (src.hasRemaining())
+        {
+            SSLEngineResult result = engine.unwrap(src, dst);
+            if (result.getStatus() != Status.OK || result.bytesConsumed() < 1)
+            {
+                break;
+            }
+        }
+    }
+
+    private static void unwrapAll(SSLEngine engine, ByteBuffer src, ByteBuffer dst) throws Exception
+    {
+        while (src.hasRemaining())
+        {
+            SSLEngineResult result = engine.unwrap(src, dst);
+            assertEquals(Status.OK, result.getStatus());
+            assertTrue(result.bytesConsumed() > 0);
+        }
+    }
+
+    private static void wrapAll(SSLEngine engine, byte[] data, ByteBuffer dst) throws Exception
+    {
+        for (int i = 0; i < MESSAGE_COUNT; ++i)
+        {
+            ByteBuffer src = ByteBuffer.wrap(data, i * MESSAGE_SIZE, MESSAGE_SIZE);
+            while (src.hasRemaining())
+            {
+                SSLEngineResult result = engine.wrap(src, dst);
+                assertEquals(Status.OK, result.getStatus());
+            }
+        }
+    }
+}
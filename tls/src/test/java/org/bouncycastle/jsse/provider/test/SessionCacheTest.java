@@ -0,0 +1,246 @@
+package org.bouncycastle.jsse.provider.test;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.bouncycastle.jsse.BCSSLSessionContext;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the (TLS 1.2) session cache behaviour of the BCJSSE session contexts: resumption, LRU
+ * eviction, and the associated statistics.
+ */
+public class SessionCacheTest
+    extends TestCase
+{
+    private static final String PEER_HOST = "localhost";
+
+    private SSLContext clientContext;
+    private SSLContext serverContext;
+
+    protected void setUp() throws Exception
+    {
+        ProviderUtils.setupHighPriority(false);
+
+        char[] serverPassword = "serverPassword".toCharArray();
+
+        KeyPair caKeyPair = TestUtils.generateECKeyPair();
+        X509Certificate caCert = TestUtils.generateRootCert(caKeyPair);
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(null, null);
+        ks.setKeyEntry("server", caKeyPair.getPrivate(), serverPassword, new X509Certificate[]{ caCert });
+
+        KeyStore ts = KeyStore.getInstance("JKS");
+        ts.load(null, null);
+        ts.setCertificateEntry("ca", caCert);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        kmf.init(ks, serverPassword);
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        tmf.init(ts);
+
+        SecureRandom random = SecureRandom.getInstance("DEFAULT", ProviderUtils.PROVIDER_NAME_BC);
+
+        clientContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        clientContext.init(null, tmf.getTrustManagers(), random);
+
+        serverContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        serverContext.init(kmf.getKeyManagers(), null, random);
+    }
+
+    public void testResumption() throws Exception
+    {
+        BCSSLSessionContext clientSessionContext = (BCSSLSessionContext)clientContext.getClientSessionContext();
+        BCSSLSessionContext serverSessionContext = (BCSSLSessionContext)serverContext.getServerSessionContext();
+
+        byte[] id1 = connect(1000);
+        byte[] id2 = connect(1000);
+
+        assertTrue(java.util.Arrays.equals(id1, id2));
+
+        assertEquals(1, clientSessionContext.getSessionCacheHits());
+        assertEquals(1, clientSessionContext.getSessionCacheMisses());
+        assertEquals(1, serverSessionContext.getSessionCacheHits());
+
+        assertNotNull(serverContext.getServerSessionContext().getSession(id1));
+        assertEquals(2, serverSessionContext.getSessionCacheHits());
+
+        assertNull(serverContext.getServerSessionContext().getSession(new byte[32]));
+        assertEquals(1, serverSessionContext.getSessionCacheMisses());
+    }
+
+    public void testEviction() throws Exception
+    {
+        SSLSessionContext serverSessionContext = serverContext.getServerSessionContext();
+        BCSSLSessionContext bcServerSessionContext = (BCSSLSessionContext)serverSessionContext;
+
+        final int count = 64;
+        for (int i = 0; i < count; ++i)
+        {
+            connect(2000 + i);
+        }
+
+        assertEquals(count, Collections.list(serverSessionContext.getIds()).size());
+        assertEquals(0, bcServerSessionContext.getSessionCacheEvictions());
+
+        // The limit is divided between the cache shards, so fewer sessions than this may be retained
+        serverSessionContext.setSessionCacheSize(count / 2 + 1);
+
+        int size = Collections.list(serverSessionContext.getIds()).size();
+        assertTrue(size <= count / 2 + 1);
+        assertEquals(count - size, bcServerSessionContext.getSessionCacheEvictions());
+
+        // ...but never more, even when it doesn't divide evenly between them
+        serverSessionContext.setSessionCacheSize(count / 4 + 1);
+
+        size = Collections.list(serverSessionContext.getIds()).size();
+        assertTrue(size <= count / 4 + 1);
+        assertEquals(count - size, bcServerSessionContext.getSessionCacheEvictions());
+
+        // A cache smaller than the number of shards leaves some shards empty
+        serverSessionContext.setSessionCacheSize(3);
+
+        size = Collections.list(serverSessionContext.getIds()).size();
+        assertTrue(size <= 3);
+        assertEquals(count - size, bcServerSessionContext.getSessionCacheEvictions());
+
+        for (int i = 0; i < count; ++i)
+        {
+            connect(2500 + i);
+        }
+        size = Collections.list(serverSessionContext.getIds()).size();
+        assertTrue(size <= 3);
+
+        serverSessionContext.setSessionCacheSize(0);
+        connect(3000);
+        assertEquals(size + 1, Collections.list(serverSessionContext.getIds()).size());
+    }
+
+    public void testConcurrentAccess() throws Exception
+    {
+        final SSLSessionContext serverSessionContext = serverContext.getServerSessionContext();
+
+        final byte[] id = connect(4000);
+
+        final Exception[] failures = new Exception[4];
+        Thread[] threads = new Thread[failures.length];
+        for (int t = 0; t < threads.length; ++t)
+        {
+            final int index = t;
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < 1000; ++i)
+                        {
+                            assertNotNull(serverSessionContext.getSession(id));
+                            serverSessionContext.getSession(new byte[]{ (byte)index, (byte)i });
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        failures[index] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; ++t)
+        {
+            threads[t].join();
+        }
+        for (int t = 0; t < failures.length; ++t)
+        {
+            assertNull(failures[t]);
+        }
+
+        BCSSLSessionContext bcServerSessionContext = (BCSSLSessionContext)serverSessionContext;
+        assertEquals(4000, bcServerSessionContext.getSessionCacheHits());
+        assertEquals(4000, bcServerSessionContext.getSessionCacheMisses());
+    }
+
+    private byte[] connect(int peerPort) throws Exception
+    {
+        SSLEngine clientEngine = clientContext.createSSLEngine(PEER_HOST, peerPort);
+        clientEngine.setEnabledProtocols(new String[]{ "TLSv1.2" });
+        clientEngine.setUseClientMode(true);
+
+        SSLEngine serverEngine = serverContext.createSSLEngine();
+        serverEngine.setEnabledProtocols(new String[]{ "TLSv1.2" });
+        serverEngine.setUseClientMode(false);
+
+        int netBufSize = Math.max(clientEngine.getSession().getPacketBufferSize(),
+            serverEngine.getSession().getPacketBufferSize());
+        int appBufSize = Math.max(clientEngine.getSession().getApplicationBufferSize(),
+            serverEngine.getSession().getApplicationBufferSize());
+
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer clientToServer = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer serverToClient = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer clientIn = ByteBuffer.allocate(appBufSize);
+        ByteBuffer serverIn = ByteBuffer.allocate(appBufSize);
+
+        clientEngine.beginHandshake();
+        serverEngine.beginHandshake();
+
+        for (int i = 0; i < 100; ++i)
+        {
+            if (!isHandshaking(clientEngine) && !isHandshaking(serverEngine))
+            {
+                byte[] sessionID = clientEngine.getSession().getId();
+                assertTrue(java.util.Arrays.equals(sessionID, serverEngine.getSession().getId()));
+                return sessionID;
+            }
+
+            clientEngine.wrap(empty, clientToServer);
+            serverEngine.wrap(empty, serverToClient);
+
+            ((java.nio.Buffer)clientToServer).flip();
+            ((java.nio.Buffer)serverToClient).flip();
+
+            unwrapAvailable(clientEngine, serverToClient, clientIn);
+            unwrapAvailable(serverEngine, clientToServer, serverIn);
+
+            clientToServer.compact();
+            serverToClient.compact();
+        }
+
+        fail("Handshake did not complete");
+        return null;
+    }
+
+    private static boolean isHandshaking(SSLEngine engine)
+    {
+        return engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private static void unwrapAvailable(SSLEngine engine, ByteBuffer src, ByteBuffer dst) throws Exception
+    {
+        while (src.hasRemaining())
+        {
+            SSLEngineResult result = engine.unwrap(src, dst);
+            if (result.getStatus() != Status.OK || result.bytesConsumed() < 1)
+            {
+                break;
+            }
+        }
+    }
+}
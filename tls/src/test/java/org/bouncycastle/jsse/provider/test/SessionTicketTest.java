@@ -0,0 +1,202 @@
+package org.bouncycastle.jsse.provider.test;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.bouncycastle.jsse.BCSSLSessionContext;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that a TLS 1.3 client resumes a session using the ticket issued by the server on a previous
+ * connection to the same peer.
+ */
+public class SessionTicketTest
+    extends TestCase
+{
+    private static final String PEER_HOST = "localhost";
+    private static final int PEER_PORT = 443;
+
+    private SSLContext clientContext;
+    private SSLContext serverContext;
+
+    protected void setUp() throws Exception
+    {
+        ProviderUtils.setupHighPriority(false);
+
+        char[] serverPassword = "serverPassword".toCharArray();
+
+        KeyPair caKeyPair = TestUtils.generateECKeyPair();
+        X509Certificate caCert = TestUtils.generateRootCert(caKeyPair);
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(null, null);
+        ks.setKeyEntry("server", caKeyPair.getPrivate(), serverPassword, new X509Certificate[]{ caCert });
+
+        KeyStore ts = KeyStore.getInstance("JKS");
+        ts.load(null, null);
+        ts.setCertificateEntry("ca", caCert);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        kmf.init(ks, serverPassword);
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance("PKIX", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        tmf.init(ts);
+
+        SecureRandom random = SecureRandom.getInstance("DEFAULT", ProviderUtils.PROVIDER_NAME_BC);
+
+        clientContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        clientContext.init(null, tmf.getTrustManagers(), random);
+
+        serverContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        serverContext.init(kmf.getKeyManagers(), null, random);
+    }
+
+    public void testResumption() throws Exception
+    {
+        BCSSLSessionContext serverSessionContext = (BCSSLSessionContext)serverContext.getServerSessionContext();
+
+        connect(PEER_PORT);
+
+        assertTrue(serverSessionContext.getSessionTicketsIssued() >= 1);
+        assertEquals(0, serverSessionContext.getSessionTicketResumptionAttempts());
+        assertEquals(0, serverSessionContext.getSessionTicketResumptions());
+
+        long ticketsIssued = serverSessionContext.getSessionTicketsIssued();
+
+        connect(PEER_PORT);
+
+        assertEquals(1, serverSessionContext.getSessionTicketResumptionAttempts());
+        assertEquals(1, serverSessionContext.getSessionTicketResumptions());
+
+        // The ticket used is consumed, so a resumed handshake issues a new one
+        assertTrue(serverSessionContext.getSessionTicketsIssued() > ticketsIssued);
+
+        connect(PEER_PORT);
+
+        assertEquals(2, serverSessionContext.getSessionTicketResumptionAttempts());
+        assertEquals(2, serverSessionContext.getSessionTicketResumptions());
+
+        // Tickets are only offered to the peer they were received from
+        connect(PEER_PORT + 1);
+
+        assertEquals(2, serverSessionContext.getSessionTicketResumptionAttempts());
+        assertEquals(2, serverSessionContext.getSessionTicketResumptions());
+    }
+
+    public void testResumptionDisabledByServer() throws Exception
+    {
+        BCSSLSessionContext serverSessionContext = (BCSSLSessionContext)serverContext.getServerSessionContext();
+        serverSessionContext.setSessionTicketKeyProvider(null);
+
+        connect(PEER_PORT);
+        connect(PEER_PORT);
+
+        assertEquals(0, serverSessionContext.getSessionTicketsIssued());
+        assertEquals(0, serverSessionContext.getSessionTicketResumptions());
+    }
+
+    public void testUnknownTicketKey() throws Exception
+    {
+        BCSSLSessionContext serverSessionContext = (BCSSLSessionContext)serverContext.getServerSessionContext();
+
+        connect(PEER_PORT);
+
+        // Simulate a server restart; the client's ticket can no longer be decrypted
+        SSLContext restartedContext = SSLContext.getInstance("TLS", ProviderUtils.PROVIDER_NAME_BCJSSE);
+        restartedContext.init(null, null, null);
+        serverSessionContext.setSessionTicketKeyProvider(
+            ((BCSSLSessionContext)restartedContext.getServerSessionContext()).getSessionTicketKeyProvider());
+
+        connect(PEER_PORT);
+
+        assertEquals(1, serverSessionContext.getSessionTicketResumptionAttempts());
+        assertEquals(0, serverSessionContext.getSessionTicketResumptions());
+    }
+
+    private void connect(int peerPort) throws Exception
+    {
+        SSLEngine clientEngine = clientContext.createSSLEngine(PEER_HOST, peerPort);
+        clientEngine.setEnabledProtocols(new String[]{ "TLSv1.3" });
+        clientEngine.setUseClientMode(true);
+
+        SSLEngine serverEngine = serverContext.createSSLEngine();
+        serverEngine.setEnabledProtocols(new String[]{ "TLSv1.3" });
+        serverEngine.setUseClientMode(false);
+
+        int netBufSize = Math.max(clientEngine.getSession().getPacketBufferSize(),
+            serverEngine.getSession().getPacketBufferSize());
+        int appBufSize = Math.max(clientEngine.getSession().getApplicationBufferSize(),
+            serverEngine.getSession().getApplicationBufferSize());
+
+        ByteBuffer clientToServer = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer serverToClient = ByteBuffer.allocate(netBufSize * 4);
+        ByteBuffer clientIn = ByteBuffer.allocate(appBufSize);
+        ByteBuffer serverIn = ByteBuffer.allocate(appBufSize);
+
+        clientEngine.beginHandshake();
+        serverEngine.beginHandshake();
+
+        /*
+         * The NewSessionTicket follows the server's handshake, so keep exchanging records until the
+         * server's reply to the client's application data has been read.
+         */
+        ByteBuffer clientData = ByteBuffer.wrap(new byte[]{ 1, 2, 3 });
+        ByteBuffer serverData = ByteBuffer.wrap(new byte[]{ 4, 5, 6 });
+
+        for (int i = 0; i < 100; ++i)
+        {
+            if (!isHandshaking(clientEngine) && !isHandshaking(serverEngine) && clientIn.position() > 0)
+            {
+                assertEquals(serverData.capacity(), clientIn.position());
+                assertEquals(clientData.capacity(), serverIn.position());
+
+                clientEngine.closeOutbound();
+                serverEngine.closeOutbound();
+                return;
+            }
+
+            clientEngine.wrap(clientData, clientToServer);
+            serverEngine.wrap(isHandshaking(serverEngine) ? ByteBuffer.allocate(0) : serverData, serverToClient);
+
+            ((java.nio.Buffer)clientToServer).flip();
+            ((java.nio.Buffer)serverToClient).flip();
+
+            unwrapAvailable(clientEngine, serverToClient, clientIn);
+            unwrapAvailable(serverEngine, clientToServer, serverIn);
+
+            clientToServer.compact();
+            serverToClient.compact();
+        }
+
+        fail("Connection did not complete");
+    }
+
+    private static boolean isHandshaking(SSLEngine engine)
+    {
+        return engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private static void unwrapAvailable(SSLEngine engine, ByteBuffer src, ByteBuffer dst) throws Exception
+    {
+        while (src.hasRemaining())
+        {
+            SSLEngineResult result = engine.unwrap(src, dst);
+            if (result.getStatus() != Status.OK || result.bytesConsumed() < 1)
+            {
+                break;
+            }
+        }
+    }
+}
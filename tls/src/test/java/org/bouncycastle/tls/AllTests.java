@@ -21,6 +21,7 @@ public static Test suite()
         TestSuite suite = new TestSuite("TLS tests");
 
         suite.addTestSuite(CheckTlsFeaturesExtensionTest.class);
+        suite.addTestSuite(DTLSReplayWindowTest.class);
 
         return new BCTestSetup(suite);
     }
@@ -0,0 +1,119 @@
+package org.bouncycastle.tls;
+
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link DTLSReplayWindow}, including windows larger than 64 records. Lives in the
+ * {@code org.bouncycastle.tls} package since the class is package-private.
+ */
+public class DTLSReplayWindowTest
+    extends TestCase
+{
+    public void testWindowSize()
+    {
+        assertEquals(64, new DTLSReplayWindow(64).getWindowSize());
+        assertEquals(128, new DTLSReplayWindow(65).getWindowSize());
+        assertEquals(1024, new DTLSReplayWindow(1024).getWindowSize());
+
+        try
+        {
+            new DTLSReplayWindow(63);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
+
+    public void testLargeWindowAcceptsReorderedRecords()
+    {
+        DTLSReplayWindow window = new DTLSReplayWindow(1024);
+
+        assertTrue(accept(window, 2000));
+
+        // Well outside a 64-record window, but inside this one
+        assertTrue(accept(window, 1100));
+        assertFalse(accept(window, 1100));
+
+        assertTrue(window.shouldDiscard(2000 - 1024));
+        assertFalse(window.shouldDiscard(2000 - 1023));
+        assertFalse(window.shouldDiscard(2001));
+    }
+
+    public void testAdvanceClearsStaleBlocks()
+    {
+        DTLSReplayWindow window = new DTLSReplayWindow(128);
+
+        for (long seq = 0; seq < 200; ++seq)
+        {
+            assertTrue(accept(window, seq));
+        }
+
+        // Jump forward by more than the whole ring
+        assertTrue(accept(window, 10000));
+        assertFalse(window.shouldDiscard(9999));
+        assertFalse(window.shouldDiscard(10000 - 127));
+        assertTrue(window.shouldDiscard(10000 - 128));
+        assertTrue(window.shouldDiscard(10000));
+    }
+
+    public void testReset()
+    {
+        DTLSReplayWindow window = new DTLSReplayWindow(256);
+
+        window.reset(100);
+
+        assertTrue(window.shouldDiscard(0));
+        assertTrue(window.shouldDiscard(100));
+        assertTrue(accept(window, 103));
+        assertTrue(accept(window, 101));
+        assertTrue(accept(window, 102));
+        assertFalse(accept(window, 101));
+    }
+
+    public void testAgainstReferenceModel()
+    {
+        SecureRandom random = new SecureRandom();
+
+        int[] windowSizes = new int[]{ 64, 256, 1024 };
+        for (int i = 0; i < windowSizes.length; ++i)
+        {
+            int windowSize = windowSizes[i];
+
+            DTLSReplayWindow window = new DTLSReplayWindow(windowSize);
+            Set<Long> seen = new HashSet<Long>();
+            long latest = -1;
+
+            for (int count = 0; count < 20000; ++count)
+            {
+                long seq = Math.max(0, latest + random.nextInt(windowSize * 3) - (windowSize * 2));
+
+                boolean expected = !seen.contains(Long.valueOf(seq)) && (latest - seq) < windowSize;
+
+                assertEquals(expected, !window.shouldDiscard(seq));
+
+                if (expected)
+                {
+                    assertEquals(seq > latest, window.reportAuthenticated(seq));
+                    seen.add(Long.valueOf(seq));
+                    latest = Math.max(latest, seq);
+                }
+            }
+        }
+    }
+
+    private static boolean accept(DTLSReplayWindow window, long seq)
+    {
+        if (window.shouldDiscard(seq))
+        {
+            return false;
+        }
+        window.reportAuthenticated(seq);
+        return true;
+    }
+}
@@ -1,5 +1,8 @@
 package org.bouncycastle.tls.crypto.test;
 
+import java.util.concurrent.Executor;
+
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyPairPool;
 import org.bouncycastle.tls.crypto.impl.bc.BcTlsCrypto;
 
 public class BcTlsCryptoTest
@@ -9,4 +12,9 @@ public BcTlsCryptoTest()
     {
         super(new BcTlsCrypto());
     }
+
+    protected EphemeralKeyPairPool enableEphemeralKeyPairPool(Executor executor, int capacity)
+    {
+        return ((BcTlsCrypto)crypto).enableEphemeralKeyPairPool(executor, capacity);
+    }
 }
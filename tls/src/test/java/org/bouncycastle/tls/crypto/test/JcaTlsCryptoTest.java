@@ -1,8 +1,11 @@
 package org.bouncycastle.tls.crypto.test;
 
 import java.security.SecureRandom;
+import java.util.concurrent.Executor;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyPairPool;
+import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCrypto;
 import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCryptoProvider;
 
 public class JcaTlsCryptoTest
@@ -12,4 +15,9 @@ public JcaTlsCryptoTest()
     {
         super(new JcaTlsCryptoProvider().setProvider(new BouncyCastleProvider()).create(new SecureRandom()));
     }
+
+    protected EphemeralKeyPairPool enableEphemeralKeyPairPool(Executor executor, int capacity)
+    {
+        return ((JcaTlsCrypto)crypto).enableEphemeralKeyPairPool(executor, capacity);
+    }
 }
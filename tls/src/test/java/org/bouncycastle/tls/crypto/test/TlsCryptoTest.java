@@ -3,6 +3,7 @@
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.util.concurrent.Executor;
 
 import org.bouncycastle.tls.CombinedHash;
 import org.bouncycastle.tls.DefaultTlsDHGroupVerifier;
@@ -35,6 +36,7 @@
 import org.bouncycastle.tls.crypto.TlsStreamSigner;
 import org.bouncycastle.tls.crypto.TlsStreamVerifier;
 import org.bouncycastle.tls.crypto.TlsVerifier;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyPairPool;
 import org.bouncycastle.tls.test.TlsTestUtils;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.encoders.Hex;
@@ -105,6 +107,8 @@ protected TlsCryptoTest(TlsCrypto crypto)
         this.crypto = crypto;
     }
 
+    protected abstract EphemeralKeyPairPool enableEphemeralKeyPairPool(Executor executor, int capacity);
+
     protected TlsCredentialedSigner loadCredentialedSigner(TlsCryptoParameters cryptoParams, String resource,
         SignatureAndHashAlgorithm signatureAndHashAlgorithm) throws IOException
     {
@@ -228,6 +232,58 @@ public void testECDomain() throws Exception
         }
     }
 
+    public void testEphemeralKeyPairPool() throws Exception
+    {
+        // Refill synchronously, so the pool contents are predictable
+        Executor executor = new Executor()
+        {
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        };
+
+        int capacity = 4;
+        EphemeralKeyPairPool pool = enableEphemeralKeyPairPool(executor, capacity);
+
+        int[] namedGroups = { NamedGroup.x25519, NamedGroup.x448, NamedGroup.secp256r1, NamedGroup.MLKEM768 };
+        for (int i = 0; i < namedGroups.length; ++i)
+        {
+            int namedGroup = namedGroups[i];
+            if (!crypto.hasNamedGroup(namedGroup))
+            {
+                continue;
+            }
+
+            pool.prefill(namedGroup);
+            assertEquals(capacity, pool.getSize(namedGroup));
+
+            long hits = pool.getHits();
+
+            if (NamedGroup.refersToASpecificKem(namedGroup))
+            {
+                implTestKemDomain(namedGroup);
+            }
+            else
+            {
+                implTestECDomain(new TlsECConfig(namedGroup));
+            }
+
+            assertTrue(pool.getHits() > hits);
+            assertEquals(capacity, pool.getSize(namedGroup));
+
+            // Each pooled key pair is only handed out once
+            Object keyPair1 = pool.take(namedGroup);
+            Object keyPair2 = pool.take(namedGroup);
+            assertNotNull(keyPair1);
+            assertNotNull(keyPair2);
+            assertNotSame(keyPair1, keyPair2);
+        }
+
+        assertEquals(0L, pool.getMisses());
+        assertEquals(0L, pool.getFailures());
+    }
+
     public void testHKDF() throws IOException
     {
         /*
@@ -0,0 +1,384 @@
+package org.bouncycastle.tls.test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bouncycastle.tls.DTLSClientProtocol;
+import org.bouncycastle.tls.DTLSServerDemultiplexer;
+import org.bouncycastle.tls.DTLSTransport;
+import org.bouncycastle.tls.DatagramTransport;
+import org.bouncycastle.tls.TlsFatalAlert;
+import org.bouncycastle.tls.TlsServer;
+import org.bouncycastle.tls.crypto.impl.bc.BcTlsCrypto;
+import org.bouncycastle.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Runs several DTLS clients against one {@link DTLSServerDemultiplexer} over loopback UDP.
+ */
+public class DTLSServerDemultiplexerTest
+    extends TestCase
+{
+    private static final int MTU = 1500;
+
+    private DatagramChannel serverChannel;
+    private ExecutorService executor;
+    private DTLSServerDemultiplexer demultiplexer;
+    private Thread demultiplexerThread;
+    private EchoHandler handler;
+    private volatile IOException runFailure;
+
+    protected void setUp() throws Exception
+    {
+        serverChannel = DatagramChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        executor = Executors.newCachedThreadPool();
+        handler = new EchoHandler();
+        demultiplexer = new DTLSServerDemultiplexer(serverChannel, MTU, new BcTlsCrypto(), executor, handler);
+
+        demultiplexerThread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    demultiplexer.run();
+                }
+                catch (IOException e)
+                {
+                    runFailure = e;
+                }
+            }
+        };
+        demultiplexerThread.start();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        demultiplexer.close();
+        demultiplexerThread.join();
+        executor.shutdownNow();
+
+        assertNull(runFailure);
+        assertTrue(handler.acceptFailures.isEmpty());
+    }
+
+    public void testMultipleClients() throws Exception
+    {
+        ClientTransport[] transports = new ClientTransport[3];
+        DTLSTransport[] clients = new DTLSTransport[transports.length];
+
+        for (int i = 0; i < clients.length; ++i)
+        {
+            transports[i] = new ClientTransport(serverChannel.socket().getLocalSocketAddress());
+            clients[i] = new DTLSClientProtocol().connect(new MockPSKDTLSClient(null), transports[i]);
+        }
+
+        assertEquals(clients.length, demultiplexer.getAssociationCount());
+
+        for (int round = 0; round < 3; ++round)
+        {
+            for (int i = 0; i < clients.length; ++i)
+            {
+                checkEcho(clients[i], (byte)(round * clients.length + i));
+            }
+        }
+
+        assertEquals(clients.length, handler.accepted);
+
+        for (int i = 0; i < clients.length; ++i)
+        {
+            clients[i].close();
+        }
+    }
+
+    public void testConnectionIDMigration() throws Exception
+    {
+        ClientTransport transport = new ClientTransport(serverChannel.socket().getLocalSocketAddress());
+        DTLSTransport client = new DTLSClientProtocol().connect(new ConnectionIDClient(), transport);
+
+        checkEcho(client, (byte)1);
+
+        DTLSServerDemultiplexer.Association association = handler.lastAssociation;
+        assertNotNull(association.getConnectionID());
+        assertEquals(transport.getLocalAddress(), association.getPeerAddress());
+
+        // Simulate a NAT rebinding; only the connection ID lets the server find the association
+        transport.rebind();
+
+        checkEcho(client, (byte)2);
+
+        assertEquals(transport.getLocalAddress(), association.getPeerAddress());
+        assertEquals(1, demultiplexer.getAssociationCount());
+
+        client.close();
+    }
+
+    public void testConnectionIDMigrationToUsedAddress() throws Exception
+    {
+        ClientTransport transport = new ClientTransport(serverChannel.socket().getLocalSocketAddress());
+        DTLSTransport client = new DTLSClientProtocol().connect(new ConnectionIDClient(), transport);
+
+        checkEcho(client, (byte)1);
+
+        DTLSServerDemultiplexer.Association association = handler.lastAssociation;
+
+        ClientTransport otherTransport = new ClientTransport(serverChannel.socket().getLocalSocketAddress());
+        DTLSTransport otherClient = new DTLSClientProtocol().connect(new MockPSKDTLSClient(null), otherTransport);
+
+        checkEcho(otherClient, (byte)1);
+
+        DTLSServerDemultiplexer.Association otherAssociation = handler.lastAssociation;
+        assertNotSame(association, otherAssociation);
+        assertEquals(2, demultiplexer.getAssociationCount());
+
+        // The other client goes away silently, and its address is then reused by the first client
+        SocketAddress otherAddress = otherTransport.getLocalAddress();
+        otherTransport.close();
+        transport.rebind(otherAddress);
+
+        checkEcho(client, (byte)2);
+
+        assertEquals(otherAddress, association.getPeerAddress());
+
+        // The other association is closed rather than left without its address
+        long deadline = System.currentTimeMillis() + 10000;
+        while (demultiplexer.getAssociationCount() > 1 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(1, demultiplexer.getAssociationCount());
+
+        try
+        {
+            otherAssociation.send(new byte[1], 0, 1);
+            fail("expected the other association to be closed");
+        }
+        catch (IOException e)
+        {
+            // NOTE: Expected
+        }
+
+        checkEcho(client, (byte)3);
+
+        client.close();
+    }
+
+    public void testCreateServerFailure() throws Exception
+    {
+        handler.failCreate = true;
+
+        final ClientTransport transport = new ClientTransport(serverChannel.socket().getLocalSocketAddress());
+        Thread clientThread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    new DTLSClientProtocol().connect(new MockPSKDTLSClient(null), transport);
+                }
+                catch (IOException e)
+                {
+                    // NOTE: Expected, once the transport is closed below
+                }
+            }
+        };
+        clientThread.start();
+
+        try
+        {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (handler.acceptFailures.isEmpty() && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1, handler.acceptFailures.size());
+            Exception e = (Exception)handler.acceptFailures.remove(0);
+            assertTrue(e instanceof TlsFatalAlert);
+            assertTrue(e.getCause() instanceof IllegalStateException);
+
+            // The failed association is no longer tracked
+            assertEquals(0, demultiplexer.getAssociationCount());
+            assertEquals(0, handler.accepted);
+        }
+        finally
+        {
+            transport.close();
+            clientThread.join();
+        }
+    }
+
+    private static void checkEcho(DTLSTransport client, byte value) throws IOException
+    {
+        byte[] data = new byte[32];
+        Arrays.fill(data, value);
+
+        client.send(data, 0, data.length);
+
+        byte[] buf = new byte[client.getReceiveLimit()];
+        int length = client.receive(buf, 0, buf.length, 5000);
+
+        assertEquals(data.length, length);
+        assertTrue(Arrays.areEqual(data, Arrays.copyOf(buf, length)));
+    }
+
+    static class ConnectionIDClient
+        extends MockPSKDTLSClient
+    {
+        ConnectionIDClient()
+        {
+            super(null);
+        }
+
+        protected byte[] getNewConnectionID()
+        {
+            // The client doesn't need the server to send a connection ID
+            return new byte[0];
+        }
+    }
+
+    static class ConnectionIDServer
+        extends MockPSKDTLSServer
+    {
+        protected byte[] getNewConnectionID()
+        {
+            return context.getNonceGenerator().generateNonce(8);
+        }
+    }
+
+    static class EchoHandler
+        implements DTLSServerDemultiplexer.Handler
+    {
+        final List acceptFailures = Collections.synchronizedList(new ArrayList());
+        volatile boolean failCreate = false;
+        volatile int accepted = 0;
+        volatile DTLSServerDemultiplexer.Association lastAssociation = null;
+
+        public TlsServer createServer(SocketAddress peerAddress)
+        {
+            if (failCreate)
+            {
+                throw new IllegalStateException("no server available");
+            }
+            return new ConnectionIDServer();
+        }
+
+        public void notifyAccepted(DTLSServerDemultiplexer.Association association) throws IOException
+        {
+            synchronized (this)
+            {
+                ++accepted;
+            }
+            lastAssociation = association;
+
+            try
+            {
+                byte[] buf = new byte[association.getReceiveLimit()];
+                int length;
+                while ((length = association.receive(buf, 0, buf.length, 10000)) >= 0)
+                {
+                    association.send(buf, 0, length);
+                }
+            }
+            finally
+            {
+                association.close();
+            }
+        }
+
+        public void notifyAcceptFailed(SocketAddress peerAddress, IOException e)
+        {
+            acceptFailures.add(e);
+        }
+    }
+
+    /**
+     * A client-side transport over a connected {@link DatagramSocket} whose local port can be changed.
+     */
+    static class ClientTransport
+        implements DatagramTransport
+    {
+        private final SocketAddress serverAddress;
+        private volatile DatagramSocket socket;
+
+        ClientTransport(SocketAddress serverAddress) throws IOException
+        {
+            this.serverAddress = serverAddress;
+            this.socket = openSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        }
+
+        SocketAddress getLocalAddress()
+        {
+            return socket.getLocalSocketAddress();
+        }
+
+        void rebind() throws IOException
+        {
+            rebind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        }
+
+        void rebind(SocketAddress localAddress) throws IOException
+        {
+            DatagramSocket oldSocket = socket;
+            this.socket = openSocket(localAddress);
+            oldSocket.close();
+        }
+
+        public int getReceiveLimit()
+        {
+            return MTU - 20 - 8;
+        }
+
+        public int getSendLimit()
+        {
+            return MTU - 84 - 8;
+        }
+
+        public int receive(byte[] buf, int off, int len, int waitMillis) throws IOException
+        {
+            DatagramSocket socket = this.socket;
+            socket.setSoTimeout(waitMillis);
+            DatagramPacket packet = new DatagramPacket(buf, off, len);
+            try
+            {
+                socket.receive(packet);
+            }
+            catch (SocketTimeoutException e)
+            {
+                return -1;
+            }
+            return packet.getLength();
+        }
+
+        public void send(byte[] buf, int off, int len) throws IOException
+        {
+            socket.send(new DatagramPacket(buf, off, len));
+        }
+
+        public void close() throws IOException
+        {
+            socket.close();
+        }
+
+        private DatagramSocket openSocket(SocketAddress localAddress) throws IOException
+        {
+            DatagramSocket socket = new DatagramSocket(localAddress);
+            socket.connect(serverAddress);
+            return socket;
+        }
+    }
+}
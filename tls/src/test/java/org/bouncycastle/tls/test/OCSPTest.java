@@ -7,6 +7,8 @@
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
 import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
@@ -24,6 +26,9 @@
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 import org.bouncycastle.tls.Certificate;
+import org.bouncycastle.tls.CertificateStatus;
+import org.bouncycastle.tls.CertificateStatusType;
+import org.bouncycastle.tls.OCSPStaplingManager;
 import org.bouncycastle.tls.crypto.TlsCertificate;
 import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCrypto;
 import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCryptoProvider;
@@ -147,4 +152,216 @@ public void testOCSPResponder()
         assertEquals(resps[0].getCertID(), new JcaCertificateID(digCalc, caCert, cert2.getSerialNumber()));
         assertNotNull(resps[0].getCertStatus());
     }
+
+    public void testOCSPStaplingManager()
+        throws Exception
+    {
+        JcaTlsCrypto crypto = (JcaTlsCrypto)new JcaTlsCryptoProvider().create(new SecureRandom());
+
+        TestOCSPCertServer server = new TestOCSPCertServer();
+        final OCSPResponder responder = new TestOCSPResponderImpl(server);
+
+        X509CertificateHolder[] chainCerts = server.issueClientCert("CN=Okay", false).getCertificateChain();
+        Certificate chain = new Certificate(new TlsCertificate[]{
+            crypto.createCertificate(chainCerts[0].getEncoded()),
+            crypto.createCertificate(chainCerts[1].getEncoded())});
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            OCSPStaplingManager staplingManager = new OCSPStaplingManager(crypto, new OCSPStaplingManager.Fetcher()
+            {
+                public OCSPResponse fetchOCSPResponse(TlsCertificate certificate, TlsCertificate issuer)
+                    throws IOException
+                {
+                    return responder.getResponses(new Certificate(new TlsCertificate[]{ certificate }))[0];
+                }
+            }, executor);
+
+            // Nothing is available (and nothing blocks) until the background fetch completes
+            staplingManager.register(chain);
+            waitFor(staplingManager, 1);
+
+            CertificateStatus status = staplingManager.getCertificateStatus(chain, false);
+            assertNotNull(status);
+            assertEquals(CertificateStatusType.ocsp, status.getStatusType());
+            assertEquals(OCSPResponseStatus.SUCCESSFUL, status.getOCSPResponse().getResponseStatus().getIntValue());
+
+            status = staplingManager.getCertificateStatus(chain, true);
+            assertNotNull(status);
+            assertEquals(CertificateStatusType.ocsp_multi, status.getStatusType());
+            assertEquals(1, status.getOCSPResponseList().size());
+
+            assertEquals(1, staplingManager.size());
+            assertEquals(2, staplingManager.getHits());
+            assertEquals(1, staplingManager.getFetches());
+
+            staplingManager.unregister(chain);
+            assertEquals(0, staplingManager.size());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testOCSPStaplingManagerFetchFailure()
+        throws Exception
+    {
+        JcaTlsCrypto crypto = (JcaTlsCrypto)new JcaTlsCryptoProvider().create(new SecureRandom());
+
+        TestOCSPCertServer server = new TestOCSPCertServer();
+
+        X509CertificateHolder[] chainCerts = server.issueClientCert("CN=Okay", false).getCertificateChain();
+        Certificate chain = new Certificate(new TlsCertificate[]{
+            crypto.createCertificate(chainCerts[0].getEncoded()),
+            crypto.createCertificate(chainCerts[1].getEncoded())});
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            final OCSPResponse unsuccessful = new OCSPResponse(
+                new OCSPResponseStatus(OCSPResponseStatus.TRY_LATER), null);
+
+            OCSPStaplingManager staplingManager = new OCSPStaplingManager(crypto, new OCSPStaplingManager.Fetcher()
+            {
+                public OCSPResponse fetchOCSPResponse(TlsCertificate certificate, TlsCertificate issuer)
+                {
+                    return unsuccessful;
+                }
+            }, executor);
+            staplingManager.setRetryMillis(10);
+
+            assertNull(staplingManager.getCertificateStatus(chain, false));
+
+            while (staplingManager.getFetchFailures() < 3)
+            {
+                Thread.sleep(10);
+            }
+
+            assertNull(staplingManager.getCertificateStatus(chain, false));
+            assertEquals(0, staplingManager.getFetches());
+            assertEquals(2, staplingManager.getMisses());
+
+            staplingManager.clear();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testOCSPStaplingManagerWrongCertificate()
+        throws Exception
+    {
+        final JcaTlsCrypto crypto = (JcaTlsCrypto)new JcaTlsCryptoProvider().create(new SecureRandom());
+
+        TestOCSPCertServer server = new TestOCSPCertServer();
+        final OCSPResponder responder = new TestOCSPResponderImpl(server);
+
+        X509CertificateHolder[] chainCerts = server.issueClientCert("CN=Okay", false).getCertificateChain();
+        Certificate chain = new Certificate(new TlsCertificate[]{
+            crypto.createCertificate(chainCerts[0].getEncoded()),
+            crypto.createCertificate(chainCerts[1].getEncoded())});
+
+        final TlsCertificate other = crypto.createCertificate(
+            server.issueClientCert("CN=Other", false).getCertificate().getEncoded());
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            // a good response, but for another certificate from the same issuer
+            OCSPStaplingManager staplingManager = new OCSPStaplingManager(crypto, new OCSPStaplingManager.Fetcher()
+            {
+                public OCSPResponse fetchOCSPResponse(TlsCertificate certificate, TlsCertificate issuer)
+                    throws IOException
+                {
+                    return responder.getResponses(new Certificate(new TlsCertificate[]{ other }))[0];
+                }
+            }, executor);
+
+            staplingManager.register(chain);
+
+            for (int i = 0; i < 500 && staplingManager.getFetchFailures() < 1; ++i)
+            {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1, staplingManager.getFetchFailures());
+            assertEquals(0, staplingManager.getFetches());
+            assertNull(staplingManager.getCertificateStatus(chain, false));
+
+            staplingManager.clear();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testOCSPStaplingManagerEviction()
+        throws Exception
+    {
+        JcaTlsCrypto crypto = (JcaTlsCrypto)new JcaTlsCryptoProvider().create(new SecureRandom());
+
+        TestOCSPCertServer server = new TestOCSPCertServer();
+
+        X509CertificateHolder[] chainCerts = server.issueClientCert("CN=Okay", false).getCertificateChain();
+        Certificate chain = new Certificate(new TlsCertificate[]{
+            crypto.createCertificate(chainCerts[0].getEncoded()),
+            crypto.createCertificate(chainCerts[1].getEncoded())});
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            final OCSPResponse unsuccessful = new OCSPResponse(
+                new OCSPResponseStatus(OCSPResponseStatus.TRY_LATER), null);
+
+            OCSPStaplingManager staplingManager = new OCSPStaplingManager(crypto, new OCSPStaplingManager.Fetcher()
+            {
+                public OCSPResponse fetchOCSPResponse(TlsCertificate certificate, TlsCertificate issuer)
+                {
+                    return unsuccessful;
+                }
+            }, executor);
+            staplingManager.setRetryMillis(10);
+            staplingManager.setIdleMillis(200);
+
+            // the certificate is only requested once, so it is dropped (without unregister) once idle
+            assertNull(staplingManager.getCertificateStatus(chain, false));
+            assertEquals(1, staplingManager.size());
+
+            for (int i = 0; i < 500 && staplingManager.size() > 0; ++i)
+            {
+                Thread.sleep(10);
+            }
+
+            assertEquals(0, staplingManager.size());
+            assertEquals(1, staplingManager.getEvictions());
+
+            long fetchFailures = staplingManager.getFetchFailures();
+            Thread.sleep(100);
+            assertEquals(fetchFailures, staplingManager.getFetchFailures());
+
+            // a later request adds it again
+            assertNull(staplingManager.getCertificateStatus(chain, false));
+            assertEquals(1, staplingManager.size());
+
+            staplingManager.clear();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void waitFor(OCSPStaplingManager staplingManager, long fetches)
+        throws InterruptedException
+    {
+        for (int i = 0; i < 500 && staplingManager.getFetches() < fetches; ++i)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(fetches, staplingManager.getFetches());
+    }
 }
@@ -0,0 +1,276 @@
+package org.bouncycastle.tls.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.bouncycastle.tls.BasicTlsPSKResumption;
+import org.bouncycastle.tls.EarlyDataReplayFilter;
+import org.bouncycastle.tls.NamedGroup;
+import org.bouncycastle.tls.NewSessionTicket;
+import org.bouncycastle.tls.PskIdentity;
+import org.bouncycastle.tls.SessionParameters;
+import org.bouncycastle.tls.TlsClientProtocol;
+import org.bouncycastle.tls.TlsPSKResumption;
+import org.bouncycastle.tls.TlsServerProtocol;
+import org.bouncycastle.tls.TlsUtils;
+import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Strings;
+import org.bouncycastle.util.encoders.Hex;
+import org.bouncycastle.util.io.Streams;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for TLS 1.3 early data (0-RTT) on resumption, and the {@link EarlyDataReplayFilter}.
+ */
+public class Tls13EarlyDataTest
+    extends TestCase
+{
+    private static final byte[] EARLY_DATA = Strings.toByteArray("GET /early HTTP/1.1\r\n\r\n");
+    private static final byte[] LATE_DATA = Strings.toByteArray("GET /late HTTP/1.1\r\n\r\n");
+
+    public void testEarlyDataAccepted() throws Exception
+    {
+        EarlyDataServer server = new EarlyDataServer(1024L, true);
+
+        TlsPSKResumption resumptionPSK = establishTicket(server);
+        assertEquals(1024L, resumptionPSK.getMaxEarlyDataSize());
+
+        EarlyDataClient client = new EarlyDataClient(resumptionPSK, EARLY_DATA);
+
+        // The early data is echoed ahead of the data sent after the handshake
+        connect(client, server, Arrays.concatenate(EARLY_DATA, LATE_DATA));
+
+        assertEquals(Boolean.TRUE, client.earlyDataAccepted);
+        assertEquals(1, server.earlyDataOffers);
+    }
+
+    public void testEarlyDataRejected() throws Exception
+    {
+        EarlyDataServer server = new EarlyDataServer(1024L, false);
+
+        TlsPSKResumption resumptionPSK = establishTicket(server);
+
+        EarlyDataClient client = new EarlyDataClient(resumptionPSK, EARLY_DATA);
+
+        // The server skips the early data
+        connect(client, server, LATE_DATA);
+
+        assertEquals(Boolean.FALSE, client.earlyDataAccepted);
+        assertEquals(1, server.earlyDataOffers);
+    }
+
+    public void testEarlyDataRejectedByHelloRetryRequest() throws Exception
+    {
+        EarlyDataServer server = new EarlyDataServer(1024L, true);
+
+        TlsPSKResumption resumptionPSK = establishTicket(server);
+
+        // Server only supports a group that the client doesn't send a key share for
+        server.supportedGroups = new int[]{ NamedGroup.secp256r1 };
+
+        EarlyDataClient client = new EarlyDataClient(resumptionPSK, EARLY_DATA);
+
+        connect(client, server, LATE_DATA);
+
+        assertEquals(Boolean.FALSE, client.earlyDataAccepted);
+        assertEquals(0, server.earlyDataOffers);
+    }
+
+    public void testNoEarlyDataWithoutTicketPermission() throws Exception
+    {
+        EarlyDataServer server = new EarlyDataServer(0L, true);
+
+        TlsPSKResumption resumptionPSK = establishTicket(server);
+        assertEquals(0L, resumptionPSK.getMaxEarlyDataSize());
+
+        EarlyDataClient client = new EarlyDataClient(resumptionPSK, EARLY_DATA);
+
+        connect(client, server, LATE_DATA);
+
+        assertNull(client.earlyDataAccepted);
+        assertEquals(0, server.earlyDataOffers);
+    }
+
+    public void testReplayFilter()
+    {
+        EarlyDataReplayFilter filter = new EarlyDataReplayFilter(1000L, 3);
+
+        byte[] a = Hex.decode("01"), b = Hex.decode("02"), c = Hex.decode("03"), d = Hex.decode("04");
+
+        assertTrue(filter.checkAndRecord(a, 0L));
+        assertFalse(filter.checkAndRecord(a, 10L));
+        assertTrue(filter.checkAndRecord(b, 20L));
+        assertTrue(filter.checkAndRecord(c, 30L));
+
+        // At capacity
+        assertFalse(filter.checkAndRecord(d, 40L));
+        assertEquals(3, filter.size());
+
+        // Values are still remembered in the following window...
+        assertFalse(filter.checkAndRecord(a, 1500L));
+        assertFalse(filter.checkAndRecord(d, 1500L));
+
+        // ...and forgotten after that
+        assertTrue(filter.checkAndRecord(d, 2500L));
+        assertTrue(filter.checkAndRecord(a, 2500L));
+        assertEquals(2, filter.size());
+
+        // A long gap forgets everything
+        assertTrue(filter.checkAndRecord(a, 10000L));
+        assertEquals(1, filter.size());
+    }
+
+    private TlsPSKResumption establishTicket(EarlyDataServer server) throws Exception
+    {
+        EarlyDataClient client = new EarlyDataClient(null, null);
+
+        connect(client, server, LATE_DATA);
+
+        assertNotNull(client.newResumptionPSK);
+        return client.newResumptionPSK;
+    }
+
+    /**
+     * Run a handshake, then send {@link #LATE_DATA} and check what the (echo) server sends back.
+     */
+    private void connect(EarlyDataClient client, EarlyDataServer server, byte[] expectedEcho) throws Exception
+    {
+        PipedInputStream clientRead = TlsTestUtils.createPipedInputStream();
+        PipedInputStream serverRead = TlsTestUtils.createPipedInputStream();
+        PipedOutputStream clientWrite = new PipedOutputStream(serverRead);
+        PipedOutputStream serverWrite = new PipedOutputStream(clientRead);
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol(clientRead, clientWrite);
+        TlsServerProtocol serverProtocol = new TlsServerProtocol(serverRead, serverWrite);
+
+        Tls13PSKProtocolTest.ServerThread serverThread = new Tls13PSKProtocolTest.ServerThread(serverProtocol,
+            server);
+        serverThread.start();
+
+        clientProtocol.connect(client);
+
+        OutputStream output = clientProtocol.getOutputStream();
+        output.write(LATE_DATA);
+
+        byte[] echo = new byte[expectedEcho.length];
+        int count = Streams.readFully(clientProtocol.getInputStream(), echo);
+
+        assertEquals(expectedEcho.length, count);
+        assertTrue(Arrays.areEqual(expectedEcho, echo));
+
+        output.close();
+
+        serverThread.join();
+    }
+
+    static class EarlyDataClient
+        extends MockPSKTls13Client
+    {
+        private final TlsPSKResumption resumptionPSK;
+        private final byte[] earlyData;
+
+        Boolean earlyDataAccepted = null;
+        TlsPSKResumption newResumptionPSK = null;
+
+        EarlyDataClient(TlsPSKResumption resumptionPSK, byte[] earlyData)
+        {
+            this.resumptionPSK = resumptionPSK;
+            this.earlyData = earlyData;
+        }
+
+        public Vector getResumptionPSKs()
+        {
+            return null == resumptionPSK ? null : TlsUtils.vectorOfOne(resumptionPSK);
+        }
+
+        public byte[] getEarlyData(TlsPSKResumption resumptionPSK) throws IOException
+        {
+            assertSame(this.resumptionPSK, resumptionPSK);
+            return earlyData;
+        }
+
+        public void notifyEarlyDataAccepted(boolean accepted) throws IOException
+        {
+            assertNull(earlyDataAccepted);
+            this.earlyDataAccepted = Boolean.valueOf(accepted);
+        }
+
+        public void notifyResumptionPSK(TlsPSKResumption resumptionPSK) throws IOException
+        {
+            if (null == newResumptionPSK)
+            {
+                this.newResumptionPSK = resumptionPSK;
+            }
+        }
+    }
+
+    static class EarlyDataServer
+        extends MockPSKTls13Server
+    {
+        private final Hashtable tickets = new Hashtable();
+        private final EarlyDataReplayFilter replayFilter = new EarlyDataReplayFilter(10000L, 100);
+        private final long maxEarlyDataSize;
+        private final boolean acceptEarlyData;
+
+        int[] supportedGroups = null;
+        int earlyDataOffers = 0;
+
+        EarlyDataServer(long maxEarlyDataSize, boolean acceptEarlyData)
+        {
+            this.maxEarlyDataSize = maxEarlyDataSize;
+            this.acceptEarlyData = acceptEarlyData;
+        }
+
+        public int[] getSupportedGroups() throws IOException
+        {
+            return null == supportedGroups ? super.getSupportedGroups() : supportedGroups;
+        }
+
+        public long getMaxEarlyDataSize()
+        {
+            return maxEarlyDataSize;
+        }
+
+        public boolean acceptEarlyData(TlsPSKResumption resumptionPSK, byte[] clientHelloID) throws IOException
+        {
+            ++earlyDataOffers;
+            return acceptEarlyData && replayFilter.checkAndRecord(clientHelloID);
+        }
+
+        public NewSessionTicket getNewSessionTicket13(SessionParameters sessionParameters, TlsSecret resumptionPSK,
+            long ticketAgeAdd) throws IOException
+        {
+            byte[] ticket = context.getNonceGenerator().generateNonce(16);
+
+            tickets.put(Hex.toHexString(ticket), new Object[]{ sessionParameters, resumptionPSK.extract() });
+
+            return new NewSessionTicket(3600L, ticket);
+        }
+
+        public TlsPSKResumption getResumptionPSK(Vector identities) throws IOException
+        {
+            for (int i = 0; i < identities.size(); ++i)
+            {
+                byte[] ticket = ((PskIdentity)identities.elementAt(i)).getIdentity();
+
+                Object[] entry = (Object[])tickets.get(Hex.toHexString(ticket));
+                if (null != entry)
+                {
+                    SessionParameters sessionParameters = (SessionParameters)entry[0];
+                    TlsSecret key = getCrypto().createSecret((byte[])entry[1]);
+
+                    int prfAlgorithm = TlsUtils.getPRFAlgorithm13(sessionParameters.getCipherSuite());
+
+                    return new BasicTlsPSKResumption(ticket, key, prfAlgorithm, sessionParameters);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.bouncycastle.tls.test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.bouncycastle.tls.TlsClientProtocol;
 import org.bouncycastle.tls.TlsProtocol;
@@ -23,6 +24,117 @@ public void testClientServerNonFragmented() throws IOException
         testClientServer(false);
     }
 
+    public void testGatheringWrite() throws Exception
+    {
+        MockPSKTls13Client client = new MockPSKTls13Client();
+        MockPSKTls13Server server = new MockPSKTls13Server();
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol();
+        TlsServerProtocol serverProtocol = new TlsServerProtocol();
+
+        clientProtocol.connect(client);
+        serverProtocol.accept(server);
+
+        for (int i = 0; i < 10 && (clientProtocol.isHandshaking() || serverProtocol.isHandshaking()); ++i)
+        {
+            pumpData(clientProtocol, serverProtocol, false);
+            pumpData(serverProtocol, clientProtocol, false);
+        }
+        assertFalse(clientProtocol.isHandshaking());
+        assertFalse(serverProtocol.isHandshaking());
+
+        byte[] data = new byte[65100];
+        client.getCrypto().getSecureRandom().nextBytes(data);
+
+        // A mix of array-backed, direct and read-only buffers, not aligned with record boundaries
+        ByteBuffer[] srcs = new ByteBuffer[]{
+            ByteBuffer.wrap(data, 0, 20000).slice(),
+            (ByteBuffer)ByteBuffer.allocateDirect(5000).put(data, 20000, 5000).flip(),
+            ByteBuffer.wrap(data, 25000, 100).slice().asReadOnlyBuffer(),
+            ByteBuffer.wrap(data, 25100, 40000).slice(),
+        };
+
+        long records = clientProtocol.getRecordsWritten();
+        long flushes = clientProtocol.getOutputFlushes();
+
+        assertEquals(data.length, clientProtocol.writeApplicationData(srcs));
+
+        // Full-sized records regardless of the buffer boundaries, written out together
+        assertEquals(records + 4, clientProtocol.getRecordsWritten());
+        assertEquals(flushes + 1, clientProtocol.getOutputFlushes());
+
+        for (int i = 0; i < srcs.length; ++i)
+        {
+            assertFalse(srcs[i].hasRemaining());
+        }
+
+        pumpData(clientProtocol, serverProtocol, false);
+
+        byte[] received = new byte[data.length];
+        assertEquals(data.length, serverProtocol.getAvailableInputBytes());
+        assertEquals(data.length, serverProtocol.readInput(received, 0, received.length));
+        assertTrue(Arrays.areEqual(data, received));
+    }
+
+    public void testProcessInputDirectBuffers() throws Exception
+    {
+        MockPSKTls13Client client = new MockPSKTls13Client();
+        MockPSKTls13Server server = new MockPSKTls13Server();
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol();
+        TlsServerProtocol serverProtocol = new TlsServerProtocol();
+
+        clientProtocol.connect(client);
+        serverProtocol.accept(server);
+
+        ByteBuffer appData = ByteBuffer.allocateDirect(1000);
+
+        for (int i = 0; i < 10 && (clientProtocol.isHandshaking() || serverProtocol.isHandshaking()); ++i)
+        {
+            assertEquals(0, serverProtocol.processInput(directOutput(clientProtocol), appData));
+            assertEquals(0, clientProtocol.processInput(directOutput(serverProtocol), appData));
+        }
+        assertFalse(clientProtocol.isHandshaking());
+        assertFalse(serverProtocol.isHandshaking());
+
+        byte[] data = new byte[3000];
+        client.getCrypto().getSecureRandom().nextBytes(data);
+
+        clientProtocol.writeApplicationData(data, 0, 1500);
+        clientProtocol.writeApplicationData(data, 1500, 1500);
+
+        ByteBuffer input = directOutput(clientProtocol);
+        int inputSize = input.remaining();
+
+        // Hold back the end of the second record
+        ((java.nio.Buffer)input).limit(inputSize - 10);
+
+        ByteBuffer received = ByteBuffer.allocate(data.length);
+
+        // The first record fills the application data buffer (the rest is kept back)
+        assertEquals(1000, serverProtocol.processInput(input, appData));
+        assertEquals(500, serverProtocol.getAvailableInputBytes());
+        received.put((ByteBuffer)appData.flip());
+        appData.clear();
+
+        // The kept data is delivered, but the partial record is left in the input
+        assertEquals(500, serverProtocol.processInput(input, appData));
+        assertEquals(inputSize - 10, input.limit());
+        assertTrue(input.hasRemaining());
+        received.put((ByteBuffer)appData.flip());
+        appData.clear();
+
+        ((java.nio.Buffer)input).limit(inputSize);
+        while (received.hasRemaining())
+        {
+            serverProtocol.processInput(input, appData);
+            received.put((ByteBuffer)appData.flip());
+            appData.clear();
+        }
+        assertFalse(input.hasRemaining());
+        assertTrue(Arrays.areEqual(data, received.array()));
+    }
+
     private static void testClientServer(boolean fragment) throws IOException
     {
         TlsClientProtocol clientProtocol = new TlsClientProtocol();
@@ -98,6 +210,15 @@ private static boolean pumpData(TlsProtocol from, TlsProtocol to, boolean fragme
         return true;
     }
 
+    private static ByteBuffer directOutput(TlsProtocol from)
+    {
+        int available = from.getAvailableOutputBytes();
+        ByteBuffer output = ByteBuffer.allocateDirect(available);
+        from.readOutput(output, available);
+        ((java.nio.Buffer)output).flip();
+        return output;
+    }
+
     private static void checkClosed(TlsProtocol protocol)
     {
         assertTrue(protocol.isClosed());
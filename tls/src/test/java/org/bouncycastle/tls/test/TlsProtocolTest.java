@@ -4,7 +4,12 @@
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 
+import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.ProtocolVersion;
 import org.bouncycastle.tls.TlsClientProtocol;
+import org.bouncycastle.tls.TlsFatalAlertReceived;
+import org.bouncycastle.tls.TlsHandshakeMetrics;
+import org.bouncycastle.tls.TlsHandshakeMetricsListener;
 import org.bouncycastle.tls.TlsServer;
 import org.bouncycastle.tls.TlsServerProtocol;
 import org.bouncycastle.util.Arrays;
@@ -53,6 +58,180 @@ public void testClientServer() throws Exception
         serverThread.join();
     }
 
+    public void testWriteCoalescing() throws Exception
+    {
+        MockPSKTls13Client client = new MockPSKTls13Client();
+        MockPSKTls13Server server = new MockPSKTls13Server();
+
+        PipedInputStream clientRead = TlsTestUtils.createPipedInputStream();
+        PipedInputStream serverRead = TlsTestUtils.createPipedInputStream();
+        PipedOutputStream clientWrite = new PipedOutputStream(serverRead);
+        PipedOutputStream serverWrite = new PipedOutputStream(clientRead);
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol(clientRead, clientWrite);
+        TlsServerProtocol serverProtocol = new TlsServerProtocol(serverRead, serverWrite);
+
+        ServerThread serverThread = new ServerThread(serverProtocol, server);
+        serverThread.start();
+
+        clientProtocol.connect(client);
+
+        clientProtocol.setWriteCoalescing(4096, true);
+        assertEquals(4096, clientProtocol.getWriteCoalescingLimit());
+        assertTrue(clientProtocol.isWriteCoalescingDeferFlush());
+
+        byte[] data = new byte[1000];
+        client.getCrypto().getSecureRandom().nextBytes(data);
+
+        long records = clientProtocol.getRecordsWritten();
+        long flushes = clientProtocol.getOutputFlushes();
+
+        OutputStream output = clientProtocol.getOutputStream();
+        for (int i = 0; i < 10; ++i)
+        {
+            output.write(data, i * 100, 100);
+        }
+
+        assertEquals(records + 10, clientProtocol.getRecordsWritten());
+        assertEquals(flushes, clientProtocol.getOutputFlushes());
+
+        output.flush();
+
+        assertEquals(flushes + 1, clientProtocol.getOutputFlushes());
+
+        byte[] echo = new byte[data.length];
+        int count = Streams.readFully(clientProtocol.getInputStream(), echo);
+
+        assertEquals(count, data.length);
+        assertTrue(Arrays.areEqual(data, echo));
+
+        output.close();
+
+        serverThread.join();
+    }
+
+    public void testHandshakeMetrics() throws Exception
+    {
+        final MetricsListener clientMetrics = new MetricsListener();
+        final MetricsListener serverMetrics = new MetricsListener();
+
+        MockPSKTls13Client client = new MockPSKTls13Client()
+        {
+            public TlsHandshakeMetricsListener getHandshakeMetricsListener()
+            {
+                return clientMetrics;
+            }
+        };
+        MockPSKTls13Server server = new MockPSKTls13Server()
+        {
+            public TlsHandshakeMetricsListener getHandshakeMetricsListener()
+            {
+                return serverMetrics;
+            }
+        };
+
+        PipedInputStream clientRead = TlsTestUtils.createPipedInputStream();
+        PipedInputStream serverRead = TlsTestUtils.createPipedInputStream();
+        PipedOutputStream clientWrite = new PipedOutputStream(serverRead);
+        PipedOutputStream serverWrite = new PipedOutputStream(clientRead);
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol(clientRead, clientWrite);
+        TlsServerProtocol serverProtocol = new TlsServerProtocol(serverRead, serverWrite);
+
+        ServerThread serverThread = new ServerThread(serverProtocol, server);
+        serverThread.start();
+
+        clientProtocol.connect(client);
+
+        byte[] data = new byte[100];
+        clientProtocol.getOutputStream().write(data);
+        Streams.readFully(clientProtocol.getInputStream(), data);
+
+        clientProtocol.close();
+        serverThread.join();
+
+        assertEquals(1, clientMetrics.count);
+        assertEquals(1, serverMetrics.count);
+
+        checkCompletedMetrics(clientMetrics.metrics, false);
+        checkCompletedMetrics(serverMetrics.metrics, true);
+
+        assertEquals(clientMetrics.metrics.getCipherSuite(), serverMetrics.metrics.getCipherSuite());
+        assertEquals(clientMetrics.metrics.getNegotiatedGroup(), serverMetrics.metrics.getNegotiatedGroup());
+
+        // Each side reads exactly what the other writes during the handshake
+        assertEquals(clientMetrics.metrics.getBytesWritten(), serverMetrics.metrics.getBytesRead());
+        assertEquals(serverMetrics.metrics.getBytesWritten(), clientMetrics.metrics.getBytesRead());
+    }
+
+    public void testHandshakeMetricsFailure() throws Exception
+    {
+        final MetricsListener clientMetrics = new MetricsListener();
+
+        MockPSKTls13Client client = new MockPSKTls13Client(true)
+        {
+            public TlsHandshakeMetricsListener getHandshakeMetricsListener()
+            {
+                return clientMetrics;
+            }
+        };
+        MockPSKTls13Server server = new MockPSKTls13Server();
+
+        PipedInputStream clientRead = TlsTestUtils.createPipedInputStream();
+        PipedInputStream serverRead = TlsTestUtils.createPipedInputStream();
+        PipedOutputStream clientWrite = new PipedOutputStream(serverRead);
+        PipedOutputStream serverWrite = new PipedOutputStream(clientRead);
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol(clientRead, clientWrite);
+        TlsServerProtocol serverProtocol = new TlsServerProtocol(serverRead, serverWrite);
+
+        ServerThread serverThread = new ServerThread(serverProtocol, server);
+        serverThread.start();
+
+        try
+        {
+            clientProtocol.connect(client);
+            fail("handshake succeeded with mismatched PSKs");
+        }
+        catch (TlsFatalAlertReceived e)
+        {
+            assertEquals(AlertDescription.decrypt_error, e.getAlertDescription());
+        }
+        finally
+        {
+            clientProtocol.close();
+        }
+
+        serverThread.join();
+
+        assertEquals(1, clientMetrics.count);
+
+        TlsHandshakeMetrics metrics = clientMetrics.metrics;
+        assertFalse(metrics.isCompleted());
+        assertEquals(AlertDescription.decrypt_error, metrics.getAlertDescription());
+        assertTrue(metrics.getRecordsRead() > 0);
+        assertTrue(metrics.getRecordsWritten() > 0);
+    }
+
+    private static void checkCompletedMetrics(TlsHandshakeMetrics metrics, boolean server)
+    {
+        assertNotNull(metrics);
+        assertTrue(metrics.isCompleted());
+        assertEquals(-1, metrics.getAlertDescription());
+        assertEquals(server, metrics.isServer());
+        assertFalse(metrics.isRenegotiation());
+        assertFalse(metrics.isResumed());
+        assertEquals(ProtocolVersion.TLSv13, metrics.getNegotiatedVersion());
+        assertTrue(metrics.getCipherSuite() >= 0);
+        assertTrue(metrics.getNegotiatedGroup() >= 0);
+        assertTrue(metrics.getRecordsRead() > 0);
+        assertTrue(metrics.getRecordsWritten() > 0);
+        assertTrue(metrics.getBytesRead() > 0);
+        assertTrue(metrics.getBytesWritten() > 0);
+        assertTrue(metrics.getPhaseNanos(TlsHandshakeMetrics.KEY_EXCHANGE) > 0);
+        assertTrue(metrics.getTotalNanos() >= metrics.getPhaseNanos(TlsHandshakeMetrics.KEY_EXCHANGE));
+    }
+
     static class ServerThread
         extends Thread
     {
@@ -79,4 +258,17 @@ public void run()
             }
         }
     }
+
+    static class MetricsListener
+        implements TlsHandshakeMetricsListener
+    {
+        volatile int count = 0;
+        volatile TlsHandshakeMetrics metrics = null;
+
+        public synchronized void notifyHandshakeMetrics(TlsHandshakeMetrics metrics)
+        {
+            ++count;
+            this.metrics = metrics;
+        }
+    }
 }